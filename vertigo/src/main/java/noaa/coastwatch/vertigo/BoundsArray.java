@@ -0,0 +1,104 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.util.Arrays;
+
+import javafx.geometry.Bounds;
+
+/**
+ * The <code>BoundsArray</code> class holds a list of axis aligned bounding
+ * boxes as primitive arrays, one array for each box coordinate.  This allows
+ * many boxes to be tested against a {@link Frustum} in a single pass without
+ * accessing each box through the <code>Bounds</code> interface.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class BoundsArray {
+
+  // Variables
+  // ---------
+
+  /** The box minimum and maximum coordinates. */
+  double[] minX, minY, minZ, maxX, maxY, maxZ;
+
+  /** The number of boxes in the array. */
+  private int size;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new empty array.
+   *
+   * @param capacity the initial number of boxes to allocate space for.
+   */
+  public BoundsArray (
+    int capacity
+  ) {
+
+    capacity = Math.max (capacity, 1);
+    minX = new double[capacity];
+    minY = new double[capacity];
+    minZ = new double[capacity];
+    maxX = new double[capacity];
+    maxY = new double[capacity];
+    maxZ = new double[capacity];
+
+  } // BoundsArray
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds a box to the end of the array.
+   *
+   * @param bounds the box bounds to add.
+   *
+   * @return the index of the new box.
+   */
+  public int add (
+    Bounds bounds
+  ) {
+
+    if (size == minX.length) {
+      int capacity = size*2;
+      minX = Arrays.copyOf (minX, capacity);
+      minY = Arrays.copyOf (minY, capacity);
+      minZ = Arrays.copyOf (minZ, capacity);
+      maxX = Arrays.copyOf (maxX, capacity);
+      maxY = Arrays.copyOf (maxY, capacity);
+      maxZ = Arrays.copyOf (maxZ, capacity);
+    } // if
+
+    minX[size] = bounds.getMinX();
+    minY[size] = bounds.getMinY();
+    minZ[size] = bounds.getMinZ();
+    maxX[size] = bounds.getMaxX();
+    maxY[size] = bounds.getMaxY();
+    maxZ[size] = bounds.getMaxZ();
+
+    return (size++);
+
+  } // add
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of boxes in the array.
+   *
+   * @return the number of boxes.
+   */
+  public int size() { return (size); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Removes all boxes from the array. */
+  public void clear() { size = 0; }
+
+  /////////////////////////////////////////////////////////////////
+
+} // BoundsArray class
@@ -9,6 +9,7 @@ package noaa.coastwatch.vertigo;
 import java.io.IOException;
 import java.nio.IntBuffer;
 import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
 
 import javafx.scene.image.WritableImage;
 import javafx.scene.image.PixelWriter;
@@ -66,65 +67,156 @@ public class ColorTileWriter<T> implements ImageTileWriter {
     BooleanSupplier cancelled
   ) throws IOException {
 
+    write (tile, image, startX, startY, width, height, null, cancelled);
+
+  } // write
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public void write (
+    ImageTile tile,
+    WritableImage image,
+    int startX,
+    int startY,
+    int width,
+    int height,
+    boolean[] valid,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
     // The requested image here has a certain size that is less than or
     // equal to the tile we've been given to access.  We need to map data
     // pixels from the source into the image.  We do that by first detecting
     // what resolution (ie: stride) from the data we're going to need, then
     // perform the data access.
-    int strideX = tile.width / width;
-    int strideY = tile.height / height;
-    ImageAccess access = new ImageAccess (tile, strideX, strideY);
+    ImageAccess access = getAccess (tile, width, height);
     ImageAccessResult result = source.access (access, cancelled);
 
+    // The conversion to colours is CPU bound, so it's run under the task
+    // service's compute limit in case we're on one of many I/O threads.
     if (!isTrue (cancelled)) {
+      TaskService.getInstance().runCompute (() -> writeResult (access, result, image,
+        startX, startY, width, height, valid));
+    } // if
+
+  } // write
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public CompletableFuture<Void> writeAsync (
+    ImageTile tile,
+    WritableImage image,
+    int startX,
+    int startY,
+    int width,
+    int height,
+    boolean[] valid
+  ) {
 
-      // Now that the data access is done, we have to convert over the data
-      // pixels into an image.  We know that pixel (0,0) is going to carry
-      // over into the image.  But the data access width x height may be slightly
-      // larger than the image width x height, depending on how the stride
-      // parameter matched up with the data access bounds. So we need to index
-      // the data and image pixel arrays separately in that case.  In the
-      // majority of cases, the image size and data size are equal, so we
-      // handle that separately to help increase performance.
+    // No thread is held while the data is read.  Once the data arrives,
+    // the conversion to colours is run in the facet pool, since it's CPU
+    // bound.
+    ImageAccess access = getAccess (tile, width, height);
+    CompletableFuture<ImageAccessResult> accessFuture = source.accessAsync (access);
+    CompletableFuture<Void> future = accessFuture.thenAcceptAsync (
+      result -> writeResult (access, result, image, startX, startY, width, height, valid),
+      TaskService.getInstance().getExecutor (TaskService.Pool.FACET, TaskService.NORMAL_PRIORITY));
+    future.whenComplete ((value, e) -> { if (future.isCancelled()) accessFuture.cancel (false); });
 
-      int imagePixels = width*height;
-      int[] colorData = new int[imagePixels];
+    return (future);
 
-      int dataWidth = access.getWidth();
-      int dataHeight = access.getHeight();
-      int dataPixels = dataWidth * dataHeight;
-      T imageData = converter.allocateSrc (dataPixels);
+  } // writeAsync
 
-      PixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbInstance();
-      PixelWriter writer = image.getPixelWriter();
+  /////////////////////////////////////////////////////////////////
 
-      source.getAll (result, imageData);
+  /** Gets the data access needed to write a tile into an image region. */
+  private static ImageAccess getAccess (
+    ImageTile tile,
+    int width,
+    int height
+  ) {
+
+    int strideX = tile.width / width;
+    int strideY = tile.height / height;
+    return (new ImageAccess (tile, strideX, strideY));
+
+  } // getAccess
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Converts the data from an access to colours and writes them to an image. */
+  private void writeResult (
+    ImageAccess access,
+    ImageAccessResult result,
+    WritableImage image,
+    int startX,
+    int startY,
+    int width,
+    int height,
+    boolean[] valid
+  ) {
 
-      // This is the easy case, when the data dimensions are the same as the
-      // image dimensions.
-      if (width == dataWidth && height == dataHeight) {
-        converter.convert (imageData, 0, colorData, 0, imagePixels);
-      } // if
-      
-      // This is the slightly more complicated case.  Since the data dimensions
-      // and the image dimensions are not equal, we have to convert the data
-      // to colors row by row, taking into acount that the offsets into the
-      // data arrays are not the same for the start of each row.
-      else {
-        for (int y = 0; y < height; y++) {
-          int dataOffset = y*dataWidth;
-          int imageOffset = y*width;
-          converter.convert (imageData, dataOffset, colorData, imageOffset, width);
-        } // for
-      } // else
-
-      // In either case, the pixels are transferred into the image in a
-      // large block.
-      writer.setPixels (startX, startY, width, height, pixelFormat, colorData, 0, width);
+    // Now that the data access is done, we have to convert over the data
+    // pixels into an image.  We know that pixel (0,0) is going to carry
+    // over into the image.  But the data access width x height may be slightly
+    // larger than the image width x height, depending on how the stride
+    // parameter matched up with the data access bounds. So we need to index
+    // the data and image pixel arrays separately in that case.  In the
+    // majority of cases, the image size and data size are equal, so we
+    // handle that separately to help increase performance.
+
+    int imagePixels = width*height;
+    int[] colorData = new int[imagePixels];
+
+    int dataWidth = access.getWidth();
+    int dataHeight = access.getHeight();
+    int dataPixels = dataWidth * dataHeight;
+    PixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbInstance();
+    PixelWriter writer = image.getPixelWriter();
+
+    // Use the source data directly if possible, to save allocating and
+    // copying the data values.
+    T imageData = source.getDirect (result);
+    if (imageData == null) {
+      imageData = converter.allocateSrc (dataPixels);
+      source.getAll (result, imageData);
+    } // if
 
+    // This is the easy case, when the data dimensions are the same as the
+    // image dimensions.
+    if (width == dataWidth && height == dataHeight) {
+      converter.convert (imageData, 0, colorData, 0, imagePixels);
+    } // if
+  
+    // This is the slightly more complicated case.  Since the data dimensions
+    // and the image dimensions are not equal, we have to convert the data
+    // to colors row by row, taking into acount that the offsets into the
+    // data arrays are not the same for the start of each row.
+    else {
+      for (int y = 0; y < height; y++) {
+        int dataOffset = y*dataWidth;
+        int imageOffset = y*width;
+        converter.convert (imageData, dataOffset, colorData, imageOffset, width);
+      } // for
+    } // else
+
+    // If requested, record which pixels have valid data using the
+    // converter's knowledge of missing values.
+    if (valid != null) {
+      for (int y = 0; y < height; y++) {
+        int dataOffset = y*dataWidth;
+        int imageOffset = y*width;
+        for (int x = 0; x < width; x++) valid[imageOffset + x] = !converter.isMissing (imageData, dataOffset + x);
+      } // for
     } // if
 
-  } // write
+    // In either case, the pixels are transferred into the image in a
+    // large block.
+    writer.setPixels (startX, startY, width, height, pixelFormat, colorData, 0, width);
+
+  } // writeResult
 
   /////////////////////////////////////////////////////////////////
 
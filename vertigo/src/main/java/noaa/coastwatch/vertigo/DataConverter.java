@@ -50,5 +50,24 @@ public interface DataConverter<T, U> {
    */
   U allocateDest (int length);
 
+  /**
+   * Determines if a source data value is missing (default never missing).
+   *
+   * @param src the source data.
+   * @param srcOffset the offset into the source data of the value to check.
+   *
+   * @return true if the value is missing, or false if not.
+   *
+   * @since 0.8
+   */
+  default boolean isMissing (
+    T src,
+    int srcOffset
+  ) {
+
+    return (false);
+
+  } // isMissing
+
 } // DataConverter interface
 
@@ -0,0 +1,106 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.io.Serializable;
+
+/**
+ * The <code>DataPacking</code> class holds the information needed to
+ * interpret packed data values as they are stored in a dataset, before any
+ * scaling or missing value processing.  Unpacked values are computed as
+ * <code>packed*scale + offset</code>.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class DataPacking implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  // Variables
+  // ---------
+
+  /**
+   * The primitive array type used to hold packed values, one of
+   * <code>byte[].class</code>, <code>short[].class</code>, or
+   * <code>float[].class</code>.
+   */
+  public Class<?> storageType;
+
+  /** The unsigned flag, true if integer packed values are unsigned. */
+  public boolean isUnsigned;
+
+  /** The scaling factor for unpacking values. */
+  public double scale = 1;
+
+  /** The offset for unpacking values. */
+  public double offset = 0;
+
+  /** The packed values that indicate missing data, or null for none. */
+  public double[] missingValues;
+
+  /** The minimum valid packed value, or NaN for no minimum. */
+  public double validMin = Double.NaN;
+
+  /** The maximum valid packed value, or NaN for no maximum. */
+  public double validMax = Double.NaN;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if a packed value is missing.
+   *
+   * @param packed the packed value to check.
+   *
+   * @return true if the value is NaN, is one of the missing values, or is
+   * outside the valid range, or false otherwise.
+   */
+  public boolean isMissing (
+    double packed
+  ) {
+
+    boolean missing = Double.isNaN (packed);
+    if (!missing && missingValues != null) {
+      for (int i = 0; i < missingValues.length && !missing; i++) missing = (packed == missingValues[i]);
+    } // if
+    if (!missing && !Double.isNaN (validMin)) missing = (packed < validMin);
+    if (!missing && !Double.isNaN (validMax)) missing = (packed > validMax);
+
+    return (missing);
+
+  } // isMissing
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Unpacks a packed value.
+   *
+   * @param packed the packed value.
+   *
+   * @return the unpacked value, or NaN if the packed value is missing.
+   */
+  public double unpack (
+    double packed
+  ) {
+
+    return (isMissing (packed) ? Double.NaN : packed*scale + offset);
+
+  } // unpack
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public String toString() {
+
+    return ("DataPacking[storageType=" + storageType.getSimpleName() + ",isUnsigned=" + isUnsigned +
+      ",scale=" + scale + ",offset=" + offset + ",validMin=" + validMin + ",validMax=" + validMax + "]");
+
+  } // toString
+
+  /////////////////////////////////////////////////////////////////
+
+} // DataPacking class
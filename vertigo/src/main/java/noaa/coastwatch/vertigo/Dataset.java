@@ -136,6 +136,84 @@ public interface Dataset {
     int timeIndex,
     int levelIndex
   ) throws IOException;
+
+  /**
+   * Gets the packing information for a variable in this dataset (default
+   * none).  Variables with packing information may be accessed in their
+   * packed form using {@link #getPackedDataSource}, which avoids expanding
+   * the data to double values.
+   *
+   * @param varName the variable to get the packing information.
+   *
+   * @return the packing information, or null if the variable can only be
+   * accessed as double values.
+   *
+   * @throws IOException if an exception occurred.
+   *
+   * @since 0.8
+   */
+  default DataPacking getPacking (
+    String varName
+  ) throws IOException {
+
+    return (null);
+
+  } // getPacking
+
+  /**
+   * Gets the storage chunk size for a variable in this dataset (default
+   * none).  Chunked data such as in NetCDF-4 and HDF5 files is read and
+   * decompressed one chunk at a time, so accesses that are aligned with
+   * chunk boundaries avoid reading the same chunk more than once.
+   *
+   * @param varName the variable to get the chunk size.
+   *
+   * @return the chunk size as [width, height], or null if the variable is
+   * not stored in chunks or the chunk size is unknown.
+   *
+   * @throws IOException if an exception occurred.
+   *
+   * @since 0.8
+   */
+  default int[] getChunkSizes (
+    String varName
+  ) throws IOException {
+
+    return (null);
+
+  } // getChunkSizes
+
+  /**
+   * Gets the packed image data source for a time and level of a variable in
+   * this dataset (default none).  Data values are retrieved as primitive
+   * arrays of the packing storage type and have not been scaled or checked
+   * for missing values.
+   *
+   * @param varName the variable to get the data.
+   * @param timeIndex the index from the list of time steps for the 2D data
+   * slice or 0 if there are no time steps.
+   * @param levelIndex the index from the list of levels for the 2D data
+   * slice or 0 if there are no levels.
+   *
+   * @return the packed image data source, or null if the dataset doesn't
+   * support packed access, in which case {@link #getDataSource} should be
+   * used.
+   *
+   * @throws IOException if an exception occurred.
+   *
+   * @since 0.8
+   *
+   * @see #getPacking
+   */
+  default ImageDataSource<Object> getPackedDataSource (
+    String varName,
+    int timeIndex,
+    int levelIndex
+  ) throws IOException {
+
+    return (null);
+
+  } // getPackedDataSource
   
   /**
    * Gets the 2D image coordinate source for a variable in this dataset.
@@ -12,8 +12,10 @@ import java.util.Date;
 import java.util.Calendar;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
+import java.util.function.BooleanSupplier;
 
 import java.io.IOException;
+import java.io.Closeable;
 
 import javafx.scene.layout.Region;
 import javafx.beans.property.ObjectProperty;
@@ -30,7 +32,7 @@ import java.util.logging.Level;
  * @author Peter Hollemans
  * @since 0.5
  */
-public class DatasetSurfaceFactory extends BaseProjectViewObject implements GeoSurfaceFactory {
+public class DatasetSurfaceFactory extends BaseProjectViewObject implements GeoSurfaceFactory, Closeable {
 
   private static final Logger LOGGER = Logger.getLogger (DatasetSurfaceFactory.class.getName());
 
@@ -43,6 +45,9 @@ public class DatasetSurfaceFactory extends BaseProjectViewObject implements GeoS
   /** The function for the tile writer for converting data values into colors. */
   private DoubleToColorConverter converter;
   
+  /** The converter for packed data values, or null to use unpacked data. */
+  private PackedToColorConverter packedConverter;
+
   /** The possible list of time steps. */
   private List<Date> timeList;
   
@@ -165,6 +170,12 @@ public class DatasetSurfaceFactory extends BaseProjectViewObject implements GeoS
     width = dims[0];
     height = dims[1];
 
+    // If the data is available in packed form, we use it directly to save
+    // memory and conversion time.  The packed converter creates a lookup
+    // table for integer data, so we share it between surfaces.
+    DataPacking packing = dataset.getPacking (variable);
+    if (packing != null) packedConverter = new PackedToColorConverter (packing, converter);
+
     // Report various statistics for debugging purposes.
     if (LOGGER.isLoggable (Level.FINE)) {
 
@@ -234,18 +245,51 @@ public class DatasetSurfaceFactory extends BaseProjectViewObject implements GeoS
     int time,
     int level
   ) throws IOException {
+
+    return (createSurface (time, level, null));
+
+  } // createSurface
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public DynamicSurface createSurface (
+    int time,
+    int level,
+    BooleanSupplier cancelled
+  ) throws IOException {
     
     // Get the data source for the given time and level (ignored if they
     // don't exist).
     if (!hasTimes()) time = 0;
     if (!hasLevels()) level = 0;
-    ImageDataSource<double[]> dataSource = dataset.getDataSource (variable, time, level);
+
+    // Create the tile writer using packed data values if possible.
+    ImageTileWriter tileWriter = null;
+    if (packedConverter != null) {
+      ImageDataSource<Object> dataSource = dataset.getPackedDataSource (variable, time, level);
+      if (dataSource != null) tileWriter = new ColorTileWriter<Object> (dataSource, packedConverter);
+    } // if
+    if (tileWriter == null) {
+      ImageDataSource<double[]> dataSource = dataset.getDataSource (variable, time, level);
+      tileWriter = new ColorTileWriter<double[]> (dataSource, converter);
+    } // else
 
     // Create the facet data source for the surface and then the surface
-    // itself.
-    ImageTileWriter tileWriter = new ColorTileWriter<double[]> (dataSource, converter);
-    FacetDataSource source = new TiledImageFacetDataSource (width, height, coordSource,
-      tileWriter, viewContext.deltaFunc, viewContext.viewProps);
+    // itself.  Very large images use a quadtree of facets so that the
+    // facet size follows the zoom level.  Facets are aligned with the data
+    // storage chunks if any, so that each chunk is decompressed for as few
+    // facets as possible.
+    int[] chunkSizes = dataset.getChunkSizes (variable);
+    FacetDataSource source;
+    if ((long) width*height >= QuadTreeFacetDataSource.MIN_PIXELS) {
+      source = new QuadTreeFacetDataSource (width, height, coordSource,
+        tileWriter, viewContext.deltaFunc, viewContext.viewProps, cancelled, chunkSizes);
+    } // if
+    else {
+      source = new TiledImageFacetDataSource (width, height, coordSource,
+        tileWriter, viewContext.deltaFunc, viewContext.viewProps, cancelled, chunkSizes);
+    } // else
     DynamicSurface surface = new DynamicSurface (source);
 
     return (surface);
@@ -269,6 +313,23 @@ public class DatasetSurfaceFactory extends BaseProjectViewObject implements GeoS
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Closes the dataset used by this factory, if it holds open resources.
+   * No surfaces should be created after the factory is closed.
+   *
+   * @throws IOException if an error occurred closing the dataset.
+   *
+   * @since 0.8
+   */
+  @Override
+  public void close () throws IOException {
+
+    if (dataset instanceof Closeable) ((Closeable) dataset).close();
+
+  } // close
+
+  /////////////////////////////////////////////////////////////////
+
 //  @Override
 //  public String getSourceUrl() { return (getSpec().get ("url") + ".html"); }
 
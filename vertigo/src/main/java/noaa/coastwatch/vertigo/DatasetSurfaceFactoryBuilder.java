@@ -22,6 +22,10 @@ import java.util.ArrayList;
  *   <li> max (double)</li>
  *   <li> palette (string)</li>
  *   <li> function (string)</li>
+ *   <li> bands (int) - optional maximum parallel read bands, see
+ *   {@link NetCDFDataset#setParallelBands}</li>
+ *   <li> handles (int) - optional maximum open dataset handles, see
+ *   {@link NetCDFDataset#setMaxHandles}</li>
  * </ul>
  *
  * @author Peter Hollemans
@@ -61,7 +65,11 @@ public class DatasetSurfaceFactoryBuilder extends BaseProjectObjectBuilder {
 
     // Access the dataset
     String url = (String) require ("url");
-    Dataset dataset = new NetCDFDataset (url, viewContext.coordTrans);
+    var dataset = new NetCDFDataset (url, viewContext.coordTrans);
+    if (properties().contains ("bands"))
+      dataset.setParallelBands ((Integer) require ("bands"));
+    if (properties().contains ("handles"))
+      dataset.setMaxHandles ((Integer) require ("handles"));
     String variable = (String) require ("variable");
 
     // Create the array of colors from the palette
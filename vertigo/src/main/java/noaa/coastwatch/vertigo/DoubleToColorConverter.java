@@ -174,6 +174,24 @@ public class DoubleToColorConverter implements DataConverter<double[], int[]> {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Converts a single data value to a color.
+   *
+   * @param value the data value to convert, or NaN for missing.
+   *
+   * @return the ARGB color for the value.
+   *
+   * @since 0.8
+   */
+  public int getColor (double value) { return (colorMap[function.applyAsInt (value)]); }
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public boolean isMissing (double[] src, int srcOffset) { return (Double.isNaN (src[srcOffset])); }
+
+  /////////////////////////////////////////////////////////////////
+
   @Override
   public double[] allocateSrc (int length) { return (new double[length]); }
   
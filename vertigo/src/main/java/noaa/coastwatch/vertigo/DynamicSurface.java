@@ -9,14 +9,23 @@ package noaa.coastwatch.vertigo;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.logging.Logger;
+import java.util.logging.Level;
 import java.util.function.Consumer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Comparator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 
 import javafx.geometry.Point3D;
 import javafx.geometry.Bounds;
 
+import javafx.scene.Node;
 import javafx.scene.shape.TriangleMesh;
 import javafx.scene.image.Image;
 import javafx.scene.shape.MeshView;
@@ -27,10 +36,15 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 
 import javafx.application.Platform;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
 
 /**
  * The <code>DynamicSurface</code> class manages a set of surface facets that
@@ -51,6 +65,40 @@ public class DynamicSurface {
 
   private static final Logger LOGGER = Logger.getLogger (DynamicSurface.class.getName());
 
+  /**
+   * The factor applied to the split distance of a facet to find the distance
+   * at which its children are merged back into it.  The difference between
+   * split and merge distances avoids facets repeatedly splitting and merging
+   * for small camera movements.
+   */
+  private static final double MERGE_FACTOR = 1.5;
+
+  /**
+   * The minimum cosine of the angle between a facet normal and the view
+   * direction used in screen error mode.
+   */
+  private static final double MIN_OBLIQUITY = 0.1;
+
+  /**
+   * The camera speed above which the camera is considered to be moving,
+   * in units of the distance to the closest facet per second.
+   */
+  private static final double MOTION_SPEED = 0.5;
+
+  /** The time after the camera stops moving before refining facets in milliseconds. */
+  private static final double SETTLE_MILLIS = 250;
+
+  /**
+   * The modes for selecting facet levels of detail.  In distance mode,
+   * the camera distance to the facet centers is compared directly to the
+   * factory level distances.  In screen error mode, the distance to the
+   * facet bounds is scaled for the actual display resolution and the facet
+   * obliquity, and each facet is given its own texture level.
+   *
+   * @since 0.8
+   */
+  public enum LevelMode { DISTANCE, SCREEN_ERROR }
+
   // Variables
   // ---------
 
@@ -63,6 +111,30 @@ public class DynamicSurface {
   /** The list of facets finished being created, to be used when updating. */
   private List<Facet> facetList;
 
+  /** The number of facets created, which may be less than the source facets. */
+  private int facetCount;
+
+  /** The map of facet index to facet for all facets created. */
+  private Map<Integer, Facet> facetMap;
+
+  /**
+   * The map of facets in a hierarchical source that are being shown or will
+   * be shown as their children, to the list of child facets.
+   */
+  private Map<Facet, List<Facet>> splitMap;
+
+  /** The set of facets whose children are currently shown in their place. */
+  private Set<Facet> splitSet;
+
+  /** The listener that updates progress from facet updating states. */
+  private ProgressUpdater progressUpdater;
+
+  /** The mode for selecting facet levels of detail. */
+  private volatile LevelMode levelMode = LevelMode.DISTANCE;
+
+  /** The properties of the view as displayed, or null if not known. */
+  private volatile ViewProperties displayProps;
+
   /** The camera position property. */
   private ObjectProperty<Point3D> cameraPositionProp = new SimpleObjectProperty<> (this, "cameraPosition");
   public final void setCameraPosition (Point3D value) { cameraPositionProp.set (value); }
@@ -75,8 +147,14 @@ public class DynamicSurface {
   /** The consumer called when a facet has an update to the scene graph. */
   private Consumer<Runnable> updateConsumer;
 
-  /** The thread for running the time consuming part of the update. */
-  private Thread updateThread;
+  /** The batcher for drawing facets in batches, or null to draw individually. */
+  private FacetBatcher batcher;
+
+  /** The texture atlas for facet textures, or null to use textures directly. */
+  private TextureAtlas atlas;
+
+  /** The task running the time consuming part of the update. */
+  private Future<?> updateTask;
 
   /**
    * The flag for when the facets are initializing.  Since part of the
@@ -93,11 +171,41 @@ public class DynamicSurface {
    * The active flag, true if we are listening for camera position updates
    * or false if not.
    */
-  private boolean isActive;
+  private volatile boolean isActive;
+
+  /** The prefetch generation, incremented to cancel any prefetch in progress. */
+  private volatile int prefetchGeneration;
+
+  /** The motion flag, true while the camera is moving quickly. */
+  private volatile boolean isMoving;
+
+  /** The time of the last camera position change in nanoseconds. */
+  private long motionTime;
+
+  /** The distance from the camera to the closest visible facet at the last update. */
+  private volatile double closestDist;
+
+  /** The timer that ends the motion state when the camera settles. */
+  private PauseTransition settleTimer;
+
+  /** The flag for an update requested while another was running. */
+  private boolean updatePending;
 
   /** The current progress of the surface updating in the range [0..1]. */
   private DoubleProperty progressProp;
 
+  /** The initialized property, true when all the root facets have a node. */
+  private BooleanProperty initializedProp = new SimpleBooleanProperty (this, "initialized");
+
+  /** The root facets created but still waiting for a node. */
+  private Set<Facet> pendingRoots;
+
+  /**
+   * The previous surface with the same geometry whose facets are used to
+   * start the facets of this surface, or null for none.
+   */
+  private DynamicSurface predecessor;
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -113,6 +221,88 @@ public class DynamicSurface {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the initialized property, true when the surface facets have been
+   * created and all have an initial node.
+   *
+   * @return the initialized property.
+   *
+   * @since 0.8
+   */
+  public ReadOnlyBooleanProperty initializedProperty () { return (initializedProp); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if the surface facets have been created and all have an
+   * initial node.
+   *
+   * @return true if initialized or false if not.
+   *
+   * @since 0.8
+   */
+  public boolean isInitialized () { return (initializedProp.get()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if another surface has the same facet geometry as this
+   * surface, for example a surface of the same data variable at a different
+   * time step.
+   *
+   * @param other the other surface.
+   *
+   * @return true if the facets with the same index in each surface have the
+   * same meshes, or false if not.
+   *
+   * @since 0.8
+   *
+   * @see FacetDataSource#hasSameGeometry
+   */
+  public boolean hasSameGeometry (
+    DynamicSurface other
+  ) {
+
+    return (source.hasSameGeometry (other.source));
+
+  } // hasSameGeometry
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets this surface to start its facets from the facets currently shown
+   * by another surface with the same geometry.  When this surface is
+   * initialized, its facets are given nodes right away that share the
+   * meshes of the other surface facets, and show the other surface
+   * textures until their own textures are ready.  Split facets of a
+   * hierarchical source start out split in the same way.  This avoids
+   * showing the surface from scratch at the lowest mesh level when
+   * switching between time steps.  This method must be called from the
+   * JavaFX application thread before the surface is first activated.
+   *
+   * @param previous the surface to start from.
+   *
+   * @return true if the facets will be started from the other surface, or
+   * false if the surface is already initializing or the geometry differs.
+   *
+   * @since 0.8
+   *
+   * @see Facet#inherit
+   */
+  public boolean inheritFrom (
+    DynamicSurface previous
+  ) {
+
+    boolean inherit = (!initializeCalled && previous != this &&
+      previous.facetList.size() != 0 && hasSameGeometry (previous));
+    predecessor = (inherit ? previous : null);
+
+    return (inherit);
+
+  } // inheritFrom
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Computes an estimate of the memory used by this surface.
    *
@@ -131,6 +321,55 @@ public class DynamicSurface {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the facets that have been created and have a node.  This includes
+   * facets that are disabled because they're replaced by other facets.
+   *
+   * @return the list of facets, a copy of the current facets in the surface.
+   *
+   * @since 0.8
+   */
+  public List<Facet> getFacets() { return (new ArrayList<> (facetList)); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the mode used to select facet levels of detail, by default
+   * {@link LevelMode#DISTANCE}.  Screen error mode also requires that the
+   * display properties be set.
+   *
+   * @param mode the new level mode.
+   *
+   * @since 0.8
+   */
+  public void setLevelMode (LevelMode mode) { levelMode = mode; }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the mode used to select facet levels of detail.
+   *
+   * @return the level mode.
+   *
+   * @since 0.8
+   */
+  public LevelMode getLevelMode() { return (levelMode); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the properties of the view as it is actually displayed, for use in
+   * screen error mode.  The properties should be updated when the view
+   * changes size or moves to a display with a different output scale.
+   *
+   * @param props the display view properties.
+   *
+   * @since 0.8
+   */
+  public void setDisplayProperties (ViewProperties props) { displayProps = props; }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Sets the consumer for facets that are ready to be viewed.
    *
@@ -175,6 +414,74 @@ public class DynamicSurface {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Sets the consumer for batch nodes.  When set, spatially adjacent facets
+   * of the same size are drawn in batches that share a single mesh view and
+   * texture, and the batch nodes are passed to the consumer to be added to
+   * the scene graph.  The visibility of batch nodes is managed by the
+   * surface.  When set to null, any existing batches are discarded and the
+   * facets are drawn individually.  This method must be called from the
+   * JavaFX application thread.
+   *
+   * @param consumer the batch node consumer to use, or null to not batch.
+   *
+   * @since 0.8
+   *
+   * @see FacetBatcher
+   */
+  public void setBatchConsumer (
+    Consumer<Node> consumer
+  ) {
+
+    if (batcher != null) {
+      batcher.dispose();
+      batcher = null;
+    } // if
+
+    if (consumer != null) {
+      batcher = new FacetBatcher (consumer);
+      for (Facet facet : facetList) batcher.add (facet);
+    } // if
+
+  } // setBatchConsumer
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the texture atlas for facet textures.  When set, facet textures
+   * are packed into shared atlas pages.  When set to null, the facets
+   * release their atlas regions and draw their textures directly.  This
+   * method must be called from the JavaFX application thread.
+   *
+   * @param atlas the texture atlas, or null to use textures directly.
+   *
+   * @since 0.8
+   *
+   * @see Facet#setTextureAtlas
+   */
+  public void setTextureAtlas (
+    TextureAtlas atlas
+  ) {
+
+    this.atlas = atlas;
+    for (Facet facet : facetInitList) facet.setTextureAtlas (atlas);
+    for (Facet facet : facetList) facet.setTextureAtlas (atlas);
+
+  } // setTextureAtlas
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the batch nodes in use for drawing facets.
+   *
+   * @return the list of batch nodes, empty if facets are not batched.
+   *
+   * @since 0.8
+   */
+  public List<Node> getBatchNodes() { return (batcher == null ? new ArrayList<>() : batcher.getNodes()); }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Creates a new dynamic surface.
    *
@@ -191,10 +498,25 @@ public class DynamicSurface {
     // is set and acrtive mode is on.
     facetInitList = new ArrayList<>();
     facetList = new ArrayList<>();
+    facetMap = new HashMap<>();
+    splitMap = new HashMap<>();
+    splitSet = new HashSet<>();
       
     // Listen for changes in the camera position and update the
     // facets as needed
-    cameraListener = (obs, oldVal, newVal) -> update();
+    cameraListener = (obs, oldVal, newVal) -> {
+      trackMotion (oldVal, newVal);
+      update();
+    };
+
+    // When the camera has settled, update again to refine the facets that
+    // were held back while moving.
+    settleTimer = new PauseTransition (Duration.millis (SETTLE_MILLIS));
+    settleTimer.setOnFinished (event -> {
+      isMoving = false;
+      LOGGER.finer ("Camera settled, refining facets");
+      if (isActive) update();
+    });
     
     // Create the progress property.  Later in initialize(), we bind the
     // facet updating states to the value of this property.
@@ -228,6 +550,9 @@ public class DynamicSurface {
 
       else {
         cameraPositionProp.removeListener (cameraListener);
+        cancelPrefetch();
+        settleTimer.stop();
+        isMoving = false;
         for (Facet facet : facetInitList) facet.stopUpdate();
         for (Facet facet : facetList) facet.stopUpdate();
       } // else
@@ -238,6 +563,38 @@ public class DynamicSurface {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Tracks the camera speed from a change in camera position.  When the
+   * camera moves faster than the motion speed, the surface enters the motion
+   * state until the camera has been settled for a short time.
+   *
+   * @param oldPos the previous camera position, or null.
+   * @param newPos the new camera position, or null.
+   */
+  private void trackMotion (
+    Point3D oldPos,
+    Point3D newPos
+  ) {
+
+    // We measure speed relative to the distance to the closest facet, so
+    // that the same threshold applies at any zoom level.  The first change
+    // after a pause has no reliable time interval and is only recorded.
+    long now = System.nanoTime();
+    double seconds = (now - motionTime)*1e-9;
+    motionTime = now;
+    if (oldPos == null || newPos == null || closestDist <= 0 || seconds > SETTLE_MILLIS*1e-3) return;
+
+    double speed = oldPos.distance (newPos) / closestDist / Math.max (seconds, 1e-3);
+    if (speed > MOTION_SPEED) {
+      if (!isMoving) LOGGER.finer ("Camera moving, deferring facet refinement");
+      isMoving = true;
+      settleTimer.playFromStart();
+    } // if
+
+  } // trackMotion
+
+  /////////////////////////////////////////////////////////////////
+
   /** Initializes the surface facets with their first node values. */
   private void initialize () {
   
@@ -246,45 +603,365 @@ public class DynamicSurface {
     if (initializeCalled) return;
     initializeCalled = true;
 
+    // We read a single overview image of the whole surface in the
+    // background.  It's sliced into provisional textures so that all the
+    // facets show data right away, rather than waiting for each facet
+    // texture to be accessed separately.  If the overview holds every data
+    // pixel, it also tells us which facets have no valid data so that they
+    // don't need to be created, and in that case we wait for it before
+    // creating the facets.  Otherwise the facets are created right away and
+    // the provisional textures are added as they become available.  The
+    // overview is abandoned if the surface is made inactive, and in the
+    // first case the surface is initialized again when next updated.
+    BooleanSupplier cancelled = () -> !isActive;
+    if (source.getTextureFactory().isOverviewExact()) {
+      TaskService.getInstance().submit (TaskService.Pool.SURFACE, TaskService.HIGH_PRIORITY, () -> {
+        Map<Integer, Image> textureMap = createProvisionalTextures (cancelled);
+        Platform.runLater (() -> {
+          if (textureMap != null) createFacets (textureMap);
+          else {
+            initializeCalled = false;
+            if (isActive) update();
+          } // else
+        });
+      }, null);
+    } // if
+    else {
+      createFacets (Map.of());
+      TaskService.getInstance().submit (TaskService.Pool.SURFACE, TaskService.HIGH_PRIORITY, () -> {
+        Map<Integer, Image> textureMap = createProvisionalTextures (cancelled);
+        if (textureMap != null) Platform.runLater (() -> {
+          for (var list : List.of (facetInitList, facetList)) {
+            for (var facet : list) {
+              Image texture = textureMap.get (facet.getIndex());
+              if (texture != null) facet.setProvisionalTexture (texture);
+            } // for
+          } // for
+        });
+      }, null);
+    } // else
+
+  } // initialize
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates the facets that have valid data.
+   *
+   * @param textureMap the map of facet index to provisional texture.
+   */
+  private void createFacets (
+    Map<Integer, Image> textureMap
+  ) {
+
     // We don't know the facet position yet so we can't determine what level
     // of texture or mesh to use.  We create them using the lowest density mesh
-    // and no texture.  We wait for them to be created and then add them to the
-    // official facet list.  They need to have a node first before we can pass
-    // them back to the caller, because the caller expects to know where to
-    // place each facet.  Once all the facets have a node, we call update
-    // again.
-    int facetCount = source.getFacets();
-    LOGGER.fine ("Creating initial set of " + facetCount + " facets at lowest mesh resolution");
-
-    int lowestMeshLevel = source.getMeshFactory().getLevels()-1;
-    for (int i = 0; i < facetCount; i++) {
-      Facet facet = new Facet (source, i);
-      facetInitList.add (facet);
-      facet.setUpdateConsumer (updateConsumer);
-      facet.nodeProperty().addListener ((obs, oldVal, newVal) -> {
-        if (oldVal == null && newVal != null) {
-          LOGGER.finest ("Adding new facet " + facet.getIndex() + " to the list");
-          facetInitList.remove (facet);
-          facetList.add (facet);
-          if (facetConsumer != null) facetConsumer.accept (facet);
-        } // if
-        if (facetList.size() == facetCount) {
-          LOGGER.fine ("Initialization of " + facetCount + " facets is complete");
-          update();
-        } // if
-      });
+    // and the provisional texture if any.  We wait for them to be created and
+    // then add them to the official facet list.  They need to have a node
+    // first before we can pass them back to the caller, because the caller
+    // expects to know where to place each facet.  Once all the facets have a
+    // node, we call update again.  For hierarchical sources, only the root
+    // facets are created here and the rest are created as they're needed.
+    var textureFactory = source.getTextureFactory();
+    int[] roots = source.getRoots();
+    for (int index : roots) {
+      if (!textureFactory.hasData (index)) continue;
+      Facet facet = createFacet (index);
+      facet.setProvisionalTexture (textureMap.get (index));
     } // for
+    facetCount = facetInitList.size();
+    LOGGER.fine ("Creating initial set of " + facetCount + " facets at lowest mesh resolution (" +
+      (roots.length - facetCount) + " empty facets skipped)");
+    if (facetCount == 0) {
+      progressProp.setValue (1);
+      initializedProp.set (true);
+    } // if
 
     // Create a listener for facet updating that updates the progress property
     // accordingly.
-    var updater = new ProgressUpdater (facetInitList);
-    for (var facet : facetInitList) facet.updatingProperty().addListener (updater);
+    progressUpdater = new ProgressUpdater (facetInitList);
+    for (var facet : facetInitList) facet.updatingProperty().addListener (progressUpdater);
 
     // Start the actual process of each facet updating.  This completes
-    // the initialization.
-    for (var facet : facetInitList) facet.update (lowestMeshLevel, -1);
+    // the initialization.  Facets that can start from a facet of the
+    // predecessor surface are given a node right away, after copying the
+    // predecessor splits so that the first update sees them.
+    pendingRoots = new HashSet<> (facetInitList);
+    if (predecessor != null) inheritSplits();
+    int lowestMeshLevel = source.getMeshFactory().getLevels()-1;
+    int inherited = 0;
+    for (var facet : new ArrayList<> (pendingRoots)) {
+      if (inheritFacet (facet)) inherited++;
+      else facet.update (lowestMeshLevel, -1);
+    } // for
+    if (predecessor != null) {
+      LOGGER.fine ("Started " + inherited + " of " + facetCount + " facets from previous surface");
+      predecessor = null;
+    } // if
 
-  } // initialize
+  } // createFacets
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Starts a facet from the facet with the same index in the predecessor
+   * surface, if there is one.
+   *
+   * @param facet the facet to start.
+   *
+   * @return true if the facet was started from the predecessor facet, or
+   * false if not.
+   */
+  private boolean inheritFacet (
+    Facet facet
+  ) {
+
+    Facet previous = predecessor.facetMap.get (facet.getIndex());
+    return (previous != null && previous.getNode() != null && facet.inherit (previous));
+
+  } // inheritFacet
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Copies the facet splits from the predecessor surface.  A split is only
+   * copied if all the child facets that have data can be started from the
+   * predecessor children, so that the split is complete right away.
+   * Parents are processed before their children, so that nested splits are
+   * copied from the top down.
+   */
+  private void inheritSplits () {
+
+    var textureFactory = source.getTextureFactory();
+    List<Facet> parents = new ArrayList<> (predecessor.splitSet);
+    parents.sort (Comparator.comparingInt (Facet::getIndex));
+    for (Facet previousParent : parents) {
+
+      Facet parent = facetMap.get (previousParent.getIndex());
+      if (parent == null || !parent.isEnabled()) continue;
+      List<Facet> previousChildren = new ArrayList<>();
+      boolean complete = true;
+      for (var previousChild : predecessor.splitMap.get (previousParent)) {
+        if (!textureFactory.hasData (previousChild.getIndex())) continue;
+        if (previousChild.getMesh() == null) { complete = false; break; }
+        previousChildren.add (previousChild);
+      } // for
+      if (!complete) continue;
+
+      List<Facet> children = new ArrayList<>();
+      for (var previousChild : previousChildren) {
+        Facet child = facetMap.get (previousChild.getIndex());
+        if (child == null) child = createFacet (previousChild.getIndex());
+        child.inherit (previousChild);
+        children.add (child);
+      } // for
+      retireFacet (parent);
+      splitMap.put (parent, children);
+      splitSet.add (parent);
+
+    } // for
+
+    LOGGER.fine ("Copied " + splitSet.size() + " facet split(s) from previous surface");
+
+  } // inheritSplits
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new facet and sets it up to be added to the facet list and
+   * passed to the facet consumer when it has a node.
+   *
+   * @param index the facet index in the source.
+   *
+   * @return the new facet.
+   */
+  private Facet createFacet (
+    int index
+  ) {
+
+    Facet facet = new Facet (source, index);
+    facetInitList.add (facet);
+    facetMap.put (index, facet);
+    facet.setUpdateConsumer (updateConsumer);
+    facet.setTextureAtlas (atlas);
+    facet.nodeProperty().addListener ((obs, oldVal, newVal) -> {
+      if (oldVal == null && newVal != null) {
+        LOGGER.finest ("Adding new facet " + facet.getIndex() + " to the list");
+        facetInitList.remove (facet);
+        facetList.add (facet);
+        if (facetConsumer != null) facetConsumer.accept (facet);
+        if (batcher != null) batcher.add (facet);
+      } // if
+      if (pendingRoots != null && pendingRoots.remove (facet) && pendingRoots.isEmpty()) {
+        LOGGER.fine ("Initialization of " + facetCount + " facets is complete");
+        initializedProp.set (true);
+        update();
+      } // if
+      if (!splitMap.isEmpty()) checkSplits();
+    });
+    facet.updatingProperty().addListener ((obs, oldVal, newVal) -> {
+      if (!newVal && !splitMap.isEmpty()) checkSplits();
+    });
+    if (progressUpdater != null) {
+      progressUpdater.add (facet);
+      facet.updatingProperty().addListener (progressUpdater);
+    } // if
+
+    return (facet);
+
+  } // createFacet
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Starts splitting a facet into its children.  The children are created
+   * if needed and start updating, but are only shown in place of the facet
+   * when they all have textures.
+   *
+   * @param parent the facet to split.
+   * @param meshLevel the mesh level for the children.
+   * @param textureLevel the texture level for the children.
+   */
+  private void splitFacet (
+    Facet parent,
+    int meshLevel,
+    int textureLevel
+  ) {
+
+    if (splitMap.containsKey (parent) || !parent.isEnabled()) return;
+    int[] childIndices = source.getChildren (parent.getIndex());
+    if (childIndices == null) return;
+
+    var textureFactory = source.getTextureFactory();
+    List<Facet> children = new ArrayList<>();
+    for (int index : childIndices) {
+      if (!textureFactory.hasData (index)) continue;
+      Facet child = facetMap.get (index);
+      if (child == null) {
+        child = createFacet (index);
+        child.setEnabled (false);
+      } // if
+      children.add (child);
+      child.update (meshLevel, textureLevel);
+    } // for
+    splitMap.put (parent, children);
+    LOGGER.finer ("Splitting facet " + parent.getIndex() + " into " + children.size() + " children");
+
+    checkSplits();
+
+  } // splitFacet
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks the facets being split and shows the children in place of
+   * any facet whose children are all ready.
+   */
+  private void checkSplits () {
+
+    for (var entry : splitMap.entrySet()) {
+      Facet parent = entry.getKey();
+      if (splitSet.contains (parent)) continue;
+      boolean ready = true;
+      for (var child : entry.getValue()) {
+        if (child.getNode() == null || child.isUpdating() || !child.hasTexture()) { ready = false; break; }
+      } // for
+      if (ready) {
+        for (var child : entry.getValue()) child.setEnabled (true);
+        retireFacet (parent);
+        splitSet.add (parent);
+        LOGGER.finer ("Completed split of facet " + parent.getIndex());
+      } // if
+    } // for
+
+  } // checkSplits
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Merges the children of a facet back into the facet.  The merge is only
+   * performed if none of the children are split themselves, so that merging
+   * proceeds from the deepest facets upwards.
+   *
+   * @param parent the facet to merge.
+   */
+  private void mergeFacet (
+    Facet parent
+  ) {
+
+    var children = splitMap.get (parent);
+    if (children == null || !splitSet.contains (parent)) return;
+    for (var child : children) {
+      if (splitMap.containsKey (child)) return;
+    } // for
+
+    splitMap.remove (parent);
+    splitSet.remove (parent);
+    parent.setEnabled (true);
+    for (var child : children) retireFacet (child);
+    LOGGER.finer ("Merged children of facet " + parent.getIndex());
+
+  } // mergeFacet
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Retires a facet that has been replaced by other facets covering the
+   * same area.  The facet is hidden, its update is stopped, and its cached
+   * meshes and textures are released.  The facet keeps its node and the
+   * mesh and texture currently shown, so that it can be shown again right
+   * away if the replacement is undone.
+   *
+   * @param facet the facet to retire.
+   */
+  private void retireFacet (
+    Facet facet
+  ) {
+
+    facet.setEnabled (false);
+    facet.stopUpdate();
+    facet.releaseCache();
+
+  } // retireFacet
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates the provisional facet textures from an overview image.  This
+   * method is intended to be run from a background thread.
+   *
+   * @param cancelled the cancelled flag, checked periodically to see if
+   * the overview should be abandoned.
+   *
+   * @return the map of facet index to provisional texture, empty if no
+   * overview is available, or null if cancelled.
+   */
+  private Map<Integer, Image> createProvisionalTextures (
+    BooleanSupplier cancelled
+  ) {
+
+    var textureFactory = source.getTextureFactory();
+    Image overview = null;
+    try { overview = textureFactory.createOverview (cancelled); }
+    catch (RuntimeException e) {
+      LOGGER.log (Level.WARNING, "Failed to create overview for provisional textures", e);
+    } // catch
+
+    if (cancelled.getAsBoolean()) return (null);
+
+    Map<Integer, Image> textureMap = new HashMap<>();
+    if (overview != null) {
+      for (int index : source.getRoots()) {
+        if (!textureFactory.hasData (index)) continue;
+        Image texture = textureFactory.createFromOverview (index, overview);
+        if (texture != null) textureMap.put (index, texture);
+      } // for
+      LOGGER.fine ("Created " + textureMap.size() + " provisional facet textures from overview");
+    } // if
+
+    return (textureMap);
+
+  } // createProvisionalTextures
 
   /////////////////////////////////////////////////////////////////
 
@@ -296,15 +973,20 @@ public class DynamicSurface {
    */
   private class ProgressUpdater implements ChangeListener<Boolean> {
   
-    private Thread progressUpdateThread;
+    private Future<?> progressUpdateTask;
     private boolean newChange;
     private List<Facet> facetList;
 
     /** Initializes the updater with the list of facets to monitor. */
     public ProgressUpdater (List<Facet> facetList) {
-      this.facetList = new ArrayList<> (facetList);
+      this.facetList = new CopyOnWriteArrayList<> (facetList);
     } // ProgressUpdater
 
+    /** Adds a facet to the list of facets to monitor. */
+    public void add (Facet facet) {
+      facetList.add (facet);
+    } // add
+
     @Override
     public void changed (ObservableValue obs, Boolean oldVal, Boolean newVal) {
       newChange = true;
@@ -313,10 +995,9 @@ public class DynamicSurface {
     
     /** Processes any changes that have occurred. */
     private void processChange() {
-      if (newChange && progressUpdateThread == null) {
-        progressUpdateThread = new Thread (() -> updateProgress());
+      if (newChange && progressUpdateTask == null) {
         newChange = false;
-        progressUpdateThread.start();
+        progressUpdateTask = TaskService.getInstance().submit (TaskService.Pool.UPDATE, () -> updateProgress());
       } // if
     } // processChange
       
@@ -347,7 +1028,7 @@ public class DynamicSurface {
       // changes we may have missed while inside this method.
       Platform.runLater (() -> {
         progressProp.setValue (progressValue);
-        progressUpdateThread = null;
+        progressUpdateTask = null;
         if (newChange) processChange();
       });
   
@@ -383,16 +1064,21 @@ public class DynamicSurface {
     // list, we don't do anything, assuming there are facets that are still
     // being created.  However if we have all facets created with a node,
     // we can start an actual update.
-    else if (facetList.size() == source.getFacets()) {
+    else if (facetList.size() >= facetCount) {
 
       // We start the update process only if another is not already running.
       // This allows for us to coalesce multiple camera position updates into
       // one if the process of finding all the facets to update takes a longer
       // time than between camera updates.
-      if (updateThread == null) {
-        updateThread = new Thread (() -> updateInBackground (cameraPositionProp.get()));
-        updateThread.start();
+      if (updateTask == null) {
+        Point3D cameraPos = cameraPositionProp.get();
+        List<Facet> facets = new ArrayList<> (facetList);
+        Set<Facet> splits = new HashSet<> (splitSet);
+        updatePending = false;
+        updateTask = TaskService.getInstance().submit (TaskService.Pool.UPDATE, TaskService.HIGH_PRIORITY,
+          () -> updateInBackground (cameraPos, facets, splits), null);
       } // if
+      else updatePending = true;
       
     } // if
 
@@ -406,46 +1092,106 @@ public class DynamicSurface {
    * if we are still active before performing any updates to facets.
    *
    * @param newCameraPos the new camera position to use.
+   * @param facets the facets to update.
+   * @param splits the facets currently shown as their children.
    */
   private void updateInBackground (
-    Point3D newCameraPos
+    Point3D newCameraPos,
+    List<Facet> facets,
+    Set<Facet> splits
   ) {
 
+    double[] scales = getDistanceScales();
+    boolean screenError = (scales != null);
+    double textureScale = (screenError ? scales[0] : 1);
+    double meshScale = (screenError ? scales[1] : 1);
+    boolean moving = isMoving;
+
     // Look for the minimum distance from the camera to any of the facets,
-    // and use that distance for determining the levels of detail needed.
-    // Currently we have no algorithm for facets to be at different
-    // texture and mesh levels at the same time, so this is the solution for
-    // now.  We sort the facets by distance so that the closest facets get
-    // an update request first.
+    // and use that distance for determining the mesh level needed.  Facets
+    // at different mesh levels would have cracks between them, so all
+    // facets use the same mesh level.  In distance mode the same is true for
+    // texture levels, but in screen error mode each facet has its own
+    // texture level.  We sort the facets by distance so that the closest
+    // facets get an update request first.
     double minDist = Double.MAX_VALUE;
+    double nearestDist = Double.MAX_VALUE;
     Map<Facet, Double> facetUpdateMap = new HashMap<>();
     List<Facet> stopList = new ArrayList<>();
-    for (Facet facet : facetList) {
+    for (Facet facet : facets) {
       if (facet.getNode().isVisible()) {
-        double dist2 = dist2 (newCameraPos, facet.getCenter());
-        if (dist2 < minDist) minDist = dist2;
-        facetUpdateMap.put (facet, dist2);
+        nearestDist = Math.min (nearestDist, boundsDist (newCameraPos, facet.getBounds()));
+        double meshDist;
+        if (screenError) meshDist = boundsDist (newCameraPos, facet.getBounds()) * meshScale;
+        else meshDist = Math.sqrt (dist2 (newCameraPos, facet.getCenter()));
+        if (meshDist < minDist) minDist = meshDist;
+        facetUpdateMap.put (facet, textureDist (facet, newCameraPos, screenError, textureScale));
       } // if
-      else {
+      else if (facet.isEnabled()) {
         stopList.add (facet);
-      } // else
+      } // else if
     } // for
-    minDist = Math.sqrt (minDist);
 
-    int meshLevel = source.getMeshFactory().getLevelForDist (minDist);
-    int textureLevel = source.getTextureFactory().getLevelForDist (minDist);
+    if (nearestDist != Double.MAX_VALUE) closestDist = nearestDist;
 
-    // Go through the list of facets and sort by distance, then create a list
-    // to update.
+    int meshLevel = source.getMeshFactory().getLevelForDist (minDist);
+    var textureFactory = source.getTextureFactory();
+    int minDistTextureLevel = textureFactory.getLevelForDist (minDist);
+    int coarseTextureLevel = textureFactory.getLevels()-1;
+
+    // Go through the list of facets and sort by distance, then create a map
+    // of facets to update with their mesh and texture levels.  While the
+    // camera is moving, the levels would likely be obsolete by the time they
+    // were fetched, so we only use levels that are already cached, or the
+    // coarsest texture for facets that have none.  Otherwise the facet keeps
+    // what it has, and any fetch already in progress for it is left alone.
     List<Entry<Facet, Double>> entryList = new ArrayList<> (facetUpdateMap.entrySet());
     entryList.sort (Entry.comparingByValue());
 
-    List<Facet> updateList = new ArrayList<>();
-    entryList.stream().map (entry -> entry.getKey()).forEach (facet -> {
+    Map<Facet, Integer> textureLevelMap = new HashMap<>();
+    Map<Facet, int[]> updateMap = new LinkedHashMap<>();
+    for (var entry : entryList) {
+      Facet facet = entry.getKey();
+      int textureLevel = (screenError ? textureFactory.getLevelForDist (entry.getValue()) : minDistTextureLevel);
+      textureLevelMap.put (facet, textureLevel);
       if (!facet.matches (meshLevel, textureLevel)) {
-        updateList.add (facet);
+        int newMeshLevel = meshLevel;
+        int newTextureLevel = textureLevel;
+        if (moving) {
+          if (!facet.isCached (meshLevel, -1)) newMeshLevel = -1;
+          if (!facet.isCached (-1, textureLevel)) newTextureLevel = (facet.hasTexture() ? -1 : coarseTextureLevel);
+        } // if
+        if (newMeshLevel != -1 || newTextureLevel != -1) updateMap.put (facet, new int[] {newMeshLevel, newTextureLevel});
       } // if
-    });
+    } // for
+
+    // For a hierarchical source, find the visible facets that are closer
+    // than their split distance and need to be split into children, and the
+    // split facets that are far enough away to have their children merged
+    // back.
+    // Splitting is deferred while the camera is moving, since the children
+    // need new data, but merging only uses data already available.
+    List<Facet> splitList = new ArrayList<>();
+    if (!moving) {
+      for (var entry : facetUpdateMap.entrySet()) {
+        double splitDist = source.getSplitDist (entry.getKey().getIndex());
+        if (entry.getValue() < splitDist) splitList.add (entry.getKey());
+      } // for
+    } // if
+    List<Facet> mergeList = new ArrayList<>();
+    for (Facet facet : splits) {
+      double mergeDist = source.getSplitDist (facet.getIndex()) * MERGE_FACTOR;
+      if (textureDist (facet, newCameraPos, screenError, textureScale) > mergeDist) mergeList.add (facet);
+    } // for
+    if (splitList.size() != 0 || mergeList.size() != 0) {
+      LOGGER.finer (splitList.size() + " facet split(s) and " + mergeList.size() + " merge(s) needed");
+      Platform.runLater (() -> {
+        if (isActive) {
+          for (Facet facet : mergeList) mergeFacet (facet);
+          for (Facet facet : splitList) splitFacet (facet, meshLevel, textureLevelMap.get (facet));
+        } // if
+      });
+    } // if
 
     // Stop updating any facets that are not currently visible.
     Platform.runLater (() -> {
@@ -456,23 +1202,28 @@ public class DynamicSurface {
 
     // If there are some facets to update, submit the list on the JavaFX
     // application thread.
-    if (updateList.size() != 0) {
-      LOGGER.finer ("Updating for facet distance " + minDist + ", (mesh,texture) = " + meshLevel + "," + textureLevel);
-      LOGGER.finer (updateList.size() + " facet update(s) needed");
+    if (updateMap.size() != 0) {
+      if (LOGGER.isLoggable (Level.FINER)) {
+        LOGGER.finer ("Updating for facet distance " + minDist + ", (mesh,texture) = " + meshLevel + "," +
+          (screenError ? "per facet" : Integer.toString (minDistTextureLevel)) + " in " + levelMode + " mode" +
+          (moving ? " while moving" : ""));
+        LOGGER.finer (updateMap.size() + " facet update(s) needed");
+      } // if
       Platform.runLater (() -> {
         if (isActive) {
-          for (Facet facet : updateList) facet.update (meshLevel, textureLevel);
+          updateMap.forEach ((facet, levels) -> facet.update (levels[0], levels[1]));
         } // if
       });
     } // if
     
-    // Check if the camera position has changed during the time we've been
-    // running this method, and launch a new update if so.  Also make sure to
-    // null the update thread so a new one can run.
+    // Check if the camera position has changed or another update was
+    // requested during the time we've been running this method, and launch
+    // a new update if so.  Also make sure to null the update task so a new
+    // one can run.
     Platform.runLater (() -> {
-      updateThread = null;
+      updateTask = null;
       if (isActive) {
-        if (!newCameraPos.equals (cameraPositionProp.get())) update();
+        if (updatePending || !newCameraPos.equals (cameraPositionProp.get())) update();
       } // if
     });
   
@@ -480,6 +1231,208 @@ public class DynamicSurface {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the factors that translate camera distances in the displayed view
+   * to camera distances for the factory levels of detail.  In distance
+   * mode, the distances are used directly with the factories.  In screen
+   * error mode, the distances are scaled to account for the difference
+   * between the view properties that the factory levels were computed for,
+   * and the properties of the view as actually displayed.  The camera
+   * distance at which a level produces a given pixel error is proportional
+   * to vres/(tau*tan(phi/2)), and textures don't depend on tau.
+   *
+   * @return the texture and mesh distance scaling factors, or null if
+   * distances should be used directly.
+   */
+  private double[] getDistanceScales () {
+
+    ViewProperties referenceProps = source.getViewProperties();
+    ViewProperties currentProps = displayProps;
+    double[] scales = null;
+    if (levelMode == LevelMode.SCREEN_ERROR && referenceProps != null && currentProps != null) {
+      double textureScale = (referenceProps.vres / referenceProps.tan_phi_o_2) /
+        (currentProps.vres / currentProps.tan_phi_o_2);
+      double meshScale = textureScale * currentProps.tau / referenceProps.tau;
+      scales = new double[] {textureScale, meshScale};
+    } // if
+
+    return (scales);
+
+  } // getDistanceScales
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Starts prefetching the facet data that will be needed when the camera
+   * reaches a target position, for example the end of an animation.  The
+   * data is fetched at low priority into the facet caches, without changing
+   * what the facets show, so that updates at the target complete quickly.
+   * Any prefetch already in progress is cancelled.  Only facets that have
+   * already been created are prefetched, so facets of a hierarchical source
+   * that would be split at the target are fetched at their current depth.
+   * This method must be called from the JavaFX application thread.
+   *
+   * @param cameraPos the target camera position.
+   * @param frustum the view frustum at the target camera position.
+   *
+   * @since 0.8
+   */
+  public void prefetch (
+    Point3D cameraPos,
+    Frustum frustum
+  ) {
+
+    int generation = ++prefetchGeneration;
+    if (isActive && facetCount != 0 && facetList.size() >= facetCount) {
+      List<Facet> facets = new ArrayList<> (facetList);
+      TaskService.getInstance().submit (TaskService.Pool.PREFETCH, TaskService.LOW_PRIORITY,
+        () -> prefetchInBackground (cameraPos, frustum, facets, generation),
+        () -> generation != prefetchGeneration);
+    } // if
+
+  } // prefetch
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Cancels any prefetch in progress.
+   *
+   * @since 0.8
+   */
+  public void cancelPrefetch () { prefetchGeneration++; }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Prefetches facet data for a target camera position in a background
+   * thread.  The levels are selected in the same way as for an update.
+   *
+   * @param cameraPos the target camera position.
+   * @param frustum the view frustum at the target camera position.
+   * @param facets the facets to consider for prefetching.
+   * @param generation the prefetch generation of this request.
+   */
+  private void prefetchInBackground (
+    Point3D cameraPos,
+    Frustum frustum,
+    List<Facet> facets,
+    int generation
+  ) {
+
+    BooleanSupplier cancelled = () -> (generation != prefetchGeneration || !isActive);
+    if (cancelled.getAsBoolean()) return;
+
+    double[] scales = getDistanceScales();
+    boolean screenError = (scales != null);
+    double textureScale = (screenError ? scales[0] : 1);
+    double meshScale = (screenError ? scales[1] : 1);
+
+    // Find the facets that will be in view at the target, and the minimum
+    // distance to them for the mesh level.  The facet bounds are tested
+    // against the frustum in one batch.
+    List<Facet> candidates = new ArrayList<>();
+    BoundsArray boxes = new BoundsArray (facets.size());
+    for (Facet facet : facets) {
+      if (facet.isEnabled() && facet.getBounds() != null) {
+        candidates.add (facet);
+        boxes.add (facet.getBounds());
+      } // if
+    } // for
+    boolean[] inView = new boolean[boxes.size()];
+    frustum.intersects (boxes, inView);
+
+    double minDist = Double.MAX_VALUE;
+    Map<Facet, Double> facetDistMap = new HashMap<>();
+    for (int i = 0; i < inView.length; i++) {
+      Facet facet = candidates.get (i);
+      Bounds bounds = facet.getBounds();
+      if (inView[i]) {
+        double meshDist;
+        if (screenError) meshDist = boundsDist (cameraPos, bounds) * meshScale;
+        else meshDist = Math.sqrt (dist2 (cameraPos, facet.getCenter()));
+        if (meshDist < minDist) minDist = meshDist;
+        facetDistMap.put (facet, textureDist (facet, cameraPos, screenError, textureScale));
+      } // if
+    } // for
+    if (facetDistMap.isEmpty()) return;
+
+    int meshLevel = source.getMeshFactory().getLevelForDist (minDist);
+    var textureFactory = source.getTextureFactory();
+    int minDistTextureLevel = textureFactory.getLevelForDist (minDist);
+
+    // Fetch the closest facets first, since they're the most noticeable
+    // when the camera arrives.
+    List<Entry<Facet, Double>> entryList = new ArrayList<> (facetDistMap.entrySet());
+    entryList.sort (Entry.comparingByValue());
+    LOGGER.finer ("Prefetching " + entryList.size() + " facet(s) at mesh level " + meshLevel);
+    for (var entry : entryList) {
+      if (cancelled.getAsBoolean()) break;
+      int textureLevel = (screenError ? textureFactory.getLevelForDist (entry.getValue()) : minDistTextureLevel);
+      entry.getKey().prefetch (meshLevel, textureLevel, cancelled);
+    } // for
+
+  } // prefetchInBackground
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Computes the distance used to select the texture level and to split
+   * and merge a facet.
+   *
+   * @param facet the facet to compute the distance for.
+   * @param cameraPos the camera position.
+   * @param screenError the screen error mode flag.
+   * @param textureScale the scaling factor from camera distance in the
+   * current view to camera distance in the reference view.
+   *
+   * @return the camera distance to the facet center in distance mode, or
+   * the scaled distance to the nearest point of the facet bounds in screen
+   * error mode.
+   */
+  private double textureDist (
+    Facet facet,
+    Point3D cameraPos,
+    boolean screenError,
+    double textureScale
+  ) {
+
+    double dist;
+    if (!screenError) dist = Math.sqrt (dist2 (cameraPos, facet.getCenter()));
+    else {
+
+      // A facet seen obliquely is foreshortened in one direction only, so
+      // we reduce its resolution requirement by the geometric mean of the
+      // foreshortened and full scales.  The facet normal is approximated by
+      // the direction of its center from the world origin.
+      Point3D center = facet.getCenter();
+      double cos = 1;
+      if (center.magnitude() != 0) {
+        Point3D normal = center.normalize();
+        Point3D view = cameraPos.subtract (center).normalize();
+        cos = Math.max (normal.dotProduct (view), MIN_OBLIQUITY);
+      } // if
+      dist = boundsDist (cameraPos, facet.getBounds()) * textureScale / Math.sqrt (cos);
+
+    } // else
+
+    return (dist);
+
+  } // textureDist
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Computes the distance from a point to the nearest point of a bounds. */
+  private double boundsDist (Point3D p, Bounds bounds) {
+
+    double dx = Math.max (Math.max (bounds.getMinX() - p.getX(), 0), p.getX() - bounds.getMaxX());
+    double dy = Math.max (Math.max (bounds.getMinY() - p.getY(), 0), p.getY() - bounds.getMaxY());
+    double dz = Math.max (Math.max (bounds.getMinZ() - p.getZ(), 0), p.getZ() - bounds.getMaxZ());
+    return (Math.sqrt (dx*dx + dy*dy + dz*dz));
+
+  } // boundsDist
+
+  /////////////////////////////////////////////////////////////////
+
   /** Computes the distance^2 between points. */
   private double dist2 (Point3D a, Point3D b) {
   
@@ -9,13 +9,19 @@ package noaa.coastwatch.vertigo;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Collection;
  
 import java.util.function.Consumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 import javafx.geometry.Point3D;
 import javafx.geometry.Bounds;
@@ -29,6 +35,7 @@ import javafx.scene.image.Image;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.paint.Color;
 
+import javafx.application.Platform;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
@@ -71,6 +78,9 @@ public class Facet {
   
   /** The current texture image that this facet is using, or null if not initialized. */
   private Image activeTexture;
+
+  /** The provisional texture to show until a texture level is available, or null. */
+  private Image provisionalTexture;
   
   /** The node for this facet. */
   private ObjectProperty<Node> nodeProp = new SimpleObjectProperty<> (this, "node");
@@ -86,40 +96,39 @@ public class Facet {
   /** The center point of the facet mesh. */
   private Point3D center;
 
+  /** The bounds of the facet mesh. */
+  private Bounds bounds;
+
   /** The factory used to generate responses to facet update requests. */
   private FacetUpdateResponseFactory responseFactory;
 
-  /** The execution service to use for updating facets in the background. */
-  private static ExecutorService executor;
-
   /** The consumer called when a facet has an update to the scene graph. */
   private Consumer<Runnable> updateConsumer;
   
   /** The updating property that reflects the state of updating. */
   private BooleanProperty updatingProp;
-  
-  /////////////////////////////////////////////////////////////////
 
-  static {
-  
-    // Set up an executor that spans all facets and uses half of the available
-    // processors.  We want to make sure that we don't starve the application
-    // thread.
+  /** The enabled flag, false if the facet node should never be shown. */
+  private volatile boolean enabled = true;
 
-    int maxThreads = 4;
+  /** The view shown flag, false if the facet mesh is drawn by something else. */
+  private boolean viewShown = true;
 
-//    int maxThreads = Runtime.getRuntime().availableProcessors()-3;
-//    if (maxThreads < 1) maxThreads = 1;
-//    else if (maxThreads > 4) maxThreads = 4;
+  /** The texture atlas for facet textures, or null to use textures directly. */
+  private TextureAtlas atlas;
 
-//    int maxThreads = Math.max (1, Runtime.getRuntime().availableProcessors()-3);
-//    int maxThreads = 16;
+  /** The atlas region used by the current view, or null for none. */
+  private TextureAtlas.Region atlasRegion;
 
-    LOGGER.fine ("Using " + maxThreads + " background threads for facet updates");
-    executor = Executors.newFixedThreadPool (maxThreads, DaemonThreadFactory.getInstance());
+  /** The view using the atlas region. */
+  private MeshView atlasView;
 
-  } // static
+  /** The original texture copied into the atlas region. */
+  private Image atlasTexture;
 
+  /** The original mesh of the view using the atlas region. */
+  private TriangleMesh atlasMesh;
+  
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -172,9 +181,15 @@ public class Facet {
     // and then completes the update on the application thread by switching
     // the single child in a group node to the new mesh and texture.
     responseFactory = new FacetUpdateResponseFactory();
-    responseFactory.setExecutor (executor);
+    responseFactory.setExecutor (TaskService.getInstance().getIOExecutor (TaskService.Pool.FACET, TaskService.NORMAL_PRIORITY));
+
+    // If the mesh was changed directly while the response was being
+    // created, the response is for the old mesh.  In that case we request
+    // the texture again for the new mesh, which by now is in the cache.
     responseFactory.setOnSucceeded (event -> {
-      completeUpdate (responseFactory.getValue());
+      FacetUpdateResponse response = responseFactory.getValue();
+      if (response.request.activeMeshLevel == meshLevel || activeMesh == null) completeUpdate (response);
+      else if (response.request.newTextureLevel != -1) update (meshLevel, response.request.newTextureLevel);
     });
 
     // Create the updating property that monitors the response factory for
@@ -226,6 +241,9 @@ public class Facet {
     public int activeTextureLevel, newTextureLevel;
     public TriangleMesh activeMesh;
     public Image activeTexture;
+
+    /** The texture that the active mesh texture points are set for, or null. */
+    public Image meshTexture;
   
     /**
      * Checks if a request is asking for the same new mesh and texture levels
@@ -290,6 +308,111 @@ public class Facet {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * The <code>LevelCache</code> class holds the mesh or texture levels
+   * cached for a facet.  The cache is filled both by updates and by
+   * prefetching from other threads.  Only one thread creates a given level
+   * at a time, and other threads that need the same level wait for it
+   * rather than creating it again.  To limit memory use, only the level
+   * most recently added, the levels next to it, and the level currently
+   * shown by the facet are kept.
+   */
+  private static class LevelCache<T> {
+
+    /** The time in milliseconds between cancellation checks while waiting for a level. */
+    private static final long FETCH_WAIT = 100;
+
+    /** The map of level to cached value. */
+    private Map<Integer, T> cache = new ConcurrentHashMap<>();
+
+    /** The map of level to future for levels being created. */
+    private Map<Integer, CompletableFuture<T>> fetchMap = new ConcurrentHashMap<>();
+
+    /** The supplier of the level currently shown, which is never dropped. */
+    private IntSupplier activeLevel;
+
+    /** Creates a new cache that keeps the specified active level. */
+    public LevelCache (IntSupplier activeLevel) { this.activeLevel = activeLevel; }
+
+    /** Determines if a level is in the cache. */
+    public boolean contains (int level) { return (cache.containsKey (level)); }
+
+    /** Gets the cached values. */
+    public Collection<T> values () { return (cache.values()); }
+
+    /** Adds all the levels from another cache. */
+    public void putAll (LevelCache<T> other) { cache.putAll (other.cache); }
+
+    /** Removes all the cached levels. */
+    public void clear () { cache.clear(); }
+
+    /** Adds a level and drops the levels that are no longer needed. */
+    private void put (int level, T value) {
+      cache.put (level, value);
+      int active = activeLevel.getAsInt();
+      cache.keySet().removeIf (key -> Math.abs (key - level) > 1 && key != active);
+    } // put
+
+    /**
+     * Gets a level from the cache, or creates and caches it.  If another
+     * thread is creating the level, this thread waits for it.
+     */
+    public T get (int level, Supplier<T> creator, BooleanSupplier cancelled) {
+      T value = cache.get (level);
+      while (value == null && !cancelled.getAsBoolean()) {
+        var fetch = new CompletableFuture<T>();
+        var existing = fetchMap.putIfAbsent (level, fetch);
+        if (existing == null) {
+          try {
+            value = creator.get();
+            if (value != null) put (level, value);
+          } // try
+          finally {
+            fetchMap.remove (level, fetch);
+            fetch.complete (value);
+          } // finally
+          break;
+        } // if
+        else {
+          try { value = existing.get (FETCH_WAIT, TimeUnit.MILLISECONDS); }
+          catch (TimeoutException e) { }
+          catch (InterruptedException e) { Thread.currentThread().interrupt(); break; }
+          catch (ExecutionException e) { break; }
+        } // else
+      } // while
+      return (value);
+    } // get
+
+    /**
+     * Gets a level from the cache, or starts creating it asynchronously and
+     * caches it when complete.  If another thread is creating the level,
+     * the returned future completes when it does.  Cancelling the returned
+     * future only cancels the creation if it was started by this call.
+     */
+    public CompletableFuture<T> getAsync (int level, Supplier<CompletableFuture<T>> creator) {
+      T value = cache.get (level);
+      CompletableFuture<T> future;
+      if (value != null) future = CompletableFuture.completedFuture (value);
+      else {
+        var fetch = new CompletableFuture<T>();
+        var existing = fetchMap.putIfAbsent (level, fetch);
+        if (existing != null) future = existing.thenApply (result -> result);
+        else {
+          future = creator.get();
+          future.whenComplete ((result, e) -> {
+            if (result != null) put (level, result);
+            fetchMap.remove (level, fetch);
+            fetch.complete (result);
+          });
+        } // else
+      } // else
+      return (future);
+    } // getAsync
+
+  } // LevelCache class
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * The <code>FacetUpdateResponseFactory</code> runs a service that takes
    * a request and fetches the data in a background thread to create
@@ -301,10 +424,10 @@ public class Facet {
     public FacetUpdateRequest request;
 
     /** The cache of texture level to image for this facet. */
-    private Map<Integer, Image> textureCache = new HashMap<>();
+    private LevelCache<Image> textureCache = new LevelCache<> (() -> textureLevel);
 
-    /** The cache of texture level to mesh for this facet. */
-    private Map<Integer, TriangleMesh> meshCache = new HashMap<>();
+    /** The cache of mesh level to mesh for this facet. */
+    private LevelCache<TriangleMesh> meshCache = new LevelCache<> (() -> meshLevel);
 
     /** Computes the texture cache memory used by this factory. */
     public long cacheMemory () {
@@ -316,91 +439,153 @@ public class Facet {
       return (memory);
     } // cacheMemory
 
+    /** Gets a mesh level from the cache, or creates and caches it. */
+    public TriangleMesh getMesh (int level, BooleanSupplier cancelled) {
+      return (meshCache.get (level, () -> source.getMeshFactory().create (index, level, cancelled), cancelled));
+    } // getMesh
+
+    /** Gets a texture level from the cache, or creates and caches it. */
+    public Image getTexture (int level, BooleanSupplier cancelled) {
+      return (textureCache.get (level, () -> {
+        double aspect = source.getMeshFactory().getAspectRatio (index);
+        return (source.getTextureFactory().create (index, aspect, level, cancelled));
+      }, cancelled));
+    } // getTexture
+
+    /**
+     * Gets a texture level from the cache, or starts creating it
+     * asynchronously and caches it when complete.
+     */
+    public CompletableFuture<Image> getTextureAsync (int level) {
+      return (textureCache.getAsync (level, () -> {
+        double aspect = source.getMeshFactory().getAspectRatio (index);
+        return (source.getTextureFactory().createAsync (index, aspect, level));
+      }));
+    } // getTextureAsync
+
+    /** Determines if a mesh level is in the cache. */
+    public boolean hasMesh (int level) { return (meshCache.contains (level)); }
+
+    /** Determines if a texture level is in the cache. */
+    public boolean hasTexture (int level) { return (textureCache.contains (level)); }
+
+    /**
+     * Creates a response to an update request by retrieving the mesh and
+     * texture and creating a view of them.
+     *
+     * @param request the request to create a response for.
+     * @param cancelled the cancelled flag, checked periodically to see if
+     * the response should be abandoned.
+     *
+     * @return the response, or null if cancelled.
+     */
+    public FacetUpdateResponse createResponse (
+      FacetUpdateRequest request,
+      BooleanSupplier cancelled
+    ) {
+
+      // Either retrieve the mesh or use the active mesh.  Note that if
+      // there is no current mesh, and the mesh is not requested here,
+      // that's an error.
+      TriangleMesh mesh;
+      if (request.newMeshLevel != -1) {
+        mesh = getMesh (request.newMeshLevel, cancelled);
+        if (mesh != null) mesh = meshCopy (mesh);
+      } // if
+      else {
+        mesh = request.activeMesh;
+        if (mesh == null)
+          throw new RuntimeException ("No active mesh to use in response for facet " + index);
+      } // else
+
+      // After that bit of work, check if we are cancelled.
+      if (cancelled.getAsBoolean()) return (null);
+
+      // Either retrieve the texture or use the active texture.  Note that
+      // image data can be used in multiple places with no issue.
+      Image texture;
+      if (request.newTextureLevel != -1) {
+        texture = getTexture (request.newTextureLevel, cancelled);
+      } // if
+      else
+        texture = request.activeTexture;
+
+      // After that bit of work, check if we are cancelled.
+      if (cancelled.getAsBoolean()) return (null);
+
+      // If only the texture is changing and the new texture is the same
+      // size as the active one, the active mesh texture points are
+      // already correct.  We use the active mesh as is, so that the mesh
+      // data already on the graphics card is shared.  Otherwise the
+      // active mesh is copied before changing its texture points.
+      Image meshTexture = request.meshTexture;
+      boolean sameTexturePoints = (request.newMeshLevel == -1 &&
+        texture != null && meshTexture != null &&
+        texture.getWidth() == meshTexture.getWidth() &&
+        texture.getHeight() == meshTexture.getHeight());
+      if (request.newMeshLevel == -1 && !sameTexturePoints) mesh = meshCopy (mesh);
+
+      // If there is a texture, the mesh needs to have its texture
+      // points set up to use it correctly.
+      if (texture != null && !sameTexturePoints) {
+        int textureWidth = (int) texture.getWidth();
+        int textureHeight = (int) texture.getHeight();
+        int textureMeshLevel = (request.newMeshLevel != -1 ?
+          request.newMeshLevel : request.activeMeshLevel);
+        source.getMeshFactory().setTexturePoints (mesh, index,
+          textureMeshLevel, textureWidth, textureHeight);
+      } // if
+
+      // After that bit of work, check if we are cancelled.
+      if (cancelled.getAsBoolean()) return (null);
+
+      // Now create the mesh view using the mesh and either a texture
+      // or solid colour.
+      MeshView view = createView (mesh, texture);
+      
+      // Finally, create the response and populate it with the newly created
+      // view.
+      FacetUpdateResponse response = new FacetUpdateResponse();
+      response.request = request;
+      response.mesh = mesh;
+      response.texture = texture;
+      response.view = view;
+
+      return (response);
+
+    } // createResponse
+
     @Override
     protected Task<FacetUpdateResponse> createTask() {
       final FacetUpdateRequest taskRequest = request;
       return (new Task<FacetUpdateResponse>() {
         protected FacetUpdateResponse call () throws Exception {
-
-          // Either retrieve the mesh or copy the values over from the
-          // active mesh.  Note that if there is no current mesh,
-          // and the mesh is not requested here, that's an error.
-          TriangleMesh mesh;
-          if (taskRequest.newMeshLevel != -1) {
-            mesh = meshCache.get (taskRequest.newMeshLevel);
-            if (mesh == null) {
-              mesh = source.getMeshFactory().create (index, taskRequest.newMeshLevel, this::isCancelled);
-              if (mesh != null) meshCache.put (taskRequest.newMeshLevel, mesh);
-            } // if
-            if (mesh != null) mesh = meshCopy (mesh);
-          } // if
-          else {
-            TriangleMesh oldMesh = taskRequest.activeMesh;
-            if (oldMesh == null)
-              throw new RuntimeException ("No active mesh to use in response for facet " + index);
-            mesh = meshCopy (oldMesh);
-          } // else
-
-          // After that bit of work, check if we are cancelled.
-          if (isCancelled()) return (null);
-
-          // Either retrieve the texture or use the active texture.  Note that
-          // image data can be used in multiple places with no issue.  If there
-          // is a texture, the mesh needs to have its texture points set up
-          // to use it correctly.
-          Image texture;
-          if (taskRequest.newTextureLevel != -1) {
-            texture = textureCache.get (taskRequest.newTextureLevel);
-            if (texture == null) {
-              double aspect = source.getMeshFactory().getAspectRatio (index);
-              texture = source.getTextureFactory().create (index, aspect, taskRequest.newTextureLevel, this::isCancelled);
-              if (texture != null) textureCache.put (taskRequest.newTextureLevel, texture);
-            } // if
-          } // if
-          else
-            texture = taskRequest.activeTexture;
-
-          // After that bit of work, check if we are cancelled.
-          if (isCancelled()) return (null);
-
-          if (texture != null) {
-            int textureWidth = (int) texture.getWidth();
-            int textureHeight = (int) texture.getHeight();
-            int textureMeshLevel = (taskRequest.newMeshLevel != -1 ?
-              taskRequest.newMeshLevel : taskRequest.activeMeshLevel);
-            source.getMeshFactory().setTexturePoints (mesh, index,
-              textureMeshLevel, textureWidth, textureHeight);
-          } // if
-
-          // After that bit of work, check if we are cancelled.
-          if (isCancelled()) return (null);
-
-          // Now create the mesh view using the mesh and either a texture
-          // or solid colour.  In FINER logging mode, draw lines for
-          // the mesh.
-          MeshView view = new MeshView (mesh);
-          if (LOGGER.isLoggable (Level.FINER)) view.setDrawMode (DrawMode.LINE);
-          PhongMaterial material = new PhongMaterial();
-          if (texture == null)
-            material.setDiffuseColor (colorProp.get());
-          else
-            material.setDiffuseMap (texture);
-          view.setMaterial (material);
-          
-          // Finally, create the response and populate it with the newly created
-          // view.
-          FacetUpdateResponse response = new FacetUpdateResponse();
-          response.request = taskRequest;
-          response.mesh = mesh;
-          response.texture = texture;
-          response.view = view;
-
-          return (response);
-
+          return (createResponse (taskRequest, this::isCancelled));
         } // call
       });
     } // createTask
-  
+
+    @Override
+    protected void executeTask (Task<FacetUpdateResponse> task) {
+
+      // If a new texture is needed, we read it asynchronously first and only
+      // then queue the task, which finds the texture in the cache.  That way
+      // no pool thread sits waiting on the texture data I/O.  If the
+      // texture read fails, the task runs anyway and tries again directly.
+      int level = request.newTextureLevel;
+      if (level == -1 || hasTexture (level)) super.executeTask (task);
+      else {
+        var textureFuture = getTextureAsync (level);
+        task.stateProperty().addListener ((obs, oldVal, newVal) -> {
+          if (newVal == Worker.State.CANCELLED) textureFuture.cancel (false);
+        });
+        textureFuture.whenComplete ((image, e) -> Platform.runLater (() -> {
+          if (!task.isDone()) super.executeTask (task);
+        }));
+      } // else
+
+    } // executeTask
+
     @Override
     protected void failed() {
       LOGGER.log (Level.WARNING, "Update failed for facet " + index, getException());
@@ -410,6 +595,85 @@ public class Facet {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Creates a view of a mesh with either a texture or solid colour.  In
+   * FINER logging mode, the view draws lines for the mesh.
+   *
+   * @param mesh the mesh for the view.
+   * @param texture the texture for the view, or null to use the facet
+   * colour.
+   *
+   * @return the new view.
+   */
+  private MeshView createView (
+    TriangleMesh mesh,
+    Image texture
+  ) {
+
+    MeshView view = new MeshView (mesh);
+    if (LOGGER.isLoggable (Level.FINER)) view.setDrawMode (DrawMode.LINE);
+    PhongMaterial material = new PhongMaterial();
+    if (texture == null)
+      material.setDiffuseColor (colorProp.get());
+    else
+      material.setDiffuseMap (texture);
+    view.setMaterial (material);
+
+    return (view);
+
+  } // createView
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Starts this facet from the mesh and texture currently shown by a facet
+   * of another surface with the same geometry, typically the same facet at
+   * a different time step.  The facet is given a node right away that
+   * shares the other facet's mesh data, and the other facet's texture is
+   * shown until an update replaces it.  The other facet's cached meshes
+   * are also shared, so that mesh level changes don't need to recreate
+   * them.  This method must be called from the JavaFX application thread
+   * before the facet has been updated.
+   *
+   * @param previous the facet to start from, with the same index in a
+   * source with the same geometry.
+   *
+   * @return true if the facet was started from the other facet, or false
+   * if this facet already has a node or the other facet has no mesh.
+   *
+   * @since 0.8
+   *
+   * @see FacetDataSource#hasSameGeometry
+   */
+  public boolean inherit (
+    Facet previous
+  ) {
+
+    if (nodeProp.get() != null || isUpdating() || previous.activeMesh == null) return (false);
+
+    responseFactory.meshCache.putAll (previous.responseFactory.meshCache);
+
+    // We complete the update as if it had been requested for the mesh level
+    // of the previous facet.  The texture level is left unset so that the
+    // next update fetches a texture from our own source.
+    FacetUpdateRequest request = new FacetUpdateRequest();
+    request.activeMeshLevel = -1;
+    request.newMeshLevel = previous.meshLevel;
+    request.activeTextureLevel = -1;
+    request.newTextureLevel = -1;
+    FacetUpdateResponse response = new FacetUpdateResponse();
+    response.request = request;
+    response.mesh = previous.activeMesh;
+    response.texture = previous.activeTexture;
+    response.view = createView (response.mesh, response.texture);
+    completeUpdate (response);
+
+    return (true);
+
+  } // inherit
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Starts an update of the mesh and texture in this facet.  The update is
    * performed in a background thread and this method returns immediately.
@@ -437,14 +701,128 @@ public class Facet {
       request.activeTextureLevel = this.textureLevel;
       request.newTextureLevel = (updateTexture ? textureLevel : -1);
       request.activeMesh = activeMesh;
-      request.activeTexture = activeTexture;
-      requestUpdate (request);
+      request.activeTexture = (activeTexture != null ? activeTexture : provisionalTexture);
+      request.meshTexture = activeTexture;
+
+      // If only the mesh is changing and it's in the cache, while a texture
+      // is being fetched, we apply the mesh right away rather than restart
+      // the update and lose the texture fetch.  This happens when the camera
+      // is moving and the texture level isn't changed.
+      boolean fetchingTexture = (isUpdating() && responseFactory.request.newTextureLevel != -1);
+      if (!updateTexture && fetchingTexture && activeMesh != null && responseFactory.hasMesh (meshLevel)) {
+        completeUpdate (responseFactory.createResponse (request, () -> false));
+        LOGGER.finer ("Applied cached mesh for facet " + index);
+      } // if
+      else requestUpdate (request);
     } // if
 
   } // update
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Fetches a mesh and texture level into the cache for this facet without
+   * changing what the facet shows, so that a later update to those levels
+   * completes quickly.  This method performs the fetch in the calling thread,
+   * and is intended to be called from a background thread.
+   *
+   * @param meshLevel the mesh level to fetch or -1 to not fetch a mesh.
+   * @param textureLevel the texture level to fetch or -1 to not fetch a
+   * texture.
+   * @param cancelled the cancelled flag, checked periodically to see if
+   * the fetch should be abandoned.
+   *
+   * @since 0.8
+   */
+  public void prefetch (
+    int meshLevel,
+    int textureLevel,
+    BooleanSupplier cancelled
+  ) {
+
+    try {
+      if (meshLevel != -1 && !cancelled.getAsBoolean()) responseFactory.getMesh (meshLevel, cancelled);
+      if (textureLevel != -1 && !cancelled.getAsBoolean()) responseFactory.getTexture (textureLevel, cancelled);
+    } // try
+    catch (RuntimeException e) {
+      LOGGER.log (Level.FINE, "Prefetch failed for facet " + index, e);
+    } // catch
+
+  } // prefetch
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if a mesh and texture level are available in the cache for
+   * this facet.
+   *
+   * @param meshLevel the mesh level to check or -1 to not check a mesh.
+   * @param textureLevel the texture level to check or -1 to not check a
+   * texture.
+   *
+   * @return true if the levels are cached and an update to them would not
+   * need to access the data source, or false if not.
+   *
+   * @since 0.8
+   */
+  public boolean isCached (
+    int meshLevel,
+    int textureLevel
+  ) {
+
+    return ((meshLevel == -1 || responseFactory.hasMesh (meshLevel)) &&
+      (textureLevel == -1 || responseFactory.hasTexture (textureLevel)));
+
+  } // isCached
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the provisional texture for this facet.  The provisional texture
+   * is shown in place of the plain facet color until the first texture level
+   * is available from an update.  Once a texture level has been used by the
+   * facet, the provisional texture is ignored.
+   *
+   * @param texture the provisional texture, typically a low resolution
+   * texture extracted from an overview image.
+   *
+   * @since 0.8
+   */
+  public void setProvisionalTexture (
+    Image texture
+  ) {
+
+    if (textureLevel == -1) {
+      provisionalTexture = texture;
+      updateProvisional();
+    } // if
+
+  } // setProvisionalTexture
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Starts an update to show the provisional texture if the facet has a
+   * mesh but no texture and is not currently updating.
+   */
+  private void updateProvisional () {
+
+    if (provisionalTexture != null && activeMesh != null && activeTexture == null &&
+      textureLevel == -1 && !isUpdating()) {
+      FacetUpdateRequest request = new FacetUpdateRequest();
+      request.activeMeshLevel = meshLevel;
+      request.newMeshLevel = -1;
+      request.activeTextureLevel = textureLevel;
+      request.newTextureLevel = -1;
+      request.activeMesh = activeMesh;
+      request.activeTexture = provisionalTexture;
+      requestUpdate (request);
+    } // if
+
+  } // updateProvisional
+
+  /////////////////////////////////////////////////////////////////
+
   /** Stops any facet mesh or texture update in progress. */
   public void stopUpdate () {
 
@@ -461,6 +839,23 @@ public class Facet {
 
   } // stopUpdate
 
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Releases the meshes and textures cached by this facet.  The mesh and
+   * texture currently shown are kept.  This is used when the facet is
+   * replaced by other facets that cover the same area, so that hidden
+   * facets don't hold on to memory.
+   *
+   * @since 0.8
+   */
+  public void releaseCache () {
+
+    responseFactory.meshCache.clear();
+    responseFactory.textureCache.clear();
+
+  } // releaseCache
+
   /////////////////////////////////////////////////////////////////
   
   /**
@@ -517,35 +912,151 @@ public class Facet {
     if (response.request.newTextureLevel != -1) textureLevel = response.request.newTextureLevel;
     activeTexture = response.texture;
 
+    // Once a texture level is shown, the provisional texture is no longer
+    // needed.
+    if (textureLevel != -1) provisionalTexture = null;
+
     // Secondly, give the node a value if it doesn't have one, or replace
     // the value if it does.  We also set the center if needed, since this
     // may be the first time the center of the facet is known.  Note that
     // when replacing a value, if there's a consumer for scene graph updates
     // available, we use it.  This can help when there are many scene graph
     // updates to perform.
+    response.view.setVisible (viewShown);
     if (nodeProp.get() == null) {
-      Bounds bounds = response.view.getBoundsInLocal();
+      bounds = response.view.getBoundsInLocal();
       center = new Point3D (bounds.getCenterX(), bounds.getCenterY(), bounds.getCenterZ());
       Group group = new Group();
+      useAtlas (response.view, response.texture);
       group.getChildren().add (response.view);
+      group.setDisable (!enabled);
       nodeProp.set (group);
     } // if
     else {
+      // If only the texture changed, we keep the current view and swap
+      // its texture, since the view already uses the same mesh.
       Group group = (Group) nodeProp.get();
+      MeshView currentView = (MeshView) group.getChildren().get (0);
+      Runnable change;
+      if (currentView.getMesh() == response.mesh && response.texture != null && atlasRegion == null) {
+        change = () -> ((PhongMaterial) currentView.getMaterial()).setDiffuseMap (response.texture);
+      } // if
+      else {
+        change = () -> {
+          useAtlas (response.view, response.texture);
+          group.getChildren().set (0, response.view);
+        };
+      } // else
       if (updateConsumer == null) {
-        group.getChildren().set (0, response.view);
+        change.run();
         LOGGER.finer ("Completed direct scene graph update for facet " + index);
       } // if
       else {
-        updateConsumer.accept (() -> group.getChildren().set (0, response.view));
+        updateConsumer.accept (new SceneGraphChange (change, center));
         LOGGER.finer ("Submitted scene graph update for facet " + index);
       } // else
     } // else
 
+    // If a provisional texture arrived while the mesh was being created,
+    // we can show it now.
+    updateProvisional();
+
   } // completeUpdate
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Sets the texture atlas for this facet.  When set, the facet texture is
+   * copied into a region of the atlas and the facet view draws from the
+   * atlas page.  The region is released when the facet changes texture, is
+   * disabled, or the atlas is unset.  This method must be called from the
+   * JavaFX application thread.
+   *
+   * @param atlas the texture atlas, or null to draw textures directly.
+   *
+   * @since 0.8
+   */
+  public void setTextureAtlas (
+    TextureAtlas atlas
+  ) {
+
+    if (this.atlas != atlas) {
+      releaseAtlas();
+      this.atlas = atlas;
+      useCurrentAtlas();
+    } // if
+
+  } // setTextureAtlas
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Moves the texture of the current view into the atlas if possible. */
+  private void useCurrentAtlas () {
+
+    Group group = (Group) nodeProp.get();
+    if (group != null && atlas != null) {
+      MeshView view = (MeshView) group.getChildren().get (0);
+      useAtlas (view, ((PhongMaterial) view.getMaterial()).getDiffuseMap());
+    } // if
+
+  } // useCurrentAtlas
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Moves the texture of a view about to be shown into the atlas, and
+   * releases any atlas region used by the previous view.  The view mesh is
+   * copied before its texture coordinates are transformed, so that the
+   * active mesh keeps coordinates for the original texture and can be
+   * restored to the view when the region is released.
+   *
+   * @param view the view to show.
+   * @param texture the view texture, or null if the view has no texture.
+   */
+  private void useAtlas (
+    MeshView view,
+    Image texture
+  ) {
+
+    TriangleMesh original = (TriangleMesh) view.getMesh();
+    TextureAtlas.Region region = null;
+    if (atlas != null && texture != null && enabled) {
+      region = (texture == atlasTexture ? atlasRegion : atlas.allocate (texture));
+      if (region != null) {
+        TriangleMesh mesh = meshCopy (original);
+        region.toAtlas (mesh.getTexCoords());
+        view.setMesh (mesh);
+        ((PhongMaterial) view.getMaterial()).setDiffuseMap (region.getPage());
+      } // if
+    } // if
+
+    if (atlasRegion != null && atlasRegion != region) atlasRegion.release();
+    atlasRegion = region;
+    atlasView = (region != null ? view : null);
+    atlasTexture = (region != null ? texture : null);
+    atlasMesh = (region != null ? original : null);
+
+  } // useAtlas
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Returns the current view to its original texture and releases its atlas region. */
+  private void releaseAtlas () {
+
+    if (atlasRegion != null) {
+      atlasView.setMesh (atlasMesh);
+      ((PhongMaterial) atlasView.getMaterial()).setDiffuseMap (atlasTexture);
+      atlasRegion.release();
+      atlasRegion = null;
+      atlasView = null;
+      atlasTexture = null;
+      atlasMesh = null;
+    } // if
+
+  } // releaseAtlas
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Determines if this facet matches a given mesh and texture level.
    *
@@ -566,6 +1077,119 @@ public class Facet {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Determines if this facet has a texture level in use.
+   *
+   * @return true if a texture level has been applied to the facet, or false
+   * if the facet shows either a plain color or a provisional texture.
+   *
+   * @since 0.8
+   */
+  public boolean hasTexture() { return (textureLevel != -1); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the enabled flag, true by default.  A disabled facet keeps its
+   * node in the scene graph, but the node is marked disabled and hidden so
+   * that the world model never shows it.  This is used when facets are
+   * replaced by other facets that cover the same area.  When re-enabled,
+   * the world model shows the node if it's in view.
+   *
+   * @param flag the new enabled flag.
+   *
+   * @since 0.8
+   */
+  public void setEnabled (
+    boolean flag
+  ) {
+
+    enabled = flag;
+    Node node = nodeProp.get();
+    if (node != null) {
+      node.setDisable (!flag);
+      if (!flag) node.setVisible (false);
+    } // if
+
+    // A disabled facet isn't drawn, so its atlas region can be used by
+    // other facets until it's enabled again.
+    if (!flag) releaseAtlas();
+    else if (atlasRegion == null) useCurrentAtlas();
+
+  } // setEnabled
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the enabled flag.
+   *
+   * @return the enabled flag, true if the facet may be shown or false if not.
+   *
+   * @since 0.8
+   *
+   * @see #setEnabled
+   */
+  public boolean isEnabled() { return (enabled); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the view shown flag, true by default.  When false, the facet node
+   * stays in the scene graph and its visibility is still managed as usual,
+   * but the mesh view inside it is hidden.  This is used when the facet is
+   * drawn as part of a larger batch.  This method must be called from the
+   * JavaFX application thread.
+   *
+   * @param flag the new view shown flag.
+   *
+   * @since 0.8
+   */
+  public void setViewShown (
+    boolean flag
+  ) {
+
+    viewShown = flag;
+    Group group = (Group) nodeProp.get();
+    if (group != null) group.getChildren().get (0).setVisible (flag);
+
+  } // setViewShown
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the triangle mesh currently used by this facet.  The texture
+   * coordinates of the mesh match the current texture.
+   *
+   * @return the mesh or null if the facet has no mesh yet.
+   *
+   * @since 0.8
+   */
+  public TriangleMesh getMesh() { return (activeMesh); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the texture image currently used by this facet.
+   *
+   * @return the texture or null if the facet has no texture yet.
+   *
+   * @since 0.8
+   */
+  public Image getTexture() { return (activeTexture); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the mesh level currently used by this facet.
+   *
+   * @return the mesh level or -1 if the facet has no mesh yet.
+   *
+   * @since 0.8
+   */
+  public int getMeshLevel() { return (meshLevel); }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Gets the center point of this facet determined from the bounds.
    *
@@ -575,5 +1199,18 @@ public class Facet {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the bounds of this facet determined when the facet node was
+   * created.  Unlike the node bounds, these bounds are not affected by node
+   * visibility and may be accessed from any thread.
+   *
+   * @return the bounds, or null if the facet has no node yet.
+   *
+   * @since 0.8
+   */
+  public Bounds getBounds() { return (bounds); }
+
+  /////////////////////////////////////////////////////////////////
+
 } // Facet class
 
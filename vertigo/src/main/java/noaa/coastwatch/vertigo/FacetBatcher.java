@@ -0,0 +1,441 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+
+import javafx.application.Platform;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Point3D;
+
+import javafx.scene.Node;
+import javafx.scene.Group;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.PhongMaterial;
+
+import javafx.beans.value.ChangeListener;
+
+/**
+ * The <code>FacetBatcher</code> class merges spatially adjacent facets of
+ * the same size into batches, each drawn as a single mesh view with a
+ * single texture.  This reduces the number of scene graph nodes and draw
+ * calls when many small facets are shown.  The facets keep their own nodes
+ * in the scene graph so that their visibility and updates are managed as
+ * usual, but their mesh views are hidden while a batch draws them.  When a
+ * member facet changes, its batch is hidden and the members are drawn
+ * individually until the batch has been rebuilt in the background.  Only
+ * the batch containing the changed facet is rebuilt.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class FacetBatcher {
+
+  private static final Logger LOGGER = Logger.getLogger (FacetBatcher.class.getName());
+
+  // Constants
+  // ---------
+
+  /** The maximum number of facets in a batch. */
+  private static final int MAX_MEMBERS = 16;
+
+  /** The number of facets along each side of a batch cell. */
+  private static final int CELL_FACETS = 4;
+
+  /** The maximum width and height of a batch texture. */
+  private static final int MAX_TEXTURE_SIZE = 4096;
+
+  /** The delay after a change before a batch is rebuilt in milliseconds. */
+  private static final double REBUILD_DELAY = 200;
+
+  // Variables
+  // ---------
+
+  /** The consumer for new batch nodes to add to the scene graph. */
+  private Consumer<Node> nodeConsumer;
+
+  /** The map of spatial cell key to batches in that cell. */
+  private Map<String, List<Batch>> cellMap;
+
+  /** The list of all batches. */
+  private List<Batch> batchList;
+
+  /** The disposed flag, true when the batches are no longer used. */
+  private boolean disposed;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new batcher.
+   *
+   * @param nodeConsumer the consumer for batch nodes to add to the scene
+   * graph.  The batcher manages the visibility of the batch nodes itself.
+   */
+  public FacetBatcher (
+    Consumer<Node> nodeConsumer
+  ) {
+
+    this.nodeConsumer = nodeConsumer;
+    cellMap = new HashMap<>();
+    batchList = new ArrayList<>();
+
+  } // FacetBatcher
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds a facet to a batch.  The facet is placed into a batch with other
+   * facets of a similar size whose centers fall into the same spatial cell.
+   * This method must be called from the JavaFX application thread.
+   *
+   * @param facet the facet to add, which must already have a node.
+   */
+  public void add (
+    Facet facet
+  ) {
+
+    if (disposed) return;
+
+    // The cell size is a multiple of the facet size rounded to a power of
+    // two, so that facets at each depth of a hierarchical source are
+    // batched separately with their own neighbours.
+    Bounds bounds = facet.getBounds();
+    double extent = Math.max (bounds.getWidth(), Math.max (bounds.getHeight(), bounds.getDepth()));
+    int sizeClass = (int) Math.round (Math.log (Math.max (extent, Double.MIN_NORMAL)) / Math.log (2));
+    double cellSize = CELL_FACETS * Math.pow (2, sizeClass);
+    Point3D center = facet.getCenter();
+    String key = sizeClass + ":" +
+      (long) Math.floor (center.getX() / cellSize) + "," +
+      (long) Math.floor (center.getY() / cellSize) + "," +
+      (long) Math.floor (center.getZ() / cellSize);
+
+    List<Batch> cellBatches = cellMap.computeIfAbsent (key, k -> new ArrayList<>());
+    Batch batch = (cellBatches.isEmpty() ? null : cellBatches.get (cellBatches.size()-1));
+    if (batch == null || batch.members.size() >= MAX_MEMBERS) {
+      batch = new Batch();
+      cellBatches.add (batch);
+      batchList.add (batch);
+      nodeConsumer.accept (batch.group);
+    } // if
+    batch.add (facet);
+
+  } // add
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the batch nodes created by this batcher.
+   *
+   * @return the list of batch nodes.
+   */
+  public List<Node> getNodes() {
+
+    List<Node> nodes = new ArrayList<>();
+    for (Batch batch : batchList) nodes.add (batch.group);
+
+    return (nodes);
+
+  } // getNodes
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Stops batching and returns all the member facets to drawing their
+   * own mesh views.  The batch nodes should be removed from the scene graph
+   * by the caller.  This method must be called from the JavaFX application
+   * thread.
+   */
+  public void dispose () {
+
+    disposed = true;
+    for (Batch batch : batchList) batch.dispose();
+
+  } // dispose
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * The <code>BatchData</code> class holds a snapshot of the member facet
+   * data used to build a batch in the background.
+   */
+  private static class BatchData {
+
+    public List<float[]> pointsList = new ArrayList<>();
+    public List<float[]> normalsList = new ArrayList<>();
+    public List<float[]> texCoordsList = new ArrayList<>();
+    public List<int[]> facesList = new ArrayList<>();
+    public List<Image> textureList = new ArrayList<>();
+
+  } // BatchData class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * The <code>Batch</code> class holds a group of facets drawn together.
+   */
+  private class Batch {
+
+    /** The member facets. */
+    public List<Facet> members = new ArrayList<>();
+
+    /** The group node that holds the batch mesh view, if any. */
+    public Group group = new Group();
+
+    /** The ready flag, true when the batch mesh view is drawing the members. */
+    private boolean ready;
+
+    /** The build generation, incremented to discard builds in progress. */
+    private int generation;
+
+    /** The timer that delays rebuilding after a change. */
+    private PauseTransition rebuildTimer;
+
+    /** The listener for changes that invalidate the batch. */
+    private ChangeListener<Object> changeListener = (obs, oldVal, newVal) -> invalidate();
+
+    /** The listener for changes to member visibility. */
+    private ChangeListener<Boolean> visibleListener = (obs, oldVal, newVal) -> updateVisibility();
+
+    /** Creates a new empty batch. */
+    public Batch () {
+      group.setVisible (false);
+      group.setMouseTransparent (true);
+      rebuildTimer = new PauseTransition (Duration.millis (REBUILD_DELAY));
+      rebuildTimer.setOnFinished (event -> build());
+    } // Batch
+
+    /** Adds a member facet. */
+    public void add (Facet facet) {
+      members.add (facet);
+      facet.updatingProperty().addListener (changeListener);
+      facet.getNode().disableProperty().addListener (changeListener);
+      facet.getNode().visibleProperty().addListener (visibleListener);
+      invalidate();
+    } // add
+
+    /**
+     * Hides the batch and shows the members individually, and schedules
+     * a rebuild.
+     */
+    public void invalidate () {
+      if (disposed) return;
+      generation++;
+      if (ready) {
+        ready = false;
+        for (Facet facet : members) facet.setViewShown (true);
+        updateVisibility();
+      } // if
+      rebuildTimer.playFromStart();
+    } // invalidate
+
+    /** Shows the batch if it's ready and any member is visible. */
+    private void updateVisibility () {
+      boolean visible = false;
+      if (ready) {
+        for (Facet facet : members) {
+          if (facet.getNode().isVisible()) { visible = true; break; }
+        } // for
+      } // if
+      group.setVisible (visible);
+    } // updateVisibility
+
+    /** Stops using the batch and shows the members individually. */
+    public void dispose () {
+      generation++;
+      rebuildTimer.stop();
+      for (Facet facet : members) {
+        facet.updatingProperty().removeListener (changeListener);
+        facet.getNode().disableProperty().removeListener (changeListener);
+        facet.getNode().visibleProperty().removeListener (visibleListener);
+        facet.setViewShown (true);
+      } // for
+      ready = false;
+      group.setVisible (false);
+      group.getChildren().clear();
+    } // dispose
+
+    /**
+     * Takes a snapshot of the member data and starts a build in the
+     * background.  The build only starts if all members are enabled, idle,
+     * textured, and at the same mesh level.
+     */
+    private void build () {
+
+      if (disposed) return;
+      int meshLevel = members.get (0).getMeshLevel();
+      BatchData data = new BatchData();
+      for (Facet facet : members) {
+        TriangleMesh mesh = facet.getMesh();
+        Image texture = facet.getTexture();
+        if (!facet.isEnabled() || facet.isUpdating() || mesh == null || texture == null ||
+          facet.getMeshLevel() != meshLevel || mesh.getVertexFormat() != VertexFormat.POINT_NORMAL_TEXCOORD) {
+          LOGGER.finer ("Batch with " + members.size() + " members not ready to build");
+          return;
+        } // if
+        data.pointsList.add (mesh.getPoints().toArray (null));
+        data.normalsList.add (mesh.getNormals().toArray (null));
+        data.texCoordsList.add (mesh.getTexCoords().toArray (null));
+        data.facesList.add (mesh.getFaces().toArray (null));
+        data.textureList.add (texture);
+      } // for
+
+      final int buildGeneration = generation;
+      TaskService.getInstance().submit (TaskService.Pool.BATCH, () -> {
+        MeshView view = null;
+        try { view = createView (data); }
+        catch (RuntimeException e) { LOGGER.log (Level.WARNING, "Failed to build facet batch", e); }
+        final MeshView batchView = view;
+        if (batchView != null) {
+          Platform.runLater (() -> {
+            if (!disposed && buildGeneration == generation) complete (batchView);
+          });
+        } // if
+      });
+
+    } // build
+
+    /** Completes a build by drawing the members with the batch view. */
+    private void complete (MeshView view) {
+      group.getChildren().setAll (view);
+      ready = true;
+      for (Facet facet : members) facet.setViewShown (false);
+      updateVisibility();
+      LOGGER.finer ("Completed batch of " + members.size() + " facets");
+    } // complete
+
+  } // Batch class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates the batch mesh view from the member data.  The member textures
+   * are packed into rows of a single texture, and the member texture
+   * coordinates are adjusted to the position of each member in the packed
+   * texture.
+   *
+   * @param data the member data snapshot.
+   *
+   * @return the mesh view, or null if the textures don't fit into the
+   * maximum texture size.
+   */
+  private static MeshView createView (
+    BatchData data
+  ) {
+
+    // Lay out the textures in rows from left to right, starting a new row
+    // when the current row would be wider than the target width.
+    int count = data.textureList.size();
+    long area = 0;
+    int maxWidth = 0;
+    for (Image texture : data.textureList) {
+      area += (long) texture.getWidth() * (long) texture.getHeight();
+      maxWidth = Math.max (maxWidth, (int) texture.getWidth());
+    } // for
+    int targetWidth = Math.max (maxWidth, (int) Math.ceil (Math.sqrt (area)));
+    int[] xOffsets = new int[count];
+    int[] yOffsets = new int[count];
+    int x = 0, y = 0, rowHeight = 0, width = 0;
+    for (int i = 0; i < count; i++) {
+      Image texture = data.textureList.get (i);
+      int textureWidth = (int) texture.getWidth();
+      int textureHeight = (int) texture.getHeight();
+      if (x != 0 && x + textureWidth > targetWidth) {
+        y += rowHeight;
+        x = 0;
+        rowHeight = 0;
+      } // if
+      xOffsets[i] = x;
+      yOffsets[i] = y;
+      x += textureWidth;
+      width = Math.max (width, x);
+      rowHeight = Math.max (rowHeight, textureHeight);
+    } // for
+    int height = y + rowHeight;
+    if (width > MAX_TEXTURE_SIZE || height > MAX_TEXTURE_SIZE) {
+      LOGGER.fine ("Batch texture size " + width + "x" + height + " exceeds maximum");
+      return (null);
+    } // if
+
+    // Copy the member textures into the batch texture.
+    WritableImage batchTexture = new WritableImage (width, height);
+    var writer = batchTexture.getPixelWriter();
+    var format = PixelFormat.getIntArgbInstance();
+    for (int i = 0; i < count; i++) {
+      Image texture = data.textureList.get (i);
+      int textureWidth = (int) texture.getWidth();
+      int textureHeight = (int) texture.getHeight();
+      int[] pixels = new int[textureWidth*textureHeight];
+      PixelReader reader = texture.getPixelReader();
+      reader.getPixels (0, 0, textureWidth, textureHeight, format, pixels, 0, textureWidth);
+      writer.setPixels (xOffsets[i], yOffsets[i], textureWidth, textureHeight, format, pixels, 0, textureWidth);
+    } // for
+
+    // Concatenate the member meshes, offsetting the face indices and
+    // transforming the texture coordinates into the batch texture.
+    TriangleMesh mesh = new TriangleMesh (VertexFormat.POINT_NORMAL_TEXCOORD);
+    int pointOffset = 0, normalOffset = 0, texCoordOffset = 0;
+    for (int i = 0; i < count; i++) {
+
+      float[] points = data.pointsList.get (i);
+      float[] normals = data.normalsList.get (i);
+      float[] texCoords = data.texCoordsList.get (i).clone();
+      int[] faces = data.facesList.get (i).clone();
+
+      Image texture = data.textureList.get (i);
+      float uScale = (float) (texture.getWidth() / width);
+      float vScale = (float) (texture.getHeight() / height);
+      float uOffset = (float) xOffsets[i] / width;
+      float vOffset = (float) yOffsets[i] / height;
+      for (int j = 0; j < texCoords.length; j += 2) {
+        texCoords[j] = texCoords[j]*uScale + uOffset;
+        texCoords[j+1] = texCoords[j+1]*vScale + vOffset;
+      } // for
+
+      for (int j = 0; j < faces.length; j += 3) {
+        faces[j] += pointOffset;
+        faces[j+1] += normalOffset;
+        faces[j+2] += texCoordOffset;
+      } // for
+
+      mesh.getPoints().addAll (points);
+      mesh.getNormals().addAll (normals);
+      mesh.getTexCoords().addAll (texCoords);
+      mesh.getFaces().addAll (faces);
+      pointOffset += points.length/3;
+      normalOffset += normals.length/3;
+      texCoordOffset += texCoords.length/2;
+
+    } // for
+
+    MeshView view = new MeshView (mesh);
+    PhongMaterial material = new PhongMaterial();
+    material.setDiffuseMap (batchTexture);
+    view.setMaterial (material);
+
+    return (view);
+
+  } // createView
+
+  /////////////////////////////////////////////////////////////////
+
+} // FacetBatcher class
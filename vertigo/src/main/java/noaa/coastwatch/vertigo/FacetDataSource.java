@@ -26,6 +26,9 @@ public class FacetDataSource {
   
     /** The factory that produces texture images for the facets. */
   private TextureFactory textureFactory;
+
+  /** The view properties used to compute levels of detail, or null. */
+  private ViewProperties viewProps;
   
   /////////////////////////////////////////////////////////////////
   
@@ -81,5 +84,99 @@ public class FacetDataSource {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Sets the view properties used to compute the levels of detail in the
+   * factories, for use by subclasses.
+   *
+   * @param props the view properties.
+   *
+   * @since 0.8
+   */
+  protected void setViewProperties (ViewProperties props) { this.viewProps = props; }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the view properties used to compute the levels of detail in the
+   * factories.  The camera distances returned by the factory level
+   * methods are only correct for a view with these properties.
+   *
+   * @return the view properties, or null if not available.
+   *
+   * @since 0.8
+   */
+  public ViewProperties getViewProperties() { return (viewProps); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the root facet indices.  Facets in a hierarchical data source
+   * cover the same area as their children at a lower resolution, and only
+   * the roots are shown initially.  By default every facet is a root.
+   *
+   * @return the array of root facet indices.
+   *
+   * @since 0.8
+   */
+  public int[] getRoots() {
+
+    int[] roots = new int[facets];
+    for (int i = 0; i < facets; i++) roots[i] = i;
+    return (roots);
+
+  } // getRoots
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the child facet indices of a facet.  By default no facet has
+   * children.
+   *
+   * @param index the facet index.
+   *
+   * @return the array of child facet indices, or null if the facet has no
+   * children.
+   *
+   * @since 0.8
+   */
+  public int[] getChildren (int index) { return (null); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the camera distance at which a facet should be split into its
+   * children.  When the camera is closer than this distance, the facet
+   * resolution is no longer sufficient and the children should be shown
+   * in its place.
+   *
+   * @param index the facet index.
+   *
+   * @return the split distance, or zero if the facet should never be
+   * split.
+   *
+   * @since 0.8
+   */
+  public double getSplitDist (int index) { return (0); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if another data source creates the same facet meshes as
+   * this source, for example a source for the same data variable at a
+   * different time step.  Facet meshes from one source may then be used
+   * in place of the meshes from the other.  By default only the same
+   * source has the same geometry.
+   *
+   * @param other the other data source.
+   *
+   * @return true if the sources create the same meshes for each facet
+   * index, or false if not.
+   *
+   * @since 0.8
+   */
+  public boolean hasSameGeometry (FacetDataSource other) { return (other == this); }
+
+  /////////////////////////////////////////////////////////////////
+
 } // FacetDataSource class
 
@@ -30,12 +30,27 @@ public class Frustum {
   private static final int TOP = 4;
   private static final int BOTTOM = 5;
 
+  /** The classification of a volume entirely outside the frustum. */
+  public static final int OUTSIDE = 0;
+
+  /** The classification of a volume that intersects the frustum boundary. */
+  public static final int INTERSECTS = 1;
+
+  /** The classification of a volume entirely inside the frustum. */
+  public static final int INSIDE = 2;
+
   // Variables
   // ---------
 
   /** The set of planes bounding the view frustum. */
   private Plane[] planes;
 
+  /**
+   * The plane coefficients as (nx, ny, nz, d) for each plane in order, so
+   * that intersection tests work on primitive values.
+   */
+  private double[] coefs;
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -101,6 +116,14 @@ public class Frustum {
       planes[i].norm = cameraOrient.transform (planeDir);
       planes[i].d = planes[i].norm.dotProduct (cameraOrient.transform (cameraPos.add (0, 0, zDist)));
     } // for
+
+    coefs = new double[24];
+    for (int i = 0; i < 6; i++) {
+      coefs[i*4] = planes[i].norm.getX();
+      coefs[i*4+1] = planes[i].norm.getY();
+      coefs[i*4+2] = planes[i].norm.getZ();
+      coefs[i*4+3] = planes[i].d;
+    } // for
     
   } // Frustum
 
@@ -117,28 +140,117 @@ public class Frustum {
     Bounds bounds
   ) {
 
-    double minX, minY, minZ;
-    boolean answer = true;
+    return (classify (bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(),
+      bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ()) != OUTSIDE);
 
-    for (int i = 0; i < 6; i++) {
+  } // intersects
 
-      // Find minimum corner in bound box with respect to plane normal
-      if (planes[i].norm.getX() >= 0) minX = bounds.getMinX();
-      else minX = bounds.getMaxX();
-    
-      if (planes[i].norm.getY() >= 0) minY = bounds.getMinY();
-      else minY = bounds.getMaxY();
-    
-      if (planes[i].norm.getZ() >= 0) minZ = bounds.getMinZ();
-      else minZ = bounds.getMaxZ();
-    
-      // Check if the minimum corner of the bounding box is entirely on
-      // the outside of the plane
-      if ((planes[i].norm.dotProduct (minX, minY, minZ) - planes[i].d) > 0) {
-        answer = false;
-        break;
-      } // if
-      
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Classifies a bounding box against this frustum.
+   *
+   * @param bounds the bounds to check.
+   *
+   * @return {@link #OUTSIDE} if the bounds are entirely outside the frustum,
+   * {@link #INSIDE} if entirely inside, or {@link #INTERSECTS} otherwise.
+   *
+   * @since 0.8
+   */
+  public int classify (
+    Bounds bounds
+  ) {
+
+    return (classify (bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(),
+      bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ()));
+
+  } // classify
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Classifies a bounding box against this frustum.
+   *
+   * @param minX the bounding box minimum X coordinate.
+   * @param minY the bounding box minimum Y coordinate.
+   * @param minZ the bounding box minimum Z coordinate.
+   * @param maxX the bounding box maximum X coordinate.
+   * @param maxY the bounding box maximum Y coordinate.
+   * @param maxZ the bounding box maximum Z coordinate.
+   *
+   * @return {@link #OUTSIDE} if the box is entirely outside the frustum,
+   * {@link #INSIDE} if entirely inside, or {@link #INTERSECTS} otherwise.
+   *
+   * @since 0.8
+   */
+  public int classify (
+    double minX,
+    double minY,
+    double minZ,
+    double maxX,
+    double maxY,
+    double maxZ
+  ) {
+
+    // We first test the bounding sphere of the box against each plane,
+    // which settles most planes with a single dot product.  Only when the
+    // sphere straddles a plane do we find the box corners nearest and
+    // furthest along the plane normal.
+    double cx = (minX + maxX)*0.5;
+    double cy = (minY + maxY)*0.5;
+    double cz = (minZ + maxZ)*0.5;
+    double hx = (maxX - minX)*0.5;
+    double hy = (maxY - minY)*0.5;
+    double hz = (maxZ - minZ)*0.5;
+    double radius = Math.sqrt (hx*hx + hy*hy + hz*hz);
+
+    int result = INSIDE;
+    for (int i = 0; i < 24; i += 4) {
+
+      double nx = coefs[i], ny = coefs[i+1], nz = coefs[i+2], d = coefs[i+3];
+      double dist = nx*cx + ny*cy + nz*cz - d;
+      if (dist > radius) { result = OUTSIDE; break; }
+      if (dist < -radius) continue;
+
+      // Check if the minimum corner of the bounding box with respect to
+      // the plane normal is entirely on the outside of the plane, and if
+      // the maximum corner is outside which means the box straddles it.
+      double extent = Math.abs (nx)*hx + Math.abs (ny)*hy + Math.abs (nz)*hz;
+      if (dist - extent > 0) { result = OUTSIDE; break; }
+      if (dist + extent > 0) result = INTERSECTS;
+
+    } // for
+
+    return (result);
+
+  } // classify
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if a sphere intersects this frustum.  This is a conservative
+   * test that may report intersection for some spheres just outside the
+   * corners of the frustum.
+   *
+   * @param x the sphere center X coordinate.
+   * @param y the sphere center Y coordinate.
+   * @param z the sphere center Z coordinate.
+   * @param radius the sphere radius.
+   *
+   * @return true if the sphere intersects or false if not.
+   *
+   * @since 0.8
+   */
+  public boolean intersects (
+    double x,
+    double y,
+    double z,
+    double radius
+  ) {
+
+    boolean answer = true;
+    for (int i = 0; i < 24; i += 4) {
+      if (coefs[i]*x + coefs[i+1]*y + coefs[i+2]*z - coefs[i+3] > radius) { answer = false; break; }
     } // for
 
     return (answer);
@@ -147,5 +259,38 @@ public class Frustum {
 
   /////////////////////////////////////////////////////////////////
 
-} // Frustum class
+  /**
+   * Determines which boxes in an array intersect this frustum.  The boxes
+   * are tested in one pass over the primitive arrays of box coordinates.
+   *
+   * @param boxes the boxes to check.
+   * @param result the output array of flags, true for each box that
+   * intersects or false if not (modified).  The array must have at least
+   * as many elements as the box array size.
+   *
+   * @return the number of boxes that intersect.
+   *
+   * @since 0.8
+   */
+  public int intersects (
+    BoundsArray boxes,
+    boolean[] result
+  ) {
+
+    int count = 0;
+    int size = boxes.size();
+    double[] minX = boxes.minX, minY = boxes.minY, minZ = boxes.minZ;
+    double[] maxX = boxes.maxX, maxY = boxes.maxY, maxZ = boxes.maxZ;
+    for (int j = 0; j < size; j++) {
+      boolean intersects = (classify (minX[j], minY[j], minZ[j], maxX[j], maxY[j], maxZ[j]) != OUTSIDE);
+      result[j] = intersects;
+      if (intersects) count++;
+    } // for
 
+    return (count);
+
+  } // intersects
+
+  /////////////////////////////////////////////////////////////////
+
+} // Frustum class
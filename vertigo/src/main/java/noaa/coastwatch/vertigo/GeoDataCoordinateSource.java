@@ -7,6 +7,7 @@
 package noaa.coastwatch.vertigo;
 
 import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
 import java.io.IOException;
 
 import static noaa.coastwatch.vertigo.Helpers.isTrue;
@@ -83,6 +84,31 @@ public class GeoDataCoordinateSource implements ImageCoordinateSource {
 
   /////////////////////////////////////////////////////////////////
 
+  @Override
+  public CompletableFuture<ImageAccessResult> accessAsync (
+    ImageAccess access
+  ) {
+
+    // The latitude and longitude accesses are started together and
+    // combined when both are done.  If the combined access fails or is
+    // cancelled, we cancel whichever access is still running.
+    var latFuture = sourceArray[LAT].accessAsync (access);
+    var lonFuture = sourceArray[LON].accessAsync (access);
+    CompletableFuture<ImageAccessResult> future = latFuture.thenCombine (lonFuture,
+      (latResult, lonResult) -> new ImageAccessResult (access, new ImageAccessResult[] {latResult, lonResult}));
+    future.whenComplete ((result, error) -> {
+      if (error != null) {
+        latFuture.cancel (false);
+        lonFuture.cancel (false);
+      } // if
+    });
+
+    return (future);
+
+  } // accessAsync
+
+  /////////////////////////////////////////////////////////////////
+
   @Override
   public void get (
     ImageAccessResult result,
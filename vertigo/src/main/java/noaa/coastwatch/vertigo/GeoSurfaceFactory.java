@@ -8,6 +8,7 @@ package noaa.coastwatch.vertigo;
 
 import java.util.List;
 import java.util.Date;
+import java.util.function.BooleanSupplier;
 import java.io.IOException;
 
 import javafx.scene.layout.Region;
@@ -95,6 +96,34 @@ public interface GeoSurfaceFactory extends ProjectViewObject {
     int level
   ) throws IOException;
 
+  /**
+   * Creates a dynamic surface at the specified time and level, checking
+   * a flag for cancellation while reading the data needed.  By default,
+   * the flag is ignored.
+   *
+   * @param time the time step for the surface, ignored if there are no
+   * time steps.
+   * @param level the level for the surface, ignored if there are no levels.
+   * @param cancelled the cancelled flag, or null to not check.
+   *
+   * @return the dynamic surface matching the specified time and level.
+   *
+   * @throws IOException if factory initialization failed.
+   * @throws java.util.concurrent.CancellationException if the cancelled
+   * flag was set before the surface was created.
+   *
+   * @since 0.8
+   */
+  default DynamicSurface createSurface (
+    int time,
+    int level,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    return (createSurface (time, level));
+
+  } // createSurface
+
   /**
    * Gets the legend for the surfaces created by this factory.
    *
@@ -8,10 +8,15 @@ package noaa.coastwatch.vertigo;
 
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.Point3D;
+import javafx.scene.Node;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.function.Consumer;
 
 import java.util.logging.Logger;
 
@@ -26,12 +31,46 @@ public class GeoSurfaceHandler {
 
   private static final Logger LOGGER = Logger.getLogger (GeoSurfaceHandler.class.getName());
 
+  /** The width and height of texture atlas pages. */
+  private static final int ATLAS_PAGE_SIZE = TextureAtlas.MAX_PAGE_SIZE;
+
+  /** The number of empty texture atlas pages kept for reuse. */
+  private static final int ATLAS_FREE_PAGES = 4;
+
   /** The controller for the world view and model. */
   private WorldController worldController;
 
   /** The list of active surfaces. */
   private List<DynamicSurface> surfaceList;
 
+  /**
+   * The batching flag, true to draw surface facets in batches.  The default
+   * is taken from the <code>vertigo.facet.batching</code> system property.
+   */
+  private boolean batching = Boolean.parseBoolean (System.getProperty ("vertigo.facet.batching", "false"));
+
+  /**
+   * The level of detail mode for active surfaces.  Screen error mode is
+   * used if the <code>vertigo.lod.screenError</code> system property is
+   * true, otherwise the surface default distance mode is used.
+   */
+  private DynamicSurface.LevelMode levelMode =
+    (Boolean.parseBoolean (System.getProperty ("vertigo.lod.screenError", "false")) ?
+    DynamicSurface.LevelMode.SCREEN_ERROR : DynamicSurface.LevelMode.DISTANCE);
+
+  /**
+   * The texture atlas shared by active surfaces, or null to not use an
+   * atlas.  An atlas is used if the <code>vertigo.texture.atlas</code>
+   * system property is true.
+   */
+  private TextureAtlas atlas;
+
+  /**
+   * The map of surface to the task that removes the remaining nodes of the
+   * surface it replaced, for replacements still in progress.
+   */
+  private Map<DynamicSurface, SurfaceHandover> handoverMap = new HashMap<>();
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -47,6 +86,8 @@ public class GeoSurfaceHandler {
   
     this.worldController = worldController;
     surfaceList = new ArrayList<>();
+    if (Boolean.parseBoolean (System.getProperty ("vertigo.texture.atlas", "false")))
+      atlas = new TextureAtlas (ATLAS_PAGE_SIZE, ATLAS_FREE_PAGES);
   
     // Update the surface camera positions when needed
     var view = worldController.getView();
@@ -54,14 +95,26 @@ public class GeoSurfaceHandler {
       surfaceList.forEach (surface -> surface.setCameraPosition (newVal));
     });
 
-    // Force an update of the surfaces if the scene changes size
+    // Force an update of the surfaces if the scene changes size, since
+    // the screen error of each facet changes with the view resolution.
     var scene = view.getScene();
     ChangeListener<Number> listener = (obs, oldVal, newVal) -> {
-      surfaceList.forEach (surface -> surface.update());
+      var props = view.getDisplayProperties();
+      surfaceList.forEach (surface -> {
+        surface.setDisplayProperties (props);
+        surface.update();
+      });
     };
     scene.widthProperty().addListener (listener);
     scene.heightProperty().addListener (listener);
 
+    // Prefetch data for where the camera is headed, or stop prefetching
+    // when the camera has stopped moving.
+    worldController.cameraTargetProperty().addListener ((obs, oldVal, newVal) -> {
+      if (newVal == null) surfaceList.forEach (surface -> surface.cancelPrefetch());
+      else surfaceList.forEach (surface -> surface.prefetch (newVal.position, newVal.frustum));
+    });
+
   } // GeoSurfaceHandler
 
   /////////////////////////////////////////////////////////////////
@@ -86,6 +139,19 @@ public class GeoSurfaceHandler {
   
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Sets the batching flag.  When true, surfaces activated afterwards draw
+   * their facets in merged batches, which reduces the scene graph node count
+   * and draw calls for surfaces with many facets.
+   *
+   * @param flag the new batching flag.
+   *
+   * @since 0.8
+   */
+  public void setBatching (boolean flag) { batching = flag; }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Activates the specified surface by connecting it to the world controller.
    * This method must be called from the JavaFX application thread.
@@ -96,12 +162,34 @@ public class GeoSurfaceHandler {
     DynamicSurface surface
   ) {
   
+    activateSurface (surface, facet -> worldController.addObject (facet.getNode()));
+
+  } // activateSurface
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Activates a surface using a consumer for facets that are ready to be
+   * viewed.
+   *
+   * @param surface the surface to activate.
+   * @param facetConsumer the consumer that adds facet nodes to the world.
+   */
+  private void activateSurface (
+    DynamicSurface surface,
+    Consumer<Facet> facetConsumer
+  ) {
+
     if (!Platform.isFxApplicationThread()) throw new IllegalStateException ("Not on JavaFX application thread");
     if (surfaceList.contains (surface)) LOGGER.warning ("Surface already in active list");
     else {
 
-      surface.setFacetConsumer (facet -> worldController.addObject (facet.getNode()));
+      surface.setFacetConsumer (facetConsumer);
       surface.setUpdateConsumer (update -> worldController.addSceneGraphChange (update));
+      if (batching) surface.setBatchConsumer (node -> worldController.addUnmanagedObject (node));
+      surface.setTextureAtlas (atlas);
+      surface.setDisplayProperties (worldController.getView().getDisplayProperties());
+      surface.setLevelMode (levelMode);
       surfaceList.add (surface);
       surface.setCameraPosition (worldController.getView().cameraPositionProperty().get());
       surface.setActive (true);
@@ -127,21 +215,121 @@ public class GeoSurfaceHandler {
     if (!surfaceList.contains (surface)) LOGGER.warning ("Surface not in active list");
     else {
   
-      surfaceList.remove (surface);
-
-      surface.setActive (false);
-      surface.setFacetConsumer (null);
-      surface.setUpdateConsumer (null);
-
-      // TODO: In future versions we would selectively clear the facet nodes
-      // from the controller that this surface contains.  For now though we
-      // simply clear the entire model (we assume that only one surface is active
-      // at once).
-      worldController.clearObjects();
+      // Remove only the facet nodes of this surface, so that other active
+      // surfaces are left in place.  If the surface is activated again, the
+      // facet consumer adds the nodes back.  Any nodes left over from a
+      // surface that this one replaced are also removed.
+      List<Node> nodes = disconnectSurface (surface);
+      for (var node : nodes) worldController.removeObject (node);
+      var handover = handoverMap.remove (surface);
+      if (handover != null) handover.run();
       
     } // else
 
   } // deactivateSurface
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Disconnects a surface from the world controller without removing its
+   * nodes from the world.
+   *
+   * @param surface the surface to disconnect.
+   *
+   * @return the facet and batch nodes of the surface still in the world.
+   */
+  private List<Node> disconnectSurface (
+    DynamicSurface surface
+  ) {
+
+    surfaceList.remove (surface);
+
+    List<Node> nodes = new ArrayList<> (surface.getBatchNodes());
+    for (Facet facet : surface.getFacets()) nodes.add (facet.getNode());
+
+    surface.setActive (false);
+    surface.setFacetConsumer (null);
+    surface.setUpdateConsumer (null);
+    surface.setBatchConsumer (null);
+    surface.setTextureAtlas (null);
+
+    return (nodes);
+
+  } // disconnectSurface
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Replaces an active surface with another surface, for example the same
+   * data variable at a new time step.  If the surfaces have the same
+   * geometry, the old surface facets are left in view until the new
+   * surface facets with the same index are ready to take their place, and
+   * a new surface that hasn't been shown yet starts its facets from the
+   * old surface meshes and textures.  This avoids a flash of empty or low
+   * resolution facets when stepping through time.  Otherwise the old
+   * surface is deactivated and the new surface activated as usual.  This
+   * method must be called from the JavaFX application thread.
+   *
+   * @param oldSurface the active surface to replace.
+   * @param newSurface the surface to activate in its place.
+   *
+   * @since 0.8
+   *
+   * @see DynamicSurface#inheritFrom
+   */
+  public void replaceSurface (
+    DynamicSurface oldSurface,
+    DynamicSurface newSurface
+  ) {
+
+    if (!Platform.isFxApplicationThread()) throw new IllegalStateException ("Not on JavaFX application thread");
+    if (!surfaceList.contains (oldSurface) || surfaceList.contains (newSurface) ||
+      !newSurface.hasSameGeometry (oldSurface)) {
+      if (surfaceList.contains (oldSurface)) deactivateSurface (oldSurface);
+      activateSurface (newSurface);
+    } // if
+
+    else {
+
+      // Collect the nodes of the old surface by facet index.  Any nodes left
+      // over from a previous replacement are kept with them.
+      Map<Integer, Node> facetNodes = new HashMap<>();
+      for (Facet facet : oldSurface.getFacets()) facetNodes.put (facet.getIndex(), facet.getNode());
+      List<Node> otherNodes = new ArrayList<> (oldSurface.getBatchNodes());
+      disconnectSurface (oldSurface);
+      var handover = new SurfaceHandover (facetNodes, otherNodes, handoverMap.remove (oldSurface),
+        node -> worldController.removeObject (node));
+      boolean inherited = newSurface.inheritFrom (oldSurface);
+      LOGGER.fine ("Replacing surface with same geometry" + (inherited ? ", starting from previous facets" : ""));
+
+      // Each new facet takes the place of the old facet with the same
+      // index.  If the new surface was shown before and some of its nodes
+      // are still waiting to be removed by a previous replacement, those
+      // nodes are taken back rather than added again.  When the new
+      // surface is initialized, the remaining old nodes are removed.
+      activateSurface (newSurface, facet -> {
+        Node node = facet.getNode();
+        if (!handover.keep (node)) worldController.addObject (node);
+        handover.replace (facet.getIndex());
+      });
+      if (newSurface.isInitialized()) handover.run();
+      else {
+        handoverMap.put (newSurface, handover);
+        newSurface.initializedProperty().addListener (new ChangeListener<Boolean>() {
+          @Override
+          public void changed (ObservableValue<? extends Boolean> obs, Boolean oldVal, Boolean newVal) {
+            if (newVal) {
+              obs.removeListener (this);
+              var pending = handoverMap.remove (newSurface);
+              if (pending != null) pending.run();
+            } // if
+          } // changed
+        });
+      } // else
+
+    } // else
+
+  } // replaceSurface
   
   /////////////////////////////////////////////////////////////////
 
@@ -0,0 +1,73 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+
+/**
+ * The <code>GridMetadata</code> class holds the parsed metadata for the
+ * grid variables in a dataset, so that the metadata can be cached and
+ * reused without opening the dataset.  Attribute values are stored as
+ * strings, numbers, or 1D Java arrays.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class GridMetadata implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  // Variables
+  // ---------
+
+  /** The name of the dataset that the metadata was read from. */
+  public String datasetName;
+
+  /** The modification time of a local dataset file, or 0 if remote. */
+  public long modified;
+
+  /** The global attributes of the dataset. */
+  public LinkedHashMap<String, Object> globalAttributes = new LinkedHashMap<>();
+
+  /** The map of variable name to grid metadata, in dataset order. */
+  public LinkedHashMap<String, GridInfo> grids = new LinkedHashMap<>();
+
+  /////////////////////////////////////////////////////////////////
+
+  /** The <code>GridInfo</code> class holds the metadata for one grid. */
+  public static class GridInfo implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    /** The grid time values in milliseconds since the epoch. */
+    public long[] times;
+
+    /** The vertical level values, or an empty array for no levels. */
+    public double[] levels;
+
+    /** The vertical level units, or null for no levels. */
+    public String levelUnits;
+
+    /** The grid dimensions as [width, height]. */
+    public int[] dims;
+
+    /** The grid variable attributes. */
+    public LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+
+    /** The packing for reading the original stored values, or null. */
+    public DataPacking packing;
+
+    /** The storage chunk size as [width, height], or null if not chunked. */
+    public int[] chunkSizes;
+
+  } // GridInfo class
+
+  /////////////////////////////////////////////////////////////////
+
+} // GridMetadata class
+
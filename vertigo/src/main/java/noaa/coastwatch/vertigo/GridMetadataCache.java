@@ -0,0 +1,267 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * The <code>GridMetadataCache</code> class caches the grid metadata for
+ * datasets by name, both in memory and in files on disk so that the
+ * metadata is available immediately when the application is restarted.
+ * The disk cache is stored in the directory given by the
+ * <code>vertigo.metadata.cache.dir</code> system property, by default
+ * <code>.vertigo/metadata</code> in the user's home directory.  Setting
+ * the property to an empty value turns off the disk cache.  Cache files
+ * not used for longer than <code>vertigo.metadata.cache.maxAge</code> days
+ * (default 30) are discarded, and the least recently used files are
+ * removed when there are more than <code>vertigo.metadata.cache.maxFiles</code>
+ * files (default 500).  Callers are responsible for validating the cached
+ * metadata against the dataset and replacing it if needed.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class GridMetadataCache {
+
+  private static final Logger LOGGER = Logger.getLogger (GridMetadataCache.class.getName());
+
+  // Constants
+  // ---------
+
+  /** The default maximum age of an unused cache file in days. */
+  private static final int MAX_AGE_DAYS = 30;
+
+  /** The default maximum number of cache files. */
+  private static final int MAX_FILES = 500;
+
+  /** The file name extension for cache files. */
+  private static final String EXTENSION = ".ser";
+
+  // Variables
+  // ---------
+
+  /** The singleton instance of this class. */
+  private static GridMetadataCache instance;
+
+  /** The map of dataset name to metadata in memory. */
+  private Map<String, GridMetadata> memoryMap;
+
+  /** The directory for cache files, or null for no disk cache. */
+  private File cacheDir;
+
+  /** The maximum age of an unused cache file in milliseconds. */
+  private long maxAge;
+
+  /** The maximum number of cache files. */
+  private int maxFiles;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the singleton instance of this class.
+   *
+   * @return the metadata cache.
+   */
+  public static synchronized GridMetadataCache getInstance() {
+
+    if (instance == null) instance = new GridMetadataCache();
+    return (instance);
+
+  } // getInstance
+
+  /////////////////////////////////////////////////////////////////
+
+  protected GridMetadataCache () {
+
+    this (System.getProperty ("vertigo.metadata.cache.dir",
+      System.getProperty ("user.home") + File.separator + ".vertigo" + File.separator + "metadata"),
+      Integer.getInteger ("vertigo.metadata.cache.maxAge", MAX_AGE_DAYS),
+      Integer.getInteger ("vertigo.metadata.cache.maxFiles", MAX_FILES));
+
+  } // GridMetadataCache
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new cache with the specified disk cache settings.
+   *
+   * @param dir the directory for cache files, or an empty string for no
+   * disk cache.
+   * @param maxAgeDays the maximum age of an unused cache file in days.
+   * @param maxFiles the maximum number of cache files.
+   */
+  protected GridMetadataCache (
+    String dir,
+    int maxAgeDays,
+    int maxFiles
+  ) {
+
+    memoryMap = new ConcurrentHashMap<>();
+    this.maxAge = TimeUnit.DAYS.toMillis (maxAgeDays);
+    this.maxFiles = maxFiles;
+    if (!dir.isEmpty()) {
+      cacheDir = new File (dir);
+      LOGGER.fine ("Using metadata cache directory " + cacheDir);
+    } // if
+
+  } // GridMetadataCache
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the cached metadata for a dataset.
+   *
+   * @param datasetName the dataset name to look up.
+   *
+   * @return the metadata from memory or disk, or null if not cached.
+   */
+  public GridMetadata get (
+    String datasetName
+  ) {
+
+    GridMetadata metadata = memoryMap.get (datasetName);
+    if (metadata == null && cacheDir != null) {
+      File file = getFile (datasetName);
+      if (file.exists() && System.currentTimeMillis() - file.lastModified() > maxAge) {
+        LOGGER.fine ("Discarding expired metadata cache file " + file);
+        file.delete();
+      } // if
+      else if (file.exists()) {
+        try (var stream = new ObjectInputStream (new BufferedInputStream (new FileInputStream (file)))) {
+          metadata = (GridMetadata) stream.readObject();
+          if (!datasetName.equals (metadata.datasetName)) metadata = null;
+          else {
+            memoryMap.put (datasetName, metadata);
+            file.setLastModified (System.currentTimeMillis());
+            LOGGER.fine ("Read cached metadata for " + datasetName);
+          } // else
+        } // try
+        catch (IOException | ClassNotFoundException | ClassCastException e) {
+          LOGGER.log (Level.FINE, "Discarding unreadable metadata cache file " + file, e);
+          file.delete();
+        } // catch
+      } // if
+    } // if
+
+    return (metadata);
+
+  } // get
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Stores metadata for a dataset in the cache.  The disk file is written
+   * to a temporary file first and then moved into place, so that a
+   * partially written file is never read.
+   *
+   * @param datasetName the dataset name for the metadata.
+   * @param metadata the metadata to store.
+   */
+  public void put (
+    String datasetName,
+    GridMetadata metadata
+  ) {
+
+    memoryMap.put (datasetName, metadata);
+    if (cacheDir != null) {
+      File file = getFile (datasetName);
+      try {
+        cacheDir.mkdirs();
+        File temp = File.createTempFile ("metadata", ".tmp", cacheDir);
+        try (var stream = new ObjectOutputStream (new BufferedOutputStream (new FileOutputStream (temp)))) {
+          stream.writeObject (metadata);
+        } // try
+        Files.move (temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.fine ("Wrote cached metadata for " + datasetName);
+        trimFiles();
+      } // try
+      catch (IOException e) {
+        LOGGER.log (Level.WARNING, "Failed to write metadata cache file " + file, e);
+      } // catch
+    } // if
+
+  } // put
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Removes the metadata for a dataset from the cache.
+   *
+   * @param datasetName the dataset name to remove.
+   */
+  public void remove (
+    String datasetName
+  ) {
+
+    memoryMap.remove (datasetName);
+    if (cacheDir != null) getFile (datasetName).delete();
+
+  } // remove
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Removes the least recently used cache files so that the number of files
+   * is within the limit.  Files are marked as used by their modification
+   * time.
+   */
+  private void trimFiles () {
+
+    File[] files = cacheDir.listFiles ((dir, name) -> name.endsWith (EXTENSION));
+    if (files != null && files.length > maxFiles) {
+      Arrays.sort (files, Comparator.comparingLong (File::lastModified));
+      for (int i = 0; i < files.length - maxFiles; i++) {
+        LOGGER.fine ("Removing least recently used metadata cache file " + files[i]);
+        files[i].delete();
+      } // for
+    } // if
+
+  } // trimFiles
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Gets the cache file for a dataset, named using a hash of the dataset name. */
+  private File getFile (
+    String datasetName
+  ) {
+
+    String hash;
+    try {
+      byte[] digest = MessageDigest.getInstance ("SHA-1").digest (datasetName.getBytes (StandardCharsets.UTF_8));
+      StringBuilder buffer = new StringBuilder();
+      for (byte b : digest) buffer.append (String.format ("%02x", b));
+      hash = buffer.toString();
+    } // try
+    catch (NoSuchAlgorithmException e) { hash = Integer.toHexString (datasetName.hashCode()); }
+
+    return (new File (cacheDir, hash + EXTENSION));
+
+  } // getFile
+
+  /////////////////////////////////////////////////////////////////
+
+} // GridMetadataCache class
+
@@ -0,0 +1,389 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import java.util.concurrent.TimeUnit;
+
+import static noaa.coastwatch.vertigo.Helpers.isTrue;
+
+/**
+ * The <code>ImageAccessPlanner</code> class batches accesses to an image
+ * data source that arrive at around the same time.  Pending accesses with the
+ * same stride are merged into larger rectangular blocks, and a single access
+ * is performed for each block.  The block result is then split back into
+ * results for the original accesses using
+ * {@link ImageDataSource#subset}.  This helps with remote data sources where
+ * each access has a high latency, and many smaller accesses would be
+ * requested by concurrent threads.  The source being planned for should
+ * support the subset operation, otherwise each request is accessed again
+ * separately.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class ImageAccessPlanner<T> implements ImageDataSource<T> {
+
+  private static final Logger LOGGER = Logger.getLogger (ImageAccessPlanner.class.getName());
+
+  /** The time in milliseconds to collect accesses before planning. */
+  private static final long WINDOW_MILLIS = 25;
+
+  /** The maximum number of data values accessed in a merged block. */
+  private static final long MAX_BLOCK_VALUES = 4*1024*1024;
+
+  /** The maximum ratio of merged block area to the area of its members. */
+  private static final double MAX_WASTE_RATIO = 1.25;
+
+  /** The time in milliseconds between checks for cancellation while waiting. */
+  private static final long WAIT_MILLIS = 100;
+
+  // Variables
+  // ---------
+
+  /** The source of data for the block accesses. */
+  private ImageDataSource<T> source;
+
+  /** The list of requests waiting to be planned into blocks. */
+  private List<Request> pendingList;
+
+  /** The flag indicating that a planning run is scheduled. */
+  private boolean planScheduled;
+
+  /////////////////////////////////////////////////////////////////
+
+  /** A request holds a single access waiting to be performed. */
+  private class Request {
+
+    public ImageAccess access;
+    public BooleanSupplier cancelled;
+    public Block block;
+
+    public Request (ImageAccess access, BooleanSupplier cancelled) {
+      this.access = access;
+      this.cancelled = cancelled;
+    } // Request
+
+  } // Request class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * A block holds a merged access and the requests that it covers.  The
+   * thread of the first request in the block performs the block access on
+   * behalf of the other requests.
+   */
+  private class Block {
+
+    public ImageAccess access;
+    public List<Request> requestList = new ArrayList<>();
+    public long requestArea;
+    public ImageAccessResult result;
+    public IOException error;
+    public boolean done;
+
+    /** Creates a new block covering a single request. */
+    public Block (Request request) {
+      ImageTile tile = request.access.tile;
+      access = new ImageAccess (new ImageTile (tile.minX, tile.minY, tile.width, tile.height),
+        request.access.strideX, request.access.strideY);
+      requestList.add (request);
+      requestArea = (long) tile.width * tile.height;
+    } // Block
+
+    /** Determines if all requests in this block are cancelled. */
+    public boolean isCancelled() {
+      synchronized (ImageAccessPlanner.this) {
+        for (var request : requestList) if (!isTrue (request.cancelled)) return (false);
+        return (true);
+      } // synchronized
+    } // isCancelled
+
+    /** Adds a request to this block if the merged block is acceptable. */
+    public boolean merge (Request request) {
+
+      ImageTile tile = request.access.tile;
+      return (merge (tile, (long) tile.width * tile.height, List.of (request)));
+
+    } // merge
+
+    /** Adds the requests of another block to this block if the merged block is acceptable. */
+    public boolean merge (Block block) {
+
+      return (merge (block.access.tile, block.requestArea, block.requestList));
+
+    } // merge
+
+    /**
+     * Adds requests to this block if the merged block is acceptable.
+     *
+     * @param tile the tile covering the requests.
+     * @param tileRequestArea the total area of the requests.
+     * @param requests the requests to add.
+     *
+     * @return true if the requests were added, or false if not.
+     */
+    private boolean merge (ImageTile tile, long tileRequestArea, List<Request> requests) {
+
+      // Check that the tile samples the same pixels as the block, so
+      // that the requests can be extracted from the block data.
+      ImageTile blockTile = access.tile;
+      if ((tile.minX - blockTile.minX) % access.strideX != 0) return (false);
+      if ((tile.minY - blockTile.minY) % access.strideY != 0) return (false);
+
+      // Check the size of the union of the block and the tile, and how
+      // much of the union would be accessed without being requested.
+      int minX = Math.min (tile.minX, blockTile.minX);
+      int minY = Math.min (tile.minY, blockTile.minY);
+      int maxX = Math.max (tile.minX + tile.width, blockTile.minX + blockTile.width);
+      int maxY = Math.max (tile.minY + tile.height, blockTile.minY + blockTile.height);
+      ImageAccess union = new ImageAccess (new ImageTile (minX, minY, maxX - minX, maxY - minY),
+        access.strideX, access.strideY);
+      long unionValues = (long) union.getWidth() * union.getHeight();
+      if (unionValues > MAX_BLOCK_VALUES) return (false);
+      long area = requestArea + tileRequestArea;
+      long unionArea = (long) union.tile.width * union.tile.height;
+      if (unionArea > area*MAX_WASTE_RATIO) return (false);
+
+      access = union;
+      requestList.addAll (requests);
+      requestArea = area;
+
+      return (true);
+
+    } // merge
+
+  } // Block class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new planner.
+   *
+   * @param source the source of data to perform block accesses.
+   */
+  public ImageAccessPlanner (
+    ImageDataSource<T> source
+  ) {
+
+    this.source = source;
+    this.pendingList = new ArrayList<>();
+
+  } // ImageAccessPlanner
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Plans the pending requests into blocks and notifies the waiting
+   * threads.
+   */
+  private synchronized void plan () {
+
+    // Group the requests by stride, leaving out any that were cancelled while
+    // waiting.
+    Map<String, List<Request>> strideMap = new LinkedHashMap<>();
+    for (var request : pendingList) {
+      if (isTrue (request.cancelled)) continue;
+      String key = request.access.strideX + "," + request.access.strideY;
+      strideMap.computeIfAbsent (key, k -> new ArrayList<>()).add (request);
+    } // for
+    pendingList.clear();
+    planScheduled = false;
+
+    // Within each group, we merge greedily in row major order of the
+    // request tiles, which works well for the regular tilings used
+    // by facets.
+    int requests = 0;
+    int blocks = 0;
+    for (var requestList : strideMap.values()) {
+      requestList.sort (Comparator.comparingInt ((Request r) -> r.access.tile.minY)
+        .thenComparingInt (r -> r.access.tile.minX));
+      List<Block> blockList = new ArrayList<>();
+      for (var request : requestList) {
+        Block block = null;
+        for (var existing : blockList) {
+          if (existing.merge (request)) { block = existing; break; }
+        } // for
+        if (block == null) {
+          block = new Block (request);
+          blockList.add (block);
+        } // if
+      } // for
+
+      // Merging one request at a time can leave neighbouring blocks that
+      // only merge well as a whole, such as two rows of a tiling whose
+      // partial union would waste too much.  So we then merge the blocks
+      // with each other until no more merges are possible.
+      boolean merged = true;
+      while (merged) {
+        merged = false;
+        for (int i = 0; i < blockList.size() && !merged; i++) {
+          for (int j = i+1; j < blockList.size() && !merged; j++) {
+            if (blockList.get (i).merge (blockList.get (j))) {
+              blockList.remove (j);
+              merged = true;
+            } // if
+          } // for
+        } // for
+      } // while
+      for (var block : blockList) {
+        for (var request : block.requestList) request.block = block;
+      } // for
+      requests += requestList.size();
+      blocks += blockList.size();
+    } // for
+
+    if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Planned " + requests + " access(es) into " + blocks + " block(s)");
+    notifyAll();
+
+  } // plan
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public ImageAccessResult access (
+    ImageAccess access,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    // Add the request to the pending list and wait for it to be planned
+    // into a block.
+    Request request = new Request (access, cancelled);
+    Block block;
+    try {
+      synchronized (this) {
+        pendingList.add (request);
+        if (!planScheduled) {
+          planScheduled = true;
+          TaskService.getInstance().schedule (this::plan, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        } // if
+        while (request.block == null) {
+          if (isTrue (cancelled)) { pendingList.remove (request); return (null); }
+          wait (WAIT_MILLIS);
+        } // while
+        block = request.block;
+      } // synchronized
+    } // try
+    catch (InterruptedException e) { throw new IOException (e); }
+
+    // The first request in the block performs the access for the block.
+    // We only cancel the block access if every request is cancelled.
+    ImageAccessResult blockResult;
+    if (block.requestList.get (0) == request) {
+      IOException error = null;
+      try { blockResult = source.access (block.access, block::isCancelled); }
+      catch (IOException e) { blockResult = null; error = e; }
+      catch (RuntimeException e) { blockResult = null; error = new IOException (e); }
+      synchronized (this) {
+        block.result = blockResult;
+        block.error = error;
+        block.done = true;
+        notifyAll();
+      } // synchronized
+    } // if
+
+    // The other requests wait for the block access to complete.
+    else {
+      try {
+        synchronized (this) {
+          while (!block.done) {
+            if (isTrue (cancelled)) return (null);
+            wait (WAIT_MILLIS);
+          } // while
+        } // synchronized
+      } // try
+      catch (InterruptedException e) { throw new IOException (e); }
+    } // else
+
+    // Finally, split out the result for this request.
+    if (block.error != null) throw new IOException ("Block access failed for " + access, block.error);
+    ImageAccessResult result = null;
+    if (block.result != null && !isTrue (cancelled)) {
+      if (block.requestList.size() == 1) result = block.result;
+      else {
+        result = source.subset (block.result, access);
+        if (result == null) result = source.access (access, cancelled);
+      } // else
+    } // if
+
+    return (result);
+
+  } // access
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public void get (
+    ImageAccessResult result,
+    int x,
+    int y,
+    T data
+  ) {
+
+    source.get (result, x, y, data);
+
+  } // get
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public void getMany (
+    ImageAccessResult result,
+    ImageCoordinateIterator iter,
+    T data
+  ) {
+
+    source.getMany (result, iter, data);
+
+  } // getMany
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public void getAll (
+    ImageAccessResult result,
+    T data
+  ) {
+
+    source.getAll (result, data);
+
+  } // getAll
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public T getDirect (
+    ImageAccessResult result
+  ) {
+
+    return (source.getDirect (result));
+
+  } // getDirect
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public ImageAccessResult subset (
+    ImageAccessResult result,
+    ImageAccess access
+  ) {
+
+    return (source.subset (result, access));
+
+  } // subset
+
+  /////////////////////////////////////////////////////////////////
+
+} // ImageAccessPlanner class
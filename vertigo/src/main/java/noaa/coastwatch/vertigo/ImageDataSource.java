@@ -8,6 +8,7 @@ package noaa.coastwatch.vertigo;
 
 import java.io.IOException;
 import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The <code>ImageDataSource</code> interface is used by classes that produce
@@ -48,6 +49,41 @@ public interface ImageDataSource<T> {
     BooleanSupplier cancelled
   ) throws IOException;
 
+  /**
+   * Starts retrieving data within the specified access region and
+   * subsampling interval without blocking the calling thread.  Cancelling
+   * the returned future cancels the access.  The default implementation
+   * runs {@link #access} as an I/O task in the {@link TaskService},
+   * checking the future for cancellation.  Sources that can wait for data
+   * without holding a thread should override this method.
+   *
+   * @param access the data access region.
+   *
+   * @return the future for the result object to use in calls to
+   * {@link #get} and {@link #getMany}.  The future completes exceptionally
+   * with an {@link IOException} if the access failed, or is cancelled if
+   * the access was cancelled.
+   *
+   * @since 0.8
+   */
+  default CompletableFuture<ImageAccessResult> accessAsync (
+    ImageAccess access
+  ) {
+
+    CompletableFuture<ImageAccessResult> future = new CompletableFuture<>();
+    TaskService.getInstance().submitIO (() -> {
+      try {
+        ImageAccessResult result = access (access, future::isCancelled);
+        if (result == null) future.cancel (false);
+        else future.complete (result);
+      } // try
+      catch (Throwable e) { future.completeExceptionally (e); }
+    }, future::isCancelled);
+
+    return (future);
+
+  } // accessAsync
+
   /**
    * Retrieves the data at the specified image coordinates.
    *
@@ -96,5 +132,53 @@ public interface ImageDataSource<T> {
   
   } // getAll
 
+  /**
+   * Gets all the data in an access result without copying, if the source
+   * stores the data in the same layout that {@link #getAll} would produce
+   * (default none).  The returned array is a view of the source storage
+   * and must be treated as read-only.
+   *
+   * @param result the result object from a call to {@link #access}.
+   *
+   * @return the data values in row major order, or null if the data is not
+   * available without copying, in which case {@link #getAll} should be used.
+   *
+   * @since 0.8
+   */
+  default T getDirect (
+    ImageAccessResult result
+  ) {
+
+    return (null);
+
+  } // getDirect
+
+  /**
+   * Creates a result for a smaller access contained within the access of an
+   * existing result (default none).  The subset result shares data with the
+   * existing result where possible rather than accessing the data again.
+   * The subset access must have the same stride values as the existing
+   * access, and its region must start on a pixel that was sampled by the
+   * existing access.
+   *
+   * @param result the existing result object from a call to {@link #access}.
+   * @param access the subset access region.
+   *
+   * @return the result object to use in calls to {@link #get},
+   * {@link #getMany}, and {@link #getAll} for the subset access, or null if
+   * the source doesn't support subsets, in which case {@link #access}
+   * should be used for the subset access.
+   *
+   * @since 0.8
+   */
+  default ImageAccessResult subset (
+    ImageAccessResult result,
+    ImageAccess access
+  ) {
+
+    return (null);
+
+  } // subset
+
 } // ImageDataSource interface
 
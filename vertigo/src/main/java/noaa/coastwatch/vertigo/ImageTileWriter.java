@@ -8,8 +8,11 @@ package noaa.coastwatch.vertigo;
 
 import javafx.scene.image.WritableImage;
 import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
 import java.io.IOException;
 
+import static noaa.coastwatch.vertigo.Helpers.isTrue;
+
 /**
  * The <code>ImageTileWriter</code> interface is implemented by classes
  * that provide image data in rectangular regions from a data source.
@@ -43,4 +46,92 @@ public interface ImageTileWriter {
     BooleanSupplier cancelled
   ) throws IOException;
 
+  /**
+   * Writes a tile of image data to the writable image and records which
+   * pixels contain valid data.  By default, pixels are valid if they are
+   * not fully transparent.
+   *
+   * @param tile the rectangular region represented by the image.
+   * @param image the image to write image data (modified).
+   * @param startX the starting x location in the image to write data to.
+   * @param startY the starting y location in the image to write data to.
+   * @param width the width of the image to write.
+   * @param height the height of the image to write.
+   * @param valid the array of width*height flags to fill in row major order,
+   * true for each pixel with valid data and false for missing data.
+   * @param cancelled the method to check regularly to discover if the
+   * write operation has been cancelled, or null to not check.
+   *
+   * @throws IOException if an error occurred writing the image.
+   *
+   * @since 0.8
+   */
+  default void write (
+    ImageTile tile,
+    WritableImage image,
+    int startX,
+    int startY,
+    int width,
+    int height,
+    boolean[] valid,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    write (tile, image, startX, startY, width, height, cancelled);
+    if (!isTrue (cancelled)) {
+      var reader = image.getPixelReader();
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          valid[y*width + x] = ((reader.getArgb (startX + x, startY + y) & 0xff000000) != 0);
+        } // for
+      } // for
+    } // if
+
+  } // write
+
+  /**
+   * Writes a tile of image data to the writable image asynchronously, so
+   * that the caller doesn't hold a thread while the data is being read.
+   * The default implementation runs {@link #write} as a
+   * {@link TaskService} I/O task.
+   *
+   * @param tile the rectangular region represented by the image.
+   * @param image the image to write image data (modified).
+   * @param startX the starting x location in the image to write data to.
+   * @param startY the starting y location in the image to write data to.
+   * @param width the width of the image to write.
+   * @param height the height of the image to write.
+   * @param valid the array of width*height flags to fill in row major order
+   * as in {@link #write(ImageTile,WritableImage,int,int,int,int,boolean[],BooleanSupplier)},
+   * or null to not record valid pixels.
+   *
+   * @return the future that completes when the image is written.
+   * Cancelling the future cancels the write operation.
+   *
+   * @since 0.8
+   */
+  default CompletableFuture<Void> writeAsync (
+    ImageTile tile,
+    WritableImage image,
+    int startX,
+    int startY,
+    int width,
+    int height,
+    boolean[] valid
+  ) {
+
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    TaskService.getInstance().submitIO (() -> {
+      try {
+        if (valid != null) write (tile, image, startX, startY, width, height, valid, future::isCancelled);
+        else write (tile, image, startX, startY, width, height, future::isCancelled);
+        future.complete (null);
+      } // try
+      catch (Throwable e) { future.completeExceptionally (e); }
+    }, future::isCancelled);
+
+    return (future);
+
+  } // writeAsync
+
 } // ImageTileWriter interface
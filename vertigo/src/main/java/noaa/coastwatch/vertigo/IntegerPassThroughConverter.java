@@ -32,6 +32,11 @@ public class IntegerPassThroughConverter implements DataConverter<int[], int[]>
 
   /////////////////////////////////////////////////////////////////
 
+  @Override
+  public boolean isMissing (int[] src, int srcOffset) { return ((src[srcOffset] & 0xff000000) == 0); }
+
+  /////////////////////////////////////////////////////////////////
+
   @Override
   public int[] allocateSrc (int length) { return (new int[length]); }
   
@@ -16,19 +16,35 @@ import ucar.ma2.Index;
 import ucar.ma2.Section;
 
 import java.io.IOException;
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import java.util.logging.Level;
 import java.util.function.BooleanSupplier;
 
 import static noaa.coastwatch.vertigo.Helpers.isTrue;
 
 /**
  * The <code>NetCDFDataSource</code> class provides data values from a 2D slice
- * of a variable in a NetCDF dataset.
+ * of a variable in a NetCDF dataset.  Datasets are opened through the shared
+ * NetCDF file cache, whose sizes may be set using the
+ * <code>vertigo.netcdf.cache.min</code>, <code>vertigo.netcdf.cache.max</code>,
+ * and <code>vertigo.netcdf.cache.period</code> system properties (default
+ * 256, 512, and 30 seconds).  The cache should be shut down using
+ * {@link #shutdown} when the application exits.  Each source keeps a few
+ * datasets acquired from the cache for reuse between accesses, and returns
+ * them to the cache after they've been idle for ten seconds.
  *
  * @author Peter Hollemans
  * @since 0.5
  */
-public class NetCDFDataSource implements ImageDataSource<double[]> {
+public class NetCDFDataSource implements ImageDataSource<double[]>, Closeable {
 
   private static final Logger LOGGER = Logger.getLogger (NetCDFDataSource.class.getName());
 
@@ -44,19 +60,62 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
   /** The 2D slice of the variable to access. */
   private int[] slice;
 
+  /** The dataset URL, or null if not yet resolved. */
+  private volatile DatasetUrl url;
+
+  /** The idle handles available for accesses, most recently used first. */
+  private Deque<SourceHandle> handleCache;
+
+  /** The scheduled release of idle handles, or null if none. */
+  private Future<?> releaseFuture;
+
+  /** The access statistics for reporting. */
+  private AtomicLong accessCount = new AtomicLong();
+  private AtomicLong setupNanos = new AtomicLong();
+  private AtomicLong readNanos = new AtomicLong();
+
+  /** The maximum number of idle handles to keep. */
+  private static final int MAX_IDLE_HANDLES = 4;
+
+  /** The time in milliseconds after which an idle handle is released. */
+  private static final long HANDLE_IDLE_TIME = 10000;
+
+  /** The file cache initialized flag, true if we initialized the cache. */
+  private static boolean isCacheInitialized;
+
   /////////////////////////////////////////////////////////////////
 
-  static {
+  /** Initializes the NetCDF file cache if not already initialized. */
+  private static synchronized void initFileCache () {
 
-    var fileCache = NetcdfDatasets.getNetcdfFileCache();
-    if (fileCache == null) {
-      LOGGER.fine ("Initializing NetCDF file cache");
-      NetcdfDatasets.initNetcdfFileCache (256, 512, 30);
+    if (!isCacheInitialized && NetcdfDatasets.getNetcdfFileCache() == null) {
+      int min = Integer.getInteger ("vertigo.netcdf.cache.min", 256);
+      int max = Integer.getInteger ("vertigo.netcdf.cache.max", 512);
+      int period = Integer.getInteger ("vertigo.netcdf.cache.period", 30);
+      LOGGER.fine ("Initializing NetCDF file cache with min " + min + ", max " + max + ", period " + period + " s");
+      NetcdfDatasets.initNetcdfFileCache (min, max, period);
+      isCacheInitialized = true;
     } // if
 
-    // TODO: Where should we call NetcdfDatasets.shutdown() ?
-  
-  } // static
+  } // initFileCache
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Shuts down the NetCDF file cache, closing any cached files.  This
+   * should be called once when the application exits.
+   *
+   * @since 0.8
+   */
+  public static synchronized void shutdown () {
+
+    if (isCacheInitialized) {
+      LOGGER.fine ("Shutting down NetCDF file cache");
+      NetcdfDatasets.shutdown();
+      isCacheInitialized = false;
+    } // if
+
+  } // shutdown
 
   /////////////////////////////////////////////////////////////////
 
@@ -79,6 +138,8 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
     this.datasetName = datasetName;
     this.varName = varName;
     this.slice = slice;
+    this.handleCache = new ArrayDeque<>();
+    initFileCache();
   
   } // NetCDFDataSource
 
@@ -87,7 +148,7 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
   /** Holds data for cancelling a NetCDF dataset task. */
   private static class NetCDFCancelTask implements CancelTask {
   
-    private BooleanSupplier cancelled;
+    private volatile BooleanSupplier cancelled;
     private boolean done;
   
     @Override
@@ -97,7 +158,7 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
     public void setDone (boolean done) { this.done = done; }
   
     @Override
-    public boolean isCancel () { return (cancelled.getAsBoolean()); }
+    public boolean isCancel () { return (isTrue (cancelled)); }
 
     @Override
     public void setError (String msg) { }
@@ -105,12 +166,190 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
     @Override
     public void setProgress (String msg, int progress) { }
   
-    public NetCDFCancelTask (BooleanSupplier cancelled) { this.cancelled = cancelled; }
+    public void setSupplier (BooleanSupplier cancelled) { this.cancelled = cancelled; }
   
   } // NetCDFCancelTask
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Holds a dataset acquired from the file cache and the variable found in
+   * it, so that both can be reused across accesses.
+   */
+  private static class SourceHandle {
+
+    public NetcdfDataset ncDataset;
+    public Variable variable;
+    public NetCDFCancelTask cancelTask;
+    public long lastUsed;
+
+  } // SourceHandle
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Acquires a handle for an access, either from the idle handles or by
+   * acquiring the dataset from the file cache.
+   *
+   * @param cancelled the method to check for cancellation, or null.
+   *
+   * @return the handle to use.
+   *
+   * @throws IOException if an error occurred acquiring the dataset.
+   */
+  private SourceHandle acquireHandle (
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    SourceHandle handle;
+    synchronized (handleCache) { handle = handleCache.pollFirst(); }
+
+    if (handle == null) {
+
+      // The dataset URL is resolved only once, since it may involve a
+      // lookup of the dataset type.
+      if (url == null) url = DatasetUrl.findDatasetUrl (datasetName);
+
+      handle = new SourceHandle();
+      handle.cancelTask = new NetCDFCancelTask();
+      handle.cancelTask.setSupplier (cancelled);
+      handle.ncDataset = NetcdfDatasets.acquireDataset (url, handle.cancelTask);
+      handle.variable = handle.ncDataset.findVariable (handle.ncDataset.getRootGroup(), varName);
+      if (handle.variable == null) {
+        handle.ncDataset.close();
+        throw new IOException ("Variable " + varName + " not found in " + datasetName);
+      } // if
+
+    } // if
+    else handle.cancelTask.setSupplier (cancelled);
+
+    return (handle);
+
+  } // acquireHandle
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Releases a handle after an access, keeping it for reuse if there's room
+   * or otherwise returning the dataset to the file cache.  Handles kept for
+   * reuse are returned to the file cache once they've been idle for a
+   * while, so that sources not in use don't hold on to datasets.
+   *
+   * @param handle the handle to release.
+   */
+  private void releaseHandle (
+    SourceHandle handle
+  ) {
+
+    handle.cancelTask.setSupplier (null);
+    handle.lastUsed = System.nanoTime();
+    boolean keep;
+    synchronized (handleCache) {
+      keep = (handleCache.size() < MAX_IDLE_HANDLES);
+      if (keep) {
+        handleCache.addFirst (handle);
+        scheduleRelease();
+      } // if
+    } // synchronized
+    if (!keep) closeHandle (handle);
+
+  } // releaseHandle
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Schedules the release of idle handles if not already scheduled.  The
+   * caller must hold the handle cache lock.
+   */
+  private void scheduleRelease () {
+
+    if (releaseFuture == null && !handleCache.isEmpty()) {
+      long idle = (System.nanoTime() - handleCache.peekLast().lastUsed) / 1000000;
+      long delay = Math.max (0, HANDLE_IDLE_TIME - idle);
+      releaseFuture = TaskService.getInstance().schedule (this::releaseIdleHandles, delay, TimeUnit.MILLISECONDS);
+    } // if
+
+  } // scheduleRelease
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Returns handles idle for longer than the idle time to the file cache. */
+  private void releaseIdleHandles () {
+
+    List<SourceHandle> released = new ArrayList<>();
+    synchronized (handleCache) {
+      releaseFuture = null;
+      long now = System.nanoTime();
+      while (!handleCache.isEmpty() && (now - handleCache.peekLast().lastUsed) / 1000000 >= HANDLE_IDLE_TIME)
+        released.add (handleCache.pollLast());
+      scheduleRelease();
+    } // synchronized
+
+    if (!released.isEmpty()) {
+      LOGGER.fine ("Releasing " + released.size() + " idle handle(s) for " + varName + " in " + datasetName);
+      TaskService.getInstance().submitIO (() -> released.forEach (this::closeHandle), null);
+    } // if
+
+  } // releaseIdleHandles
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Returns a handle dataset to the file cache with a warning on error. */
+  private void closeHandle (
+    SourceHandle handle
+  ) {
+
+    try { handle.ncDataset.close(); }
+    catch (IOException e) {
+      LOGGER.log (Level.WARNING, "Close failed for NetCDF dataset " + datasetName, e);
+    } // catch
+
+  } // closeHandle
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Releases the datasets held by this source back to the file cache.  The
+   * source may still be used after closing.
+   *
+   * @since 0.8
+   */
+  @Override
+  public void close () {
+
+    Deque<SourceHandle> handles;
+    synchronized (handleCache) {
+      handles = new ArrayDeque<> (handleCache);
+      handleCache.clear();
+      if (releaseFuture != null) { releaseFuture.cancel (false); releaseFuture = null; }
+    } // synchronized
+    handles.forEach (this::closeHandle);
+    LOGGER.fine ("Closed data source for " + varName + " in " + datasetName + ": " + getAccessStats());
+
+  } // close
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets a summary of the access statistics for this source, useful for
+   * logging.  The setup time is the time spent before reading data in each
+   * access, such as acquiring the dataset and finding the variable.
+   *
+   * @return the summary string.
+   *
+   * @since 0.8
+   */
+  public String getAccessStats () {
+
+    long count = accessCount.get();
+    double setup = (count == 0 ? 0 : setupNanos.get() / 1e6 / count);
+    double read = (count == 0 ? 0 : readNanos.get() / 1e6 / count);
+    return (String.format ("accesses %d, mean setup %.3f ms, mean read %.3f ms", count, setup, read));
+
+  } // getAccessStats
+
+  /////////////////////////////////////////////////////////////////
+
   /** The context data from a call to {@link #access}. */
   private static class NetCDFDataContext {
 
@@ -127,6 +366,7 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
     BooleanSupplier cancelled
   ) {
   
+    long startTime = System.nanoTime();
     int rank = slice.length;
     int[] start = new int[rank];
     int[] length = new int[rank];
@@ -152,29 +392,39 @@ public class NetCDFDataSource implements ImageDataSource<double[]> {
 
     } // for
 
-    DatasetUrl url = null;
-    try { url = DatasetUrl.findDatasetUrl (datasetName); }
-    catch (IOException e) { throw new RuntimeException (e); }
-
-    CancelTask task = (cancelled != null ? new NetCDFCancelTask (cancelled) : null);
-
     ImageAccessResult result = null;
-    try (NetcdfDataset ncDataset = NetcdfDatasets.acquireDataset (url, task)) {
+    SourceHandle handle = null;
+    try {
 
-      var root = ncDataset.getRootGroup();
-      Variable variable = ncDataset.findVariable (root, varName);
+      handle = acquireHandle (cancelled);
       Section section = new Section (start, length, stride);
 
       if (!isTrue (cancelled)) {
+        long readTime = System.nanoTime();
         NetCDFDataContext context = new NetCDFDataContext();
-        context.dataArray = variable.read (section);
+        context.dataArray = handle.variable.read (section);
         context.valueIndex = context.dataArray.getIndex();
         result = new ImageAccessResult (access, context);
+
+        // Track the time spent setting up the access versus reading.
+        long endTime = System.nanoTime();
+        accessCount.incrementAndGet();
+        setupNanos.addAndGet (readTime - startTime);
+        readNanos.addAndGet (endTime - readTime);
+        if (LOGGER.isLoggable (Level.FINER)) {
+          LOGGER.finer (String.format ("Access %s setup %.3f ms, read %.3f ms", access,
+            (readTime - startTime) / 1e6, (endTime - readTime) / 1e6));
+        } // if
       } // if
 
+      releaseHandle (handle);
+
     } // try
     
-    catch (Exception e) { throw new RuntimeException (e); }
+    catch (Exception e) {
+      if (handle != null) closeHandle (handle);
+      throw new RuntimeException (e);
+    } // catch
   
     return (result);
     
@@ -7,18 +7,32 @@
 package noaa.coastwatch.vertigo;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Closeable;
+import java.io.File;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.Collections;
+import java.util.WeakHashMap;
 import java.util.Date;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.function.BooleanSupplier;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import noaa.coastwatch.vertigo.coord.EllipsoidMercatorBuilder;
 
@@ -32,6 +46,7 @@ import ucar.nc2.time.CalendarDate;
 import ucar.nc2.dataset.CoordinateAxis1D;
 import ucar.nc2.Attribute;
 import ucar.ma2.Range;
+import ucar.ma2.Section;
 import ucar.ma2.InvalidRangeException;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.Variable;
@@ -59,16 +74,69 @@ public class NetCDFDataset implements Dataset, Closeable {
   
   /** The NetCDF dataset, possibly remote. */
   private String datasetName;
+
+  /** The host of the dataset for limiting concurrent I/O. */
+  private String host;
   
   /** The translator for geographic (lat,lon) to image (x,y,z). */
   private GeoCoordinateTranslator trans;
 
-  /** The cache of available handles to use for operations. */
-  private List<DatasetHandle> handleCache;
+  /** The idle handles available for operations, most recently used first. */
+  private Deque<DatasetHandle> handleCache;
+
+  /** The permits for handles in use, one per busy handle. */
+  private HandlePermits handlePermits;
+
+  /** The maximum number of open handles. */
+  private int maxHandles;
+
+  /** The time in milliseconds after which an idle handle is closed. */
+  private long handleIdleTime = DEFAULT_HANDLE_IDLE_TIME;
+
+  /** The number of open handles, both idle and busy. */
+  private int openHandles;
+
+  /** The number of handles being opened ahead of time. */
+  private int prewarmingHandles;
+
+  /** The handle statistics for reporting. */
+  private int peakOpenHandles;
+  private long handlesOpened;
+  private long handlesEvicted;
+  private long handleWaits;
+  private long handleWaitNanos;
+  private long maxHandleWaitNanos;
+
+  /** The scheduled eviction of idle handles, or null if none. */
+  private Future<?> evictionFuture;
+
+  /** The prewarm flag, true if handles have been opened ahead of time. */
+  private boolean isPrewarmed;
+
+  /** The grid metadata, or null if not yet read. */
+  private GridMetadata metadata;
 
   /** The closed flag, true if this dataset is closed. */
   private boolean isClosed;
 
+  /** The maximum number of bands to read in parallel for a large access. */
+  private int parallelBands = 1;
+
+  /** The minimum number of data values in a parallel band. */
+  private static final long MIN_BAND_VALUES = 1024*1024;
+
+  /** The default maximum number of open handles. */
+  private static final int DEFAULT_MAX_HANDLES = Integer.getInteger ("vertigo.netcdf.maxHandles", 8);
+
+  /** The default time in milliseconds after which an idle handle is closed. */
+  private static final long DEFAULT_HANDLE_IDLE_TIME = 60000;
+
+  /** The time in milliseconds between cancellation checks while waiting for a handle. */
+  private static final long HANDLE_WAIT_POLL = 100;
+
+  /** The set of datasets not yet closed, held weakly. */
+  private static final Set<NetCDFDataset> openSet = Collections.newSetFromMap (new WeakHashMap<>());
+
   /////////////////////////////////////////////////////////////////
 
   static {
@@ -81,8 +149,185 @@ public class NetCDFDataset implements Dataset, Closeable {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Sets the maximum number of row bands to read in parallel for large data
+   * accesses (default 1).  Splitting a large access into bands can improve
+   * throughput for remote datasets on high latency connections, since each
+   * band is read using its own dataset handle and connection, and only
+   * failed bands are retried.  Bands contain at least 1M data values, so
+   * smaller accesses are read in one request.
+   *
+   * @param bands the maximum number of bands, or 1 to not split accesses.
+   *
+   * @since 0.8
+   */
+  public void setParallelBands (int bands) { this.parallelBands = Math.max (1, bands); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the maximum number of dataset handles that may be open at once
+   * (default 8, or the <code>vertigo.netcdf.maxHandles</code> system
+   * property).  Each handle holds an open dataset, and for remote datasets
+   * a connection to the server.  Operations wait in order for a handle
+   * when all handles are busy.
+   *
+   * @param max the maximum number of handles.
+   *
+   * @since 0.8
+   */
+  public void setMaxHandles (int max) {
+
+    max = Math.max (1, max);
+    synchronized (handleCache) {
+      int delta = max - maxHandles;
+      if (delta > 0) handlePermits.release (delta);
+      else if (delta < 0) handlePermits.reduce (-delta);
+      maxHandles = max;
+    } // synchronized
+
+  } // setMaxHandles
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the time after which an idle dataset handle is closed (default
+   * 60 seconds).
+   *
+   * @param millis the idle time in milliseconds.
+   *
+   * @since 0.8
+   */
+  public void setHandleIdleTime (long millis) {
+
+    synchronized (handleCache) { this.handleIdleTime = Math.max (1, millis); }
+
+  } // setHandleIdleTime
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of open dataset handles.
+   *
+   * @return the number of handles, both idle and in use.
+   *
+   * @since 0.8
+   */
+  public int getOpenHandles () {
+
+    synchronized (handleCache) { return (openHandles); }
+
+  } // getOpenHandles
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of dataset handles in use.
+   *
+   * @return the number of busy handles.
+   *
+   * @since 0.8
+   */
+  public int getBusyHandles () {
+
+    synchronized (handleCache) { return (openHandles - handleCache.size()); }
+
+  } // getBusyHandles
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the total time that operations have waited for a dataset handle
+   * because all handles were busy.
+   *
+   * @return the total wait time in milliseconds.
+   *
+   * @since 0.8
+   */
+  public long getHandleWaitTime () {
+
+    synchronized (handleCache) { return (handleWaitNanos / 1000000); }
+
+  } // getHandleWaitTime
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets a summary of the dataset handle statistics, useful for logging.
+   *
+   * @return the summary string.
+   *
+   * @since 0.8
+   */
+  public String getHandleStats () {
+
+    synchronized (handleCache) {
+      return ("open " + openHandles + "/" + maxHandles +
+        ", busy " + (openHandles - handleCache.size()) +
+        ", peak " + peakOpenHandles +
+        ", opened " + handlesOpened +
+        ", evicted " + handlesEvicted +
+        ", waits " + handleWaits +
+        ", wait time " + handleWaitNanos/1000000 + " ms" +
+        ", max wait " + maxHandleWaitNanos/1000000 + " ms");
+    } // synchronized
+
+  } // getHandleStats
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Opens dataset handles in the background so that they're ready for the
+   * first operations.  Handles are only opened while the total number of
+   * open handles is less than the count, and no operations are kept waiting.
+   *
+   * @param count the number of handles to have open.
+   *
+   * @since 0.8
+   */
+  public void prewarmHandles (int count) {
+
+    for (int i = 0; i < count; i++) {
+      TaskService.getInstance().submitIO (() -> {
+
+        // Reserve a handle to open, if we need one and a permit is free.
+        boolean reserved = false;
+        try {
+          if (handlePermits.tryAcquire (0, TimeUnit.MILLISECONDS)) {
+            synchronized (handleCache) {
+              reserved = (!isClosed && openHandles + prewarmingHandles < count);
+              if (reserved) prewarmingHandles++;
+            } // synchronized
+            if (!reserved) handlePermits.release();
+          } // if
+        } // try
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+        // Open the handle and release it to the idle handles.
+        if (reserved) {
+          try {
+            DatasetHandle handle = null;
+            try { handle = openHandle (null); }
+            finally {
+              synchronized (handleCache) { prewarmingHandles--; }
+              if (handle == null) handlePermits.release();
+            } // finally
+            if (handle != null) handle.close();
+          } // try
+          catch (IOException e) {
+            LOGGER.log (Level.FINE, "Failed to prewarm handle for " + datasetName, e);
+          } // catch
+        } // if
+
+      }, null);
+    } // for
+
+  } // prewarmHandles
+
+  /////////////////////////////////////////////////////////////////
+
   /** Closes a NetCDF dataset with a warning on I/O exception. */
-  private void closeDataset (NetcdfDataset ncDataset) {
+  void closeDataset (NetcdfDataset ncDataset) {
   
     try { ncDataset.close(); }
     catch (IOException e) {
@@ -93,6 +338,23 @@ public class NetCDFDataset implements Dataset, Closeable {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Closes all the datasets that are still open.  This should be called
+   * once when the application exits.
+   *
+   * @since 0.8
+   */
+  public static void closeAll () {
+
+    List<NetCDFDataset> datasets;
+    synchronized (openSet) { datasets = new ArrayList<> (openSet); }
+    if (!datasets.isEmpty()) LOGGER.fine ("Closing " + datasets.size() + " open dataset(s)");
+    for (var dataset : datasets) dataset.close();
+
+  } // closeAll
+
+  /////////////////////////////////////////////////////////////////
+
   @Override
   public void close() {
 
@@ -107,12 +369,16 @@ public class NetCDFDataset implements Dataset, Closeable {
         for (var handle : handleCache) {
           closeDataset (handle.ncDataset);
         } // for
+        openHandles -= handleCache.size();
+        if (evictionFuture != null) { evictionFuture.cancel (false); evictionFuture = null; }
 
         // Mark this dataset as closed and clear the cache.  We don't want
         // to null the cache because we're using it for synchronized
         // statements all over the palce.
         handleCache.clear();
         isClosed = true;
+        synchronized (openSet) { openSet.remove (this); }
+        LOGGER.fine ("Closed dataset " + datasetName + " with handle stats: " + getHandleStats());
   
       } // if
   
@@ -123,11 +389,12 @@ public class NetCDFDataset implements Dataset, Closeable {
   /////////////////////////////////////////////////////////////////
 
   /** Holds a reference to a dataset and allows for auto closing. */
-  private class DatasetHandle implements AutoCloseable {
+  class DatasetHandle implements AutoCloseable {
   
     public NetCDFCancelTask cancelTask;
     public NetcdfDataset ncDataset;
     public GridDataset gridDataset;
+    public long lastUsed;
     
     @Override
     public void close () {
@@ -137,12 +404,20 @@ public class NetCDFDataset implements Dataset, Closeable {
         // Null the supplier for the next handle user.  Then, only if this
         // dataset isn't closed, put this handle back into the cache.
         cancelTask.setSupplier (null);
-        if (!isClosed) handleCache.add (this);
-        else closeDataset (this.ncDataset);
+        lastUsed = System.nanoTime();
+        if (!isClosed) {
+          handleCache.addFirst (this);
+          scheduleEviction();
+        } // if
+        else {
+          closeDataset (this.ncDataset);
+          openHandles--;
+        } // else
 
         if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Released dataset handle for " + datasetName);
 
       } // synchronized
+      handlePermits.release();
     
     } // close
 
@@ -170,375 +445,1209 @@ public class NetCDFDataset implements Dataset, Closeable {
     @Override
     public boolean isCancel () { return (supplier != null && supplier.getAsBoolean()); }
 
-    @Override
-    public void setError (String msg) { }
-    
-    @Override
-    public void setProgress (String msg, int progress) { }
-  
-    public void setSupplier (BooleanSupplier supplier) { this.supplier = supplier; }
+    @Override
+    public void setError (String msg) { }
+    
+    @Override
+    public void setProgress (String msg, int progress) { }
+  
+    public void setSupplier (BooleanSupplier supplier) { this.supplier = supplier; }
+
+  } // NetCDFCancelTask
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Holds the fair permits for using handles, which may be reduced. */
+  private static class HandlePermits extends Semaphore {
+
+    private static final long serialVersionUID = 1L;
+
+    public HandlePermits (int permits) { super (permits, true); }
+
+    public void reduce (int reduction) { reducePermits (reduction); }
+
+  } // HandlePermits
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Acquires and returns an instance of a dataset handle that is not
+   * currently in use by another thread.  The most recently used idle handle
+   * is returned if available, otherwise one is created if the maximum
+   * number of handles is not yet open.  If all handles are busy, the
+   * calling thread waits for a handle in order of arrival.
+   *
+   * @param supplier the supplier for booleans for the cancel task, or null
+   * for none.
+   *
+   * @return the acquired handle or null if the operation was cancelled while
+   * acquiring the handle.
+   *
+   * @throws IOException if the dataset is closed and so no handles can be
+   * acquired.
+   */
+  DatasetHandle acquireHandle (BooleanSupplier supplier) throws IOException {
+
+    synchronized (handleCache) {
+      if (isClosed) throw new IOException ("Cannot acquire handle for closed dataset");
+    } // synchronized
+
+    // Wait for a permit to use a handle, checking periodically if we've
+    // been cancelled.  Note that a zero timeout is used for the first
+    // attempt so that the permits are granted fairly.
+    boolean acquired;
+    try {
+      acquired = handlePermits.tryAcquire (0, TimeUnit.MILLISECONDS);
+      if (!acquired) {
+        long start = System.nanoTime();
+        while (!acquired && !isTrue (supplier))
+          acquired = handlePermits.tryAcquire (HANDLE_WAIT_POLL, TimeUnit.MILLISECONDS);
+        long wait = System.nanoTime() - start;
+        synchronized (handleCache) {
+          handleWaits++;
+          handleWaitNanos += wait;
+          maxHandleWaitNanos = Math.max (maxHandleWaitNanos, wait);
+        } // synchronized
+      } // if
+    } // try
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException ("Interrupted waiting for handle to " + datasetName);
+    } // catch
+    if (!acquired) return (null);
+
+    // Now take an idle handle, or open a new one.  If anything goes wrong,
+    // we give back the permit.
+    DatasetHandle handle = null;
+    try {
+
+      synchronized (handleCache) {
+        if (isClosed) throw new IOException ("Cannot acquire handle for closed dataset");
+        handle = handleCache.pollFirst();
+        if (handle != null) {
+          handle.cancelTask.setSupplier (supplier);
+          if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Retrieved dataset handle for " + datasetName);
+        } // if
+      } // synchronized
+
+      if (handle == null) handle = openHandle (supplier);
+
+    } // try
+    finally {
+      if (handle == null) handlePermits.release();
+    } // finally
+
+    return (handle);
+
+  } // acquireHandle
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Opens a new dataset handle, making sure we aren't cancelled while
+   * opening.  The caller must hold a handle permit.
+   *
+   * @param supplier the supplier for booleans for the cancel task, or null
+   * for none.
+   *
+   * @return the new handle or null if cancelled while opening.
+   *
+   * @throws IOException if an error occurred opening the dataset.
+   */
+  private DatasetHandle openHandle (BooleanSupplier supplier) throws IOException {
+
+    DatasetHandle handle = null;
+    var cancelTask = new NetCDFCancelTask();
+    cancelTask.setSupplier (supplier);
+    var ncDataset = openDataset (cancelTask);
+    if (!cancelTask.isCancel()) {
+      var gridDataset = openGridDataset (ncDataset);
+      if (!cancelTask.isCancel()) {
+        handle = new DatasetHandle();
+        handle.cancelTask = cancelTask;
+        handle.ncDataset = ncDataset;
+        handle.gridDataset = gridDataset;
+        synchronized (handleCache) {
+          openHandles++;
+          handlesOpened++;
+          peakOpenHandles = Math.max (peakOpenHandles, openHandles);
+        } // synchronized
+        if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Created new dataset handle for " + datasetName);
+      } // if
+    } // if
+    if (handle == null) closeDataset (ncDataset);
+
+    return (handle);
+
+  } // openHandle
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Opens the NetCDF dataset for a new handle.
+   *
+   * @param cancelTask the task to check for cancellation while opening.
+   *
+   * @return the opened dataset.
+   *
+   * @throws IOException if an error occurred opening the dataset.
+   */
+  NetcdfDataset openDataset (CancelTask cancelTask) throws IOException {
+
+    return (TaskService.getInstance().runIO (host, () -> NetcdfDataset.openDataset (datasetName, true, cancelTask)));
+
+  } // openDataset
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Opens the grid dataset for a new handle.
+   *
+   * @param ncDataset the NetCDF dataset opened for the handle.
+   *
+   * @return the grid dataset.
+   *
+   * @throws IOException if an error occurred opening the grid dataset.
+   */
+  GridDataset openGridDataset (NetcdfDataset ncDataset) throws IOException {
+
+    return (TaskService.getInstance().runIO (host, () -> new GridDataset (ncDataset)));
+
+  } // openGridDataset
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Schedules the eviction of idle handles if not already scheduled.  The
+   * caller must hold the handle cache lock.
+   */
+  private void scheduleEviction () {
+
+    if (evictionFuture == null && !handleCache.isEmpty()) {
+      long idle = (System.nanoTime() - handleCache.peekLast().lastUsed) / 1000000;
+      long delay = Math.max (0, handleIdleTime - idle);
+      evictionFuture = TaskService.getInstance().schedule (this::evictIdleHandles, delay, TimeUnit.MILLISECONDS);
+    } // if
+
+  } // scheduleEviction
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Closes handles that have been idle for longer than the idle time. */
+  private void evictIdleHandles () {
+
+    List<DatasetHandle> evicted = new ArrayList<>();
+    synchronized (handleCache) {
+      evictionFuture = null;
+      if (!isClosed) {
+        long now = System.nanoTime();
+        while (!handleCache.isEmpty() && (now - handleCache.peekLast().lastUsed) / 1000000 >= handleIdleTime)
+          evicted.add (handleCache.pollLast());
+        openHandles -= evicted.size();
+        handlesEvicted += evicted.size();
+        scheduleEviction();
+      } // if
+    } // synchronized
+
+    // Closing a remote dataset may take some time, so we do it outside the
+    // scheduler thread.
+    if (!evicted.isEmpty()) {
+      LOGGER.fine ("Closing " + evicted.size() + " idle handle(s) for " + datasetName);
+      TaskService.getInstance().submitIO (() -> evicted.forEach (handle -> closeDataset (handle.ncDataset)), null);
+    } // if
+
+  } // evictIdleHandles
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new NetCDF dataset.
+   *
+   * @param datasetName the full path to the dataset, including protocol if
+   * remote.
+   * @param trans the translator from geographic (lat,lon) to model (x,y,z).
+   */
+  public NetCDFDataset (
+    String datasetName,
+    GeoCoordinateTranslator trans
+  ) {
+
+    this.datasetName = datasetName;
+    this.host = TaskService.getHost (datasetName);
+    this.trans = trans;
+    this.handleCache = new ArrayDeque<>();
+    this.maxHandles = Math.max (1, DEFAULT_MAX_HANDLES);
+    this.handlePermits = new HandlePermits (maxHandles);
+    synchronized (openSet) { openSet.add (this); }
+
+    // We create a timer here to report the handle statistics while
+    // debugging.
+    if (LOGGER.isLoggable (Level.FINER)) {
+      var updateTimer = new Timer (true);
+      updateTimer.scheduleAtFixedRate (new TimerTask () {
+        public void run() {
+          LOGGER.finer ("Handles for " + datasetName + ": " + getHandleStats());
+        } // run
+      }, 0, 5000);
+    } // if
+
+  } // NetCDFDataset
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads the metadata for all grids in the dataset.
+   *
+   * @param handle the handle to use for reading.
+   *
+   * @return the metadata for the dataset.
+   */
+  private GridMetadata readMetadata (
+    DatasetHandle handle
+  ) {
+
+    GridMetadata metadata = new GridMetadata();
+    metadata.datasetName = datasetName;
+    if (!isRemote()) metadata.modified = new File (datasetName).lastModified();
+    metadata.globalAttributes = getAttributeMap (handle.ncDataset.getGlobalAttributes());
+
+    for (var grid : handle.gridDataset.getGrids()) {
+
+      var info = new GridMetadata.GridInfo();
+      GridCoordSystem system = grid.getCoordinateSystem();
+      List<CalendarDate> dateList = system.getCalendarDates();
+      info.times = dateList.stream().mapToLong (CalendarDate::getMillis).toArray();
+
+      CoordinateAxis1D axis = system.getVerticalAxis();
+      if (axis != null) {
+        info.levels = axis.getCoordValues();
+        info.levelUnits = axis.getUnitsString();
+      } // if
+      else info.levels = new double[0];
+
+      info.dims = new int[] {grid.getXDimension().getLength(), grid.getYDimension().getLength()};
+      info.attributes = getAttributeMap (grid.getAttributes());
+      info.packing = readPacking (grid);
+      info.chunkSizes = readChunkSizes (grid);
+
+      metadata.grids.put (grid.getName(), info);
+
+    } // for
+
+    return (metadata);
+
+  } // readMetadata
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Converts a list of attributes to a map of name to value. */
+  private static LinkedHashMap<String, Object> getAttributeMap (
+    List<Attribute> attList
+  ) {
+
+    LinkedHashMap<String, Object> attMap = new LinkedHashMap<>();
+    for (var att : attList) {
+      Object value;
+      if (att.isArray())
+        value = att.getValues().copyTo1DJavaArray();
+      else if (att.isString())
+        value = att.getStringValue();
+      else
+        value = att.getNumericValue();
+      attMap.put (att.getShortName(), value);
+    } // for
+
+    return (attMap);
+
+  } // getAttributeMap
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the grid metadata for this dataset.  The metadata is read from
+   * the shared metadata cache if available, and otherwise read from the
+   * dataset and cached.  Cached metadata for a local file is valid as long
+   * as the file modification time is unchanged.  Cached metadata for a
+   * remote dataset is validated against the grid time axis lengths in the
+   * dataset before use, so that time steps added to a growing dataset are
+   * seen right away.
+   *
+   * @return the grid metadata.
+   *
+   * @throws IOException if an error occurred reading the metadata.
+   */
+  private synchronized GridMetadata getMetadata () throws IOException {
+
+    if (metadata == null) {
+
+      // Check the cache first, taking care that a local file hasn't
+      // changed since it was cached.
+      var cache = GridMetadataCache.getInstance();
+      GridMetadata cached = cache.get (datasetName);
+      if (cached != null && !isRemote() && cached.modified != new File (datasetName).lastModified()) cached = null;
+
+      if (cached != null) {
+        metadata = (isRemote() ? validateMetadata (cached) : cached);
+      } // if
+      else {
+        try (DatasetHandle handle = acquireHandle (null)) {
+          metadata = readMetadata (handle);
+        } // try
+        cache.put (datasetName, metadata);
+      } // else
+
+      // Remote datasets have a significant delay in opening a handle, so we
+      // open a few in advance for the first data accesses.
+      if (isRemote() && !isPrewarmed) {
+        isPrewarmed = true;
+        prewarmHandles (Math.min (maxHandles, Math.max (2, parallelBands)));
+      } // if
+
+    } // if
+
+    return (metadata);
+
+  } // getMetadata
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Validates cached metadata against the dataset, and reads the metadata
+   * again and replaces it in the cache if the grids or their time axis
+   * lengths have changed.  The handle opened for validation is kept for
+   * data access.
+   *
+   * @param cached the cached metadata to validate.
+   *
+   * @return the cached metadata if valid, or the updated metadata.
+   *
+   * @throws IOException if an error occurred opening the dataset.
+   */
+  private GridMetadata validateMetadata (
+    GridMetadata cached
+  ) throws IOException {
+
+    GridMetadata valid = cached;
+    try (DatasetHandle handle = acquireHandle (null)) {
+
+      List<GridDatatype> gridList = handle.gridDataset.getGrids();
+      boolean isValid = (gridList.size() == cached.grids.size());
+      for (int i = 0; i < gridList.size() && isValid; i++) {
+        var grid = gridList.get (i);
+        var info = cached.grids.get (grid.getName());
+        isValid = (info != null && info.times.length == grid.getCoordinateSystem().getCalendarDates().size());
+      } // for
+
+      if (!isValid) {
+        LOGGER.fine ("Cached metadata is out of date for " + datasetName);
+        valid = readMetadata (handle);
+      } // if
+
+    } // try
+
+    if (valid != cached) GridMetadataCache.getInstance().put (datasetName, valid);
+
+    return (valid);
+
+  } // validateMetadata
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Gets the metadata for a grid, or throws an exception if not found. */
+  private GridMetadata.GridInfo getGridInfo (
+    String varName
+  ) throws IOException {
+
+    var info = getMetadata().grids.get (varName);
+    if (info == null) throw new IOException ("Grid not found for variable " + varName);
+    return (info);
+
+  } // getGridInfo
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public List<String> getVariables() throws IOException {
+
+    return (new ArrayList<> (getMetadata().grids.keySet()));
+
+  } // getVariables
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public List<Date> getTimes (
+    String varName
+  ) throws IOException {
+
+    List<Date> timeList = new ArrayList<>();
+    for (long time : getGridInfo (varName).times) timeList.add (new Date (time));
+
+    return (timeList);
+
+  } // getTimes
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public List<Double> getLevels (
+    String varName
+  ) throws IOException {
+
+    List<Double> levelList = new ArrayList<>();
+    for (double level : getGridInfo (varName).levels) levelList.add (level);
+
+    return (levelList);
+
+  } // getLevels
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public String getLevelUnits (
+    String varName
+  ) throws IOException {
+
+    return (getGridInfo (varName).levelUnits);
+
+  } // getLevelUnits
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public int[] getDimensions (
+    String varName
+  ) throws IOException {
+
+    return (getGridInfo (varName).dims.clone());
+
+  } // getDimensions
+  
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public Map<String, Object> getAttributes (
+    String varName
+  ) throws IOException {
+
+    return (new LinkedHashMap<> (getGridInfo (varName).attributes));
+
+  } // getAttributes
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public Map<String, Object> getGlobalAttributes () throws IOException {
+
+    return (new LinkedHashMap<> (getMetadata().globalAttributes));
+
+  } // getGlobalAttributes
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Reads an array of data. */
+  private interface ArrayReader {
+
+    Array read() throws IOException, InvalidRangeException;
+
+  } // ArrayReader interface
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads the data array for an access.
+   *
+   * @param varName the variable name to read.
+   * @param timeIndex the time index to read.
+   * @param levelIndex the level index to read.
+   * @param access the access region and stride.
+   * @param packed the packed flag, true to read the original packed values
+   * or false to read unpacked double values.
+   * @param cancelled the method to periodically check for cancellation
+   * of the read, or null to not check.
+   *
+   * @return the 2D data array in (y,x) order, or null if cancelled.
+   *
+   * @throws IOException if an error occurred reading the data.
+   */
+  private Array readArray (
+    String varName,
+    int timeIndex,
+    int levelIndex,
+    ImageAccess access,
+    boolean packed,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    // Perform the data access.  Note that after every call to the
+    // dataset, we check to see if we are cancelled.  If so, we return
+    // a null result.
+
+    Array array = null;
+    try (DatasetHandle handle = acquireHandle (cancelled)) {
+      if (isTrue (cancelled)) return (null);
+
+      GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
+      if (isTrue (cancelled)) return (null);
+
+      // Detect an issue with the grid here.  This may indicate the dataset
+      // is now in a corrupted state.
+      if (grid == null) {
+        throw new IOException ("Grid not found in call to findGridDatatype() for access " + access + " using handle " + handle);
+      } // if
+
+      Range xRange = new Range (access.tile.minX, access.tile.minX + access.tile.width - 1, access.strideX);
+      Range yRange = new Range (access.tile.minY, access.tile.minY + access.tile.height - 1, access.strideY);
+
+      // Set up the read, either from a subset of the enhanced grid which
+      // unpacks values to doubles, or from a section of the original
+      // variable which keeps values packed.
+      ArrayReader reader;
+      if (packed) {
+        Variable var = grid.getVariable().getOriginalVariable();
+        List<Range> rangeList = new ArrayList<>();
+        for (int i = 0; i < var.getRank(); i++) {
+          Range range;
+          if (i == grid.getXDimensionIndex()) range = xRange;
+          else if (i == grid.getYDimensionIndex()) range = yRange;
+          else if (i == grid.getTimeDimensionIndex()) range = new Range (timeIndex, timeIndex);
+          else if (i == grid.getZDimensionIndex()) range = new Range (levelIndex, levelIndex);
+          else range = new Range (0, 0);
+          rangeList.add (range);
+        } // for
+        Section section = new Section (rangeList);
+        int[] shape = new int[] {access.getHeight(), access.getWidth()};
+        reader = () -> var.read (section).reshapeNoCopy (shape);
+      } // if
+      else {
+        GridDatatype subset = grid.makeSubset (
+          new Range (0, 0),  // runtime
+          new Range (0, 0),  // ensemble
+          new Range (timeIndex, timeIndex),
+          new Range (levelIndex, levelIndex),
+          yRange,
+          xRange
+        );
+        reader = () -> subset.readDataSlice (0, 0, -1, -1);
+      } // else
+      if (isTrue (cancelled)) return (null);
+
+      // There seems to be a read error every so often for remote datasets.
+      // So we make a small number of attempts here.
+      boolean failed;
+      int attempt = 1;
+      IOException readException = null;
+      do {
+        try {
+          array = TaskService.getInstance().runIO (host, () -> {
+            try { return (reader.read()); }
+            catch (InvalidRangeException e) { throw new IOException (e); }
+          });
+          failed = false;
+          if (attempt != 1) LOGGER.warning ("Successful read on attempt " + attempt + " for access " + access);
+        } // try
+        catch (IOException e) {
+          LOGGER.warning ("Got exception on read attempt " + attempt + " for access " + access);
+          failed = true;
+          try { Thread.sleep (500); }
+          catch (InterruptedException ie) { throw new IOException (ie); }
+          attempt++;
+          readException = e;
+        } // catch
+        if (isTrue (cancelled)) return (null);
+      } while (failed == true && attempt <= 5);
+      if (failed) throw (readException);
+
+    } // try
+    catch (InvalidRangeException e) { throw new IOException (e); }
+
+    return (array);
+
+  } // readArray
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads the data array for an access as a set of row bands in parallel.
+   * Each band is read using its own dataset handle, and bands that fail are
+   * retried individually.  The bands are then assembled into a single
+   * array.
+   *
+   * @param varName the variable name to read.
+   * @param timeIndex the time index to read.
+   * @param levelIndex the level index to read.
+   * @param access the access region and stride.
+   * @param bands the number of bands to read.
+   * @param packed the packed flag, true to read the original packed values
+   * or false to read unpacked double values.
+   * @param cancelled the method to periodically check for cancellation
+   * of the read, or null to not check.
+   *
+   * @return the 2D data array in (y,x) order, or null if cancelled.
+   *
+   * @throws IOException if an error occurred reading the data.
+   */
+  private Array readBands (
+    String varName,
+    int timeIndex,
+    int levelIndex,
+    ImageAccess access,
+    int bands,
+    boolean packed,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    List<Future<Array>> futureList = new ArrayList<>();
+    for (var bandAccess : getBandAccesses (access, bands)) {
+      futureList.add (TaskService.getInstance().submit (TaskService.Pool.BAND, TaskService.NORMAL_PRIORITY,
+        () -> readArray (varName, timeIndex, levelIndex, bandAccess, packed, cancelled), cancelled));
+    } // for
+    if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Reading access " + access + " in " + futureList.size() + " bands");
+
+    // Wait for the bands and copy them into the final array in order.  If
+    // any band is cancelled, the whole read is cancelled.
+    Array array = null;
+    try {
+      List<Array> bandList = new ArrayList<>();
+      for (var future : futureList) {
+        Array band = future.get();
+        if (band == null || isTrue (cancelled)) { bandList = null; break; }
+        bandList.add (band);
+      } // for
+      if (bandList != null) array = assembleBands (bandList, access);
+    } // try
+    catch (InterruptedException e) { throw new IOException (e); }
+    catch (CancellationException e) { array = null; }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      else throw new IOException (cause);
+    } // catch
+    finally {
+      for (var future : futureList) future.cancel (false);
+    } // finally
+
+    return (array);
+
+  } // readBands
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Divides an access into row bands that each start on a sampled row.
+   *
+   * @param access the access to divide.
+   * @param bands the number of bands.
+   *
+   * @return the list of band accesses in order of row.
+   */
+  private static List<ImageAccess> getBandAccesses (
+    ImageAccess access,
+    int bands
+  ) {
+
+    int rows = access.getHeight();
+    int bandRows = (rows + bands - 1) / bands;
+    int maxY = access.tile.minY + access.tile.height;
+    List<ImageAccess> accessList = new ArrayList<>();
+    for (int row = 0; row < rows; row += bandRows) {
+      int minY = access.tile.minY + row*access.strideY;
+      int height = Math.min (bandRows*access.strideY, maxY - minY);
+      accessList.add (new ImageAccess (new ImageTile (access.tile.minX, minY, access.tile.width, height),
+        access.strideX, access.strideY));
+    } // for
+
+    return (accessList);
+
+  } // getBandAccesses
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Copies a set of row band arrays into a single array.
+   *
+   * @param bandList the band arrays in order of row.
+   * @param access the access for the complete array.
+   *
+   * @return the 2D data array in (y,x) order.
+   */
+  private static Array assembleBands (
+    List<Array> bandList,
+    ImageAccess access
+  ) {
+
+    Array array = null;
+    int offset = 0;
+    for (var band : bandList) {
+      if (array == null) array = Array.factory (band.getDataType(), new int[] {access.getHeight(), access.getWidth()});
+      int size = (int) band.getSize();
+      Array.arraycopy (band, 0, array, offset, size);
+      offset += size;
+    } // for
+
+    return (array);
+
+  } // assembleBands
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Starts reading the data array for an access as an I/O task.
+   *
+   * @param varName the variable name to read.
+   * @param timeIndex the time index to read.
+   * @param levelIndex the level index to read.
+   * @param access the access region and stride.
+   * @param packed the packed flag, true to read the original packed values
+   * or false to read unpacked double values.
+   * @param cancelled the method to check for cancellation of the read.
+   *
+   * @return the future for the 2D data array in (y,x) order.  The future
+   * is cancelled if the read is cancelled.
+   */
+  private CompletableFuture<Array> readArrayAsync (
+    String varName,
+    int timeIndex,
+    int levelIndex,
+    ImageAccess access,
+    boolean packed,
+    BooleanSupplier cancelled
+  ) {
+
+    CompletableFuture<Array> future = new CompletableFuture<>();
+    BooleanSupplier readCancelled = () -> future.isCancelled() || isTrue (cancelled);
+    TaskService.getInstance().submitIO (() -> {
+      try {
+        Array array = readArray (varName, timeIndex, levelIndex, access, packed, readCancelled);
+        if (array == null) future.cancel (false);
+        else future.complete (array);
+      } // try
+      catch (Throwable e) { future.completeExceptionally (e); }
+    }, readCancelled);
+
+    return (future);
+
+  } // readArrayAsync
+
+  /////////////////////////////////////////////////////////////////
+
+  /** The context data for use in calls to data sources. */
+  private static class DataContext {
+
+    public Array dataArray;
+    public Index valueIndex;
+
+  } // DataContext class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * The <code>GridDataSource</code> class is the base for data sources that
+   * read 2D slices of a grid variable.  Subclasses implement the value
+   * retrieval for a specific data type.
+   */
+  private abstract class GridDataSource<T> implements ImageDataSource<T> {
+
+    private String varName;
+    private int timeIndex;
+    private int levelIndex;
+    private boolean packed;
+
+    public GridDataSource (String varName, int timeIndex, int levelIndex, boolean packed) {
+      this.varName = varName;
+      this.timeIndex = timeIndex;
+      this.levelIndex = levelIndex;
+      this.packed = packed;
+    } // GridDataSource
+
+    @Override
+    public ImageAccessResult access (
+      ImageAccess access,
+      BooleanSupplier cancelled
+    ) throws IOException {
+
+      // Perform the data access, either in one read or in parallel bands
+      // for large accesses.
+      int bands = (int) Math.min (parallelBands, ((long) access.getWidth() * access.getHeight()) / MIN_BAND_VALUES);
+      Array array;
+      if (bands > 1) array = readBands (varName, timeIndex, levelIndex, access, bands, packed, cancelled);
+      else array = readArray (varName, timeIndex, levelIndex, access, packed, cancelled);
+
+      ImageAccessResult result = null;
+      if (array != null) {
+        DataContext context = new DataContext();
+        context.dataArray = array;
+        context.valueIndex = array.getIndex();
+        result = new ImageAccessResult (access, context);
+      } // if
+
+      return (result);
+
+    } // access
+
+    @Override
+    public CompletableFuture<ImageAccessResult> accessAsync (
+      ImageAccess access
+    ) {
+
+      // Each band is read as its own I/O task, and the bands are assembled
+      // once they're all done, so no thread waits for the bands.  If the
+      // access fails or is cancelled, the remaining bands are cancelled.
+      CompletableFuture<ImageAccessResult> future = new CompletableFuture<>();
+      int bands = (int) Math.min (parallelBands, ((long) access.getWidth() * access.getHeight()) / MIN_BAND_VALUES);
+      List<CompletableFuture<Array>> futureList = new ArrayList<>();
+      for (var bandAccess : getBandAccesses (access, Math.max (1, bands))) {
+        futureList.add (readArrayAsync (varName, timeIndex, levelIndex, bandAccess, packed, future::isCancelled));
+      } // for
+
+      CompletableFuture.allOf (futureList.toArray (new CompletableFuture<?>[0])).whenComplete ((none, error) -> {
+        if (error != null) future.completeExceptionally (error instanceof CompletionException ? error.getCause() : error);
+        else {
+          List<Array> bandList = new ArrayList<>();
+          for (var band : futureList) bandList.add (band.join());
+          Array array = (bandList.size() == 1 ? bandList.get (0) : assembleBands (bandList, access));
+          DataContext context = new DataContext();
+          context.dataArray = array;
+          context.valueIndex = array.getIndex();
+          future.complete (new ImageAccessResult (access, context));
+        } // else
+      });
+      future.whenComplete ((result, error) -> {
+        if (error != null) futureList.forEach (band -> band.cancel (false));
+      });
+
+      return (future);
+
+    } // accessAsync
+
+    @Override
+    public ImageAccessResult subset (
+      ImageAccessResult result,
+      ImageAccess access
+    ) {
+
+      // The subset is a logical section of the existing data array, so no
+      // data is copied here.
+      ImageAccess resultAccess = result.access;
+      int[] origin = new int[] {
+        (access.tile.minY - resultAccess.tile.minY) / resultAccess.strideY,
+        (access.tile.minX - resultAccess.tile.minX) / resultAccess.strideX
+      };
+      int[] shape = new int[] {access.getHeight(), access.getWidth()};
+
+      DataContext context = (DataContext) result.context;
+      DataContext subsetContext = new DataContext();
+      try { subsetContext.dataArray = context.dataArray.section (origin, shape); }
+      catch (InvalidRangeException e) { throw new RuntimeException (e); }
+      subsetContext.valueIndex = subsetContext.dataArray.getIndex();
+
+      return (new ImageAccessResult (access, subsetContext));
+
+    } // subset
+
+  } // GridDataSource class
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public ImageDataSource<double[]> getDataSource (
+    String varName,
+    int timeIndex,
+    int levelIndex
+  ) throws IOException {
+
+    ImageDataSource<double[]> dataSource = new GridDataSource<> (varName, timeIndex, levelIndex, false) {
+
+      @Override
+      public void get (
+        ImageAccessResult result,
+        int x,
+        int y,
+        double[] data
+      ) {
+
+        DataContext context = (DataContext) result.context;
+        context.valueIndex.set (y, x);
+        data[0] = context.dataArray.getDouble (context.valueIndex);
 
-  } // NetCDFCancelTask
+      } // get
 
-  /////////////////////////////////////////////////////////////////
+      @Override
+      public void getMany (
+        ImageAccessResult result,
+        ImageCoordinateIterator iter,
+        double[] data
+      ) {
 
-  /**
-   * Acquires and returns an instance of a dataset handle that is not
-   * currently in use by another thread.  One may be created if none
-   * are available.
-   *
-   * @param supplier the supplier for booleans for the cancel task, or null
-   * for none.
-   *
-   * @return the acquired handle or null if the operation was cancelled while
-   * acquiring the handle.
-   *
-   * @throws IOException if the dataset is closed and so no handles can be
-   * acquired.
-   */
-  private DatasetHandle acquireHandle (BooleanSupplier supplier) throws IOException {
+        DataContext context = (DataContext) result.context;
+        int index = 0;
+        while (iter.hasNext()) {
+          iter.next();
+          context.valueIndex.set (iter.getY(), iter.getX());
+          data[index] = context.dataArray.getDouble (context.valueIndex);
+          index++;
+        } // while
 
-    DatasetHandle handle = null;
+      } // getMany
 
-    synchronized (handleCache) {
+      @Override
+      public void getAll (
+        ImageAccessResult result,
+        double[] data
+      ) {
 
-      // First check if this dataset is closed.  We can't acquire any more
-      // handles in this case.
-      if (isClosed) throw new IOException ("Cannot acquire handle for closed dataset");
+        DataContext context = (DataContext) result.context;
+        double[] accessData = (double[]) context.dataArray.get1DJavaArray (DataType.DOUBLE);
+        System.arraycopy (accessData, 0, data, 0, accessData.length);
 
-      // Look for a handle in the cache.
-      if (handleCache.size() != 0) {
-        handle = handleCache.remove (0);
-        handle.cancelTask.setSupplier (supplier);
-        if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Retrieved dataset handle for " + datasetName);
-      } // else
-      
-    } // synchronized
+      } // getAll
 
-    // If we couldn't acquire a handle from the cache, create and return a
-    // new one.  In the process, make sure we aren't cancelled while acquiring
-    // the handle.
-    if (handle == null) {
-      var cancelTask = new NetCDFCancelTask();
-      cancelTask.setSupplier (supplier);
-      var ncDataset = NetcdfDataset.openDataset (datasetName, true, cancelTask);
-      if (!cancelTask.isCancel()) {
-        var gridDataset = new GridDataset (ncDataset);
-        if (!cancelTask.isCancel()) {
-          handle = new DatasetHandle();
-          handle.cancelTask = cancelTask;
-          handle.ncDataset = ncDataset;
-          handle.gridDataset = gridDataset;
-          if (LOGGER.isLoggable (Level.FINER)) LOGGER.finer ("Created new dataset handle for " + datasetName);
-        } // if
-      } // if
-    } // if
+      @Override
+      public double[] getDirect (
+        ImageAccessResult result
+      ) {
 
-    return (handle);
+        // The 1D double array is the array storage itself if the data is
+        // already doubles in row major order, or otherwise a single converted
+        // copy in row major order.  Either way it's cheaper than the caller
+        // allocating another array and copying into it with getAll().
+        DataContext context = (DataContext) result.context;
+        double[] accessData = (double[]) context.dataArray.get1DJavaArray (DataType.DOUBLE);
 
-  } // acquireHandle
+        return (accessData);
 
-  /////////////////////////////////////////////////////////////////
+      } // getDirect
 
-  /**
-   * Creates a new NetCDF dataset.
-   *
-   * @param datasetName the full path to the dataset, including protocol if
-   * remote.
-   * @param trans the translator from geographic (lat,lon) to model (x,y,z).
-   */
-  public NetCDFDataset (
-    String datasetName,
-    GeoCoordinateTranslator trans
-  ) {
+    };
 
-    this.datasetName = datasetName;
-    this.trans = trans;
-    this.handleCache = new ArrayList<>();
+    // For remote datasets, each access has a significant latency so we
+    // use a planner to combine concurrent accesses into larger blocks.
+    if (isRemote()) dataSource = new ImageAccessPlanner<> (dataSource);
 
-    // We create a timer here to verify that the cache has the number
-    // of handles in it that we think should be there.
-    if (LOGGER.isLoggable (Level.FINER)) {
-      var updateTimer = new Timer (true);
-      updateTimer.scheduleAtFixedRate (new TimerTask () {
-        public void run() {
-          synchronized (handleCache) {
-            LOGGER.finer ("Handle cache for " + datasetName + " has " + handleCache.size() + " entries");
-          } // synchronized
-        } // run
-      }, 0, 5000);
-    } // if
+    return (dataSource);
 
-  } // NetCDFDataset
+  } // getDataSource
 
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public List<String> getVariables() throws IOException {
-  
-    List<String> varList = new ArrayList<>();
-    try (DatasetHandle handle = acquireHandle (null)) {
+  /** Copies a single value from an array into a primitive array. */
+  private static void copyValue (
+    Array array,
+    Index index,
+    Object data,
+    int dataIndex
+  ) {
 
-      List<GridDatatype> gridList = handle.gridDataset.getGrids();
-      for (var grid : gridList) varList.add (grid.getName());
+    if (data instanceof short[]) ((short[]) data)[dataIndex] = array.getShort (index);
+    else if (data instanceof byte[]) ((byte[]) data)[dataIndex] = array.getByte (index);
+    else if (data instanceof float[]) ((float[]) data)[dataIndex] = array.getFloat (index);
+    else throw new IllegalArgumentException ("Unsupported data type " + data.getClass());
 
-    } // try
-    
-    return (varList);
-  
-  } // getVariables
+  } // copyValue
 
   /////////////////////////////////////////////////////////////////
 
   @Override
-  public List<Date> getTimes (
+  public DataPacking getPacking (
     String varName
   ) throws IOException {
-  
-    List<Date> timeList = new ArrayList<>();
-    try (DatasetHandle handle = acquireHandle (null)) {
-
-      GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
-      GridCoordSystem system = grid.getCoordinateSystem();
-      List<CalendarDate> dateList = system.getCalendarDates();
 
-      for (var calDate : dateList) {
-        Date date = new Date (calDate.getMillis());
-        timeList.add (date);
-      } // for
-      
-    } // try
+    return (getGridInfo (varName).packing);
 
-    return (timeList);
-  
-  } // getTimes
+  } // getPacking
 
   /////////////////////////////////////////////////////////////////
 
   @Override
-  public List<Double> getLevels (
+  public int[] getChunkSizes (
     String varName
   ) throws IOException {
 
-    List<Double> levelList = new ArrayList<>();
-    try (DatasetHandle handle = acquireHandle (null)) {
+    int[] chunkSizes = getGridInfo (varName).chunkSizes;
+    return (chunkSizes == null ? null : chunkSizes.clone());
 
-      GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
-      GridCoordSystem system = grid.getCoordinateSystem();
-      CoordinateAxis1D axis = system.getVerticalAxis();
-      if (axis != null) {
-        double[] levelValues = axis.getCoordValues();
-        for (double level : levelValues) levelList.add (level);
-      } // if
-      
-    } // try
-    
-    return (levelList);
-  
-  } // getLevels
+  } // getChunkSizes
 
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public String getLevelUnits (
-    String varName
-  ) throws IOException {
+  /**
+   * Reads the storage chunk size for a grid variable.  The NetCDF library
+   * reports the chunk size of NetCDF-4 and HDF5 variables using the
+   * <code>_ChunkSizes</code> attribute, with one value per dimension.
+   *
+   * @param grid the grid to read.
+   *
+   * @return the chunk size as [width, height], or null if the variable is
+   * not chunked.
+   */
+  private static int[] readChunkSizes (
+    GridDatatype grid
+  ) {
 
-    String units = null;
-    try (DatasetHandle handle = acquireHandle (null)) {
+    int[] chunkSizes = null;
+
+    Variable var = grid.getVariable().getOriginalVariable();
+    if (var == null) var = grid.getVariable();
+    Attribute att = var.findAttribute ("_ChunkSizes");
+    int xIndex = grid.getXDimensionIndex();
+    int yIndex = grid.getYDimensionIndex();
+    if (att != null && !att.isString() && att.getLength() == var.getRank() &&
+      var.getRank() == grid.getVariable().getRank() && xIndex >= 0 && yIndex >= 0) {
+      chunkSizes = new int[] {
+        att.getNumericValue (xIndex).intValue(),
+        att.getNumericValue (yIndex).intValue()
+      };
+      LOGGER.finer ("Found chunk size " + chunkSizes[0] + "x" + chunkSizes[1] + " for variable " + grid.getName());
+    } // if
 
-      GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
-      GridCoordSystem system = grid.getCoordinateSystem();
-      CoordinateAxis1D axis = system.getVerticalAxis();
-      if (axis != null) {
-        units = axis.getUnitsString();
-      } // if
+    return (chunkSizes);
 
-    } // try
-  
-    return (units);
-  
-  } // getLevelUnits
+  } // readChunkSizes
 
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public int[] getDimensions (
-    String varName
-  ) throws IOException {
+  /**
+   * Reads the packing for a grid variable.
+   *
+   * @param grid the grid to read.
+   *
+   * @return the packing for reading the original stored values, or null if
+   * the values can't be read in packed form.
+   */
+  private static DataPacking readPacking (
+    GridDatatype grid
+  ) {
 
-    int[] dims = new int[2];
-    try (DatasetHandle handle = acquireHandle (null)) {
+    DataPacking packing = null;
+
+    // We can only read packed data if we have access to the original
+    // variable, and its dimensions are in the usual (y,x) order.
+    Variable var = grid.getVariable().getOriginalVariable();
+    if (var != null && grid.getYDimensionIndex() < grid.getXDimensionIndex()) {
+
+      DataType type = var.getDataType();
+      Class<?> storageType = null;
+      if (type == DataType.BYTE || type == DataType.UBYTE) storageType = byte[].class;
+      else if (type == DataType.SHORT || type == DataType.USHORT) storageType = short[].class;
+      else if (type == DataType.FLOAT) storageType = float[].class;
+
+      if (storageType != null) {
+
+        packing = new DataPacking();
+        packing.storageType = storageType;
+        Attribute unsigned = var.findAttribute ("_Unsigned");
+        packing.isUnsigned = type.isUnsigned() ||
+          (unsigned != null && "true".equalsIgnoreCase (unsigned.getStringValue()));
+
+        Attribute scale = var.findAttribute ("scale_factor");
+        if (scale != null) packing.scale = scale.getNumericValue().doubleValue();
+        Attribute offset = var.findAttribute ("add_offset");
+        if (offset != null) packing.offset = offset.getNumericValue().doubleValue();
+
+        // Missing values are specified in packed units.  Unsigned values
+        // are stored using the signed type so we convert them.
+        List<Double> missingList = new ArrayList<>();
+        for (String name : List.of ("_FillValue", "missing_value")) {
+          Attribute att = var.findAttribute (name);
+          if (att != null && !att.isString()) {
+            for (int i = 0; i < att.getLength(); i++)
+              missingList.add (packedValue (att.getNumericValue (i), packing));
+          } // if
+        } // for
+        // Without a fill value attribute, the NetCDF default fill value for
+        // the type marks missing data, just as for the enhanced values.
+        if (var.findAttribute ("_FillValue") == null) missingList.add (defaultFillValue (packing));
+        if (missingList.size() != 0)
+          packing.missingValues = missingList.stream().mapToDouble (d -> d).toArray();
+
+        // The valid range is in packed units if it has the same type as the
+        // variable, otherwise it's in unpacked units.
+        Attribute validRange = var.findAttribute ("valid_range");
+        Attribute validMin = var.findAttribute ("valid_min");
+        Attribute validMax = var.findAttribute ("valid_max");
+        if (validRange != null && validRange.getLength() == 2) {
+          packing.validMin = validValue (validRange, 0, type, packing);
+          packing.validMax = validValue (validRange, 1, type, packing);
+        } // if
+        else {
+          if (validMin != null) packing.validMin = validValue (validMin, 0, type, packing);
+          if (validMax != null) packing.validMax = validValue (validMax, 0, type, packing);
+        } // else
 
-      GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
-      dims[0] = grid.getXDimension().getLength();
-      dims[1] = grid.getYDimension().getLength();
+        LOGGER.finer ("Found packing " + packing + " for variable " + grid.getName());
 
-    } // try
-    
-    return (dims);
+      } // if
+
+    } // if
+
+    return (packing);
+
+  } // readPacking
 
-  } // getDimensions
-  
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public Map<String, Object> getAttributes (
-    String varName
-  ) throws IOException {
-  
-    Map<String, Object> attMap = new LinkedHashMap<>();
-    try (DatasetHandle handle = acquireHandle (null)) {
+  /** Converts an attribute value to a packed value, taking into account unsigned data. */
+  private static double packedValue (Number value, DataPacking packing) {
 
-      GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
-      List<Attribute> attList = grid.getAttributes();
-      for (var att : attList) {
-        Object value;
-        if (att.isArray())
-          value = att.getValues().copyTo1DJavaArray();
-        else if (att.isString())
-          value = att.getStringValue();
-        else
-          value = att.getNumericValue();
-        attMap.put (att.getShortName(), value);
-      } // for
-      
-    } // try
-    
-    return (attMap);
+    double packed = value.doubleValue();
+    if (packing.isUnsigned && packed < 0) {
+      if (packing.storageType == byte[].class) packed += 256;
+      else if (packing.storageType == short[].class) packed += 65536;
+    } // if
 
-  } // getAttributes
+    return (packed);
+
+  } // packedValue
 
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public Map<String, Object> getGlobalAttributes () throws IOException {
-  
-    Map<String, Object> attMap = new LinkedHashMap<>();
-    try (DatasetHandle handle = acquireHandle (null)) {
+  /** Gets the NetCDF default fill value for a packing storage type. */
+  private static double defaultFillValue (DataPacking packing) {
 
-      List<Attribute> attList = handle.ncDataset.getGlobalAttributes();
-      for (var att : attList) {
-        Object value;
-        if (att.isArray())
-          value = att.getValues().copyTo1DJavaArray();
-        else if (att.isString())
-          value = att.getStringValue();
-        else
-          value = att.getNumericValue();
-        attMap.put (att.getShortName(), value);
-      } // for
-      
-    } // try
-    
-    return (attMap);
-  
-  } // getGlobalAttributes
+    double fill;
+    if (packing.storageType == byte[].class) fill = (packing.isUnsigned ? 255 : -127);
+    else if (packing.storageType == short[].class) fill = (packing.isUnsigned ? 65535 : -32767);
+    else fill = 9.9692099683868690e+36f;
+
+    return (fill);
+
+  } // defaultFillValue
 
   /////////////////////////////////////////////////////////////////
 
-  /** The context data for use in calls to data sources. */
-  private static class DataContext {
+  /** Gets a valid range attribute value in packed units. */
+  private static double validValue (Attribute att, int index, DataType type, DataPacking packing) {
 
-    public Array dataArray;
-    public Index valueIndex;
+    double value;
+    if (att.getDataType() == type) value = packedValue (att.getNumericValue (index), packing);
+    else value = (att.getNumericValue (index).doubleValue() - packing.offset) / packing.scale;
 
-  } // DataContext class
+    return (value);
+
+  } // validValue
 
   /////////////////////////////////////////////////////////////////
 
   @Override
-  public ImageDataSource<double[]> getDataSource (
+  public ImageDataSource<Object> getPackedDataSource (
     String varName,
     int timeIndex,
     int levelIndex
   ) throws IOException {
 
-    ImageDataSource<double[]> dataSource = new ImageDataSource<>() {
-
-      @Override
-      public ImageAccessResult access (
-        ImageAccess access,
-        BooleanSupplier cancelled
-      ) throws IOException {
-
-        // Perform the data access.  Note that after every call to the
-        // dataset, we check to see if we are cancelled.  If so, we return
-        // a null result.
-
-        ImageAccessResult result = null;
-        try (DatasetHandle handle = acquireHandle (cancelled)) {
-          if (isTrue (cancelled)) return (result);
-
-          GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
-          if (isTrue (cancelled)) return (result);
-
-          // Detect an issue with the grid here.  This may indicate the dataset
-          // is now in a corrupted state.
-          if (grid == null) {
-            throw new IOException ("Grid not found in call to findGridDatatype() for access " + access + " using handle " + handle);
-          } // if
-
-          Range xRange = new Range (access.tile.minX, access.tile.minX + access.tile.width - 1, access.strideX);
-          Range yRange = new Range (access.tile.minY, access.tile.minY + access.tile.height - 1, access.strideY);
-    
-          GridDatatype subset = grid.makeSubset (
-            new Range (0, 0),  // runtime
-            new Range (0, 0),  // ensemble
-            new Range (timeIndex, timeIndex),
-            new Range (levelIndex, levelIndex),
-            yRange,
-            xRange
-          );
-          if (isTrue (cancelled)) return (result);
-
-          // There seems to be a read error every so often for remote datasets.
-          // So we make a small number of attempts here.
-          Array array = null;
-          boolean failed;
-          int attempt = 1;
-          IOException readException = null;
-          do {
-            try {
-              array = subset.readDataSlice (0, 0, -1, -1);
-              failed = false;
-              if (attempt != 1) LOGGER.warning ("Successful read on attempt " + attempt + " for access " + access);
-            } // try
-            catch (IOException e) {
-              LOGGER.warning ("Got exception on read attempt " + attempt + " for access " + access);
-              failed = true;
-              try { Thread.sleep (500); }
-              catch (InterruptedException ie) { throw new IOException (ie); }
-              attempt++;
-              readException = e;
-            } // catch
-            if (isTrue (cancelled)) return (result);
-          } while (failed == true && attempt <= 5);
-          if (failed) throw (readException);
-
-          DataContext context = new DataContext();
-          context.dataArray = array;
-          context.valueIndex = array.getIndex();
-          result = new ImageAccessResult (access, context);
-          
-        } // try
-        catch (InvalidRangeException e) { throw new IOException (e); }
-
-        return (result);
-
-      } // access
+    ImageDataSource<Object> dataSource = new GridDataSource<> (varName, timeIndex, levelIndex, true) {
 
       @Override
       public void get (
         ImageAccessResult result,
         int x,
         int y,
-        double[] data
+        Object data
       ) {
 
         DataContext context = (DataContext) result.context;
         context.valueIndex.set (y, x);
-        data[0] = context.dataArray.getDouble (context.valueIndex);
+        copyValue (context.dataArray, context.valueIndex, data, 0);
 
       } // get
 
@@ -546,7 +1655,7 @@ public class NetCDFDataset implements Dataset, Closeable {
       public void getMany (
         ImageAccessResult result,
         ImageCoordinateIterator iter,
-        double[] data
+        Object data
       ) {
 
         DataContext context = (DataContext) result.context;
@@ -554,7 +1663,7 @@ public class NetCDFDataset implements Dataset, Closeable {
         while (iter.hasNext()) {
           iter.next();
           context.valueIndex.set (iter.getY(), iter.getX());
-          data[index] = context.dataArray.getDouble (context.valueIndex);
+          copyValue (context.dataArray, context.valueIndex, data, index);
           index++;
         } // while
 
@@ -563,20 +1672,44 @@ public class NetCDFDataset implements Dataset, Closeable {
       @Override
       public void getAll (
         ImageAccessResult result,
-        double[] data
+        Object data
       ) {
 
+        // The packed data is retrieved in its own type, which for a
+        // contiguous array is just the array storage, and then copied in
+        // one block.
         DataContext context = (DataContext) result.context;
-        double[] accessData = (double[]) context.dataArray.get1DJavaArray (DataType.DOUBLE);
-        for (int i = 0; i < accessData.length; i++) data[i] = accessData[i];
+        Array array = context.dataArray;
+        Object accessData = array.get1DJavaArray (array.getDataType());
+        System.arraycopy (accessData, 0, data, 0, (int) array.getSize());
 
       } // getAll
 
+      @Override
+      public Object getDirect (
+        ImageAccessResult result
+      ) {
+
+        // The packed data is retrieved in its own type as for getAll(), and
+        // used directly if it's one of the packed storage types.
+        DataContext context = (DataContext) result.context;
+        Array array = context.dataArray;
+        Object accessData = array.get1DJavaArray (array.getDataType());
+        if (!(accessData instanceof byte[] || accessData instanceof short[] || accessData instanceof float[])) accessData = null;
+
+        return (accessData);
+
+      } // getDirect
+
     };
 
+    // For remote datasets, each access has a significant latency so we
+    // use a planner to combine concurrent accesses into larger blocks.
+    if (isRemote()) dataSource = new ImageAccessPlanner<> (dataSource);
+
     return (dataSource);
 
-  } // getDataSource
+  } // getPackedDataSource
   
   /////////////////////////////////////////////////////////////////
 
@@ -607,6 +1740,7 @@ public class NetCDFDataset implements Dataset, Closeable {
       
         ImageAccessResult result = null;
         try (DatasetHandle handle = acquireHandle (cancelled)) {
+          if (handle == null) return (null);
 
           GridDatatype grid = handle.gridDataset.findGridDatatype (varName);
           GridCoordSystem system = grid.getCoordinateSystem();
@@ -705,5 +1839,22 @@ public class NetCDFDataset implements Dataset, Closeable {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Determines if this dataset is accessed from a remote server.
+   *
+   * @return true if the dataset name is a network URL, or false if not.
+   *
+   * @since 0.8
+   */
+  public boolean isRemote () {
+
+    String name = datasetName.toLowerCase();
+    return (name.startsWith ("http:") || name.startsWith ("https:") ||
+      name.startsWith ("dods:") || name.startsWith ("dap4:"));
+
+  } // isRemote
+
+  /////////////////////////////////////////////////////////////////
+
 } // NetCDFDataset class
 
@@ -0,0 +1,145 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+/**
+ * The <code>PackedToColorConverter</code> class converts packed data values
+ * to colors.  The source data is a primitive array of the type given by the
+ * packing information.  For byte and short data, every possible packed value
+ * is converted to a color ahead of time in a lookup table, so that conversion
+ * is a single table access per value.  Float data is unpacked and converted
+ * value by value.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class PackedToColorConverter implements DataConverter<Object, int[]> {
+
+  // Variables
+  // ---------
+
+  /** The packing information for source data. */
+  private DataPacking packing;
+
+  /** The converter for unpacked values. */
+  private DoubleToColorConverter converter;
+
+  /** The lookup table from unsigned packed integer bits to color, or null. */
+  private int[] colorTable;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new packed data converter.
+   *
+   * @param packing the packing information for the source data.
+   * @param converter the converter to use for unpacked values.
+   */
+  public PackedToColorConverter (
+    DataPacking packing,
+    DoubleToColorConverter converter
+  ) {
+
+    this.packing = packing;
+    this.converter = converter;
+
+    // We index the lookup table by the unsigned bits of the packed value,
+    // so for signed data the table entry is computed from the signed
+    // interpretation of the bits.
+    int bits = 0;
+    if (packing.storageType == byte[].class) bits = 8;
+    else if (packing.storageType == short[].class) bits = 16;
+    if (bits != 0) {
+      int entries = 1 << bits;
+      colorTable = new int[entries];
+      for (int i = 0; i < entries; i++) {
+        int packed;
+        if (packing.isUnsigned) packed = i;
+        else packed = (bits == 8 ? (byte) i : (short) i);
+        colorTable[i] = converter.getColor (packing.unpack (packed));
+      } // for
+    } // if
+
+  } // PackedToColorConverter
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public void convert (
+    Object src,
+    int srcOffset,
+    int[] dest,
+    int destOffset,
+    int length
+  ) {
+
+    if (src instanceof short[]) {
+      short[] data = (short[]) src;
+      for (int i = 0; i < length; i++) dest[destOffset + i] = colorTable[data[srcOffset + i] & 0xffff];
+    } // if
+
+    else if (src instanceof byte[]) {
+      byte[] data = (byte[]) src;
+      for (int i = 0; i < length; i++) dest[destOffset + i] = colorTable[data[srcOffset + i] & 0xff];
+    } // else if
+
+    else if (src instanceof float[]) {
+      float[] data = (float[]) src;
+      for (int i = 0; i < length; i++) dest[destOffset + i] = converter.getColor (packing.unpack (data[srcOffset + i]));
+    } // else if
+
+    else throw new IllegalArgumentException ("Unsupported source data type " + src.getClass());
+
+  } // convert
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public boolean isMissing (
+    Object src,
+    int srcOffset
+  ) {
+
+    double packed;
+    if (src instanceof short[]) {
+      short value = ((short[]) src)[srcOffset];
+      packed = (packing.isUnsigned ? value & 0xffff : value);
+    } // if
+    else if (src instanceof byte[]) {
+      byte value = ((byte[]) src)[srcOffset];
+      packed = (packing.isUnsigned ? value & 0xff : value);
+    } // else if
+    else {
+      packed = ((float[]) src)[srcOffset];
+    } // else
+
+    return (packing.isMissing (packed));
+
+  } // isMissing
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public Object allocateSrc (int length) {
+
+    Object data;
+    if (packing.storageType == short[].class) data = new short[length];
+    else if (packing.storageType == byte[].class) data = new byte[length];
+    else data = new float[length];
+
+    return (data);
+
+  } // allocateSrc
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public int[] allocateDest (int length) { return (new int[length]); }
+
+  /////////////////////////////////////////////////////////////////
+
+} // PackedToColorConverter class
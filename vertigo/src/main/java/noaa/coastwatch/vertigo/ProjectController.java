@@ -12,17 +12,23 @@ import javafx.beans.value.ChangeListener;
 
 import java.net.URL;
 import java.io.IOException;
+import java.io.Closeable;
 import java.util.stream.Collectors;
 import java.util.List;
+import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
 
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import javafx.beans.property.DoubleProperty;
@@ -46,6 +52,9 @@ public class ProjectController {
   /** The maximum number of surfaces allowed in the cache. */
   private static final int MAX_SURFACES = 8;
 
+  /** The maximum number of surface builds kept running for inactive surfaces. */
+  private static final int MAX_SPECULATIVE_BUILDS = 1;
+
   /** The project to access for objects. */
   private Project proj;
 
@@ -55,8 +64,8 @@ public class ProjectController {
   /** The cache of surfaces requested. */
   private Map<String, DynamicSurface> surfaceCache;
 
-  /** The cache of surface threads in progress. */
-  private Map<String, Thread> surfaceThreadCache;
+  /** The map of surface key to cancel token for surface builds in progress, in request order. */
+  private Map<String, TaskService.CancelToken> surfaceBuildMap;
 
   /** The surface that is currently active in the view. */
   private DynamicSurface activeSurface;
@@ -73,6 +82,9 @@ public class ProjectController {
   /** The progress of rendering the active surface in the range [0..1]. */
   private DoubleProperty progressProp;
 
+  /** The map of surface name to the cancellation flag of its latest initialization. */
+  private Map<String, AtomicBoolean> initTokenMap = new ConcurrentHashMap<>();
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -103,7 +115,7 @@ public class ProjectController {
       } // removeEldestEntry
     };
 
-    surfaceThreadCache = new HashMap<>();
+    surfaceBuildMap = new LinkedHashMap<>();
 
 
 //    if (LOGGER.isLoggable (Level.FINE)) {
@@ -191,29 +203,41 @@ public class ProjectController {
     Consumer<Exception> exceptionConsumer
   ) {
 
-    // Create and start the task that initializes the factory and
-    // possibly throws an exception.
+    // The result is passed to the consumer either when the initialization
+    // finishes or when a timeout expires, whichever happens first.  We only
+    // wait for a certain amount of time.
     var factory = proj.getObject (GeoSurfaceFactory.class, name);
-    FutureTask<Void> initTask = new FutureTask<Void> (() -> {
-      factory.initialize();
-      return (null);
-    });
-    var initThread = new Thread (initTask);
-    initThread.setDaemon (true);
-    initThread.start();
-    
-    // Create and start the wait task that waits for the initialization to
-    // finish and then passes the result to the consumer.  We only wait for a
-    // certain amount of time.
-    var waitThread = new Thread (() -> {
+    var reported = new AtomicBoolean();
+    Consumer<Exception> reporter = except -> {
+      if (reported.compareAndSet (false, true))
+        Platform.runLater (() -> exceptionConsumer.accept (except));
+    };
+
+    // An initialization of the same surface that hasn't started yet is
+    // superseded by this one, and is skipped.
+    var token = new AtomicBoolean();
+    var previous = initTokenMap.put (name, token);
+    if (previous != null) previous.set (true);
+
+    // Start the task that initializes the factory and possibly throws an
+    // exception.  The timeout starts when the initialization does, rather
+    // than when it's queued, and when it expires the task is interrupted so
+    // that a remote dataset that never responds doesn't hold on to a
+    // surface pool thread.
+    var future = new AtomicReference<Future<?>>();
+    future.set (TaskService.getInstance().submit (TaskService.Pool.SURFACE, TaskService.HIGH_PRIORITY, () -> {
+      var timeout = TaskService.getInstance().schedule (() -> {
+        reporter.accept (new TimeoutException ("Timed out initializing surface '" + name + "'"));
+        var task = future.get();
+        if (task != null) task.cancel (true);
+      }, 30, TimeUnit.SECONDS);
       Exception except = null;
-      try { initTask.get (30, TimeUnit.SECONDS); }
+      try { factory.initialize(); }
       catch (Exception e) { except = e; }
-      Exception fExcept = except;
-      Platform.runLater (() -> exceptionConsumer.accept (fExcept));
-    });
-    waitThread.setDaemon (true);
-    waitThread.start();
+      timeout.cancel (false);
+      initTokenMap.remove (name, token);
+      reporter.accept (except);
+    }, token::get));
 
   } // initSurface
 
@@ -237,6 +261,36 @@ public class ProjectController {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Disposes of this controller when its project is no longer in use.  The
+   * active surface is cleared, surface initializations and builds in
+   * progress are cancelled, and the project objects that hold open
+   * resources such as datasets are closed.  This method must be called from the JavaFX application thread.
+   *
+   * @since 0.8
+   */
+  public void dispose () {
+
+    clearSurface();
+    for (var token : initTokenMap.values()) token.set (true);
+    initTokenMap.clear();
+    for (var token : surfaceBuildMap.values()) token.cancel();
+    surfaceBuildMap.clear();
+    surfaceCache.clear();
+
+    for (var object : proj.getObjects (ProjectObject.class)) {
+      if (object instanceof Closeable) {
+        try { ((Closeable) object).close(); }
+        catch (IOException e) {
+          LOGGER.log (Level.WARNING, "Failed to close project object", e);
+        } // catch
+      } // if
+    } // for
+
+  } // dispose
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Sets the specified surface active.
    *
@@ -246,12 +300,14 @@ public class ProjectController {
     DynamicSurface surface
   ) {
   
+    // Switching between surfaces of the same data, for example at different
+    // times, keeps the old surface in view until the new one replaces it.
     if (activeSurface != null) {
-      surfaceHandler.deactivateSurface (activeSurface);
       progressProp.unbind();
+      surfaceHandler.replaceSurface (activeSurface, surface);
     } // if
+    else surfaceHandler.activateSurface (surface);
     progressProp.bind (surface.progressProperty());
-    surfaceHandler.activateSurface (surface);
     activeSurface = surface;
 
   } // setActiveSurface
@@ -287,6 +343,7 @@ public class ProjectController {
     // creating and activating a surface to make sure that the surface being
     // activated should be the surface that was just created.
     activeSurfaceKey = surfaceKey;
+    cancelSupersededBuilds();
 
     // If we have the surface cached, just show it immediately.
     var surface = surfaceCache.get (surfaceKey);
@@ -294,17 +351,20 @@ public class ProjectController {
       setActiveSurface (surface);
     } // if
 
-    // If it's not cached and there isn't already a thread creating the surface,
-    // start a thread to create it and then show it when it's ready.
-    else if (!surfaceThreadCache.containsKey (surfaceKey)) {
+    // If it's not cached and there isn't already a task creating the surface,
+    // start a task to create it and then show it when it's ready.
+    else if (!surfaceBuildMap.containsKey (surfaceKey)) {
 
-      // Create and activate the surface in a background thread.  The process
+      // Create and activate the surface in a background task.  The process
       // of creating the surface can take a little time, depending on the
       // data source.  If the active surface has been changed before we can
       // create the surface, we don't go through the process of activating it.
-      var surfaceThread = new Thread (() -> {
+      // If the build is superseded by too many other requests, it's
+      // cancelled.
+      var token = new TaskService.CancelToken();
+      TaskService.getInstance().submit (TaskService.Pool.SURFACE, TaskService.HIGH_PRIORITY, () -> {
         try {
-          var newSurface = factory.createSurface (timeIndex, levelIndex);
+          var newSurface = factory.createSurface (timeIndex, levelIndex, token);
           Platform.runLater (() -> {
 
 
@@ -319,26 +379,57 @@ public class ProjectController {
 
 
 
-            surfaceThreadCache.remove (surfaceKey);
+            surfaceBuildMap.remove (surfaceKey, token);
             if (activeSurfaceKey.equals (surfaceKey)) setActiveSurface (newSurface);
             else LOGGER.warning ("Aborting display of surface '" + name + "' at time index " + timeIndex + ", level index " + levelIndex);
           });
         } // try
+        catch (CancellationException e) {
+          LOGGER.fine ("Cancelled creation of surface '" + name + "' at time index " + timeIndex + ", level index " + levelIndex);
+        } // catch
         catch (IOException e) {
           LOGGER.log (Level.WARNING, "Surface creation failed for '" + name + "' at time index " + timeIndex + ", level index " + levelIndex, e);
+          Platform.runLater (() -> surfaceBuildMap.remove (surfaceKey, token));
         } // catch
-      });
-      surfaceThreadCache.put (surfaceKey, surfaceThread);
-      LOGGER.fine ("Starting thread for creation of surface '" + name + "' at time index " + timeIndex + ", level index " + levelIndex);
-      surfaceThread.setDaemon (true);
-      surfaceThread.start();
+      }, token);
+      surfaceBuildMap.put (surfaceKey, token);
+      LOGGER.fine ("Submitted task for creation of surface '" + name + "' at time index " + timeIndex + ", level index " + levelIndex);
 
     } // else if
 
+    // If the surface is already being created, move it to the end of the
+    // request order so that it's the last to be cancelled.
+    else {
+      surfaceBuildMap.put (surfaceKey, surfaceBuildMap.remove (surfaceKey));
+    } // else
+
   } // showSurface
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Cancels the surface builds that have been superseded by newer requests.
+   * The build for the active surface is never cancelled, and the most
+   * recently requested other builds are kept running as speculative builds
+   * of neighbouring times or levels, since they may be requested again
+   * while scrubbing back and forth.  The rest are cancelled, which stops
+   * any coordinate reads in progress, or skips the build if it hasn't
+   * started.
+   */
+  private void cancelSupersededBuilds () {
+
+    List<String> keys = new ArrayList<> (surfaceBuildMap.keySet());
+    keys.remove (activeSurfaceKey);
+    int cancelCount = keys.size() - MAX_SPECULATIVE_BUILDS;
+    for (int i = 0; i < cancelCount; i++) {
+      surfaceBuildMap.remove (keys.get (i)).cancel();
+      LOGGER.fine ("Cancelled superseded build for surface key " + keys.get (i));
+    } // for
+
+  } // cancelSupersededBuilds
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Shows the area with the specified name.
    *
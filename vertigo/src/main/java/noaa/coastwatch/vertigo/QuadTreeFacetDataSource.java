@@ -0,0 +1,477 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import java.io.IOException;
+
+import javafx.scene.image.Image;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * The <code>QuadTreeFacetDataSource</code> class creates facet data from an
+ * image that is divided into a hierarchy of rectangular regions.  The root
+ * facets are the same as those of a {@link TiledImageFacetDataSource}, and
+ * each facet has up to four children that cover the same area with half the
+ * tile size.  Every facet has a single texture resolution, so that a facet
+ * is split into its children when the camera gets close enough that the
+ * texture resolution is no longer sufficient.  The number of facets shown
+ * stays roughly constant no matter the zoom level, and only the facets
+ * needed for the current view are ever accessed.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class QuadTreeFacetDataSource extends TiledImageFacetDataSource {
+
+  private static final Logger LOGGER = Logger.getLogger (QuadTreeFacetDataSource.class.getName());
+
+  /**
+   * The minimum number of image pixels for which a quadtree is recommended
+   * over a single level tiling.
+   */
+  public static final long MIN_PIXELS = 64L*1024*1024;
+
+  /** The target texture width and height for each facet. */
+  private static final int TEXTURE_SIZE = 512;
+
+  // Variables
+  // ---------
+
+  /** The image tiling for each depth in the tree. */
+  private ImageTiling[] tilings;
+
+  /** The facet index layout of the tree. */
+  private TreeIndex treeIndex;
+
+  /** The first facet index for each depth, plus the total facet count. */
+  private int[] offsets;
+
+  /** The texture level used for facets at each depth. */
+  private int[] textureLevels;
+
+  /** The mesh factory for each depth, created when first needed. */
+  private TiledImageMeshFactory[] meshFactories;
+
+  /** The texture factory for each depth, created when first needed. */
+  private TiledImageTextureFactory[] textureFactories;
+
+  /** The tile writer for texture images. */
+  private ImageTileWriter tileWriter;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new data source.
+   *
+   * @param width the total width of the image data.
+   * @param height the total height of the image data.
+   * @param coordSource the coordinate source for translating 2D image (x,y)
+   * to 3D model (x,y,z).
+   * @param tileWriter the writer that provides texture images for tiles
+   * within the image.
+   * @param delta the function that computes the surface offset in model space
+   * resulting from a straight line between two model (x,y,z) points.
+   * @param props the properties of the view.
+   *
+   * @throws IOException if an error occurred using the coordinate source to
+   * initialize the tiling properties.
+   *
+   * @see TiledImageFacetDataSource
+   */
+  public QuadTreeFacetDataSource (
+    int width,
+    int height,
+    ImageCoordinateSource coordSource,
+    ImageTileWriter tileWriter,
+    ToDoubleBiFunction<double[], double[]> delta,
+    ViewProperties props
+  ) throws IOException {
+
+    this (width, height, coordSource, tileWriter, delta, props, null);
+
+  } // QuadTreeFacetDataSource
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new data source that may be cancelled while reading
+   * coordinates.
+   *
+   * @param width the total width of the image data.
+   * @param height the total height of the image data.
+   * @param coordSource the coordinate source for translating 2D image (x,y)
+   * to 3D model (x,y,z).
+   * @param tileWriter the writer that provides texture images for tiles
+   * within the image.
+   * @param delta the function that computes the surface offset in model space
+   * resulting from a straight line between two model (x,y,z) points.
+   * @param props the properties of the view.
+   * @param cancelled the cancelled flag passed to the coordinate source,
+   * or null to not check.
+   *
+   * @throws IOException if an error occurred using the coordinate source to
+   * initialize the tiling properties.
+   * @throws java.util.concurrent.CancellationException if the cancelled
+   * flag was set while initializing the tiling properties.
+   *
+   * @since 0.8
+   */
+  public QuadTreeFacetDataSource (
+    int width,
+    int height,
+    ImageCoordinateSource coordSource,
+    ImageTileWriter tileWriter,
+    ToDoubleBiFunction<double[], double[]> delta,
+    ViewProperties props,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    this (width, height, coordSource, tileWriter, delta, props, cancelled, null);
+
+  } // QuadTreeFacetDataSource
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new data source whose root facets are aligned with the
+   * storage chunks of the image data.
+   *
+   * @param width the total width of the image data.
+   * @param height the total height of the image data.
+   * @param coordSource the coordinate source for translating 2D image (x,y)
+   * to 3D model (x,y,z).
+   * @param tileWriter the writer that provides texture images for tiles
+   * within the image.
+   * @param delta the function that computes the surface offset in model space
+   * resulting from a straight line between two model (x,y,z) points.
+   * @param props the properties of the view.
+   * @param cancelled the cancelled flag passed to the coordinate source,
+   * or null to not check.
+   * @param chunkSizes the storage chunk size of the image data as
+   * [width, height], or null if the data is not stored in chunks.
+   *
+   * @throws IOException if an error occurred using the coordinate source to
+   * initialize the tiling properties.
+   * @throws java.util.concurrent.CancellationException if the cancelled
+   * flag was set while initializing the tiling properties.
+   *
+   * @since 0.8
+   *
+   * @see TiledImageFacetDataSource
+   */
+  public QuadTreeFacetDataSource (
+    int width,
+    int height,
+    ImageCoordinateSource coordSource,
+    ImageTileWriter tileWriter,
+    ToDoubleBiFunction<double[], double[]> delta,
+    ViewProperties props,
+    BooleanSupplier cancelled,
+    int[] chunkSizes
+  ) throws IOException {
+
+    // The single level analysis gives us the root tiling, as well as the
+    // size of the full resolution mesh cell.  Each depth in the tree halves
+    // the tile size, until either the texture at full resolution fits into
+    // the target texture size, or a tile is a single mesh cell.  Tiles at
+    // deeper levels stay aligned with the data chunks as long as the halved
+    // tile size is still a multiple or divisor of the chunk size.
+    super (width, height, coordSource, tileWriter, delta, props, cancelled, chunkSizes);
+    this.tileWriter = tileWriter;
+
+    ImageTiling rootTiling = getTiling();
+    int cellSize = getCellSize();
+    List<ImageTiling> tilingList = new ArrayList<>();
+    tilingList.add (rootTiling);
+    int tileSize = rootTiling.tileWidth;
+    while (tileSize > TEXTURE_SIZE && tileSize/2 >= cellSize) {
+      tileSize = tileSize/2;
+      tilingList.add (new ImageTiling (width, height, tileSize, tileSize));
+    } // while
+    int depths = tilingList.size();
+    tilings = tilingList.toArray (new ImageTiling[0]);
+
+    // Each depth uses a texture level that reduces the tile to the target
+    // texture size, except the deepest which is always at full resolution.
+    treeIndex = new TreeIndex (tilings);
+    offsets = treeIndex.offsets;
+    textureLevels = new int[depths];
+    for (int depth = 0; depth < depths; depth++) {
+      ImageTiling tiling = tilings[depth];
+      int stride = Math.max (1, tiling.tileWidth / TEXTURE_SIZE);
+      textureLevels[depth] = (depth == depths-1 ? 0 : 31 - Integer.numberOfLeadingZeros (stride));
+      LOGGER.fine ("Quadtree depth " + depth + " has " + tiling.getTiles() + " tiles of size " +
+        tiling.tileWidth + " at texture level " + textureLevels[depth]);
+    } // for
+
+    // The root factories are those already created for the single level
+    // tiling, and the rest are created as needed.
+    meshFactories = new TiledImageMeshFactory[depths];
+    meshFactories[0] = (TiledImageMeshFactory) super.getMeshFactory();
+    textureFactories = new TiledImageTextureFactory[depths];
+    textureFactories[0] = (TiledImageTextureFactory) super.getTextureFactory();
+
+    init (offsets[depths], new QuadTreeMeshFactory(), new QuadTreeTextureFactory());
+
+  } // QuadTreeFacetDataSource
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Gets the mesh factory for a tree depth. */
+  private synchronized TiledImageMeshFactory getDepthMeshFactory (int depth) {
+
+    // The mesh at each depth shares the points of the root mesh, and has as
+    // many levels as needed so that its full resolution mesh cells are the
+    // same size as the root.
+    if (meshFactories[depth] == null) {
+      int levels = getMeshDistances().length - depth;
+      double[] dmin = Arrays.copyOf (getMeshDistances(), levels);
+      meshFactories[depth] = new TiledImageMeshFactory (meshFactories[0], tilings[depth], dmin);
+    } // if
+
+    return (meshFactories[depth]);
+
+  } // getDepthMeshFactory
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Gets the texture factory for a tree depth. */
+  private synchronized TiledImageTextureFactory getDepthTextureFactory (int depth) {
+
+    if (textureFactories[depth] == null) {
+      textureFactories[depth] = new TiledImageTextureFactory (tilings[depth], tileWriter, new double[] {0});
+    } // if
+
+    return (textureFactories[depth]);
+
+  } // getDepthTextureFactory
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public int[] getRoots() {
+
+    int[] roots = new int[offsets[1]];
+    for (int i = 0; i < roots.length; i++) roots[i] = i;
+    return (roots);
+
+  } // getRoots
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Gets the tree depth of a facet index. */
+  private int getDepth (int index) { return (treeIndex.getDepth (index)); }
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public int[] getChildren (int index) { return (treeIndex.getChildren (index)); }
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public double getSplitDist (int index) {
+
+    // The split distance is where the texture pixels of the facet are
+    // shown at one screen pixel each.  Any closer and the children
+    // would show more detail.
+    int depth = getDepth (index);
+    if (depth == tilings.length-1) return (0);
+
+    int tileIndex = index - offsets[depth];
+    ImageTile tile = tilings[depth].getTile (tileIndex);
+    int texturePixels = Math.max (tile.width, tile.height) >> textureLevels[depth];
+    double modelSize = getDepthMeshFactory (depth).getModelSize (tileIndex);
+
+    return (getViewProperties().cdist (modelSize, texturePixels));
+
+  } // getSplitDist
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * The <code>QuadTreeMeshFactory</code> class creates meshes for facets by
+   * delegating to the mesh factory for the facet depth.  Deeper facets have
+   * fewer mesh levels, and requests for coarser levels than they have are
+   * satisfied with their coarsest mesh.
+   */
+  private class QuadTreeMeshFactory implements MeshFactory {
+
+    @Override
+    public int getLevels() { return (getMeshDistances().length); }
+
+    @Override
+    public int getLevelForDist (double dist) { return (getDepthMeshFactory (0).getLevelForDist (dist)); }
+
+    @Override
+    public TriangleMesh create (int index, int level, BooleanSupplier cancelled) {
+      int depth = getDepth (index);
+      var factory = getDepthMeshFactory (depth);
+      return (factory.create (index - offsets[depth], Math.min (level, factory.getLevels()-1), cancelled));
+    } // create
+
+    @Override
+    public void setTexturePoints (TriangleMesh mesh, int index, int level, int textureWidth, int textureHeight) {
+      int depth = getDepth (index);
+      var factory = getDepthMeshFactory (depth);
+      factory.setTexturePoints (mesh, index - offsets[depth], Math.min (level, factory.getLevels()-1),
+        textureWidth, textureHeight);
+    } // setTexturePoints
+
+    @Override
+    public double getAspectRatio (int index) {
+      int depth = getDepth (index);
+      return (getDepthMeshFactory (depth).getAspectRatio (index - offsets[depth]));
+    } // getAspectRatio
+
+  } // QuadTreeMeshFactory class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * The <code>QuadTreeTextureFactory</code> class creates textures for
+   * facets by delegating to the texture factory for the facet depth.  Each
+   * facet has a single texture level.
+   */
+  private class QuadTreeTextureFactory implements TextureFactory {
+
+    @Override
+    public int getLevels() { return (1); }
+
+    @Override
+    public int getLevelForDist (double dist) { return (0); }
+
+    @Override
+    public Image create (int index, double aspect, int level, BooleanSupplier cancelled) {
+      int depth = getDepth (index);
+      return (getDepthTextureFactory (depth).create (index - offsets[depth], aspect, textureLevels[depth], cancelled));
+    } // create
+
+    @Override
+    public CompletableFuture<Image> createAsync (int index, double aspect, int level) {
+      int depth = getDepth (index);
+      return (getDepthTextureFactory (depth).createAsync (index - offsets[depth], aspect, textureLevels[depth]));
+    } // createAsync
+
+    @Override
+    public Image createOverview (BooleanSupplier cancelled) {
+      return (getDepthTextureFactory (0).createOverview (cancelled));
+    } // createOverview
+
+    @Override
+    public Image createFromOverview (int index, Image overview) {
+      int depth = getDepth (index);
+      return (getDepthTextureFactory (depth).createFromOverview (index - offsets[depth], overview));
+    } // createFromOverview
+
+    @Override
+    public boolean isOverviewExact () { return (getDepthTextureFactory (0).isOverviewExact()); }
+
+    @Override
+    public boolean hasData (int index) { return (getDepthTextureFactory (0).hasData (treeIndex.getRoot (index))); }
+
+  } // QuadTreeTextureFactory class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * The <code>TreeIndex</code> class maps between facet indices and tiles
+   * in the tree.  Facets are numbered by depth, and within each depth in
+   * the order of the tiles in the tiling for that depth, which is by x
+   * and then y.  Each depth has tiles half the size of the depth above.
+   */
+  static class TreeIndex {
+
+    /** The number of tiles along the x direction for each depth. */
+    private int[] xTiles;
+
+    /** The number of tiles along the y direction for each depth. */
+    private int[] yTiles;
+
+    /** The first facet index for each depth, plus the total facet count. */
+    final int[] offsets;
+
+    /**
+     * Creates a new index.
+     *
+     * @param tilings the image tiling for each depth in the tree.
+     */
+    TreeIndex (ImageTiling[] tilings) {
+
+      int depths = tilings.length;
+      xTiles = new int[depths];
+      yTiles = new int[depths];
+      offsets = new int[depths+1];
+      for (int depth = 0; depth < depths; depth++) {
+        ImageTiling tiling = tilings[depth];
+        yTiles[depth] = (tiling.height + tiling.tileHeight - 1) / tiling.tileHeight;
+        xTiles[depth] = tiling.getTiles() / yTiles[depth];
+        offsets[depth+1] = offsets[depth] + tiling.getTiles();
+      } // for
+
+    } // TreeIndex
+
+    /** Gets the tree depth of a facet index. */
+    int getDepth (int index) {
+
+      int depth = 0;
+      while (index >= offsets[depth+1]) depth++;
+      return (depth);
+
+    } // getDepth
+
+    /** Gets the root facet index that contains a facet. */
+    int getRoot (int index) {
+
+      int depth = getDepth (index);
+      int tileIndex = index - offsets[depth];
+      int xTile = (tileIndex / yTiles[depth]) >> depth;
+      int yTile = (tileIndex % yTiles[depth]) >> depth;
+
+      return (xTile*yTiles[0] + yTile);
+
+    } // getRoot
+
+    /** Gets the child facet indices of a facet, or null for the deepest facets. */
+    int[] getChildren (int index) {
+
+      // The children of a tile are the tiles at the next depth that cover
+      // the same pixels.  Tiles along the right and bottom edges of the
+      // image may have fewer than four children.
+      int depth = getDepth (index);
+      if (depth == yTiles.length-1) return (null);
+
+      int tileIndex = index - offsets[depth];
+      int xTile = tileIndex / yTiles[depth];
+      int yTile = tileIndex % yTiles[depth];
+      int childXTiles = xTiles[depth+1];
+      int childYTiles = yTiles[depth+1];
+
+      List<Integer> childList = new ArrayList<>();
+      for (int x = xTile*2; x <= xTile*2 + 1 && x < childXTiles; x++) {
+        for (int y = yTile*2; y <= yTile*2 + 1 && y < childYTiles; y++) {
+          childList.add (offsets[depth+1] + x*childYTiles + y);
+        } // for
+      } // for
+
+      return (childList.stream().mapToInt (Integer::intValue).toArray());
+
+    } // getChildren
+
+  } // TreeIndex class
+
+  /////////////////////////////////////////////////////////////////
+
+} // QuadTreeFacetDataSource class
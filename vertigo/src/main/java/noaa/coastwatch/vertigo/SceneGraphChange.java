@@ -0,0 +1,67 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import javafx.geometry.Point3D;
+
+/**
+ * The <code>SceneGraphChange</code> class is a change to the scene graph
+ * that has a location in the view.  The location allows changes to be
+ * prioritized so that those nearest the center of the view are performed
+ * first.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class SceneGraphChange implements Runnable {
+
+  // Variables
+  // ---------
+
+  /** The change to perform. */
+  private Runnable change;
+
+  /** The location of the change in the reference frame of the view objects. */
+  private Point3D location;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new scene graph change.
+   *
+   * @param change the change to perform.
+   * @param location the location of the change in the reference frame of
+   * the view objects, or null if not known.
+   */
+  public SceneGraphChange (
+    Runnable change,
+    Point3D location
+  ) {
+
+    this.change = change;
+    this.location = location;
+
+  } // SceneGraphChange
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the location of the change.
+   *
+   * @return the location in the reference frame of the view objects, or
+   * null if not known.
+   */
+  public Point3D getLocation() { return (location); }
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public void run() { change.run(); }
+
+  /////////////////////////////////////////////////////////////////
+
+} // SceneGraphChange class
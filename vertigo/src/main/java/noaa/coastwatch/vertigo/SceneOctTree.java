@@ -9,6 +9,10 @@ package noaa.coastwatch.vertigo;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collection;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -19,7 +23,9 @@ import javafx.geometry.BoundingBox;
 /**
  * The <code>SceneOctTree</code> class holds and organizes scene graph objects
  * into a spatial tree structure using their bounding boxes and allows for
- * queries against a view frustum.
+ * queries against a view frustum.  The bounds of each object are recorded
+ * when it's inserted, so an object whose bounds change must be updated
+ * with {@link #update(Node)}.
  *
  * @author Peter Hollemans
  * @since 0.5
@@ -33,6 +39,14 @@ public class SceneOctTree {
   
   /** The maximum number of objects in a node. */
   private static final int MAX_OBJECTS = 8;
+
+  /**
+   * The maximum number of objects in the children of a node for them to
+   * be merged.  This is lower than the split threshold, so that a node
+   * whose object count moves back and forth around the threshold isn't
+   * repeatedly split and merged.
+   */
+  private static final int MERGE_OBJECTS = MAX_OBJECTS/2;
   
   /**
    * The maximum tree depth.  A problem occurs in badly behaved scene nodes
@@ -71,6 +85,9 @@ public class SceneOctTree {
   /** The children of this node, or null for none (ie: the node is a leaf). */
   private SceneOctTree[] children;
 
+  /** The map of object to bounds at insertion, shared by all nodes in the tree. */
+  private Map<Node, Bounds> boundsMap;
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -81,11 +98,13 @@ public class SceneOctTree {
    */
   private SceneOctTree (
     Bounds bounds,
-    int depth
+    int depth,
+    Map<Node, Bounds> boundsMap
   ) {
 
     this.bounds = bounds;
     this.depth = depth;
+    this.boundsMap = boundsMap;
 
   } // SceneOctTree
 
@@ -100,6 +119,15 @@ public class SceneOctTree {
   
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Determines if this tree is a single leaf node with no children.
+   *
+   * @return true if this tree is a leaf, or false if it has children.
+   */
+  boolean isLeaf () { return (children == null); }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Creates a new empty tree.
    *
@@ -110,6 +138,7 @@ public class SceneOctTree {
   ) {
 
     this.bounds = bounds;
+    this.boundsMap = new HashMap<>();
 
   } // SceneOctTree
 
@@ -213,6 +242,7 @@ public class SceneOctTree {
   ) {
 
     Bounds objectBounds = object.getBoundsInLocal();
+    boundsMap.put (object, objectBounds);
 
     if (LOGGER.isLoggable (Level.FINER)) {
       LOGGER.finer ("Inserting object with center (x,y,z) = " +
@@ -229,7 +259,175 @@ public class SceneOctTree {
       objectBounds.getCenterY(), objectBounds.getCenterZ());
 
   } // insert
-  
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Inserts a collection of objects into the tree.  If the tree is empty,
+   * the objects are all placed in the root and distributed down the tree
+   * in one pass, rather than each object being inserted from the root and
+   * splitting nodes as it arrives.
+   *
+   * @param objects the objects to insert.
+   *
+   * @since 0.8
+   */
+  public void insertAll (
+    Collection<? extends Node> objects
+  ) {
+
+    for (Node object : objects) boundsMap.put (object, object.getBoundsInLocal());
+
+    // For an empty tree, we place all the objects in the root and then
+    // split, which distributes them down the tree in one pass.
+    if (children == null && firstClassList == null && secondClassList == null) {
+      for (Node object : objects) {
+        Bounds objectBounds = boundsMap.get (object);
+        if (bounds.contains (objectBounds.getCenterX(), objectBounds.getCenterY(), objectBounds.getCenterZ())) {
+          if (firstClassList == null) firstClassList = new ArrayList<>();
+          firstClassList.add (object);
+        } // if
+        else if (bounds.intersects (objectBounds)) {
+          if (secondClassList == null) secondClassList = new ArrayList<>();
+          secondClassList.add (object);
+        } // else if
+        else throw new IllegalArgumentException ("Object does not belong in this tree");
+      } // for
+      split();
+    } // if
+
+    else {
+      for (Node object : objects) {
+        Bounds objectBounds = boundsMap.get (object);
+        insert (object, objectBounds, objectBounds.getCenterX(),
+          objectBounds.getCenterY(), objectBounds.getCenterZ());
+      } // for
+    } // else
+
+    LOGGER.finer ("Inserted " + objects.size() + " objects");
+
+  } // insertAll
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Removes an object from the tree.  Tree nodes whose children together
+   * hold few enough objects are merged back into a single node.
+   *
+   * @param object the object to remove.
+   *
+   * @return true if the object was removed, or false if it was not in the
+   * tree.
+   *
+   * @since 0.8
+   */
+  public boolean remove (
+    Node object
+  ) {
+
+    Bounds objectBounds = boundsMap.remove (object);
+    if (objectBounds != null) remove (object, objectBounds);
+
+    return (objectBounds != null);
+
+  } // remove
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Updates the bounds of an object in the tree.  If the object bounds have
+   * changed since it was inserted, the object is moved to the tree nodes
+   * for its new bounds.
+   *
+   * @param object the object to update.
+   *
+   * @return true if the object was moved, or false if its bounds are
+   * unchanged or it's not in the tree.
+   *
+   * @since 0.8
+   */
+  public boolean update (
+    Node object
+  ) {
+
+    boolean moved = false;
+    Bounds objectBounds = boundsMap.get (object);
+    if (objectBounds != null) {
+      Bounds newBounds = object.getBoundsInLocal();
+      if (!newBounds.equals (objectBounds)) {
+        remove (object);
+        insert (object);
+        moved = true;
+      } // if
+    } // if
+
+    return (moved);
+
+  } // update
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Removes an object from this tree and its children.
+   *
+   * @param object the object to remove.
+   * @param objectBounds the object bounds used when the object was
+   * inserted.
+   */
+  private void remove (
+    Node object,
+    Bounds objectBounds
+  ) {
+
+    // Base case -- remove the object from this node
+    if (children == null) {
+      if (firstClassList != null && firstClassList.remove (object) && firstClassList.isEmpty())
+        firstClassList = null;
+      if (secondClassList != null && secondClassList.remove (object) && secondClassList.isEmpty())
+        secondClassList = null;
+    } // if
+
+    // Recursive case -- remove the object from the children it was
+    // inserted into, and then see if the children can be merged.
+    else {
+      for (SceneOctTree child : children) {
+        if (objectBounds.intersects (child.bounds))
+          child.remove (object, objectBounds);
+      } // for
+      merge();
+    } // else
+
+  } // remove
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Check if this tree has only leaf children and if together they hold
+   * few enough first class citizens, merge the children back into this node.
+   * This is the reverse of a split.
+   */
+  private void merge () {
+
+    // An object may appear in more than one child, so we collect them in
+    // sets.  Any object that's first class in one of the children has its
+    // center in this node, so it's first class here even if it's second
+    // class in another child.
+    Set<Node> firstClassSet = new LinkedHashSet<>();
+    Set<Node> secondClassSet = new LinkedHashSet<>();
+    for (SceneOctTree child : children) {
+      if (child.children != null) return;
+      if (child.firstClassList != null) firstClassSet.addAll (child.firstClassList);
+      if (child.secondClassList != null) secondClassSet.addAll (child.secondClassList);
+    } // for
+    if (firstClassSet.size() > MERGE_OBJECTS) return;
+    secondClassSet.removeAll (firstClassSet);
+
+    children = null;
+    firstClassList = (firstClassSet.isEmpty() ? null : new ArrayList<> (firstClassSet));
+    secondClassList = (secondClassSet.isEmpty() ? null : new ArrayList<> (secondClassSet));
+
+  } // merge
+
   /////////////////////////////////////////////////////////////////
   
   /**
@@ -255,39 +453,51 @@ public class SceneOctTree {
               xBounds[x+1] - xBounds[x], yBounds[y+1] - yBounds[y], zBounds[z+1] - zBounds[z]
             );
             int index = x + y*2 + z*4;
-            children[index] = new SceneOctTree (childBounds, this.depth+1);
+            children[index] = new SceneOctTree (childBounds, this.depth+1, boundsMap);
           } // for
         } // for
       } // for
 
-      // Insert first class objects into children.  Note that we don't know
-      // if the object will be first or second class in the child so we have
-      // to perform a full insert.
+      // Distribute the first class objects to the children.  The children
+      // are all leaves at this point, so the object goes straight into the
+      // child lists as either first or second class depending on where its
+      // center is.  The children are split afterwards, so that a child
+      // isn't split and redistributed repeatedly as objects arrive.
       for (Node object : firstClassList) {
-        Bounds objectBounds = object.getBoundsInLocal();
+        Bounds objectBounds = boundsMap.get (object);
+        double centerX = objectBounds.getCenterX();
+        double centerY = objectBounds.getCenterY();
+        double centerZ = objectBounds.getCenterZ();
         for (SceneOctTree child : children) {
-          if (objectBounds.intersects (child.bounds))
-            child.insert (object);
+          if (child.bounds.contains (centerX, centerY, centerZ)) {
+            if (child.firstClassList == null) child.firstClassList = new ArrayList<>();
+            child.firstClassList.add (object);
+          } // if
+          else if (objectBounds.intersects (child.bounds)) {
+            if (child.secondClassList == null) child.secondClassList = new ArrayList<>();
+            child.secondClassList.add (object);
+          } // else if
         } // for
       } // for
       firstClassList = null;
 
-      // Insert second class objects into children (if any exist).  We know
-      // that the object will be second class in the child, so we just
-      // perform a second class insert.
+      // Distribute second class objects to the children (if any exist).  We
+      // know that the object will be second class in the child.
       if (secondClassList != null) {
         for (Node object : secondClassList) {
-          Bounds objectBounds = object.getBoundsInLocal();
+          Bounds objectBounds = boundsMap.get (object);
           for (SceneOctTree child : children) {
-            if (objectBounds.intersects (child.bounds))
-              child.insertSecondClass (object, objectBounds);
+            if (objectBounds.intersects (child.bounds)) {
+              if (child.secondClassList == null) child.secondClassList = new ArrayList<>();
+              child.secondClassList.add (object);
+            } // if
           } // for
         } // for
       } // if
       secondClassList = null;
 
-      // Perform a split on the children, just in case all the first class
-      // objects that we just inserted all went into one child.
+      // Perform a split on the children, in case any of them now hold too
+      // many first class objects.
       for (SceneOctTree child : children) child.split();
 
     } // if
@@ -314,8 +524,11 @@ public class SceneOctTree {
     if (children == null && firstClassList == null && secondClassList == null) return;
 
     // Now do the frustum intersection check and if so, go deeper and look
-    // for objects
-    if (frustum.intersects (this.bounds)) {
+    // for objects.  If this node is entirely inside the frustum, then so
+    // are all its objects and we don't need to check them individually.
+    int classification = frustum.classify (this.bounds);
+    if (classification == Frustum.INSIDE) addAll (objectsFound);
+    else if (classification == Frustum.INTERSECTS) {
       
       // Base case -- check the individual objects here against the frustum.
       // We try to eliminate multiple frustum intersection queries by checking
@@ -325,7 +538,7 @@ public class SceneOctTree {
         if (firstClassList != null) {
           for (Node object : firstClassList) {
             if (!objectsFound.contains (object)) {
-              if (frustum.intersects (object.getBoundsInLocal())) objectsFound.add (object);
+              if (frustum.intersects (boundsMap.get (object))) objectsFound.add (object);
             } // if
           } // for
         } // if
@@ -333,7 +546,7 @@ public class SceneOctTree {
         if (secondClassList != null) {
           for (Node object : secondClassList) {
             if (!objectsFound.contains (object)) {
-              if (frustum.intersects (object.getBoundsInLocal())) objectsFound.add (object);
+              if (frustum.intersects (boundsMap.get (object))) objectsFound.add (object);
             } // if
           } // for
         } // if
@@ -350,6 +563,27 @@ public class SceneOctTree {
     } // if
 
   } // findVisible
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds all the objects in this tree to a set.
+   *
+   * @param objectsFound the output set of objects found (modified).
+   */
+  private void addAll (
+    Set<Node> objectsFound
+  ) {
+
+    if (children == null) {
+      if (firstClassList != null) objectsFound.addAll (firstClassList);
+      if (secondClassList != null) objectsFound.addAll (secondClassList);
+    } // if
+    else {
+      for (SceneOctTree child : children) child.addAll (objectsFound);
+    } // else
+
+  } // addAll
   
   /////////////////////////////////////////////////////////////////
 
@@ -416,6 +650,4 @@ public class SceneOctTree {
 
   /////////////////////////////////////////////////////////////////
 
-  // TODO: We should also have remove() and merge() functions here.
-
 } // SceneOctTree class
@@ -0,0 +1,135 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import javafx.scene.Node;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * The <code>SurfaceHandover</code> class holds the nodes of a surface that
+ * has been replaced by another surface with the same geometry.  The nodes
+ * stay in the world until the new surface facets with the same index take
+ * their place, or the new surface is initialized and the handover is run to
+ * remove the remaining nodes.  If a surface is replaced again before its
+ * handover has run, the handovers are chained so that all the remaining
+ * nodes are removed together.  A surface that is activated again while
+ * some of its own nodes are still held in the chain, for example when
+ * stepping back in time before the intermediate surface was initialized,
+ * takes those nodes back so that they are neither added to the world twice
+ * nor removed from under it.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+class SurfaceHandover implements Runnable {
+
+  // Variables
+  // ---------
+
+  /** The old facet nodes by facet index. */
+  private Map<Integer, Node> facetNodes;
+
+  /** The old nodes still in the world and held by this handover. */
+  private Set<Node> nodes;
+
+  /** The handover still pending for the old surface, or null for none. */
+  private SurfaceHandover previous;
+
+  /** The function that removes a node from the world. */
+  private Consumer<Node> remover;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new handover.
+   *
+   * @param facetNodes the map of facet index to node for the old surface.
+   * @param otherNodes the other nodes of the old surface, such as batch
+   * nodes.
+   * @param previous the handover still pending for the old surface, or null
+   * for none.
+   * @param remover the function that removes a node from the world.
+   */
+  public SurfaceHandover (
+    Map<Integer, Node> facetNodes,
+    Collection<Node> otherNodes,
+    SurfaceHandover previous,
+    Consumer<Node> remover
+  ) {
+
+    this.facetNodes = new HashMap<> (facetNodes);
+    this.nodes = new LinkedHashSet<> (facetNodes.values());
+    this.nodes.addAll (otherNodes);
+    this.previous = previous;
+    this.remover = remover;
+
+  } // SurfaceHandover
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Takes a node back from this handover or any previous handover in the
+   * chain, so that it is left in the world when the handover runs.
+   *
+   * @param node the node to take back.
+   *
+   * @return true if the node was held and so is still in the world, or
+   * false if not.
+   */
+  public boolean keep (
+    Node node
+  ) {
+
+    boolean held = nodes.remove (node);
+    if (!held && previous != null) held = previous.keep (node);
+
+    return (held);
+
+  } // keep
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Removes the old node for a facet index from the world, if it's still
+   * held by this handover.
+   *
+   * @param index the index of the facet whose new node is now in the world.
+   */
+  public void replace (
+    int index
+  ) {
+
+    Node node = facetNodes.remove (index);
+    if (node != null && nodes.remove (node)) remover.accept (node);
+
+  } // replace
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Removes all the nodes still held by this handover and the chain from the world. */
+  @Override
+  public void run () {
+
+    for (var node : nodes) remover.accept (node);
+    nodes.clear();
+    facetNodes.clear();
+    if (previous != null) {
+      previous.run();
+      previous = null;
+    } // if
+
+  } // run
+
+  /////////////////////////////////////////////////////////////////
+
+} // SurfaceHandover class
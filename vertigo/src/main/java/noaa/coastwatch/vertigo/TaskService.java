@@ -0,0 +1,790 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.util.Map;
+import java.util.EnumMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * <p>The <code>TaskService</code> class runs all the background work in the
+ * application using a fixed set of named thread pools, each with a bounded
+ * number of daemon threads.  Tasks waiting in a pool queue are run in order
+ * of priority and then in order of submission, and tasks may be submitted
+ * with a cancellation token so that they're skipped if cancelled before
+ * they start.  The queue depth and task counts for each pool are available
+ * for monitoring.</p>
+ *
+ * <p>Tasks that spend most of their time waiting for I/O, such as remote
+ * data reads and map tile downloads, may instead be run on virtual threads
+ * when the runtime supports them (Java 21 and later), so that many requests
+ * can be in flight at once.  In that case the number of concurrent I/O
+ * operations is limited per host rather than by the number of threads, and
+ * CPU bound work done by I/O tasks is limited to a small number of
+ * concurrent operations.  On older runtimes, a bounded pool of platform
+ * threads is used for I/O instead.</p>
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class TaskService {
+
+  private static final Logger LOGGER = Logger.getLogger (TaskService.class.getName());
+
+  /** The priority for tasks that the user is waiting for. */
+  public static final int HIGH_PRIORITY = 0;
+
+  /** The priority for most tasks. */
+  public static final int NORMAL_PRIORITY = 1;
+
+  /** The priority for speculative tasks that may never be needed. */
+  public static final int LOW_PRIORITY = 2;
+
+  /** The queue depth above which a pool is reported as backed up. */
+  private static final int QUEUE_WARNING_DEPTH = 256;
+
+  /** The host name used for local file access. */
+  public static final String LOCAL_HOST = "local";
+
+  /** The default maximum concurrent I/O operations per remote host. */
+  private static final int REMOTE_HOST_PERMITS = 16;
+
+  /** The default maximum concurrent I/O operations for local files. */
+  private static final int LOCAL_HOST_PERMITS = 8;
+
+  /** The number of platform threads for I/O without virtual threads. */
+  private static final int IO_THREADS = 16;
+
+  /** The thread pools available for running tasks. */
+  public enum Pool {
+
+    /** The pool for facet mesh and texture updates. */
+    FACET ("facet", 4, Thread.NORM_PRIORITY),
+
+    /** The pool for surface initialization and creation. */
+    SURFACE ("surface", 2, Thread.NORM_PRIORITY),
+
+    /** The pool for surface updates and progress tracking. */
+    UPDATE ("update", 2, Thread.NORM_PRIORITY),
+
+    /** The pool for prefetching facet data using spare processing time. */
+    PREFETCH ("prefetch", 2, Thread.MIN_PRIORITY),
+
+    /** The pool for building facet batches. */
+    BATCH ("batch", 1, Thread.NORM_PRIORITY),
+
+    /** The pool for reading parallel bands of data. */
+    BAND ("band", Math.max (2, Runtime.getRuntime().availableProcessors()), Thread.NORM_PRIORITY);
+
+    private final String name;
+    private final int threads;
+    private final int threadPriority;
+
+    Pool (String name, int threads, int threadPriority) {
+      this.name = name;
+      this.threads = threads;
+      this.threadPriority = threadPriority;
+    } // Pool
+
+    /**
+     * Gets the name of this pool, used in thread names.
+     *
+     * @return the pool name.
+     */
+    public String getName() { return (name); }
+
+    /**
+     * Gets the maximum number of threads in this pool.
+     *
+     * @return the thread count.
+     */
+    public int getThreads() { return (threads); }
+
+  } // Pool enum
+
+  // Variables
+  // ---------
+
+  /** The singleton instance of this class. */
+  private static TaskService instance;
+
+  /** The map of pool to executor. */
+  private Map<Pool, PoolExecutor> executorMap;
+
+  /** The scheduler for running short tasks after a delay. */
+  private ScheduledExecutorService scheduler;
+
+  /** The executor for I/O tasks, using virtual threads if available. */
+  private ExecutorService ioExecutor;
+
+  /** The virtual thread flag, true if I/O tasks use virtual threads. */
+  private boolean isVirtual;
+
+  /** The map of host name to I/O permits. */
+  private Map<String, Semaphore> hostPermitMap;
+
+  /** The maximum concurrent I/O operations for each remote host. */
+  private int remoteHostPermits;
+
+  /** The maximum concurrent I/O operations for local files. */
+  private int localHostPermits;
+
+  /** The permits for CPU bound work done by I/O tasks. */
+  private Semaphore computePermits;
+
+  /** The flag set for threads running I/O tasks. */
+  private ThreadLocal<Boolean> ioThread = ThreadLocal.withInitial (() -> false);
+
+  /** The number of I/O tasks submitted, running, and waiting for permits. */
+  private AtomicLong ioSubmitted = new AtomicLong();
+  private AtomicInteger ioActive = new AtomicInteger();
+  private AtomicInteger ioWaiting = new AtomicInteger();
+  private AtomicInteger ioPeakActive = new AtomicInteger();
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the singleton instance of this class.
+   *
+   * @return the task service.
+   */
+  public static synchronized TaskService getInstance() {
+
+    if (instance == null) instance = new TaskService();
+    return (instance);
+
+  } // getInstance
+
+  /////////////////////////////////////////////////////////////////
+
+  protected TaskService () {
+
+    executorMap = new EnumMap<> (Pool.class);
+    for (Pool pool : Pool.values()) {
+      executorMap.put (pool, new PoolExecutor (pool));
+      LOGGER.fine ("Using " + pool.threads + " thread(s) for " + pool.name + " tasks");
+    } // for
+
+    scheduler = new ScheduledThreadPoolExecutor (1, new PoolThreadFactory ("timer", Thread.NORM_PRIORITY));
+    ((ScheduledThreadPoolExecutor) scheduler).setRemoveOnCancelPolicy (true);
+
+    // Virtual threads are only available in Java 21 and later, and the
+    // code is compiled for older releases, so we look for them by
+    // reflection.  They may be turned off for testing with a system
+    // property.
+    if (!Boolean.getBoolean ("vertigo.io.platform")) {
+      try {
+        ioExecutor = (ExecutorService) Executors.class.getMethod ("newVirtualThreadPerTaskExecutor").invoke (null);
+        isVirtual = true;
+      } // try
+      catch (ReflectiveOperationException | RuntimeException e) {
+        LOGGER.fine ("Virtual threads not available: " + e);
+      } // catch
+    } // if
+    if (ioExecutor == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor (IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new PoolThreadFactory ("io", Thread.NORM_PRIORITY));
+      executor.allowCoreThreadTimeOut (true);
+      ioExecutor = executor;
+    } // if
+
+    hostPermitMap = new ConcurrentHashMap<>();
+    remoteHostPermits = Integer.getInteger ("vertigo.io.hostPermits", REMOTE_HOST_PERMITS);
+    localHostPermits = Integer.getInteger ("vertigo.io.localPermits", LOCAL_HOST_PERMITS);
+    computePermits = new Semaphore (Pool.FACET.threads, true);
+    LOGGER.fine ("Using " + (isVirtual ? "virtual threads" : IO_THREADS + " platform thread(s)") +
+      " for I/O tasks, " + remoteHostPermits + " concurrent request(s) per remote host, " +
+      localHostPermits + " for local files");
+
+  } // TaskService
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Shuts down the task service.  Tasks waiting to run are discarded,
+   * running tasks are interrupted, and no new tasks are accepted.  This
+   * should be called once when the application exits.
+   *
+   * @since 0.8
+   */
+  public void shutdown () {
+
+    LOGGER.fine ("Shutting down task service: " + getStats());
+    for (var executor : executorMap.values()) executor.shutdownNow();
+    scheduler.shutdownNow();
+    ioExecutor.shutdownNow();
+
+  } // shutdown
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Submits a task to run in a pool.
+   *
+   * @param pool the pool to run the task.
+   * @param priority the task priority, either {@link #HIGH_PRIORITY},
+   * {@link #NORMAL_PRIORITY}, or {@link #LOW_PRIORITY}.
+   * @param task the task to run.
+   * @param token the cancellation token for the task, or null to never
+   * skip the task.  If the token is cancelled before the task starts, the
+   * task is not run and its future is cancelled.  Once the task starts, it
+   * may check the token itself.
+   *
+   * @return the future for the task result.
+   */
+  public <T> Future<T> submit (
+    Pool pool,
+    int priority,
+    Callable<T> task,
+    BooleanSupplier token
+  ) {
+
+    FutureTask<T> future = new FutureTask<> (task);
+    executorMap.get (pool).execute (new PriorityTask (future, priority, token));
+    return (future);
+
+  } // submit
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Submits a task to run in a pool.
+   *
+   * @param pool the pool to run the task.
+   * @param priority the task priority.
+   * @param task the task to run.
+   * @param token the cancellation token for the task, or null to never
+   * skip the task.
+   *
+   * @return the future for the task completion.
+   *
+   * @see #submit(Pool,int,Callable,BooleanSupplier)
+   */
+  public Future<?> submit (
+    Pool pool,
+    int priority,
+    Runnable task,
+    BooleanSupplier token
+  ) {
+
+    return (submit (pool, priority, () -> { task.run(); return (null); }, token));
+
+  } // submit
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Submits a task to run in a pool with normal priority and no
+   * cancellation token.
+   *
+   * @param pool the pool to run the task.
+   * @param task the task to run.
+   *
+   * @return the future for the task completion.
+   */
+  public Future<?> submit (
+    Pool pool,
+    Runnable task
+  ) {
+
+    return (submit (pool, NORMAL_PRIORITY, task, null));
+
+  } // submit
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets an executor that runs tasks in a pool at a fixed priority.  This
+   * is useful for passing to objects that accept an executor, such as
+   * a JavaFX service.
+   *
+   * @param pool the pool to run tasks.
+   * @param priority the task priority.
+   *
+   * @return the executor for the pool.
+   */
+  public Executor getExecutor (
+    Pool pool,
+    int priority
+  ) {
+
+    PoolExecutor executor = executorMap.get (pool);
+    return (task -> executor.execute (new PriorityTask (task, priority, null)));
+
+  } // getExecutor
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines if I/O tasks run on virtual threads.
+   *
+   * @return true if virtual threads are used, or false if I/O tasks run
+   * on a bounded pool of platform threads.
+   */
+  public boolean isVirtualIO() { return (isVirtual); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets an executor for tasks that mostly wait for I/O but also do some
+   * CPU bound work, such as facet updates that read data and then colour
+   * it.  When virtual threads are available, each task runs on its own
+   * virtual thread and is limited instead by the permits acquired in
+   * {@link #runIO} and {@link #runCompute}.  Otherwise the tasks run in
+   * the pool as with {@link #getExecutor}.
+   *
+   * @param pool the pool to run tasks if virtual threads are not
+   * available.
+   * @param priority the task priority in the pool.
+   *
+   * @return the executor for I/O bound tasks.
+   */
+  public Executor getIOExecutor (
+    Pool pool,
+    int priority
+  ) {
+
+    Executor executor;
+    if (isVirtual) executor = task -> submitIO (task, null);
+    else executor = getExecutor (pool, priority);
+
+    return (executor);
+
+  } // getIOExecutor
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Submits a task that mostly waits for I/O, such as a tile download.
+   * The task should call {@link #runIO} around its I/O operations so that
+   * the number of concurrent requests to each host is limited.
+   *
+   * @param task the task to run.
+   * @param token the cancellation token for the task, or null to never
+   * skip the task.  If the token is cancelled before the task starts, the
+   * task is not run and its future is cancelled.
+   *
+   * @return the future for the task completion.
+   */
+  public Future<?> submitIO (
+    Runnable task,
+    BooleanSupplier token
+  ) {
+
+    // A task whose token is cancelled, either before it's submitted or
+    // while it waits to start, is never run and its future is cancelled.
+    FutureTask<Void> future = new FutureTask<> (task, null) {
+      @Override
+      public void run () {
+        if (token != null && token.getAsBoolean()) { cancel (false); return; }
+        ioThread.set (true);
+        int active = ioActive.incrementAndGet();
+        ioPeakActive.accumulateAndGet (active, Math::max);
+        try { super.run(); }
+        finally {
+          ioActive.decrementAndGet();
+          ioThread.set (false);
+        } // finally
+      } // run
+    };
+    if (token != null && token.getAsBoolean()) future.cancel (false);
+    else {
+      ioSubmitted.incrementAndGet();
+      ioExecutor.execute (future);
+    } // else
+
+    return (future);
+
+  } // submitIO
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * An <code>IOOperation</code> is a blocking I/O operation run with
+   * {@link #runIO}.
+   *
+   * @param <T> the type of operation result.
+   *
+   * @since 0.8
+   */
+  @FunctionalInterface
+  public interface IOOperation<T> {
+
+    /**
+     * Performs the operation.
+     *
+     * @return the operation result.
+     *
+     * @throws IOException if an error occurred in the operation.
+     */
+    T perform() throws IOException;
+
+  } // IOOperation interface
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the host name of a dataset or tile location.
+   *
+   * @param location the file name or URL.
+   *
+   * @return the host name of the URL, or {@link #LOCAL_HOST} if the
+   * location is a local file.
+   */
+  public static String getHost (
+    String location
+  ) {
+
+    // We extract the host by hand rather than parsing a URI, since the
+    // location may be a pattern containing characters not allowed in a
+    // URI.
+    String host = LOCAL_HOST;
+    int start = location.indexOf ("://");
+    if (start > 0 && !location.regionMatches (true, 0, "file:", 0, 5)) {
+      start += 3;
+      int end = start;
+      while (end < location.length() && "/:?#".indexOf (location.charAt (end)) < 0) end++;
+      if (end > start) host = location.substring (start, end).toLowerCase();
+    } // if
+
+    return (host);
+
+  } // getHost
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Runs a blocking I/O operation, limiting the number of operations in
+   * progress for each host.  Remote hosts allow a configurable number of
+   * concurrent operations (the <code>vertigo.io.hostPermits</code> system
+   * property) and local files allow their own configurable number (the
+   * <code>vertigo.io.localPermits</code> system property).
+   *
+   * @param host the host name for the operation from {@link #getHost}.
+   * @param operation the operation to run.
+   *
+   * @return the operation result.
+   *
+   * @throws IOException if an error occurred in the operation, or the
+   * thread was interrupted waiting to start it.
+   */
+  public <T> T runIO (
+    String host,
+    IOOperation<T> operation
+  ) throws IOException {
+
+    Semaphore permits = hostPermitMap.computeIfAbsent (host, key -> new Semaphore (
+      key.equals (LOCAL_HOST) ? localHostPermits : remoteHostPermits, true));
+
+    ioWaiting.incrementAndGet();
+    try { permits.acquire(); }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException ("Interrupted waiting for " + host);
+    } // catch
+    finally { ioWaiting.decrementAndGet(); }
+
+    try { return (operation.perform()); }
+    finally { permits.release(); }
+
+  } // runIO
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Runs CPU bound work from an I/O task.  When the calling thread was
+   * started by {@link #submitIO} or an executor from
+   * {@link #getIOExecutor}, the work waits for one of a small number of
+   * permits so that many I/O tasks don't compete for the processors at
+   * once.  Otherwise the work is run immediately, since the thread
+   * already belongs to a bounded pool.
+   *
+   * @param work the work to run.
+   */
+  public void runCompute (
+    Runnable work
+  ) {
+
+    if (!ioThread.get()) work.run();
+    else {
+      computePermits.acquireUninterruptibly();
+      try { work.run(); }
+      finally { computePermits.release(); }
+    } // else
+
+  } // runCompute
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Schedules a short task to run after a delay.  Scheduled tasks share a
+   * single thread, so any long running work should be submitted to a pool
+   * from the scheduled task.
+   *
+   * @param task the task to run.
+   * @param delay the delay before running the task.
+   * @param unit the units of the delay.
+   *
+   * @return the future for the task, which may be used to cancel it.
+   */
+  public Future<?> schedule (
+    Runnable task,
+    long delay,
+    TimeUnit unit
+  ) {
+
+    return (scheduler.schedule (task, delay, unit));
+
+  } // schedule
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of tasks waiting to run in a pool.
+   *
+   * @param pool the pool to query.
+   *
+   * @return the number of queued tasks.
+   */
+  public int getQueueDepth (Pool pool) { return (executorMap.get (pool).getQueue().size()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the largest number of tasks that have waited to run in a pool
+   * at one time.
+   *
+   * @param pool the pool to query.
+   *
+   * @return the peak number of queued tasks.
+   */
+  public int getPeakQueueDepth (Pool pool) { return (executorMap.get (pool).peakDepth.get()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of tasks currently running in a pool.
+   *
+   * @param pool the pool to query.
+   *
+   * @return the number of running tasks.
+   */
+  public int getActiveCount (Pool pool) { return (executorMap.get (pool).getActiveCount()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of tasks that have completed in a pool, including
+   * tasks that were skipped due to cancellation.
+   *
+   * @param pool the pool to query.
+   *
+   * @return the number of completed tasks.
+   */
+  public long getCompletedCount (Pool pool) { return (executorMap.get (pool).getCompletedTaskCount()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of tasks in a pool that were skipped because they were
+   * cancelled before starting.
+   *
+   * @param pool the pool to query.
+   *
+   * @return the number of skipped tasks.
+   */
+  public long getCancelledCount (Pool pool) { return (executorMap.get (pool).cancelledCount.get()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets a summary of the task counts for all pools, useful for logging.
+   *
+   * @return the summary string.
+   */
+  public String getStats () {
+
+    StringBuilder buffer = new StringBuilder();
+    for (Pool pool : Pool.values()) {
+      if (buffer.length() != 0) buffer.append (", ");
+      buffer.append (pool.name + "=[queued " + getQueueDepth (pool) +
+        ", peak " + getPeakQueueDepth (pool) +
+        ", active " + getActiveCount (pool) +
+        ", completed " + getCompletedCount (pool) +
+        ", cancelled " + getCancelledCount (pool) + "]");
+    } // for
+    buffer.append (", io=[" + (isVirtual ? "virtual" : "platform") +
+      ", submitted " + ioSubmitted.get() +
+      ", active " + ioActive.get() +
+      ", peak " + ioPeakActive.get() +
+      ", waiting " + ioWaiting.get() + "]");
+
+    return (buffer.toString());
+
+  } // getStats
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * A <code>CancelToken</code> is a cancellation flag that can be passed
+   * to a task when submitted, and then to any data access performed by the
+   * task.
+   *
+   * @since 0.8
+   */
+  public static class CancelToken implements BooleanSupplier {
+
+    private volatile boolean cancelled;
+
+    /** Cancels any task using this token. */
+    public void cancel() { cancelled = true; }
+
+    /**
+     * Determines if this token is cancelled.
+     *
+     * @return true if cancelled or false if not.
+     */
+    public boolean isCancelled() { return (cancelled); }
+
+    @Override
+    public boolean getAsBoolean() { return (cancelled); }
+
+  } // CancelToken class
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Creates named daemon threads for a pool. */
+  private static class PoolThreadFactory implements ThreadFactory {
+
+    private String name;
+    private int threadPriority;
+    private AtomicInteger count = new AtomicInteger();
+
+    public PoolThreadFactory (String name, int threadPriority) {
+      this.name = name;
+      this.threadPriority = threadPriority;
+    } // PoolThreadFactory
+
+    @Override
+    public Thread newThread (Runnable r) {
+      Thread thread = new Thread (r, "vertigo-" + name + "-" + count.incrementAndGet());
+      thread.setDaemon (true);
+      thread.setPriority (threadPriority);
+      return (thread);
+    } // newThread
+
+  } // PoolThreadFactory class
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Runs a task with a priority and optional cancellation token. */
+  private static class PriorityTask implements Runnable, Comparable<PriorityTask> {
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private Runnable task;
+    private int priority;
+    private long order;
+    private BooleanSupplier token;
+
+    public PriorityTask (Runnable task, int priority, BooleanSupplier token) {
+      this.task = task;
+      this.priority = priority;
+      this.token = token;
+      this.order = sequence.getAndIncrement();
+    } // PriorityTask
+
+    public boolean isCancelled () {
+      return (token != null && token.getAsBoolean());
+    } // isCancelled
+
+    @Override
+    public void run () { task.run(); }
+
+    @Override
+    public int compareTo (PriorityTask other) {
+      int result = Integer.compare (priority, other.priority);
+      if (result == 0) result = Long.compare (order, other.order);
+      return (result);
+    } // compareTo
+
+  } // PriorityTask class
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Runs the tasks for a pool from a priority queue. */
+  private static class PoolExecutor extends ThreadPoolExecutor {
+
+    private Pool pool;
+    private AtomicInteger peakDepth = new AtomicInteger();
+    private AtomicLong cancelledCount = new AtomicLong();
+    private volatile boolean warned;
+
+    public PoolExecutor (Pool pool) {
+      super (pool.threads, pool.threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+        new PoolThreadFactory (pool.name, pool.threadPriority));
+      this.pool = pool;
+    } // PoolExecutor
+
+    @Override
+    public void execute (Runnable task) {
+
+      // Tasks submitted directly, rather than through the service, are
+      // given normal priority so that the queue can order them.
+      if (!(task instanceof PriorityTask)) task = new PriorityTask (task, NORMAL_PRIORITY, null);
+      super.execute (task);
+
+      int depth = getQueue().size();
+      peakDepth.accumulateAndGet (depth, Math::max);
+      if (depth > QUEUE_WARNING_DEPTH && !warned) {
+        warned = true;
+        LOGGER.warning ("Task queue for " + pool.name + " pool has reached " + depth + " tasks");
+      } // if
+      else if (depth == 0) warned = false;
+
+    } // execute
+
+    @Override
+    protected void beforeExecute (Thread thread, Runnable task) {
+
+      // A cancelled task has its future cancelled before running, so that
+      // running it does nothing and anything waiting on it is released.
+      PriorityTask priorityTask = (PriorityTask) task;
+      if (priorityTask.isCancelled()) {
+        if (priorityTask.task instanceof Future<?>) ((Future<?>) priorityTask.task).cancel (false);
+        cancelledCount.incrementAndGet();
+        if (LOGGER.isLoggable (Level.FINEST)) LOGGER.finest ("Skipping cancelled task in " + pool.name + " pool");
+      } // if
+
+    } // beforeExecute
+
+  } // PoolExecutor class
+
+  /////////////////////////////////////////////////////////////////
+
+} // TaskService class
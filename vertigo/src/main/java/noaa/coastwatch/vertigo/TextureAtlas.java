@@ -0,0 +1,375 @@
+/*
+ * Vertigo Project
+ * Copyright (c) 2021 National Oceanic and Atmospheric Administration
+ * All rights reserved.
+ */
+
+package noaa.coastwatch.vertigo;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.PixelFormat;
+import javafx.collections.ObservableFloatArray;
+
+/**
+ * The <code>TextureAtlas</code> class packs many small textures into large
+ * shared texture pages, so that fewer GPU textures are needed.  Textures
+ * are placed into pages using shelf packing: each page is divided into
+ * horizontal shelves, and each shelf into a row of equal size slots, so
+ * that textures of the same size (for example facet textures at the same
+ * level of detail) share shelves, and textures of different sizes share
+ * pages.  Slots released by a texture are reused by textures of the same
+ * size, and empty shelves are reused by textures of any size that fits.
+ * When all the slots in a page are released, the page is kept for reuse.
+ * All methods must be called from the JavaFX application thread, since the
+ * page images may be in use by the scene graph.
+ *
+ * @author Peter Hollemans
+ * @since 0.8
+ */
+public class TextureAtlas {
+
+  private static final Logger LOGGER = Logger.getLogger (TextureAtlas.class.getName());
+
+  // Constants
+  // ---------
+
+  /**
+   * The maximum width and height of each page.  Any change to a page image
+   * causes the whole page to be uploaded to the graphics card for the next
+   * frame, so we limit the page size to limit the cost of copying a
+   * texture into the atlas.
+   */
+  public static final int MAX_PAGE_SIZE = 2048;
+
+  /** The alignment of slot sizes in pixels. */
+  private static final int SLOT_ALIGN = 32;
+
+  /**
+   * The maximum factor by which an empty shelf may be taller than the slots
+   * that reuse it.
+   */
+  private static final int SHELF_REUSE_FACTOR = 2;
+
+  // Variables
+  // ---------
+
+  /** The width and height of each page. */
+  private int pageSize;
+
+  /** The maximum number of empty pages to keep for reuse. */
+  private int maxFreePages;
+
+  /** The function that creates new page images. */
+  private Supplier<WritableImage> pageFactory;
+
+  /** The pages in use. */
+  private List<Page> pages;
+
+  /** The empty page images kept for reuse. */
+  private List<WritableImage> freePages;
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new empty atlas.
+   *
+   * @param pageSize the width and height of each page in pixels, limited
+   * to {@link #MAX_PAGE_SIZE}.
+   * @param maxFreePages the maximum number of empty pages to keep for reuse.
+   */
+  public TextureAtlas (
+    int pageSize,
+    int maxFreePages
+  ) {
+
+    this (pageSize, maxFreePages, null);
+
+  } // TextureAtlas
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new empty atlas with the specified function for creating
+   * page images.
+   *
+   * @param pageSize the width and height of each page in pixels, limited
+   * to {@link #MAX_PAGE_SIZE}.
+   * @param maxFreePages the maximum number of empty pages to keep for reuse.
+   * @param pageFactory the function that creates new page images of the
+   * page size, or null to create writable images.
+   */
+  TextureAtlas (
+    int pageSize,
+    int maxFreePages,
+    Supplier<WritableImage> pageFactory
+  ) {
+
+    this.pageSize = Math.min (pageSize, MAX_PAGE_SIZE);
+    this.maxFreePages = maxFreePages;
+    if (pageFactory != null) this.pageFactory = pageFactory;
+    else this.pageFactory = () -> new WritableImage (this.pageSize, this.pageSize);
+    pages = new ArrayList<>();
+    freePages = new ArrayList<>();
+
+  } // TextureAtlas
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Copies a texture into the atlas.
+   *
+   * @param texture the texture to copy.
+   *
+   * @return the region of the atlas holding the texture, or null if the
+   * texture is too large for an atlas page.
+   */
+  public Region allocate (
+    Image texture
+  ) {
+
+    int width = (int) texture.getWidth();
+    int height = (int) texture.getHeight();
+    Region region = allocate (width, height);
+    if (region != null) {
+      var format = PixelFormat.getIntArgbInstance();
+      int[] pixels = new int[width*height];
+      texture.getPixelReader().getPixels (0, 0, width, height, format, pixels, 0, width);
+      region.page.image.getPixelWriter().setPixels (region.x, region.y, width, height, format, pixels, 0, width);
+    } // if
+
+    return (region);
+
+  } // allocate
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Allocates a region of the atlas without copying any texture data.
+   *
+   * @param width the region width in pixels.
+   * @param height the region height in pixels.
+   *
+   * @return the region of the atlas, or null if the size is too large for
+   * an atlas page.
+   */
+  Region allocate (
+    int width,
+    int height
+  ) {
+
+    int slotWidth = ((width + SLOT_ALIGN - 1) / SLOT_ALIGN) * SLOT_ALIGN;
+    int slotHeight = ((height + SLOT_ALIGN - 1) / SLOT_ALIGN) * SLOT_ALIGN;
+    if (slotWidth > pageSize || slotHeight > pageSize) return (null);
+
+    // First look for a free slot in a shelf with this slot size.  Then look
+    // for an empty shelf that can be reused, and then for space at the
+    // bottom of a page for a new shelf.  Otherwise we start a new page.
+    Shelf shelf = null;
+    for (int i = 0; i < pages.size() && shelf == null; i++) {
+      for (Shelf candidate : pages.get (i).shelves) {
+        if (candidate.slotWidth == slotWidth && candidate.slotHeight == slotHeight &&
+          candidate.used < candidate.slots.length) { shelf = candidate; break; }
+      } // for
+    } // for
+    for (int i = 0; i < pages.size() && shelf == null; i++) {
+      for (Shelf candidate : pages.get (i).shelves) {
+        if (candidate.used == 0 && candidate.height >= slotHeight &&
+          candidate.height <= slotHeight*SHELF_REUSE_FACTOR) {
+          candidate.format (slotWidth, slotHeight);
+          shelf = candidate;
+          break;
+        } // if
+      } // for
+    } // for
+    for (int i = 0; i < pages.size() && shelf == null; i++) {
+      shelf = pages.get (i).addShelf (slotWidth, slotHeight);
+    } // for
+    if (shelf == null) {
+      WritableImage image;
+      if (freePages.isEmpty()) image = pageFactory.get();
+      else image = freePages.remove (freePages.size()-1);
+      Page page = new Page (image);
+      pages.add (page);
+      shelf = page.addShelf (slotWidth, slotHeight);
+      LOGGER.fine ("Started atlas page, " + pages.size() + " page(s) in use");
+    } // if
+
+    int slot = 0;
+    while (shelf.slots[slot]) slot++;
+    shelf.slots[slot] = true;
+    shelf.used++;
+    shelf.page.used++;
+
+    return (new Region (shelf, slot, slot*slotWidth, shelf.y, width, height));
+
+  } // allocate
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of pages in use.
+   *
+   * @return the page count.
+   */
+  public int getPages() { return (pages.size()); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Releases a slot and recycles the page if it's empty. */
+  private void release (
+    Shelf shelf,
+    int slot
+  ) {
+
+    shelf.slots[slot] = false;
+    shelf.used--;
+    Page page = shelf.page;
+    page.used--;
+    if (page.used == 0) {
+      pages.remove (page);
+      if (freePages.size() < maxFreePages) freePages.add (page.image);
+      LOGGER.fine ("Recycled atlas page, " + pages.size() + " page(s) in use");
+    } // if
+    else page.trimShelves();
+
+  } // release
+
+  /////////////////////////////////////////////////////////////////
+
+  /** A <code>Page</code> holds one atlas image divided into shelves. */
+  private class Page {
+
+    public WritableImage image;
+    public List<Shelf> shelves = new ArrayList<>();
+    public int top;
+    public int used;
+
+    public Page (WritableImage image) {
+      this.image = image;
+    } // Page
+
+    /** Adds a shelf at the bottom of the page, or returns null if there's no room. */
+    public Shelf addShelf (int slotWidth, int slotHeight) {
+      Shelf shelf = null;
+      if (top + slotHeight <= pageSize) {
+        shelf = new Shelf (this, top, slotHeight);
+        shelf.format (slotWidth, slotHeight);
+        shelves.add (shelf);
+        top += slotHeight;
+      } // if
+      return (shelf);
+    } // addShelf
+
+    /** Removes empty shelves from the bottom of the page so the space can be used by any size. */
+    public void trimShelves () {
+      while (!shelves.isEmpty() && shelves.get (shelves.size()-1).used == 0) {
+        Shelf shelf = shelves.remove (shelves.size()-1);
+        top = shelf.y;
+      } // while
+    } // trimShelves
+
+  } // Page class
+
+  /////////////////////////////////////////////////////////////////
+
+  /** A <code>Shelf</code> holds a row of equal size slots in a page. */
+  private class Shelf {
+
+    public Page page;
+    public int y;
+    public int height;
+    public int slotWidth;
+    public int slotHeight;
+    public boolean[] slots;
+    public int used;
+
+    public Shelf (Page page, int y, int height) {
+      this.page = page;
+      this.y = y;
+      this.height = height;
+    } // Shelf
+
+    /** Divides this empty shelf into slots of a new size. */
+    public void format (int slotWidth, int slotHeight) {
+      this.slotWidth = slotWidth;
+      this.slotHeight = slotHeight;
+      slots = new boolean[pageSize / slotWidth];
+    } // format
+
+  } // Shelf class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * A <code>Region</code> is the part of an atlas page that holds a
+   * texture.
+   */
+  public class Region {
+
+    private Page page;
+    private Shelf shelf;
+    private int slot;
+    private int x, y;
+    private boolean released;
+    private float uOffset, vOffset, uScale, vScale;
+
+    private Region (Shelf shelf, int slot, int x, int y, int width, int height) {
+      this.page = shelf.page;
+      this.shelf = shelf;
+      this.slot = slot;
+      this.x = x;
+      this.y = y;
+      uOffset = (float) x / pageSize;
+      vOffset = (float) y / pageSize;
+      uScale = (float) width / pageSize;
+      vScale = (float) height / pageSize;
+    } // Region
+
+    /**
+     * Gets the page image that holds the region.
+     *
+     * @return the page image.
+     */
+    public Image getPage() { return (page.image); }
+
+    /**
+     * Gets the position of the region in the page.
+     *
+     * @return the (x,y) pixel position of the top-left corner.
+     */
+    int[] getPosition() { return (new int[] {x, y}); }
+
+    /**
+     * Transforms texture coordinates from the original texture into the
+     * atlas page.
+     *
+     * @param texCoords the texture coordinates as (u,v) pairs (modified).
+     */
+    public void toAtlas (ObservableFloatArray texCoords) {
+      float[] values = texCoords.toArray (null);
+      for (int i = 0; i < values.length; i += 2) {
+        values[i] = uOffset + values[i]*uScale;
+        values[i+1] = vOffset + values[i+1]*vScale;
+      } // for
+      texCoords.setAll (values);
+    } // toAtlas
+
+    /** Releases the region for use by another texture.  Releasing more than once has no effect. */
+    public void release() {
+      if (!released) {
+        released = true;
+        TextureAtlas.this.release (shelf, slot);
+      } // if
+    } // release
+
+  } // Region class
+
+  /////////////////////////////////////////////////////////////////
+
+} // TextureAtlas class
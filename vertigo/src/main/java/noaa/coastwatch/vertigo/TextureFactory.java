@@ -7,6 +7,7 @@
 package noaa.coastwatch.vertigo;
 
 import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
 import javafx.scene.image.Image;
 
 /**
@@ -37,5 +38,109 @@ public interface TextureFactory extends LevelOfDetailFactory {
     BooleanSupplier cancelled
   );
 
+  /**
+   * Creates a texture image of a given index and level of detail
+   * asynchronously, so that the caller doesn't hold a thread while the
+   * texture data is being read.  The default implementation runs
+   * {@link #create} as a {@link TaskService} I/O task.  Factories whose
+   * data sources support asynchronous access should override this method.
+   *
+   * @param index the index of the object within a group to create.
+   * @param aspect the approximate aspect ratio width:height that the
+   * texture will appear on-screen, or Double.NaN if unknown.
+   * @param level the level of detail in the range [0..levels-1].
+   *
+   * @return the future for the texture image.  Cancelling the future
+   * cancels the texture creation.
+   *
+   * @since 0.8
+   */
+  default CompletableFuture<Image> createAsync (
+    int index,
+    double aspect,
+    int level
+  ) {
+
+    CompletableFuture<Image> future = new CompletableFuture<>();
+    TaskService.getInstance().submitIO (() -> {
+      try {
+        Image image = create (index, aspect, level, future::isCancelled);
+        if (image == null) future.cancel (false);
+        else future.complete (image);
+      } // try
+      catch (Throwable e) { future.completeExceptionally (e); }
+    }, future::isCancelled);
+
+    return (future);
+
+  } // createAsync
+
+  /**
+   * Creates a single coarse overview image that covers the textures of
+   * all indices.  An overview can be created with one data access and then
+   * sliced into provisional textures using {@link #createFromOverview} while
+   * the full resolution textures are being created.
+   *
+   * @param cancelled the method to periodically check for cancellation
+   * of the overview creation, or null to not check.
+   *
+   * @return the overview image or null if the creation was cancelled or
+   * overviews are not supported by this factory.
+   *
+   * @since 0.8
+   */
+  default Image createOverview (
+    BooleanSupplier cancelled
+  ) {
+
+    return (null);
+
+  } // createOverview
+
+  /**
+   * Creates a provisional texture image of a given index by extracting the
+   * corresponding region from an overview image.
+   *
+   * @param index the index of the object within a group to create.
+   * @param overview the overview image returned by {@link #createOverview}.
+   *
+   * @return the provisional texture image or null if not supported by
+   * this factory.
+   *
+   * @since 0.8
+   */
+  default Image createFromOverview (
+    int index,
+    Image overview
+  ) {
+
+    return (null);
+
+  } // createFromOverview
+
+  /**
+   * Determines if the overview image holds every data pixel, so that
+   * {@link #hasData} is exact once the overview is created (default false).
+   *
+   * @return true if the overview is exact, or false if not.
+   *
+   * @since 0.8
+   */
+  default boolean isOverviewExact () { return (false); }
+
+  /**
+   * Determines if a texture of a given index contains any valid data
+   * (default true).  Factories may determine this from an exact overview
+   * image, so that textures known to be empty never need to be created.
+   *
+   * @param index the index of the object within a group to check.
+   *
+   * @return true if the texture may contain valid data, or false if it is
+   * known to have no valid data.
+   *
+   * @since 0.8
+   */
+  default boolean hasData (int index) { return (true); }
+
 } // TextureFactory interface
 
@@ -7,13 +7,18 @@
 package noaa.coastwatch.vertigo;
 
 import java.util.function.ToDoubleBiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.CancellationException;
 import java.util.TreeMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import java.io.IOException;
 
+import static noaa.coastwatch.vertigo.Helpers.isTrue;
+
 /**
  * The <code>TiledImageFacetDataSource</code> class creates facet data
  * from an image that is divided into rectangular regions.
@@ -29,7 +34,22 @@ public class TiledImageFacetDataSource extends FacetDataSource {
   // ---------
 
   private static final int X = 0;
-  private static final int Y = 0;
+  private static final int Y = 1;
+
+  // Variables
+  // ---------
+
+  /** The image tiling used for facets. */
+  private ImageTiling tiling;
+
+  /** The number of image pixels along the side of a full resolution mesh cell. */
+  private int cellSize;
+
+  /** The minimum camera distance for each level of mesh detail. */
+  private double[] dminMesh;
+
+  /** The coordinate source for mesh points. */
+  private ImageCoordinateSource coordSource;
 
   /////////////////////////////////////////////////////////////////
 
@@ -60,6 +80,91 @@ public class TiledImageFacetDataSource extends FacetDataSource {
     ViewProperties props
   ) throws IOException {
 
+    this (width, height, coordSource, tileWriter, delta, props, null);
+
+  } // TiledImageFacetDataSource
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new data source that may be cancelled while reading
+   * coordinates.
+   *
+   * @param width the total width of the image data.
+   * @param height the total height of the image data.
+   * @param coordSource the coordinate source for translating 2D image (x,y)
+   * to 3D model (x,y,z).
+   * @param tileWriter the writer that provides texture images for tiles
+   * within the image.
+   * @param delta the function that computes the surface offset in model space
+   * resulting from a straight line between two model (x,y,z) points.
+   * @param props the properties of the view.
+   * @param cancelled the cancelled flag passed to the coordinate source,
+   * or null to not check.
+   *
+   * @throws IOException if an error occurred using the coordinate source to
+   * initialize the tiling properties.
+   * @throws CancellationException if the cancelled flag was set while
+   * initializing the tiling properties.
+   *
+   * @since 0.8
+   */
+  public TiledImageFacetDataSource (
+    int width,
+    int height,
+    ImageCoordinateSource coordSource,
+    ImageTileWriter tileWriter,
+    ToDoubleBiFunction<double[], double[]> delta,
+    ViewProperties props,
+    BooleanSupplier cancelled
+  ) throws IOException {
+
+    this (width, height, coordSource, tileWriter, delta, props, cancelled, null);
+
+  } // TiledImageFacetDataSource
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new data source whose facets are aligned with the storage
+   * chunks of the image data.  When the image data is stored in chunks that
+   * are decompressed as a unit, a facet that straddles a chunk boundary
+   * causes the chunk to be read once for each facet that it overlaps.  The
+   * facet size is reduced if needed so that facets start on chunk
+   * boundaries.
+   *
+   * @param width the total width of the image data.
+   * @param height the total height of the image data.
+   * @param coordSource the coordinate source for translating 2D image (x,y)
+   * to 3D model (x,y,z).
+   * @param tileWriter the writer that provides texture images for tiles
+   * within the image.
+   * @param delta the function that computes the surface offset in model space
+   * resulting from a straight line between two model (x,y,z) points.
+   * @param props the properties of the view.
+   * @param cancelled the cancelled flag passed to the coordinate source,
+   * or null to not check.
+   * @param chunkSizes the storage chunk size of the image data as
+   * [width, height], or null if the data is not stored in chunks.
+   *
+   * @throws IOException if an error occurred using the coordinate source to
+   * initialize the tiling properties.
+   * @throws CancellationException if the cancelled flag was set while
+   * initializing the tiling properties.
+   *
+   * @since 0.8
+   */
+  public TiledImageFacetDataSource (
+    int width,
+    int height,
+    ImageCoordinateSource coordSource,
+    ImageTileWriter tileWriter,
+    ToDoubleBiFunction<double[], double[]> delta,
+    ViewProperties props,
+    BooleanSupplier cancelled,
+    int[] chunkSizes
+  ) throws IOException {
+
     // Set up to probe the image coordinates to find the maximum delta.  We
     // start by looking at tiles of 128x128 pixels and then adjust up or down
     // accordingly.  We want to have at least a 5x5 grid covering the image
@@ -84,7 +189,9 @@ public class TiledImageFacetDataSource extends FacetDataSource {
       // each accessed pixel, and then the one to it's lower right to see what
       // delta we have.
       ImageAccess access = new ImageAccess (tile, stride, stride);
-      ImageAccessResult result = coordSource.access (access, null);
+      ImageAccessResult result = coordSource.access (access, cancelled);
+      if (result == null || isTrue (cancelled))
+        throw new CancellationException ("Cancelled creating data source");
       int accessWidth = access.getWidth();
       int accessHeight = access.getHeight();
       double maxDelta = -Double.MAX_VALUE;
@@ -196,11 +303,20 @@ public class TiledImageFacetDataSource extends FacetDataSource {
     LOGGER.fine ("Found optimal m value " + m);
     int tileSize = m*n;
     LOGGER.fine ("Image tile size is " + tileSize);
-    ImageTiling tiling = new ImageTiling (width, height, tileSize, tileSize);
+    if (chunkSizes != null) {
+      int alignedSize = alignTileSize (tileSize, m, chunkSizes, width, height);
+      if (alignedSize != tileSize) {
+        LOGGER.fine ("Adjusted tile size to " + alignedSize + " for data chunks of size " +
+          chunkSizes[X] + "x" + chunkSizes[Y]);
+        tileSize = alignedSize;
+      } // if
+    } // if
+    tiling = new ImageTiling (width, height, tileSize, tileSize);
+    cellSize = tileSize/m;
     int meshLevels = 31 - Integer.numberOfLeadingZeros (m) + 1;
     LOGGER.fine ("Mesh has " + meshLevels + " resolution levels:");
 
-    double[] dminMesh = new double[meshLevels];
+    dminMesh = new double[meshLevels];
     dminMesh[0] = props.cameraDistMin (maxDeltaLevel0);
     LOGGER.fine ("  dMin[0]: " + dminMesh[0]);
     for (int level = 1; level < meshLevels; level++) {
@@ -231,6 +347,14 @@ public class TiledImageFacetDataSource extends FacetDataSource {
     } // for
     LOGGER.fine ("Found largest facet has size " + maxSize);
 
+    // If the tile size was adjusted to align with the data chunks, the
+    // facets now span tileSize pixels rather than the m*n pixels measured
+    // above, so we scale the largest facet size to match.
+    if (tileSize != m*n) {
+      maxSize *= tileSize/(double) (m*n);
+      LOGGER.fine ("Scaled largest facet size to " + maxSize + " for aligned tiles");
+    } // if
+
     // For the tile with the largest size, we need to know what the camera
     // distances will be for when the texture is displayed at the various
     // resolutions.  Textures are displayed by level, where:
@@ -260,14 +384,133 @@ public class TiledImageFacetDataSource extends FacetDataSource {
     } // for
 
     // Now we create the various factories needed
+    this.coordSource = coordSource;
     TiledImageMeshFactory meshFactory = new TiledImageMeshFactory (tiling, coordSource, dminMesh);
     TiledImageTextureFactory textureFactory = new TiledImageTextureFactory (tiling, tileWriter, dminTexture);
     init (tiling.getTiles(), meshFactory, textureFactory);
+    setViewProperties (props);
 
   } // TiledImageFacetDataSource
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the image tiling used for facets.
+   *
+   * @return the image tiling.
+   *
+   * @since 0.8
+   */
+  protected ImageTiling getTiling() { return (tiling); }
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public boolean hasSameGeometry (FacetDataSource other) {
+
+    // The meshes are determined entirely by the tiling, cell size, and
+    // coordinates, so sources that share a coordinate source and arrive at
+    // the same tiling create the same meshes.
+    boolean same;
+    if (other == this) same = true;
+    else if (other == null || other.getClass() != getClass()) same = false;
+    else {
+      var source = (TiledImageFacetDataSource) other;
+      same = (source.coordSource == coordSource &&
+        source.cellSize == cellSize &&
+        source.tiling.width == tiling.width &&
+        source.tiling.height == tiling.height &&
+        source.tiling.tileWidth == tiling.tileWidth &&
+        source.tiling.tileHeight == tiling.tileHeight &&
+        Arrays.equals (source.dminMesh, dminMesh));
+    } // else
+
+    return (same);
+
+  } // hasSameGeometry
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the size of a full resolution mesh cell.
+   *
+   * @return the number of image pixels along the side of a mesh cell at the
+   * highest level of mesh detail.
+   *
+   * @since 0.8
+   */
+  protected int getCellSize() { return (cellSize); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the minimum camera distances for mesh detail levels.
+   *
+   * @return the array of minimum camera distance values, one for each level
+   * of mesh detail.
+   *
+   * @since 0.8
+   */
+  protected double[] getMeshDistances() { return (dminMesh); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Aligns a facet tile size with the storage chunks of the image data.
+   * Facets start at multiples of the tile size, so facets start on chunk
+   * boundaries when the tile size is either a multiple or a divisor of the
+   * chunk size.  Since texture strides are powers of two, the texture
+   * pixels sampled within each chunk are then also at the same offsets.
+   * Only smaller tile sizes are considered, so that the mesh error stays
+   * within the limit used to compute the tile size.
+   *
+   * @param tileSize the tile size computed from the mesh error.
+   * @param m the number of mesh cells along the side of a tile.
+   * @param chunkSizes the chunk size as [width, height].
+   * @param width the total width of the image data.
+   * @param height the total height of the image data.
+   *
+   * @return the largest multiple of m in the range [tileSize/2, tileSize]
+   * that is aligned with the chunks, or the original tile size if none.
+   */
+  static int alignTileSize (
+    int tileSize,
+    int m,
+    int[] chunkSizes,
+    int width,
+    int height
+  ) {
+
+    int alignedSize = tileSize;
+    for (int size = tileSize; size >= Math.max (m, tileSize/2); size -= m) {
+      if (isAligned (size, chunkSizes[X], width) && isAligned (size, chunkSizes[Y], height)) {
+        alignedSize = size;
+        break;
+      } // if
+    } // for
+
+    return (alignedSize);
+
+  } // alignTileSize
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Determines if tiles of a given size along an image dimension are aligned with chunks. */
+  static boolean isAligned (
+    int tileSize,
+    int chunkSize,
+    int imageSize
+  ) {
+
+    // A chunk that spans the whole dimension is read no matter where the
+    // tiles start, so any tile size is aligned.
+    return (chunkSize <= 0 || chunkSize >= imageSize ||
+      tileSize % chunkSize == 0 || chunkSize % tileSize == 0);
+
+  } // isAligned
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Computes the magnitude of a model vector between two points.
    *
@@ -64,6 +64,12 @@ public class TiledImageMeshFactory implements MeshFactory {
   /** The number of mesh points in the y direction in the point data array. */
   private int yPoints;
 
+  /** The number of image pixels between mesh points in the x direction. */
+  private int xPixels;
+
+  /** The number of image pixels between mesh points in the y direction. */
+  private int yPixels;
+
   /** The map of tile index to mesh descriptor. */
   private HashMap<Integer, TileMeshDescriptor> meshDescriptorMap;
 
@@ -106,8 +112,8 @@ public class TiledImageMeshFactory implements MeshFactory {
     // of levels: divs = 2^(levels - 1).
     int meshDivs = 1 << (dmin.length - 1);
     fullResPoints = meshDivs + 1;
-    int xPixels = tiling.tileWidth / meshDivs;
-    int yPixels = tiling.tileHeight / meshDivs;
+    xPixels = tiling.tileWidth / meshDivs;
+    yPixels = tiling.tileHeight / meshDivs;
 
     // First we need to get the coordinates around the edges of the image
     // so it can be used for extrapolation to the very edges.  We perform
@@ -416,10 +422,68 @@ public class TiledImageMeshFactory implements MeshFactory {
     // Now that we have all the points, we make a map that contains each
     // tile index with the data needed for a full resolution mesh of that
     // tile.
-    int tileCount = tiling.getTiles();
-    LOGGER.fine ("Image tiling mesh has " + tileCount + " tiles of width " +
+    LOGGER.fine ("Image tiling mesh has " + tiling.getTiles() + " tiles of width " +
       tiling.tileWidth + " by height " + tiling.tileHeight + " and " +
       pointData.length/3 + " total mesh points");
+    createDescriptors();
+
+    // Finally, decide on which face winding order to use when generating
+    // the mesh data.
+    computeWindingOrder();
+
+  } // TiledImageMeshFactory
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new mesh factory for a different tiling of the same image,
+   * sharing the mesh points of an existing factory.  No coordinate source
+   * accesses are performed.
+   *
+   * @param base the existing mesh factory whose points are to be shared.
+   * @param tiling the image tiling to use for individual tiles.  The tile
+   * width and height must be a power of two multiple of the spacing between
+   * points in the base factory, and the tile indices within the tiling
+   * should be passed as the index values in the {@link #create} method.
+   * @param dmin the array of minimum camera distance values for each level
+   * of mesh detail.  The length of the array must be such that the highest
+   * resolution mesh of a tile uses every point in the base factory, ie:
+   * tileWidth = 2^(levels - 1) * pixel spacing.
+   *
+   * @since 0.8
+   */
+  public TiledImageMeshFactory (
+    TiledImageMeshFactory base,
+    ImageTiling tiling,
+    double[] dmin
+  ) {
+
+    this.tiling = tiling;
+    this.dmin = dmin;
+
+    int meshDivs = 1 << (dmin.length - 1);
+    fullResPoints = meshDivs + 1;
+    xPixels = base.xPixels;
+    yPixels = base.yPixels;
+    if (tiling.tileWidth != meshDivs*xPixels || tiling.tileHeight != meshDivs*yPixels)
+      throw new IllegalArgumentException ("Tile size " + tiling.tileWidth + "x" + tiling.tileHeight +
+        " does not match " + meshDivs + " mesh divisions of " + xPixels + "x" + yPixels + " pixels");
+
+    pointData = base.pointData;
+    xPoints = base.xPoints;
+    yPoints = base.yPoints;
+    windingOrderCounterClock = base.windingOrderCounterClock;
+    createDescriptors();
+
+  } // TiledImageMeshFactory
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Creates the mesh descriptor for each tile in the tiling. */
+  private void createDescriptors () {
+
+    int meshDivs = fullResPoints - 1;
+    int tileCount = tiling.getTiles();
     meshDescriptorMap = new HashMap<>();
     for (int tileIndex = 0; tileIndex < tileCount; tileIndex++) {
       
@@ -443,11 +507,7 @@ public class TiledImageMeshFactory implements MeshFactory {
     
     } // for
 
-    // Finally, decide on which face winding order to use when generating
-    // the mesh data.
-    computeWindingOrder();
-
-  } // TiledImageMeshFactory
+  } // createDescriptors
 
   /////////////////////////////////////////////////////////////////
 
@@ -515,13 +575,19 @@ public class TiledImageMeshFactory implements MeshFactory {
 
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public double getAspectRatio (
+  /**
+   * Gets the approximate model width and height of a tile.
+   *
+   * @param index the tile index.
+   *
+   * @return the width and height as a two element array.
+   */
+  private double[] getTileDims (
     int index
   ) {
-  
+
     // We look at the corner points of the tile specified and compute the
-    // approximate aspect ratio.
+    // approximate dimensions.
     //
     // p1------p2
     // |     / |
@@ -545,6 +611,21 @@ public class TiledImageMeshFactory implements MeshFactory {
 
     double width = Math.max (p1p2, p3p4);
     double height = Math.max (p1p3, p2p4);
+
+    return (new double[] {width, height});
+
+  } // getTileDims
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public double getAspectRatio (
+    int index
+  ) {
+  
+    double[] dims = getTileDims (index);
+    double width = dims[0];
+    double height = dims[1];
     double aspect = (width == 0 || height == 0 ? Double.NaN : width/height);
   
     return (aspect);
@@ -553,6 +634,26 @@ public class TiledImageMeshFactory implements MeshFactory {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the approximate model size of a tile.
+   *
+   * @param index the tile index.
+   *
+   * @return the larger of the tile width and height in model units.
+   *
+   * @since 0.8
+   */
+  public double getModelSize (
+    int index
+  ) {
+
+    double[] dims = getTileDims (index);
+    return (Math.max (dims[0], dims[1]));
+
+  } // getModelSize
+
+  /////////////////////////////////////////////////////////////////
+
   /** Gets a point from the point data. */
   private Point3D getPoint (int xPoint, int yPoint) {
   
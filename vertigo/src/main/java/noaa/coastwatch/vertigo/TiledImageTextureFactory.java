@@ -7,6 +7,8 @@
 package noaa.coastwatch.vertigo;
 
 import java.util.function.BooleanSupplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.BitSet;
 import java.util.logging.Logger;
 import java.io.IOException;
 
@@ -41,6 +43,15 @@ public class TiledImageTextureFactory implements TextureFactory {
   /** The minimum camera distance for each level of texture detail. */
   private double[] dmin;
 
+  /**
+   * The set of tile indices known to contain valid data, or null if
+   * unknown.
+   */
+  private BitSet occupancy;
+
+  /** The maximum width or height of an overview image. */
+  private static final int OVERVIEW_SIZE = 1024;
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -86,6 +97,76 @@ public class TiledImageTextureFactory implements TextureFactory {
   ) {
 
     ImageTile tile = tiling.getTile (index);
+    int[] imageDims = getImageDims (tile, aspect, level);
+    int imageWidth = imageDims[0];
+    int imageHeight = imageDims[1];
+
+    // Retrieve the texture image and place it into a slightly larger image
+    // to get ready for the padding step performed next.
+    WritableImage image = new WritableImage (imageWidth + 2, imageHeight + 2);
+    try { tileWriter.write (tile, image, 1, 1, imageWidth, imageHeight, cancelled); }
+    catch (IOException e) { throw new RuntimeException (e); }
+    if (isTrue (cancelled)) image = null;
+
+    // What we do here is pad the texture image with a border of pixels
+    // because when the texture is placed into a mesh, the graphics card
+    // wraps the image coordinates around to the other side when it encounters
+    // 0 or 1 in the texture coordinates (pixel interpolation).  So padding
+    // the image with duplicates and setting the texture coordinates to the
+    // edges of the actual texture rectangle avoids the opposite edges of the
+    // texture from being incorporated into the interpolation.
+    if (image != null) padImage (image, imageWidth, imageHeight);
+
+    return (image);
+  
+  } // create
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public CompletableFuture<Image> createAsync (
+    int index,
+    double aspect,
+    int level
+  ) {
+
+    // This is the same as create(), except that the tile writer reads
+    // the data without holding a thread, and the image is padded when the
+    // write completes.
+    ImageTile tile = tiling.getTile (index);
+    int[] imageDims = getImageDims (tile, aspect, level);
+    int imageWidth = imageDims[0];
+    int imageHeight = imageDims[1];
+    WritableImage image = new WritableImage (imageWidth + 2, imageHeight + 2);
+    var writeFuture = tileWriter.writeAsync (tile, image, 1, 1, imageWidth, imageHeight, null);
+    CompletableFuture<Image> future = writeFuture.thenApply (value -> {
+      padImage (image, imageWidth, imageHeight);
+      return (image);
+    });
+    future.whenComplete ((value, e) -> { if (future.isCancelled()) writeFuture.cancel (false); });
+
+    return (future);
+
+  } // createAsync
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the unpadded dimensions of a texture image.
+   *
+   * @param tile the tile for the texture.
+   * @param aspect the approximate aspect ratio width:height that the
+   * texture will appear on-screen, or Double.NaN if unknown.
+   * @param level the texture level of detail.
+   *
+   * @return the texture image dimensions as [width, height].
+   */
+  private static int[] getImageDims (
+    ImageTile tile,
+    double aspect,
+    int level
+  ) {
+
     int stride = 1 << level;
 
     // Apply the aspect ratio as follows.  If according to the tiling, a
@@ -110,67 +191,179 @@ public class TiledImageTextureFactory implements TextureFactory {
       strideX = strideY = stride;
     } // else
 
-    // Retrieve the texture image and place it into a slightly larger image
-    // to get ready for the padding step performed next.
-    int imageWidth = tile.width/strideX;
-    int imageHeight = tile.height/strideY;
-    int paddedImageWidth = imageWidth + 2;
-    int paddedImageHeight = imageHeight + 2;
-    WritableImage image = new WritableImage (paddedImageWidth, paddedImageHeight);
+    return (new int[] {tile.width/strideX, tile.height/strideY});
 
-    try { tileWriter.write (tile, image, 1, 1, imageWidth, imageHeight, cancelled); }
+  } // getImageDims
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public Image createOverview (
+    BooleanSupplier cancelled
+  ) {
+
+    // We write the entire image as a single tile so that the data source
+    // performs only one access.
+    int stride = getOverviewStride();
+    int imageWidth = Math.max (1, tiling.width/stride);
+    int imageHeight = Math.max (1, tiling.height/stride);
+
+    ImageTile tile = new ImageTile (0, 0, tiling.width, tiling.height);
+    WritableImage image = new WritableImage (imageWidth, imageHeight);
+    boolean[] valid = new boolean[imageWidth*imageHeight];
+    LOGGER.fine ("Creating " + imageWidth + "x" + imageHeight + " overview image at stride " + stride);
+
+    try { tileWriter.write (tile, image, 0, 0, imageWidth, imageHeight, valid, cancelled); }
     catch (IOException e) { throw new RuntimeException (e); }
     if (isTrue (cancelled)) image = null;
 
-    // What we do here is pad the texture image with a border of pixels
-    // because when the texture is placed into a mesh, the graphics card
-    // wraps the image coordinates around to the other side when it encounters
-    // 0 or 1 in the texture coordinates (pixel interpolation).  So padding
-    // the image with duplicates and setting the texture coordinates to the
-    // edges of the actual texture rectangle avoids the opposite edges of the
-    // texture from being incorporated into the interpolation.
+    // While we have the overview validity, we find the tiles that have
+    // some valid data.  A subsampled overview can miss small amounts of
+    // data between samples, so in that case a tile is only taken to be
+    // empty if the samples inside it and the ring of samples just outside
+    // it are all missing.  This catches data at the tile edges and tiles
+    // smaller than the stride that have no samples of their own.
     if (image != null) {
-    
-      PixelReader pixelReader = image.getPixelReader();
-      PixelWriter pixelWriter = image.getPixelWriter();
-      
-      // Top row
-      int srcy = 1;
-      int dsty = srcy - 1;
-      int srcx = 1;
-      int dstx = 1;
-      pixelWriter.setPixels (dstx, dsty, imageWidth, 1, pixelReader, srcx, srcy);
-
-      // Top left and right pixels
-      pixelWriter.setPixels (0, dsty, 1, 1, pixelReader, 1, srcy);
-      pixelWriter.setPixels (paddedImageWidth-1, dsty, 1, 1, pixelReader, paddedImageWidth-2, srcy);
-
-      // Bottom row
-      srcy = paddedImageHeight-2;
-      dsty = srcy+1;
-      pixelWriter.setPixels (dstx, dsty, imageWidth, 1, pixelReader, srcx, srcy);
-
-      // Bottom left and right pixels
-      pixelWriter.setPixels (0, dsty, 1, 1, pixelReader, 1, srcy);
-      pixelWriter.setPixels (paddedImageWidth-1, dsty, 1, 1, pixelReader, paddedImageWidth-2, srcy);
-
-      // Left edge
-      srcx = 1;
-      dstx = srcx - 1;
-      srcy = 1;
-      dsty = 1;
-      pixelWriter.setPixels (dstx, dsty, 1, imageHeight, pixelReader, srcx, srcy);
-      
-      // Right edge
-      srcx = paddedImageWidth - 2;
-      dstx = srcx + 1;
-      pixelWriter.setPixels (dstx, dsty, 1, imageHeight, pixelReader, srcx, srcy);
-
+      int strideX = tiling.width / imageWidth;
+      int strideY = tiling.height / imageHeight;
+      int margin = (stride == 1 ? 0 : 1);
+      int tiles = tiling.getTiles();
+      BitSet tileOccupancy = new BitSet (tiles);
+      for (int i = 0; i < tiles; i++) {
+        ImageTile dataTile = tiling.getTile (i);
+        int minX = Math.max ((dataTile.minX + strideX - 1) / strideX - margin, 0);
+        int minY = Math.max ((dataTile.minY + strideY - 1) / strideY - margin, 0);
+        int maxX = Math.min ((dataTile.minX + dataTile.width - 1) / strideX + margin, imageWidth-1);
+        int maxY = Math.min ((dataTile.minY + dataTile.height - 1) / strideY + margin, imageHeight-1);
+        for (int y = minY; y <= maxY && !tileOccupancy.get (i); y++) {
+          for (int x = minX; x <= maxX; x++) {
+            if (valid[y*imageWidth + x]) { tileOccupancy.set (i); break; }
+          } // for
+        } // for
+      } // for
+      occupancy = tileOccupancy;
+      LOGGER.fine ("Found " + occupancy.cardinality() + " of " + tiles + " tiles with valid data in overview");
     } // if
 
     return (image);
-  
-  } // create
+
+  } // createOverview
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public Image createFromOverview (
+    int index,
+    Image overview
+  ) {
+
+    // The overview stride is recovered from the overview dimensions in the
+    // same way that the tile writer computes it.  We then find the
+    // overview pixels that cover the tile, making sure to always have at
+    // least one pixel even for tiles smaller than the stride.
+    int overviewWidth = (int) overview.getWidth();
+    int overviewHeight = (int) overview.getHeight();
+    int strideX = tiling.width / overviewWidth;
+    int strideY = tiling.height / overviewHeight;
+
+    ImageTile tile = tiling.getTile (index);
+    int minX = Math.min (tile.minX / strideX, overviewWidth-1);
+    int minY = Math.min (tile.minY / strideY, overviewHeight-1);
+    int maxX = Math.min ((tile.minX + tile.width + strideX - 1) / strideX, overviewWidth) - 1;
+    int maxY = Math.min ((tile.minY + tile.height + strideY - 1) / strideY, overviewHeight) - 1;
+    int imageWidth = Math.max (1, maxX - minX + 1);
+    int imageHeight = Math.max (1, maxY - minY + 1);
+
+    WritableImage image = new WritableImage (imageWidth + 2, imageHeight + 2);
+    image.getPixelWriter().setPixels (1, 1, imageWidth, imageHeight, overview.getPixelReader(), minX, minY);
+    padImage (image, imageWidth, imageHeight);
+
+    return (image);
+
+  } // createFromOverview
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the stride of the overview image, the smallest power of two
+   * that fits the whole image into the overview size.
+   *
+   * @return the overview stride.
+   */
+  private int getOverviewStride () {
+
+    int stride = 1;
+    while (tiling.width/stride > OVERVIEW_SIZE || tiling.height/stride > OVERVIEW_SIZE) stride *= 2;
+
+    return (stride);
+
+  } // getOverviewStride
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public boolean isOverviewExact () { return (getOverviewStride() == 1); }
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public boolean hasData (int index) { return (occupancy == null || occupancy.get (index)); }
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Pads an image with a one pixel border of duplicate edge pixels.
+   *
+   * @param image the image to pad, with the unpadded data starting at
+   * (1,1).
+   * @param imageWidth the width of the unpadded data.
+   * @param imageHeight the height of the unpadded data.
+   */
+  private static void padImage (
+    WritableImage image,
+    int imageWidth,
+    int imageHeight
+  ) {
+
+    int paddedImageWidth = imageWidth + 2;
+    int paddedImageHeight = imageHeight + 2;
+
+    PixelReader pixelReader = image.getPixelReader();
+    PixelWriter pixelWriter = image.getPixelWriter();
+    
+    // Top row
+    int srcy = 1;
+    int dsty = srcy - 1;
+    int srcx = 1;
+    int dstx = 1;
+    pixelWriter.setPixels (dstx, dsty, imageWidth, 1, pixelReader, srcx, srcy);
+
+    // Top left and right pixels
+    pixelWriter.setPixels (0, dsty, 1, 1, pixelReader, 1, srcy);
+    pixelWriter.setPixels (paddedImageWidth-1, dsty, 1, 1, pixelReader, paddedImageWidth-2, srcy);
+
+    // Bottom row
+    srcy = paddedImageHeight-2;
+    dsty = srcy+1;
+    pixelWriter.setPixels (dstx, dsty, imageWidth, 1, pixelReader, srcx, srcy);
+
+    // Bottom left and right pixels
+    pixelWriter.setPixels (0, dsty, 1, 1, pixelReader, 1, srcy);
+    pixelWriter.setPixels (paddedImageWidth-1, dsty, 1, 1, pixelReader, paddedImageWidth-2, srcy);
+
+    // Left edge
+    srcx = 1;
+    dstx = srcx - 1;
+    srcy = 1;
+    dsty = 1;
+    pixelWriter.setPixels (dstx, dsty, 1, imageHeight, pixelReader, srcx, srcy);
+    
+    // Right edge
+    srcx = paddedImageWidth - 2;
+    dstx = srcx + 1;
+    pixelWriter.setPixels (dstx, dsty, 1, imageHeight, pixelReader, srcx, srcy);
+
+  } // padImage
 
   /////////////////////////////////////////////////////////////////
 
@@ -212,6 +212,20 @@ public class Vertigo extends Application {
 
   /////////////////////////////////////////////////////////////////
 
+  @Override
+  public void stop() {
+
+    // Close the datasets still in use and release any cached NetCDF files
+    // so that remote connections are closed cleanly, then stop the task
+    // threads.
+    NetCDFDataset.closeAll();
+    NetCDFDataSource.shutdown();
+    TaskService.getInstance().shutdown();
+
+  } // stop
+
+  /////////////////////////////////////////////////////////////////
+
   /** Merges the Vertigo-specific properties into the system properties. */
   private static void mergeProperties () {
 
@@ -27,10 +27,8 @@ import java.util.Date;
 import java.util.TimeZone;
 import java.util.function.ToDoubleBiFunction;
 
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 
 import java.text.SimpleDateFormat;
 
@@ -855,13 +853,11 @@ public class VertigoController {
   /** Detects if the progress property has stalled waiting for new progress. */
   private class ProgressStallDetector {
 
-    private ScheduledExecutorService scheduler;
     private Runnable stallTask;
     private Future stallTaskFuture;
     private boolean progressStalled;
 
     public ProgressStallDetector () {
-      scheduler = Executors.newScheduledThreadPool (1, DaemonThreadFactory.getInstance());
       stallTask = () -> {
         Platform.runLater (() -> {
           progressStalled = true;
@@ -877,7 +873,7 @@ public class VertigoController {
         stallTaskFuture = null;
       } // if
       if (progress != 1) {
-        stallTaskFuture = scheduler.schedule (stallTask, 5, TimeUnit.SECONDS);
+        stallTaskFuture = TaskService.getInstance().schedule (stallTask, 5, TimeUnit.SECONDS);
       } // if
       updateProgressLabel();
     } // progressChanged
@@ -1113,7 +1109,10 @@ public class VertigoController {
 
     if (newProjController != null) {
 
-      if (projController != null) clearSurface();
+      if (projController != null) {
+        clearSurface();
+        projController.dispose();
+      } // if
       projController = newProjController;
 
       // Set up dataset list
@@ -15,8 +15,16 @@ import java.util.LinkedHashSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BooleanSupplier;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
 
 import java.io.FileNotFoundException;
+import java.io.InterruptedIOException;
 
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelReader;
@@ -40,12 +48,18 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
   private static final int X = 0;
   private static final int Y = 1;
 
+  /** The time in milliseconds between checks for cancellation while waiting for tiles. */
+  private static final long RETRIEVAL_WAIT = 100;
+
   // Variables
   // ---------
 
   /* The URL pattern to use for tile retrieval. */
   private String urlPattern;
 
+  /** The host of the tile server for limiting concurrent requests. */
+  private String host;
+
   /** The square tile size in pixels regardless of the resolution level. */
   private int tileSize;
   
@@ -55,8 +69,8 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
   /** The cache map of tile key to image. */
   private Map<WebMapTileKey, Image> tileImageCache;
 
-  /** The set of tiles current being retrieved. */
-  private Set<WebMapTileKey> tileRetrievingSet;
+  /** The map of tile key to retrieval for tiles currently being retrieved. */
+  private Map<WebMapTileKey, TileRetrieval> tileRetrievalMap;
 
   /** The set of tiles that were missing when retrieved. */
   private Set<WebMapTileKey> tileMissingSet;
@@ -86,11 +100,12 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
   ) {
 
     this.urlPattern = urlPattern;
+    this.host = TaskService.getHost (urlPattern);
     this.levels = levels;
     this.tileSize = tileSize;
 
     tileImageCache = new HashMap<>();
-    tileRetrievingSet = new HashSet<>();
+    tileRetrievalMap = new HashMap<>();
     tileMissingSet = new HashSet<>();
 
   } // WebMapDataSource
@@ -165,78 +180,200 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
 
   /////////////////////////////////////////////////////////////////
 
-  /** Holds the data for a retrieval request. */
-  private static class RetrievalRequest {
-    
-    /** The outstanding tile keys required by this request. */
+  /** Holds the web map tiles needed for an access. */
+  private class TilePlan {
+
+    /** The number of levels down from full resolution. */
+    public int dLevel;
+
+    /** The tile keys at the minimum and maximum corners of the access. */
+    public WebMapTileKey minTileKey;
+    public WebMapTileKey maxTileKey;
+
+    /** The tile keys covering the access. */
     public Set<WebMapTileKey> keys;
 
-    /** The resulting images available. */
-    public Map<WebMapTileKey, Image> imageMap;
+    /** The retrievals in progress that the access is waiting on. */
+    public List<TileRetrieval> retrievals = new ArrayList<>();
 
-    /** Creates a new retrieval request. */
-    public RetrievalRequest (
-      Set<WebMapTileKey> keys
+    /** Creates a new plan for an access. */
+    public TilePlan (
+      ImageAccess access
     ) {
-    
-      this.keys = new HashSet<> (keys);
-      this.imageMap = new HashMap<>();
-      
-    } // RetrievalRequest
 
-    public boolean isComplete() {
-      return (keys.size() == 0);
-    } // isComplete
+      // Determine what level in the web map tiling we need.  We compute the
+      // minimum stride out of the X and Y directions, and then take the next
+      // smallest factor of 2 to the stride.  For example, if the stride is
+      // 14, we compute log_2 (14) = 3.81 so we round down to 3 and the stride
+      // at that level is 8.  For a stride of 8, we go 3 levels down in
+      // resolution from the maximum level and that's the level we want.  For
+      // example if the number of levels is 8, level 7 is the full resolution,
+      // so we go down 3 levels to level 4.
+      int stride = (int) Math.min (access.strideX, access.strideY);
+//      dLevel = (int) Math.floor (Math.log (stride) / Math.log (2));
+      dLevel = (int) Math.ceil (Math.log (stride) / Math.log (2));
+      int level = (levels-1) - dLevel;
+
+
+// FIXME: There's a problem here in the case of low DPI displays, eg: 150%
+// magnification on Windows.  The level goes to -1 and we get a blank
+// display because there's no level -1 image.  If we put this check in,
+// it doesn't really help because then we get an array index out of bounds
+// exception in many cases and a strange image display on the globe.
+//      if (level < 0) level = 0;
+
+
+      // Find the web map tile coordinates along the X and Y directions that cover
+      // the requested tile.  Start by getting the tile coordinates of the corner
+      // pixels.  These are the extremes that will help us compute all the
+      // tile coordinates.  Then add all tiles in between.
+      minTileKey = getTileKey (level, access.tile.minX, access.tile.minY);
+      int maxX = access.tile.minX + access.tile.width - 1;
+      int maxY = access.tile.minY + access.tile.height - 1;
+      maxTileKey = getTileKey (level, maxX, maxY);
+      keys = new LinkedHashSet<>();
+      for (int y = minTileKey.tileY; y <= maxTileKey.tileY; y++) {
+        for (int x = minTileKey.tileX; x <= maxTileKey.tileX; x++) {
+          keys.add (new WebMapTileKey (level, x, y));
+        } // for
+      } // for
+
+    } // TilePlan
 
-  } // RetrievalRequest class
+  } // TilePlan class
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Holds a web map image retrieval and the number of accesses waiting on it. */
+  private static class TileRetrieval {
+
+    /** The key of the image being retrieved. */
+    public WebMapTileKey key;
+
+    /** The future for the image. */
+    public CompletableFuture<Image> future = new CompletableFuture<>();
+
+    /** The future for the I/O task that retrieves the image. */
+    public Future<?> task;
+
+    /** The number of accesses waiting on the image. */
+    public int waiting;
+
+    /** The cancelled flag, true when no more accesses are waiting. */
+    public volatile boolean cancelled;
+
+    /** Creates a new retrieval for the specified key. */
+    public TileRetrieval (WebMapTileKey key) { this.key = key; }
+
+  } // TileRetrieval class
 
   /////////////////////////////////////////////////////////////////
 
   /**
-   * Performs a processing run of a request.  After processing, the
-   * request may or may not be complete.  When complete, all tiles that
-   * can possibly be added to the image map will be available.
+   * Requests the retrieval of a web map image.  The image is taken from the
+   * cache if available, otherwise the retrieval already in progress is
+   * shared, or a new retrieval is started as an I/O task.  A retrieval
+   * that the plan waits on is added to the plan, and must be released
+   * with {@link #releaseTiles} once the plan no longer needs it.
+   *
+   * @param key the key of the image to retrieve.
+   * @param plan the plan of tiles that the image is for.
    *
-   * @param request the request to process.
+   * @return the future for the image, which completes with a null image
+   * if the retrieval failed.
+   *
+   * @since 0.8
    */
-  private void process (
-    RetrievalRequest request
+  private synchronized CompletableFuture<Image> requestTile (
+    WebMapTileKey key,
+    TilePlan plan
   ) {
 
-    // First transfer any of the images needed to complete the request
-    // directly from the cache.
-    synchronized (this) {
-      for (var iter = request.keys.iterator(); iter.hasNext();) {
-        var key = iter.next();
-        if (tileImageCache.containsKey (key)) {
-          request.imageMap.put (key, tileImageCache.get (key));
-          iter.remove();
-        } // if
-      } // for
-    } // synchronized
-    
-    // Next check if there's a web map image we can retrieve.
-    WebMapTileKey keyToRetrieve = null;
-    synchronized (this) {
-      for (var key : request.keys) {
-        if (!tileRetrievingSet.contains (key)) {
-          keyToRetrieve = key;
-          tileRetrievingSet.add (key);
-          break;
-        } // if
-      } // for
-    } // synchronized
+    CompletableFuture<Image> future;
+    if (tileImageCache.containsKey (key)) future = CompletableFuture.completedFuture (tileImageCache.get (key));
+    else {
+      var retrieval = tileRetrievalMap.get (key);
+      if (retrieval == null) {
+        var newRetrieval = new TileRetrieval (key);
+        tileRetrievalMap.put (key, newRetrieval);
+        newRetrieval.task = TaskService.getInstance().submitIO (() -> {
+          Image image = null;
+          try { image = retrieve (key); }
+          finally {
+            store (newRetrieval, image);
+            newRetrieval.future.complete (image);
+          } // finally
+        }, () -> newRetrieval.cancelled);
+        retrieval = newRetrieval;
+      } // if
+      retrieval.waiting++;
+      plan.retrievals.add (retrieval);
+      future = retrieval.future;
+    } // else
 
-    // Now perform the retrieval of the web map image.
-    if (keyToRetrieve != null) {
-      Image image = retrieve (keyToRetrieve);
-      synchronized (this) {
-        tileImageCache.put (keyToRetrieve, image);
-        tileRetrievingSet.remove (keyToRetrieve);
-      } // synchronized
-    } // if
+    return (future);
+
+  } // requestTile
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Requests the retrieval of all the web map images for an access.
+   *
+   * @param plan the plan of tiles for the access.
+   *
+   * @return the map of tile key to image future.
+   */
+  private Map<WebMapTileKey, CompletableFuture<Image>> requestTiles (
+    TilePlan plan
+  ) {
+
+    Map<WebMapTileKey, CompletableFuture<Image>> futureMap = new HashMap<>();
+    for (var key : plan.keys) futureMap.put (key, requestTile (key, plan));
+    return (futureMap);
+
+  } // requestTiles
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Releases the retrievals that an access was waiting on.  A retrieval
+   * that no other access is waiting on is cancelled, so that tiles for
+   * accesses that were cancelled aren't downloaded.
+   *
+   * @param plan the plan of tiles for the access.
+   */
+  private synchronized void releaseTiles (
+    TilePlan plan
+  ) {
+
+    for (var retrieval : plan.retrievals) {
+      retrieval.waiting--;
+      if (retrieval.waiting == 0 && !retrieval.future.isDone()) {
+        retrieval.cancelled = true;
+        tileRetrievalMap.remove (retrieval.key, retrieval);
+        retrieval.task.cancel (true);
+        retrieval.future.cancel (false);
+      } // if
+    } // for
+    plan.retrievals.clear();
+
+  } // releaseTiles
 
-  } // process
+  /////////////////////////////////////////////////////////////////
+
+  /** Stores a retrieved image in the cache. */
+  private synchronized void store (
+    TileRetrieval retrieval,
+    Image image
+  ) {
+
+    // A cancelled retrieval may have failed only because it was
+    // interrupted, so we don't record a missing image for it.
+    if (image != null || !retrieval.cancelled) tileImageCache.put (retrieval.key, image);
+    tileRetrievalMap.remove (retrieval.key, retrieval);
+
+  } // store
 
   /////////////////////////////////////////////////////////////////
 
@@ -296,7 +433,9 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
   ) {
 
     // Check first if the tile has previously been found missing
-    if (tileMissingSet.contains (key)) return (null);
+    synchronized (this) {
+      if (tileMissingSet.contains (key)) return (null);
+    } // synchronized
   
     String tileURL = urlPattern;
     tileURL = tileURL.replaceAll ("%L", Integer.toString (key.level));
@@ -306,15 +445,18 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
     tileURL = tileURL.replaceAll ("%i", Integer.toString ((1 << key.level) - 1 - key.tileY));
     Image image;
     try {
-      image = new Image (tileURL);
+      String url = tileURL;
+      image = TaskService.getInstance().runIO (host, () -> new Image (url));
       if (image.isError()) throw image.getException();
       LOGGER.finer ("Retrieved web map image with key " + key + ", URL " + tileURL);
     } // try
     catch (Exception e) {
       if (e instanceof FileNotFoundException) {
         LOGGER.warning ("Web map image file not found for URL " + tileURL);
-        tileMissingSet.add (key);
+        synchronized (this) { tileMissingSet.add (key); }
       } // if
+      else if (e instanceof InterruptedIOException)
+        LOGGER.finer ("Web map image retrieval cancelled for URL " + tileURL);
       else
         LOGGER.log (Level.WARNING, "Web map image retrieval failed for URL " + tileURL, e);
       image = null;
@@ -337,68 +479,41 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
 
   /////////////////////////////////////////////////////////////////
 
-  @Override
-  public ImageAccessResult access (
+  /**
+   * Creates an access result from the retrieved web map images.
+   *
+   * @param access the data access region.
+   * @param plan the plan of tiles for the access.
+   * @param futureMap the map of tile key to completed image future.
+   * @param cancelled the method to periodically check for cancellation,
+   * or null to not check.
+   *
+   * @return the access result, or null if cancelled.
+   */
+  private ImageAccessResult createResult (
     ImageAccess access,
+    TilePlan plan,
+    Map<WebMapTileKey, CompletableFuture<Image>> futureMap,
     BooleanSupplier cancelled
   ) {
-  
-    // Determine what level in the web map tiling we need.  We compute the
-    // minimum stride out of the X and Y directions, and then take the next
-    // smallest factor of 2 to the stride.  For example, if the stride is
-    // 14, we compute log_2 (14) = 3.81 so we round down to 3 and the stride
-    // at that level is 8.  For a stride of 8, we go 3 levels down in
-    // resolution from the maximum level and that's the level we want.  For
-    // example if the number of levels is 8, level 7 is the full resolution,
-    // so we go down 3 levels to level 4.
-    int stride = (int) Math.min (access.strideX, access.strideY);
-//    int dLevel = (int) Math.floor (Math.log (stride) / Math.log (2));
-    int dLevel = (int) Math.ceil (Math.log (stride) / Math.log (2));
-    int level = (levels-1) - dLevel;
-
-
-// FIXME: There's a problem here in the case of low DPI displays, eg: 150%
-// magnification on Windows.  The level goes to -1 and we get a blank
-// display because there's no level -1 image.  If we put this check in,
-// it doesn't really help because then we get an array index out of bounds
-// exception in many cases and a strange image display on the globe.
-//    if (level < 0) level = 0;
-
-
-    // Find the web map tile coordinates along the X and Y directions that cover
-    // the requested tile.  Start by getting the tile coordinates of the corner
-    // pixels.  These are the extremes that will help us compute all the
-    // tile coordinates.  Then add all tiles in between.
-    var minTileKey = getTileKey (level, access.tile.minX, access.tile.minY);
-    int maxX = access.tile.minX + access.tile.width - 1;
-    int maxY = access.tile.minY + access.tile.height - 1;
-    var maxTileKey = getTileKey (level, maxX, maxY);
-    Set<WebMapTileKey> tileKeySet = new LinkedHashSet<>();
-    for (int y = minTileKey.tileY; y <= maxTileKey.tileY; y++) {
-      for (int x = minTileKey.tileX; x <= maxTileKey.tileX; x++) {
-        tileKeySet.add (new WebMapTileKey (level, x, y));
-      } // for
-    } // for
-
-    // Submit the needed tile keys for retrieval and process.
-    var request = new RetrievalRequest (tileKeySet);
-    while (!request.isComplete() && !isTrue (cancelled)) process (request);
 
     ImageAccessResult result = null;
     if (!isTrue (cancelled)) {
 
-      // Once outside of the request loop, one of two conditions must be
+      // Once all the retrievals are done, one of two conditions must be
       // true: either we have all the tiles we need for the rendering, or
       // some of the tiles failed to load but we have the rest.  Either way
       // we work with what we have and build an array of tile image pixel
       // readers, which may include null values if any of the tile images
       // weren't retrieved.
+      var minTileKey = plan.minTileKey;
+      var maxTileKey = plan.maxTileKey;
       int tilesInX = maxTileKey.tileX - minTileKey.tileX + 1;
       int tilesInY = maxTileKey.tileY - minTileKey.tileY + 1;
       PixelReader[][] pixelReaders = new PixelReader[tilesInX][tilesInY];
       int missingTiles = 0;
-      for (var key : tileKeySet) {
-        Image image = request.imageMap.get (key);
+      for (var key : plan.keys) {
+        Image image = futureMap.get (key).getNow (null);
         if (image == null) missingTiles++;
         else {
           int xIndex = key.tileX - minTileKey.tileX;
@@ -412,7 +527,7 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
       // Now fill the access result with pixel data from the tiles
       // we just retrieved.  We start by computing vectors along the X and Y
       // directions for the source coordinates in the tiles.
-      int mapFactor = (1 << dLevel);
+      int mapFactor = (1 << plan.dLevel);
       int mapTileSize = tileSize*mapFactor;
 
       int accessWidth = access.getWidth();
@@ -463,10 +578,75 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
 
     return (result);
 
+  } // createResult
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public ImageAccessResult access (
+    ImageAccess access,
+    BooleanSupplier cancelled
+  ) {
+
+    // Request the needed tiles and wait for them.  We only need to wake up
+    // periodically if there's a cancellation check to make, otherwise we
+    // just block until the tiles are done.
+    var plan = new TilePlan (access);
+    var futureMap = requestTiles (plan);
+    var allFuture = CompletableFuture.allOf (futureMap.values().toArray (new CompletableFuture<?>[0]));
+    try {
+      while (!allFuture.isDone() && !isTrue (cancelled)) {
+        try {
+          if (cancelled == null) allFuture.get();
+          else allFuture.get (RETRIEVAL_WAIT, TimeUnit.MILLISECONDS);
+        } // try
+        catch (TimeoutException e) { }
+        catch (InterruptedException | ExecutionException e) {
+          LOGGER.log (Level.FINE, "Interrupted waiting for web map image retrieval", e);
+          break;
+        } // catch
+      } // while
+    } // try
+    finally { releaseTiles (plan); }
+
+    ImageAccessResult result = null;
+    if (allFuture.isDone()) result = createResult (access, plan, futureMap, cancelled);
+
+    return (result);
+
   } // access
 
   /////////////////////////////////////////////////////////////////
 
+  @Override
+  public CompletableFuture<ImageAccessResult> accessAsync (
+    ImageAccess access
+  ) {
+
+    // The result is created on whichever thread completes the last tile
+    // retrieval, so no thread is held waiting for the tiles.  When the
+    // access completes or is cancelled, the tiles are released so that
+    // retrievals no longer needed are cancelled.
+    var plan = new TilePlan (access);
+    var futureMap = requestTiles (plan);
+    CompletableFuture<ImageAccessResult> future = new CompletableFuture<>();
+    future.whenComplete ((result, error) -> releaseTiles (plan));
+    CompletableFuture.allOf (futureMap.values().toArray (new CompletableFuture<?>[0])).thenRun (() -> {
+      if (!future.isDone()) {
+        try {
+          ImageAccessResult result = createResult (access, plan, futureMap, future::isCancelled);
+          if (result != null) future.complete (result);
+        } // try
+        catch (RuntimeException e) { future.completeExceptionally (e); }
+      } // if
+    });
+
+    return (future);
+
+  } // accessAsync
+
+  /////////////////////////////////////////////////////////////////
+
   @Override
   public void get (
     ImageAccessResult result,
@@ -523,12 +703,26 @@ public class WebMapDataSource implements ImageDataSource<int[]> {
   ) {
   
     Context context = (Context) result.context;
-    for (int i = 0; i < context.dataArray.length; i++) data[i] = context.dataArray[i];
+    System.arraycopy (context.dataArray, 0, data, 0, context.dataArray.length);
   
   } // getAll
 
   /////////////////////////////////////////////////////////////////
 
+  @Override
+  public int[] getDirect (
+    ImageAccessResult result
+  ) {
+
+    // The color data is created in row major order for each access, so
+    // it can be used directly.
+    Context context = (Context) result.context;
+    return (context.dataArray);
+
+  } // getDirect
+
+  /////////////////////////////////////////////////////////////////
+
 } // WebMapDataSource class
 
 
@@ -13,6 +13,7 @@ import java.util.Calendar;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
 import java.util.function.ToDoubleBiFunction;
+import java.util.function.BooleanSupplier;
 
 import java.net.URL;
 import java.net.MalformedURLException;
@@ -163,6 +164,19 @@ public class WebMapSurfaceFactory extends BaseProjectViewObject implements GeoSu
     int time,
     int level
   ) throws IOException {
+
+    return (createSurface (time, level, null));
+
+  } // createSurface
+
+  /////////////////////////////////////////////////////////////////
+
+  @Override
+  public DynamicSurface createSurface (
+    int time,
+    int level,
+    BooleanSupplier cancelled
+  ) throws IOException {
     
     // Get the data source for the given time and level (ignored if they
     // don't exist).
@@ -174,7 +188,7 @@ public class WebMapSurfaceFactory extends BaseProjectViewObject implements GeoSu
     // itself.
     ImageTileWriter tileWriter = new ColorTileWriter<int[]> (dataSource, new IntegerPassThroughConverter());
     FacetDataSource source = new TiledImageFacetDataSource (width, height, coordSource,
-      tileWriter, viewContext.deltaFunc, viewContext.viewProps);
+      tileWriter, viewContext.deltaFunc, viewContext.viewProps, cancelled);
     DynamicSurface surface = new DynamicSurface (source);
 
     return (surface);
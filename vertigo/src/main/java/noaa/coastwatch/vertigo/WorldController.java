@@ -7,7 +7,10 @@
 package noaa.coastwatch.vertigo;
 
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Set;
+import java.util.Collection;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.Timer;
@@ -42,6 +45,8 @@ import javafx.geometry.BoundingBox;
 import javafx.geometry.Bounds;
 
 import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
+import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Interpolator;
@@ -75,7 +80,11 @@ public class WorldController {
   private static final int POSITION_SHIFT_DURATION = 1500;
   private static final int SHIFT_ANGLE = 60;
   private static final int CAMERA_ZOOM_DURATION = POSITION_SHIFT_DURATION;
-  private static final int SCENE_CHANGES_PER_PULSE = 2;
+  private static final long SCENE_CHANGE_BUDGET_NANOS = 4_000_000L;
+  private static final double CHANGE_COST_SMOOTHING = 0.1;
+  private static final double DRAG_PREDICT_MILLIS = 500;
+  private static final double DRAG_RATE_SMOOTHING = 0.3;
+  private static final double DRAG_TARGET_ANGLE = 5;
 
   private static final double BAACKGROUND_VIEW_ORDER = 20;
   private static final double BASE_VIEW_ORDER = 10;
@@ -103,6 +112,22 @@ public class WorldController {
   /** The timeline used for zooming the camera. */
   private Timeline zoomTimeline;
 
+  /** The view angles at the end of the shift timeline. */
+  private double shiftEndXAngle, shiftEndYAngle;
+
+  /** The zoom level at the end of the zoom timeline. */
+  private double zoomEndLevel;
+
+  /** The time in nanoseconds and view angles of the last drag event. */
+  private long dragTime;
+  private double dragXAngle, dragYAngle;
+
+  /** The smoothed rate of change of the view angles in degrees/ms while dragging. */
+  private double dragXRate, dragYRate;
+
+  /** The predicted camera target, or null if the camera is not moving. */
+  private ObjectProperty<CameraTarget> cameraTargetProp;
+
   /** The globe object that view controls manipulate. */
   private MeshView globe;
   
@@ -112,12 +137,15 @@ public class WorldController {
   /** The drawing mode flag for 3D shapes. */
   private boolean lineMode;
 
-  /** The number of camera position updates since the last counter reset. */
-  private int cameraUpdatesSinceReset;
-
-  /** The queue for accumlating and performing scene graph changes. */
+  /** The queue for accumlating scene graph changes from any thread. */
   private ConcurrentLinkedQueue<Runnable> sceneGraphChangeQueue;
 
+  /** The scene graph changes waiting to be performed, in priority order. */
+  private List<Runnable> pendingChanges;
+
+  /** The smoothed cost of performing a scene graph change in nanoseconds. */
+  private double changeCost;
+
   /** The intersection point between the view cursor and globe (possibly null). */
   private ObjectProperty<Point3D> globeIntersectProp;
 
@@ -152,11 +180,53 @@ public class WorldController {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * A <code>CameraTarget</code> holds a camera position that the view is
+   * expected to reach, and the view frustum at that position.
+   *
+   * @since 0.8
+   */
+  public static class CameraTarget {
+
+    /** The camera position in the local reference frame of the view objects. */
+    public final Point3D position;
+
+    /** The view frustum at the camera position. */
+    public final Frustum frustum;
+
+    /** Creates a new camera target. */
+    public CameraTarget (Point3D position, Frustum frustum) {
+      this.position = position;
+      this.frustum = frustum;
+    } // CameraTarget
+
+  } // CameraTarget class
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the property that holds the predicted camera target.  While the
+   * view is being animated, the target is the position at the end of the
+   * animation.  While the view is being dragged, the target is extrapolated
+   * from the drag velocity.  The target is null when the camera is not
+   * moving.
+   *
+   * @return the camera target property.
+   *
+   * @since 0.8
+   */
+  public ReadOnlyObjectProperty<CameraTarget> cameraTargetProperty() { return (cameraTargetProp); }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Adds a change in the form of a runnable object to the scene graph change
-   * queue.  The change will be performed as time permits either less quickly
-   * while the view is being animated, or more quickly when the view is at
-   * rest.
+   * queue.  Changes are performed on each frame up to a fixed time budget,
+   * so that many changes arriving at once don't cause a visible pause.
+   * Changes that are instances of {@link SceneGraphChange} are performed
+   * in order of their distance from the center of the view, and other
+   * changes are performed first.  This method may be called from any
+   * thread.
    *
    * @param change the scene graph change to perform.
    */
@@ -178,22 +248,18 @@ public class WorldController {
     Bounds bounds = new BoundingBox (-radius, -radius, -radius, radius*2, radius*2, radius*2);
     model = new WorldModel (bounds);
     sceneGraphChangeQueue = new ConcurrentLinkedQueue<>();
+    pendingChanges = new ArrayList<>();
     globeIntersectProp = new SimpleObjectProperty<> (this, "globeIntersect");
     coordTransProp = new SimpleObjectProperty<> (this, "coordTrans", new SphereTranslator (radius));
+    cameraTargetProp = new SimpleObjectProperty<> (this, "cameraTarget");
 
-    // Set up the timer that polls for scene graph changes and performs
-    // them when no animations are happening.  We assume that animation has
-    // stopped when there are no camera updates over the course of about
-    // 20 pulses (= 1/60 s * 20).
-    Timer updateTimer = new Timer (true);
-    updateTimer.scheduleAtFixedRate (new TimerTask () {
-      public void run() {
-        Platform.runLater (() -> {
-          if (cameraUpdatesSinceReset == 0) performSceneChanges (Integer.MAX_VALUE);
-          else cameraUpdatesSinceReset = 0;
-        });
-      } // run
-    }, 0, 333);
+    // Set up the timer that performs scene graph changes on each frame,
+    // within a time budget that leaves the rest of the frame for rendering.
+    AnimationTimer changeTimer = new AnimationTimer() {
+      @Override
+      public void handle (long now) { performSceneChanges (SCENE_CHANGE_BUDGET_NANOS); }
+    };
+    changeTimer.start();
 
     // Add the various change and event listeners.
     addViewReference();
@@ -210,11 +276,100 @@ public class WorldController {
 
     if (zoomTimeline != null) zoomTimeline.stop();
     if (shiftTimeline != null) shiftTimeline.stop();
+    updateCameraTarget();
 
   } // stopAnimation
 
   /////////////////////////////////////////////////////////////////
 
+  /** Determines if a timeline is currently running. */
+  private static boolean isRunning (Timeline timeline) {
+
+    return (timeline != null && timeline.getStatus() == Animation.Status.RUNNING);
+
+  } // isRunning
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Updates the camera target from the animations in progress, or sets it
+   * to null if there are none.
+   */
+  private void updateCameraTarget () {
+
+    boolean shifting = isRunning (shiftTimeline);
+    boolean zooming = isRunning (zoomTimeline);
+    if (!shifting && !zooming) cameraTargetProp.setValue (null);
+    else {
+      double xAngle = (shifting ? shiftEndXAngle : view.xAngleProperty().getValue());
+      double yAngle = (shifting ? shiftEndYAngle : view.yAngleProperty().getValue());
+      double level = (zooming ? zoomEndLevel : view.cameraZoomProperty().getValue());
+      setCameraTarget (xAngle, yAngle, level);
+    } // else
+
+  } // updateCameraTarget
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Sets the camera target to a view state. */
+  private void setCameraTarget (
+    double xAngle,
+    double yAngle,
+    double level
+  ) {
+
+    cameraTargetProp.setValue (new CameraTarget (view.getCameraPosition (xAngle, yAngle, level),
+      view.getFrustum (xAngle, yAngle, level)));
+
+  } // setCameraTarget
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Updates the drag velocity using new drag angles, and sets the camera
+   * target by extrapolating the velocity if the target has moved far
+   * enough from the current target.
+   *
+   * @param xAngle the new X angle value.
+   * @param yAngle the new Y angle value.
+   */
+  private void updateDragTarget (
+    double xAngle,
+    double yAngle
+  ) {
+
+    long now = System.nanoTime();
+    double millis = (now - dragTime)*1e-6;
+    if (millis > 0) {
+      double dY = yAngle - dragYAngle;
+      if (dY > 180) dY -= 360;
+      else if (dY < -180) dY += 360;
+      dragXRate = DRAG_RATE_SMOOTHING*(xAngle - dragXAngle)/millis + (1-DRAG_RATE_SMOOTHING)*dragXRate;
+      dragYRate = DRAG_RATE_SMOOTHING*dY/millis + (1-DRAG_RATE_SMOOTHING)*dragYRate;
+    } // if
+    dragTime = now;
+    dragXAngle = xAngle;
+    dragYAngle = yAngle;
+
+    // We only publish a new target when it has moved by a significant
+    // angle, scaled by the camera distance as for shifts, so that listeners
+    // aren't flooded with targets on every mouse event.
+    double targetXAngle = Math.max (-90, Math.min (90, xAngle + dragXRate*DRAG_PREDICT_MILLIS));
+    double targetYAngle = yAngle + dragYRate*DRAG_PREDICT_MILLIS;
+    double level = view.cameraZoomProperty().getValue();
+    double minAngle = DRAG_TARGET_ANGLE * view.cameraDistance() / view.maxCameraDistance();
+    var target = cameraTargetProp.getValue();
+    boolean changed = (target == null);
+    if (!changed) {
+      Point3D position = view.getCameraPosition (targetXAngle, targetYAngle, level);
+      changed = (position.angle (target.position) > minAngle);
+    } // if
+    if (changed) setCameraTarget (targetXAngle, targetYAngle, level);
+
+  } // updateDragTarget
+
+  /////////////////////////////////////////////////////////////////
+
   /** Adds the standard view reference objects. */
   private void addViewReference () {
 
@@ -313,6 +468,10 @@ public class WorldController {
       dragStartPoint = node.localToScene (result.getIntersectedPoint());
       dragStartXAngle = view.xAngleProperty().getValue();
       dragStartYAngle = view.yAngleProperty().getValue();
+      dragTime = System.nanoTime();
+      dragXAngle = dragStartXAngle;
+      dragYAngle = dragStartYAngle;
+      dragXRate = dragYRate = 0;
     });
 
     // When the mouse is dragging, adjust the x and y rotation angles
@@ -342,6 +501,7 @@ public class WorldController {
 
         view.xAngleProperty().setValue (newXAngle);
         view.yAngleProperty().setValue (newYAngle);
+        updateDragTarget (newXAngle, newYAngle);
 
       } // if
     });
@@ -349,6 +509,7 @@ public class WorldController {
     // Clean up after dragging
     view.addObjectEventHandler (MouseEvent.MOUSE_RELEASED, event -> {
       dragStartPoint = null;
+      updateCameraTarget();
     });
 
     // Perform a shift animation on double click
@@ -454,7 +615,11 @@ public class WorldController {
     KeyValue keyYValue = new KeyValue (view.yAngleProperty(), newYAngle, Interpolator.EASE_BOTH);
     KeyFrame frame = new KeyFrame (Duration.millis (POSITION_SHIFT_DURATION), keyXValue, keyYValue);
     shiftTimeline = new Timeline (frame);
+    shiftTimeline.setOnFinished (event -> updateCameraTarget());
+    shiftEndXAngle = newXAngle;
+    shiftEndYAngle = newYAngle;
     shiftTimeline.play();
+    updateCameraTarget();
 
   } // startShift
   
@@ -472,7 +637,10 @@ public class WorldController {
     KeyValue keyValue = new KeyValue (zoomProp, newLevel, Interpolator.EASE_BOTH);
     KeyFrame frame = new KeyFrame (Duration.millis (CAMERA_ZOOM_DURATION), keyValue);
     zoomTimeline = new Timeline (frame);
+    zoomTimeline.setOnFinished (event -> updateCameraTarget());
+    zoomEndLevel = newLevel;
     zoomTimeline.play();
+    updateCameraTarget();
 
   } // startZoom
 
@@ -574,7 +742,11 @@ public class WorldController {
       int duration = (int) (POSITION_SHIFT_DURATION/rate);
       KeyFrame frame = new KeyFrame (Duration.millis (duration), keyXValue, keyYValue);
       shiftTimeline = new Timeline (frame);
+      shiftTimeline.setOnFinished (event -> updateCameraTarget());
+      shiftEndXAngle = newXAngle;
+      shiftEndYAngle = newYAngle;
       shiftTimeline.play();
+      updateCameraTarget();
     } // if
 
   } // shiftTo
@@ -671,13 +843,12 @@ public class WorldController {
     // Find the visible nodes and turn all others off
     Frustum frustum = view.getFrustum();
     long start = System.nanoTime();
-    Set<Node> visible = model.findVisible (frustum);
+    int visible = model.updateVisibility (frustum);
     long duration = System.nanoTime() - start;
     if (LOGGER.isLoggable (Level.FINEST)) {
-      LOGGER.finest ("Completed frustum search in " + duration*1e-6f + " ms");
-      LOGGER.finest ("View frustum matches " + visible.size() + " objects");
+      LOGGER.finest ("Completed frustum search and visibility update in " + duration*1e-6f + " ms");
+      LOGGER.finest ("View frustum matches " + visible + " objects");
     } // if
-    model.updateVisibility (visible);
 
   } // updateFrustum
 
@@ -757,40 +928,84 @@ public class WorldController {
     view.getScene().widthProperty().addListener (listener);
     view.getScene().heightProperty().addListener (listener);
 
-    // Set up for handling metered view scene graph changes.  We do this
-    // by allowing only some number of scene graph changes for each
-    // camera update.
-    view.cameraPositionProperty().addListener ((obs, oldVal, newVal) -> {
-      cameraUpdatesSinceReset++;
-      performSceneChanges (SCENE_CHANGES_PER_PULSE);
-    });
-
   } // addViewListeners
 
   /////////////////////////////////////////////////////////////////
 
   /**
-   * Performs a number of scene graph changes, up to a specific limit.
+   * Performs scene graph changes up to a time budget.  At least one change
+   * is performed if any are waiting, and no more are started once the
+   * smoothed cost of a change would exceed the budget.
    *
-   * @param limit the maximum number of scene graph changes to make.
+   * @param budget the time budget in nanoseconds.
    */
   private void performSceneChanges (
-    int limit
+    long budget
   ) {
 
+    // Move any new changes into the pending list and sort by priority.  The
+    // sort is stable so that changes with the same location, such as
+    // successive changes to the same facet, stay in the order submitted.
+    Runnable newChange;
+    while ((newChange = sceneGraphChangeQueue.poll()) != null) pendingChanges.add (newChange);
+    if (pendingChanges.isEmpty()) return;
+    Point3D cameraPos = view.cameraPositionProperty().getValue();
+    if (cameraPos != null && cameraPos.magnitude() != 0 && pendingChanges.size() > 1) {
+      Point3D viewDir = cameraPos.normalize();
+      pendingChanges.sort (Comparator.comparingDouble (change -> changePriority (change, viewDir)));
+    } // if
+
+    // Perform the changes and measure their cost as we go.
+    long start = System.nanoTime();
     int count = 0;
-    while (!sceneGraphChangeQueue.isEmpty() && count < limit) {
-      Runnable change = sceneGraphChangeQueue.remove();
-      change.run();
+    while (count < pendingChanges.size()) {
+      long changeStart = System.nanoTime();
+      if (count != 0 && (changeStart - start) + changeCost > budget) break;
+      pendingChanges.get (count).run();
+      double cost = System.nanoTime() - changeStart;
+      changeCost = (changeCost == 0 ? cost : CHANGE_COST_SMOOTHING*cost + (1-CHANGE_COST_SMOOTHING)*changeCost);
       count++;
     } // while
+    pendingChanges.subList (0, count).clear();
 
-    if (count != 0) LOGGER.finer ("Performed " + count + " scene graph changes");
+    if (LOGGER.isLoggable (Level.FINER)) {
+      LOGGER.finer ("Performed " + count + " scene graph changes in " + (System.nanoTime() - start)/1000 +
+        " us, " + pendingChanges.size() + " remaining");
+    } // if
 
   } // performSceneChanges
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Computes the priority of a scene graph change, where lower values are
+   * performed first.
+   *
+   * @param change the change to compute the priority for.
+   * @param viewDir the unit vector from the world center to the camera.
+   *
+   * @return the priority value, the negative cosine of the angle between
+   * the change location and the view direction, or -2 for a change with no
+   * location.
+   */
+  private static double changePriority (
+    Runnable change,
+    Point3D viewDir
+  ) {
+
+    double priority = -2;
+    if (change instanceof SceneGraphChange) {
+      Point3D location = ((SceneGraphChange) change).getLocation();
+      if (location != null && location.magnitude() != 0)
+        priority = -viewDir.dotProduct (location.normalize());
+    } // if
+
+    return (priority);
+
+  } // changePriority
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Sets the line mode flag for objects added to this controller.  In line
    * mode, object outlines only are drawn.  This helps to show the mesh
@@ -811,7 +1026,8 @@ public class WorldController {
   /////////////////////////////////////////////////////////////////
 
   /**
-   * Adds an object to the view and model.
+   * Adds an object to the view and model.  Objects that are disabled are
+   * kept in the model but are not made visible.
    *
    * @param object the object to add.
    */
@@ -820,9 +1036,7 @@ public class WorldController {
   ) {
 
     Frustum frustum = view.getFrustum();
-    boolean visible = frustum.intersects (object.getBoundsInLocal());
-    object.setVisible (visible);
-    model.addObject (object);
+    model.addObject (object, frustum.intersects (object.getBoundsInLocal()));
     if (LOGGER.isLoggable (Level.FINEST)) model.summarize();
 
     object.setMouseTransparent (true);
@@ -836,6 +1050,57 @@ public class WorldController {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Adds a collection of objects to the view and model.  This is more
+   * efficient than adding the objects one at a time when the model is
+   * empty.  Objects that are disabled are kept in the model but are not
+   * made visible.
+   *
+   * @param objects the objects to add.
+   *
+   * @since 0.8
+   */
+  public void addObjects (
+    Collection<? extends Node> objects
+  ) {
+
+    model.addObjects (objects);
+    updateFrustum();
+    if (LOGGER.isLoggable (Level.FINEST)) model.summarize();
+
+    for (Node object : objects) {
+      object.setMouseTransparent (true);
+      object.setViewOrder (USER_VIEW_ORDER);
+      if (lineMode && object instanceof Shape3D) {
+        ((Shape3D) object).setDrawMode (DrawMode.LINE);
+      } // if
+      view.addObject (object);
+    } // for
+
+  } // addObjects
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds an object to the view only.  The object is not part of the model,
+   * so its visibility is managed by the caller.
+   *
+   * @param object the object to add.
+   *
+   * @since 0.8
+   */
+  public void addUnmanagedObject (
+    Node object
+  ) {
+
+    object.setMouseTransparent (true);
+    object.setViewOrder (USER_VIEW_ORDER);
+    view.addObject (object);
+
+  } // addUnmanagedObject
+
+  /////////////////////////////////////////////////////////////////
+
   /** Clears the objects from the view and model. */
   public void clearObjects() {
 
@@ -848,7 +1113,7 @@ public class WorldController {
   /////////////////////////////////////////////////////////////////
 
   /**
-   * Removes an object from the view.
+   * Removes an object from the view and model.
    *
    * @param object the object to remove.
    */
@@ -856,14 +1121,8 @@ public class WorldController {
     Node object
   ) {
 
-    // TODO: We need to implement an object removeal in the
-    // tree.  Since we don't have that yet, the recommended way
-    // to remove objects is to clear the model and add new objects.
-    
-    // model.removeObject (object);
-    // view.removeObject (object);
-
-    throw new UnsupportedOperationException();
+    model.removeObject (object);
+    view.removeObject (object);
 
   } // removeObject
 
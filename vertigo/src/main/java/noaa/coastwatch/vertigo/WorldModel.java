@@ -8,10 +8,13 @@ package noaa.coastwatch.vertigo;
 
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Collection;
 import java.util.Collections;
 
 import javafx.scene.Node;
 import javafx.geometry.Bounds;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.property.ReadOnlyProperty;
 
 /**
  * The <code>WorldModel</code> class is the main model component of the MVC
@@ -31,6 +34,24 @@ public class WorldModel {
   /** The spatial tree for managing object visibility. */
   private SceneOctTree objectTree;
 
+  /** The set of objects in the view frustum at the last visibility update. */
+  private Set<Node> inViewSet;
+
+  /** The set reused for finding objects in the view frustum. */
+  private Set<Node> foundSet;
+
+  /**
+   * The set of objects added since the last visibility update whose
+   * visibility has not been set by the model.
+   */
+  private Set<Node> pendingSet;
+
+  /** The listener that updates object visibility when an object is disabled or enabled. */
+  private ChangeListener<Boolean> disableListener;
+
+  /** The listener that updates the spatial tree when object bounds change. */
+  private ChangeListener<Bounds> boundsListener;
+
   /////////////////////////////////////////////////////////////////
 
   /**
@@ -45,6 +66,25 @@ public class WorldModel {
 
     objectSet = new HashSet<>();
     objectTree = new SceneOctTree (bounds);
+    inViewSet = new HashSet<>();
+    foundSet = new HashSet<>();
+    pendingSet = new HashSet<>();
+
+    // Objects are only visible when they're both enabled and in view, so
+    // when an object is enabled between visibility updates, we use the
+    // last known in view state.  Objects that have no in view state yet are
+    // left visible until the next update.
+    disableListener = (obs, oldVal, newVal) -> {
+      Node node = (Node) ((ReadOnlyProperty<?>) obs).getBean();
+      node.setVisible (!newVal && (inViewSet.contains (node) || pendingSet.contains (node)));
+    };
+
+    // The spatial tree records object bounds when they're inserted, so
+    // objects whose bounds change -- for example a facet that changes mesh
+    // level -- are moved in the tree to match.
+    boundsListener = (obs, oldVal, newVal) -> {
+      objectTree.update ((Node) ((ReadOnlyProperty<?>) obs).getBean());
+    };
 
   } // WorldModel
 
@@ -53,7 +93,13 @@ public class WorldModel {
   /** Clears all objects from the model. */
   public void clear() {
   
+    for (Node node : objectSet) {
+      node.disableProperty().removeListener (disableListener);
+      node.boundsInLocalProperty().removeListener (boundsListener);
+    } // for
     objectSet.clear();
+    inViewSet.clear();
+    pendingSet.clear();
     objectTree = new SceneOctTree (objectTree.getBounds());
   
   } // clear
@@ -70,19 +116,101 @@ public class WorldModel {
   /////////////////////////////////////////////////////////////////
 
   /**
-   * Adds an object to the model.
+   * Adds an object to the model.  The object visibility is not changed
+   * until the next visibility update.
    *
    * @param object the object to add.
    */
   public void addObject (Node object) {
 
-    objectSet.add (object);
+    if (objectSet.add (object)) {
+      object.disableProperty().addListener (disableListener);
+      object.boundsInLocalProperty().addListener (boundsListener);
+    } // if
+    objectTree.insert (object);
+    pendingSet.add (object);
+
+  } // addObject
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Adds an object to the model and sets its visibility.
+   *
+   * @param object the object to add.
+   * @param inView the in view flag, true if the object is in the current
+   * view frustum or false if not.  The object is made visible if it's in
+   * view and not disabled.
+   *
+   * @since 0.8
+   */
+  public void addObject (
+    Node object,
+    boolean inView
+  ) {
+
+    if (objectSet.add (object)) {
+      object.disableProperty().addListener (disableListener);
+      object.boundsInLocalProperty().addListener (boundsListener);
+    } // if
     objectTree.insert (object);
+    pendingSet.remove (object);
+    if (inView) inViewSet.add (object);
+    else inViewSet.remove (object);
+    object.setVisible (inView && !object.isDisable());
 
   } // addObject
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Adds a collection of objects to the model.  This is more efficient
+   * than adding the objects one at a time to an empty model.  As with
+   * {@link #addObject(Node)}, the object visibility is not changed until
+   * the next visibility update.
+   *
+   * @param objects the objects to add.
+   *
+   * @since 0.8
+   */
+  public void addObjects (Collection<? extends Node> objects) {
+
+    for (Node object : objects) {
+      if (objectSet.add (object)) {
+        object.disableProperty().addListener (disableListener);
+        object.boundsInLocalProperty().addListener (boundsListener);
+      } // if
+      pendingSet.add (object);
+    } // for
+    objectTree.insertAll (objects);
+
+  } // addObjects
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Removes an object from the model.
+   *
+   * @param object the object to remove.
+   *
+   * @return true if the object was removed, or false if it was not in the
+   * model.
+   *
+   * @since 0.8
+   */
+  public boolean removeObject (Node object) {
+
+    objectTree.remove (object);
+    inViewSet.remove (object);
+    pendingSet.remove (object);
+    object.disableProperty().removeListener (disableListener);
+    object.boundsInLocalProperty().removeListener (boundsListener);
+    return (objectSet.remove (object));
+
+  } // removeObject
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Finds the objects in the model whose bounds are visible within the
    * specified view frustum.
@@ -106,7 +234,8 @@ public class WorldModel {
 
   /**
    * Updates the visibility to true for a specific set of objects, making all
-   * other objects in the model invisible.
+   * other objects in the model invisible.  Objects that are disabled are
+   * always made invisible.
    *
    * @param visibleObjects the objects that should be made visible.
    */
@@ -114,14 +243,72 @@ public class WorldModel {
     Set<Node> visibleObjects
   ) {
 
-    for (Node node : objectSet) {
-      node.setVisible (visibleObjects.contains (node));
-    } // for
-      
+    applyVisibility (visibleObjects);
+    inViewSet.clear();
+    inViewSet.addAll (visibleObjects);
+
   } // updateVisibility
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Updates the visibility of objects for a view frustum.  Objects in the
+   * frustum are made visible unless disabled, and all other objects are made
+   * invisible.  Only the objects that have entered or left the frustum since
+   * the last update are modified, and no new sets are allocated.
+   *
+   * @param frustum the frustum to use for bounds checking.
+   *
+   * @return the number of objects in the frustum.
+   *
+   * @since 0.8
+   */
+  public int updateVisibility (
+    Frustum frustum
+  ) {
+
+    foundSet.clear();
+    objectTree.findVisible (frustum, foundSet);
+    applyVisibility (foundSet);
+
+    // The found set becomes the new in view set, and the old in view set
+    // is reused for the next search.
+    Set<Node> lastInViewSet = inViewSet;
+    inViewSet = foundSet;
+    foundSet = lastInViewSet;
+
+    return (inViewSet.size());
+
+  } // updateVisibility
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Applies the difference between the objects currently in view and a
+   * new set of objects in view to the object visibility.  Objects added
+   * since the last update have their visibility set either way.
+   *
+   * @param newInViewSet the new set of objects in view.
+   */
+  private void applyVisibility (
+    Set<Node> newInViewSet
+  ) {
+
+    for (Node node : inViewSet) {
+      if (!newInViewSet.contains (node)) node.setVisible (false);
+    } // for
+    for (Node node : newInViewSet) {
+      if (!inViewSet.contains (node)) node.setVisible (!node.isDisable());
+    } // for
+    for (Node node : pendingSet) {
+      if (!newInViewSet.contains (node)) node.setVisible (false);
+    } // for
+    pendingSet.clear();
+
+  } // applyVisibility
+
+  /////////////////////////////////////////////////////////////////
+
   /** Summarizes the statistics of the model to the logging system. */
   public void summarize () {
 
@@ -91,11 +91,13 @@ public class WorldTester {
   public void addPatches (WorldController controller, int count) {
 
     int faces = 0;
+    List<MeshView> viewList = new ArrayList<>();
     for (int i = 0; i < count; i++) {
       MeshView meshView = createTestPatch (controller);
       faces += ((TriangleMesh) meshView.getMesh()).getFaces().size() / 6;
-      controller.addObject (meshView);
+      viewList.add (meshView);
     } // for
+    controller.addObjects (viewList);
 
     LOGGER.fine ("Running with " + count + " test patches");
     LOGGER.fine ("Test patch mesh faces = " + faces);
@@ -130,12 +132,7 @@ public class WorldTester {
     zBall.setMaterial (new PhongMaterial (Color.BLUE));
     zBall.setTranslateZ (radius*1.25);
 
-    controller.addObject (xAxis);
-    controller.addObject (xBall);
-    controller.addObject (yAxis);
-    controller.addObject (yBall);
-    controller.addObject (zAxis);
-    controller.addObject (zBall);
+    controller.addObjects (List.of (xAxis, xBall, yAxis, yBall, zAxis, zBall));
 
   } // addAxes
 
@@ -152,8 +149,8 @@ public class WorldTester {
     int faces = 0;
     for (MeshView meshView : viewList) {
       faces += ((TriangleMesh) meshView.getMesh()).getFaces().size() / 6;
-      controller.addObject (meshView);
     } // for
+    controller.addObjects (viewList);
 
     LOGGER.fine ("Running with " + viewList.size() + " test tiles");
     LOGGER.fine ("Test tile mesh faces = " + faces);
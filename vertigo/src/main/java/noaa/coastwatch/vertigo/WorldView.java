@@ -16,6 +16,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.transform.Affine;
 
 import javafx.stage.Screen;
+import javafx.stage.Window;
 
 import javafx.geometry.Point3D;
 
@@ -193,9 +194,7 @@ public class WorldView {
    */
   public Frustum getFrustum () {
 
-    Affine cameraAffine = new Affine();
-    cameraAffine.prependRotation (-xAngleProp.getValue(), 0, 0, 0, Rotate.X_AXIS);
-    cameraAffine.prependRotation (-yAngleProp.getValue(), 0, 0, 0, Rotate.Y_AXIS);
+    Affine cameraAffine = getCameraAffine (xAngleProp.getValue(), yAngleProp.getValue());
 
     Point3D cameraPos = new Point3D (0, 0, cameraZProp.getValue());
 
@@ -208,6 +207,80 @@ public class WorldView {
 
   /////////////////////////////////////////////////////////////////
 
+  /**
+   * Gets the frustum that the perspective camera would have for a view
+   * state, without changing the view.
+   *
+   * @param xAngle the X angle value.
+   * @param yAngle the Y angle value.
+   * @param level the zoom level.
+   *
+   * @return the frustum in the local reference frame of the view objects.
+   *
+   * @since 0.8
+   */
+  public Frustum getFrustum (
+    double xAngle,
+    double yAngle,
+    double level
+  ) {
+
+    Affine cameraAffine = getCameraAffine (xAngle, yAngle);
+    double z = getCameraZ (level);
+    Point3D cameraPos = new Point3D (0, 0, z);
+
+    Frustum frustum = new Frustum (cameraAffine, cameraPos, camera.getFieldOfView(),
+      camera.getNearClip(), -z, scene.getWidth()/scene.getHeight());
+
+    return (frustum);
+
+  } // getFrustum
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the camera position for a view state, without changing the view.
+   *
+   * @param xAngle the X angle value.
+   * @param yAngle the Y angle value.
+   * @param level the zoom level.
+   *
+   * @return the camera position in the local reference frame of the view
+   * objects.
+   *
+   * @since 0.8
+   */
+  public Point3D getCameraPosition (
+    double xAngle,
+    double yAngle,
+    double level
+  ) {
+
+    return (getCameraAffine (xAngle, yAngle).transform (new Point3D (0, 0, getCameraZ (level))));
+
+  } // getCameraPosition
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the affine transform from the camera frame to the local frame
+   * of the view objects for a set of view angles.
+   */
+  private Affine getCameraAffine (
+    double xAngle,
+    double yAngle
+  ) {
+
+    Affine cameraAffine = new Affine();
+    cameraAffine.prependRotation (-xAngle, 0, 0, 0, Rotate.X_AXIS);
+    cameraAffine.prependRotation (-yAngle, 0, 0, 0, Rotate.Y_AXIS);
+
+    return (cameraAffine);
+
+  } // getCameraAffine
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Gets the scene created by this view.
    *
@@ -231,7 +304,7 @@ public class WorldView {
 
     // Compute the z value and update the far clipping plane, because we
     // really only want to show objects on the near side of the world.
-    double z = A*Math.sqrt (level) + B;
+    double z = getCameraZ (level);
     camera.setFarClip (-z);
 
 //camera.setFarClip (100);
@@ -244,6 +317,11 @@ public class WorldView {
 
   /////////////////////////////////////////////////////////////////
 
+  /** Gets the camera z value for a zoom level. */
+  private double getCameraZ (double level) { return (A*Math.sqrt (level) + B); }
+
+  /////////////////////////////////////////////////////////////////
+
   /**
    * Gets the zoom level for the specified camera distance.
    *
@@ -491,6 +569,16 @@ public class WorldView {
     // We compute an approximate vertical resolution here, assuming the
     // view takes up half the screen.
     props.vres = (int) Math.round (height*scaleY/2.0);
+    setCommonProperties (props);
+
+    return (props);
+
+  } // getProperties
+
+  /////////////////////////////////////////////////////////////////
+
+  /** Sets the view properties that don't depend on the display. */
+  private void setCommonProperties (ViewProperties props) {
 
     // Make it so that the accuracy of the model is such that it's at most
     // 4 pixels from the exact value.
@@ -503,9 +591,32 @@ public class WorldView {
     props.cmin = -WORLD_RADIUS - MAX_CAMERA_Z;
     props.cmax = -WORLD_RADIUS - MIN_CAMERA_Z;
 
+  } // setCommonProperties
+
+  /////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the properties of the view as it is currently displayed.  Unlike
+   * {@link #getProperties}, the vertical resolution is the actual height of
+   * the view in device pixels, taking into account the output scaling of
+   * the window that the view is shown in.
+   *
+   * @return the display view properties.
+   *
+   * @since 0.8
+   */
+  public ViewProperties getDisplayProperties() {
+
+    ViewProperties props = new ViewProperties();
+
+    Window window = (scene.getScene() != null ? scene.getScene().getWindow() : null);
+    double scaleY = (window != null ? window.getOutputScaleY() : Screen.getPrimary().getOutputScaleY());
+    props.vres = (int) Math.max (1, Math.round (scene.getHeight()*scaleY));
+    setCommonProperties (props);
+
     return (props);
 
-  } // getProperties
+  } // getDisplayProperties
 
   /////////////////////////////////////////////////////////////////
 
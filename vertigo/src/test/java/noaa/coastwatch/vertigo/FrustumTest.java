@@ -0,0 +1,173 @@
+package noaa.coastwatch.vertigo;
+
+import javafx.geometry.Point3D;
+import javafx.geometry.Bounds;
+import javafx.geometry.BoundingBox;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.Rotate;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrustumTest {
+
+  private static final double NEAR = 1;
+  private static final double FAR = 100;
+
+  /** Creates a frustum at the origin looking along +Z with a 90 degree field of view. */
+  private static Frustum createFrustum (double aspect) {
+
+    return (new Frustum (new Affine(), new Point3D (0, 0, 0), 90, NEAR, FAR, aspect));
+
+  }
+
+  private static Bounds box (double x, double y, double z, double size) {
+
+    return (new BoundingBox (x - size/2, y - size/2, z - size/2, size, size, size));
+
+  }
+
+  /** Determines which planes of the frustum from createFrustum() a point is outside. */
+  private static boolean[] outsidePlanes (double x, double y, double z, double aspect) {
+
+    double tanH = aspect;
+    return (new boolean[] {
+      z < NEAR,
+      z > FAR,
+      x < -z*tanH,
+      x > z*tanH,
+      y < -z,
+      y > z
+    });
+
+  }
+
+  /**
+   * Classifies a box by testing its corners against each plane.  The box
+   * is outside if all its corners are outside one plane, inside if all
+   * corners are inside every plane, and intersecting otherwise.
+   */
+  private static int classifyCorners (Bounds bounds, double aspect) {
+
+    int[] outsideCounts = new int[6];
+    for (int i = 0; i < 8; i++) {
+      double x = ((i & 1) == 0 ? bounds.getMinX() : bounds.getMaxX());
+      double y = ((i & 2) == 0 ? bounds.getMinY() : bounds.getMaxY());
+      double z = ((i & 4) == 0 ? bounds.getMinZ() : bounds.getMaxZ());
+      boolean[] outside = outsidePlanes (x, y, z, aspect);
+      for (int plane = 0; plane < 6; plane++) if (outside[plane]) outsideCounts[plane]++;
+    } // for
+
+    int result = Frustum.INSIDE;
+    for (int count : outsideCounts) {
+      if (count == 8) return (Frustum.OUTSIDE);
+      if (count != 0) result = Frustum.INTERSECTS;
+    } // for
+    return (result);
+
+  }
+
+  @Test
+  void testClassify () {
+
+    var frustum = createFrustum (1);
+    assertEquals (Frustum.INSIDE, frustum.classify (box (0, 0, 50, 10)));
+    assertEquals (Frustum.OUTSIDE, frustum.classify (box (0, 0, -20, 10)));
+    assertEquals (Frustum.INTERSECTS, frustum.classify (box (0, 0, 100, 10)));
+    assertEquals (Frustum.INTERSECTS, frustum.classify (box (0, 0, 1, 1)));
+    assertEquals (Frustum.OUTSIDE, frustum.classify (box (200, 0, 50, 10)));
+    assertEquals (Frustum.INTERSECTS, frustum.classify (box (50, 0, 50, 10)));
+    assertEquals (Frustum.INTERSECTS, frustum.classify (box (0, -50, 50, 10)));
+    assertEquals (Frustum.INTERSECTS, frustum.classify (box (0, 0, 50, 1000)));
+
+    assertTrue (frustum.intersects (box (50, 0, 50, 10)));
+    assertFalse (frustum.intersects (box (0, 0, 200, 10)));
+
+  }
+
+  @Test
+  void testClassifyRandom () {
+
+    // The bounding sphere shortcut in classify() must give the same result
+    // as testing the box corners against each plane.
+    var random = new Random (1234);
+    for (double aspect : new double[] {1, 2}) {
+      var frustum = createFrustum (aspect);
+      int[] counts = new int[3];
+      for (int i = 0; i < 20000; i++) {
+        var bounds = new BoundingBox (random.nextDouble()*300 - 150, random.nextDouble()*300 - 150,
+          random.nextDouble()*150 - 25, random.nextDouble()*40, random.nextDouble()*40, random.nextDouble()*40);
+        int expected = classifyCorners (bounds, aspect);
+        assertEquals (expected, frustum.classify (bounds), "Classification of " + bounds);
+        assertEquals (expected != Frustum.OUTSIDE, frustum.intersects (bounds));
+        counts[expected]++;
+      } // for
+      for (int count : counts) assertTrue (count > 100);
+    } // for
+
+  }
+
+  @Test
+  void testIntersectsSphere () {
+
+    var frustum = createFrustum (1);
+    assertTrue (frustum.intersects (0, 0, 50, 1));
+    assertTrue (frustum.intersects (0, 0, 105, 10));
+    assertFalse (frustum.intersects (0, 0, 115, 10));
+    assertFalse (frustum.intersects (0, 0, -20, 10));
+    assertFalse (frustum.intersects (100, 0, 50, 10));
+
+  }
+
+  @Test
+  void testIntersectsArray () {
+
+    var frustum = createFrustum (2);
+    var random = new Random (5678);
+    var boxes = new BoundsArray (1);
+    Bounds[] boundsList = new Bounds[500];
+    for (int i = 0; i < boundsList.length; i++) {
+      boundsList[i] = box (random.nextDouble()*300 - 150, random.nextDouble()*300 - 150,
+        random.nextDouble()*150 - 25, random.nextDouble()*20);
+      assertEquals (i, boxes.add (boundsList[i]));
+    } // for
+    assertEquals (boundsList.length, boxes.size());
+
+    boolean[] result = new boolean[boxes.size()];
+    int count = frustum.intersects (boxes, result);
+    int expected = 0;
+    for (int i = 0; i < boundsList.length; i++) {
+      assertEquals (frustum.intersects (boundsList[i]), result[i]);
+      if (result[i]) expected++;
+    } // for
+    assertEquals (expected, count);
+    assertTrue (count > 0 && count < boundsList.length);
+
+    boxes.clear();
+    assertEquals (0, boxes.size());
+    assertEquals (0, frustum.intersects (boxes, result));
+
+  }
+
+  @Test
+  void testCameraTransform () {
+
+    // A camera turned around to look along -Z, and a camera moved back
+    // along its view axis.
+    var orient = new Affine();
+    orient.appendRotation (180, 0, 0, 0, Rotate.Y_AXIS);
+    var turned = new Frustum (orient, new Point3D (0, 0, 0), 90, NEAR, FAR, 1);
+    assertEquals (Frustum.INSIDE, turned.classify (box (0, 0, -50, 10)));
+    assertEquals (Frustum.OUTSIDE, turned.classify (box (0, 0, 50, 10)));
+
+    var moved = new Frustum (new Affine(), new Point3D (0, 0, -50), 90, NEAR, FAR, 1);
+    assertEquals (Frustum.INSIDE, moved.classify (box (0, 0, 0, 10)));
+    assertEquals (Frustum.OUTSIDE, moved.classify (box (0, 0, 80, 10)));
+
+  }
+
+}
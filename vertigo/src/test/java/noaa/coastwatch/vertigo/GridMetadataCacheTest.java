@@ -0,0 +1,110 @@
+package noaa.coastwatch.vertigo;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class GridMetadataCacheTest {
+
+  @TempDir
+  Path dir;
+
+  private GridMetadata createMetadata (String name) {
+
+    var metadata = new GridMetadata();
+    metadata.datasetName = name;
+    metadata.globalAttributes.put ("title", "Test dataset");
+    var info = new GridMetadata.GridInfo();
+    info.times = new long[] {0, 86400000};
+    info.levels = new double[0];
+    info.dims = new int[] {360, 180};
+    info.chunkSizes = new int[] {90, 45};
+    info.attributes.put ("units", "K");
+    info.attributes.put ("valid_range", new short[] {0, 1000});
+    info.packing = new DataPacking();
+    info.packing.storageType = short[].class;
+    info.packing.scale = 0.01;
+    metadata.grids.put ("sst", info);
+    return (metadata);
+
+  }
+
+  private File[] listFiles () {
+
+    return (dir.toFile().listFiles ((d, name) -> name.endsWith (".ser")));
+
+  }
+
+  @Test
+  void testRoundTrip () {
+
+    String name = "https://example.com/data/sst.nc";
+    new GridMetadataCache (dir.toString(), 30, 10).put (name, createMetadata (name));
+
+    var metadata = new GridMetadataCache (dir.toString(), 30, 10).get (name);
+    assertNotNull (metadata);
+    assertEquals (name, metadata.datasetName);
+    assertEquals ("Test dataset", metadata.globalAttributes.get ("title"));
+    var info = metadata.grids.get ("sst");
+    assertArrayEquals (new long[] {0, 86400000}, info.times);
+    assertArrayEquals (new int[] {360, 180}, info.dims);
+    assertArrayEquals (new int[] {90, 45}, info.chunkSizes);
+    assertArrayEquals (new short[] {0, 1000}, (short[]) info.attributes.get ("valid_range"));
+    assertEquals (short[].class, info.packing.storageType);
+    assertEquals (0.01, info.packing.scale);
+
+    assertNull (new GridMetadataCache (dir.toString(), 30, 10).get ("https://example.com/data/other.nc"));
+
+  }
+
+  @Test
+  void testRemove () {
+
+    String name = "/data/sst.nc";
+    var cache = new GridMetadataCache (dir.toString(), 30, 10);
+    cache.put (name, createMetadata (name));
+    cache.remove (name);
+    assertNull (cache.get (name));
+    assertNull (new GridMetadataCache (dir.toString(), 30, 10).get (name));
+
+  }
+
+  @Test
+  void testExpired () {
+
+    String name = "/data/sst.nc";
+    new GridMetadataCache (dir.toString(), 30, 10).put (name, createMetadata (name));
+    var files = listFiles();
+    assertEquals (1, files.length);
+    files[0].setLastModified (System.currentTimeMillis() - 31L*24*3600*1000);
+
+    assertNull (new GridMetadataCache (dir.toString(), 30, 10).get (name));
+    assertEquals (0, listFiles().length);
+
+  }
+
+  @Test
+  void testTrim () {
+
+    var cache = new GridMetadataCache (dir.toString(), 30, 2);
+    for (int i = 0; i < 3; i++) {
+      String name = "/data/sst" + i + ".nc";
+      cache.put (name, createMetadata (name));
+      for (var file : listFiles()) file.setLastModified (file.lastModified() - 10000);
+    } // for
+    assertEquals (2, listFiles().length);
+
+    var reader = new GridMetadataCache (dir.toString(), 30, 2);
+    assertNull (reader.get ("/data/sst0.nc"));
+    assertNotNull (reader.get ("/data/sst1.nc"));
+    assertNotNull (reader.get ("/data/sst2.nc"));
+
+  }
+
+}
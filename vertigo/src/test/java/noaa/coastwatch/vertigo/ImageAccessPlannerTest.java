@@ -0,0 +1,222 @@
+package noaa.coastwatch.vertigo;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImageAccessPlannerTest {
+
+  /** The value of the test image at a pixel. */
+  private static int value (int x, int y) { return (y*10000 + x); }
+
+  /** The data held by a test access result, possibly a subset of a block. */
+  private static class Data {
+    int[] values;
+    int width;
+    int offsetX;
+    int offsetY;
+  }
+
+  /** A test image source that records the accesses it performs. */
+  private static class TestSource implements ImageDataSource<int[]> {
+
+    List<ImageAccess> accessList = new ArrayList<>();
+    boolean fail;
+    boolean noSubset;
+
+    @Override
+    public ImageAccessResult access (ImageAccess access, BooleanSupplier cancelled) throws IOException {
+      synchronized (this) { accessList.add (access); }
+      if (fail) throw new IOException ("Test failure");
+      var data = new Data();
+      data.width = access.getWidth();
+      int height = access.getHeight();
+      data.values = new int[data.width*height];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < data.width; x++)
+          data.values[y*data.width + x] = value (access.tile.minX + x*access.strideX, access.tile.minY + y*access.strideY);
+      } // for
+      return (new ImageAccessResult (access, data));
+    }
+
+    @Override
+    public void get (ImageAccessResult result, int x, int y, int[] data) {
+      var context = (Data) result.context;
+      data[0] = context.values[(y + context.offsetY)*context.width + x + context.offsetX];
+    }
+
+    @Override
+    public void getMany (ImageAccessResult result, ImageCoordinateIterator iter, int[] data) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ImageAccessResult subset (ImageAccessResult result, ImageAccess access) {
+      if (noSubset) return (null);
+      var context = (Data) result.context;
+      var data = new Data();
+      data.values = context.values;
+      data.width = context.width;
+      data.offsetX = context.offsetX + (access.tile.minX - result.access.tile.minX)/access.strideX;
+      data.offsetY = context.offsetY + (access.tile.minY - result.access.tile.minY)/access.strideY;
+      return (new ImageAccessResult (access, data));
+    }
+
+  }
+
+  private ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void shutdown () { executor.shutdownNow(); }
+
+  /** Performs accesses concurrently, so that they're planned together. */
+  private List<Future<ImageAccessResult>> accessAll (
+    ImageAccessPlanner<int[]> planner,
+    List<ImageAccess> accessList,
+    List<BooleanSupplier> cancelledList
+  ) throws InterruptedException {
+
+    var ready = new CountDownLatch (accessList.size());
+    var start = new CountDownLatch (1);
+    List<Future<ImageAccessResult>> futures = new ArrayList<>();
+    for (int i = 0; i < accessList.size(); i++) {
+      var access = accessList.get (i);
+      var cancelled = (cancelledList == null ? null : cancelledList.get (i));
+      futures.add (executor.submit (() -> {
+        ready.countDown();
+        start.await();
+        return (planner.access (access, cancelled));
+      }));
+    } // for
+    ready.await();
+    start.countDown();
+    return (futures);
+
+  }
+
+  private static void checkResult (TestSource source, ImageAccessResult result, ImageAccess access) {
+
+    int[] data = new int[1];
+    for (int y = 0; y < access.getHeight(); y++) {
+      for (int x = 0; x < access.getWidth(); x++) {
+        source.get (result, x, y, data);
+        assertEquals (value (access.tile.minX + x*access.strideX, access.tile.minY + y*access.strideY), data[0]);
+      } // for
+    } // for
+
+  }
+
+  @Test
+  void testMerge () throws Exception {
+
+    // Four tiles in two rows are merged into one block access, and each
+    // result holds the data for its own tile.
+    var source = new TestSource();
+    var planner = new ImageAccessPlanner<> (source);
+    List<ImageAccess> accessList = new ArrayList<>();
+    for (int i = 0; i < 4; i++)
+      accessList.add (new ImageAccess (new ImageTile ((i%2)*64, (i/2)*64, 64, 64), 2, 2));
+    var futures = accessAll (planner, accessList, null);
+    for (int i = 0; i < 4; i++) checkResult (source, futures.get (i).get(), accessList.get (i));
+
+    assertEquals (1, source.accessList.size());
+    var block = source.accessList.get (0);
+    assertEquals (0, block.tile.minX);
+    assertEquals (0, block.tile.minY);
+    assertEquals (128, block.tile.width);
+    assertEquals (128, block.tile.height);
+
+  }
+
+  @Test
+  void testNoMerge () throws Exception {
+
+    // Tiles with different strides, tiles far apart, and tiles that don't
+    // line up with the block samples are all accessed separately.
+    var source = new TestSource();
+    var planner = new ImageAccessPlanner<> (source);
+    var accessList = List.of (
+      new ImageAccess (new ImageTile (0, 0, 64, 64), 1, 1),
+      new ImageAccess (new ImageTile (64, 0, 64, 64), 2, 2),
+      new ImageAccess (new ImageTile (1000, 1000, 64, 64), 1, 1),
+      new ImageAccess (new ImageTile (67, 0, 64, 64), 2, 2)
+    );
+    var futures = accessAll (planner, accessList, null);
+    for (int i = 0; i < accessList.size(); i++) checkResult (source, futures.get (i).get(), accessList.get (i));
+    assertEquals (4, source.accessList.size());
+
+  }
+
+  @Test
+  void testNoSubset () throws Exception {
+
+    // A source that doesn't support subsets is accessed again for each
+    // request in the block.
+    var source = new TestSource();
+    source.noSubset = true;
+    var planner = new ImageAccessPlanner<> (source);
+    var accessList = List.of (
+      new ImageAccess (new ImageTile (0, 0, 64, 64), 1, 1),
+      new ImageAccess (new ImageTile (64, 0, 64, 64), 1, 1)
+    );
+    var futures = accessAll (planner, accessList, null);
+    for (int i = 0; i < accessList.size(); i++) checkResult (source, futures.get (i).get(), accessList.get (i));
+    assertEquals (3, source.accessList.size());
+
+  }
+
+  @Test
+  void testCancelled () throws Exception {
+
+    // A request cancelled while waiting to be planned is left out of the
+    // block and returns no result.
+    var source = new TestSource();
+    var planner = new ImageAccessPlanner<> (source);
+    var accessList = List.of (
+      new ImageAccess (new ImageTile (0, 0, 64, 64), 1, 1),
+      new ImageAccess (new ImageTile (64, 0, 64, 64), 1, 1)
+    );
+    List<BooleanSupplier> cancelledList = List.of (() -> false, () -> true);
+    var futures = accessAll (planner, accessList, cancelledList);
+    checkResult (source, futures.get (0).get(), accessList.get (0));
+    assertNull (futures.get (1).get());
+
+    assertEquals (1, source.accessList.size());
+    assertEquals (64, source.accessList.get (0).tile.width);
+
+  }
+
+  @Test
+  void testError () throws Exception {
+
+    // A failed block access is reported to every request in the block.
+    var source = new TestSource();
+    source.fail = true;
+    var planner = new ImageAccessPlanner<> (source);
+    var accessList = List.of (
+      new ImageAccess (new ImageTile (0, 0, 64, 64), 1, 1),
+      new ImageAccess (new ImageTile (64, 0, 64, 64), 1, 1)
+    );
+    var futures = accessAll (planner, accessList, null);
+    for (var future : futures) {
+      var e = assertThrows (ExecutionException.class, () -> future.get());
+      assertTrue (e.getCause() instanceof IOException);
+    } // for
+    assertEquals (1, source.accessList.size());
+
+  }
+
+}
@@ -0,0 +1,181 @@
+package noaa.coastwatch.vertigo;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.dt.grid.GridDataset;
+import ucar.nc2.util.CancelTask;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NetCDFDatasetTest {
+
+  /** A dataset whose handles don't open any file, and that counts opens and closes. */
+  private static class TestDataset extends NetCDFDataset {
+
+    AtomicInteger opened = new AtomicInteger();
+    AtomicInteger closed = new AtomicInteger();
+
+    TestDataset () { super ("/test.nc", null); }
+
+    @Override
+    NetcdfDataset openDataset (CancelTask cancelTask) { opened.incrementAndGet(); return (null); }
+
+    @Override
+    GridDataset openGridDataset (NetcdfDataset ncDataset) { return (null); }
+
+    @Override
+    void closeDataset (NetcdfDataset ncDataset) { closed.incrementAndGet(); }
+
+  }
+
+  /** Waits for a condition to become true. */
+  private static void waitFor (BooleanSupplier condition) throws InterruptedException {
+
+    long end = System.currentTimeMillis() + 10000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < end) Thread.sleep (10);
+    assertTrue (condition.getAsBoolean());
+
+  }
+
+  @Test
+  void testReuse () throws Exception {
+
+    // A released handle is reused by the next operation rather than
+    // opening a new one.
+    var dataset = new TestDataset();
+    var a = dataset.acquireHandle (null);
+    var b = dataset.acquireHandle (null);
+    assertEquals (2, dataset.getOpenHandles());
+    assertEquals (2, dataset.getBusyHandles());
+    b.close();
+    assertEquals (1, dataset.getBusyHandles());
+    assertSame (b, dataset.acquireHandle (null));
+    assertEquals (2, dataset.opened.get());
+    a.close();
+    b.close();
+    assertEquals (0, dataset.getBusyHandles());
+    dataset.close();
+
+  }
+
+  @Test
+  void testPermits () throws Exception {
+
+    // An operation waits for a handle while all handles are busy, and gets
+    // the handle released by another operation.
+    var dataset = new TestDataset();
+    dataset.setMaxHandles (2);
+    var a = dataset.acquireHandle (null);
+    var b = dataset.acquireHandle (null);
+    var waiting = CompletableFuture.supplyAsync (() -> {
+      try { return (dataset.acquireHandle (null)); }
+      catch (IOException e) { throw new RuntimeException (e); }
+    });
+    Thread.sleep (200);
+    assertFalse (waiting.isDone());
+    a.close();
+    assertSame (a, waiting.get (10, TimeUnit.SECONDS));
+    assertEquals (2, dataset.getOpenHandles());
+    assertTrue (dataset.getHandleWaitTime() > 0);
+
+    // An operation cancelled while waiting gets no handle, and doesn't
+    // use up a permit.
+    var cancelled = new AtomicBoolean();
+    var cancelledWait = CompletableFuture.supplyAsync (() -> {
+      try { return (dataset.acquireHandle (cancelled::get)); }
+      catch (IOException e) { throw new RuntimeException (e); }
+    });
+    Thread.sleep (200);
+    cancelled.set (true);
+    assertNull (cancelledWait.get (10, TimeUnit.SECONDS));
+    b.close();
+    a.close();
+    assertNotNull (dataset.acquireHandle (null));
+    assertNotNull (dataset.acquireHandle (null));
+    assertEquals (2, dataset.opened.get());
+    dataset.close();
+
+  }
+
+  @Test
+  void testReduceMaxHandles () throws Exception {
+
+    // Reducing the maximum while handles are busy takes effect as the
+    // busy handles are released.
+    var dataset = new TestDataset();
+    dataset.setMaxHandles (3);
+    var a = dataset.acquireHandle (null);
+    var b = dataset.acquireHandle (null);
+    dataset.setMaxHandles (1);
+    a.close();
+    var cancelled = new AtomicBoolean();
+    var waiting = CompletableFuture.supplyAsync (() -> {
+      try { return (dataset.acquireHandle (cancelled::get)); }
+      catch (IOException e) { throw new RuntimeException (e); }
+    });
+    Thread.sleep (200);
+    assertFalse (waiting.isDone());
+    b.close();
+    assertNotNull (waiting.get (10, TimeUnit.SECONDS));
+    dataset.close();
+
+  }
+
+  @Test
+  void testEviction () throws Exception {
+
+    // Idle handles are closed after the idle time, oldest first.
+    var dataset = new TestDataset();
+    dataset.setHandleIdleTime (100);
+    var a = dataset.acquireHandle (null);
+    var b = dataset.acquireHandle (null);
+    a.close();
+    b.close();
+    assertEquals (2, dataset.getOpenHandles());
+    waitFor (() -> dataset.getOpenHandles() == 0);
+    waitFor (() -> dataset.closed.get() == 2);
+    assertTrue (dataset.getHandleStats().contains ("evicted 2"));
+
+    // A handle in use is never evicted.
+    var c = dataset.acquireHandle (null);
+    Thread.sleep (300);
+    assertEquals (1, dataset.getOpenHandles());
+    c.close();
+    waitFor (() -> dataset.getOpenHandles() == 0);
+    dataset.close();
+
+  }
+
+  @Test
+  void testClose () throws Exception {
+
+    // Closing the dataset closes idle handles right away and busy handles
+    // when they're released, and no more handles can be acquired.
+    var dataset = new TestDataset();
+    var a = dataset.acquireHandle (null);
+    var b = dataset.acquireHandle (null);
+    b.close();
+    dataset.close();
+    assertEquals (1, dataset.closed.get());
+    assertEquals (1, dataset.getOpenHandles());
+    a.close();
+    assertEquals (2, dataset.closed.get());
+    assertEquals (0, dataset.getOpenHandles());
+    assertThrows (IOException.class, () -> dataset.acquireHandle (null));
+
+  }
+
+}
@@ -0,0 +1,139 @@
+package noaa.coastwatch.vertigo;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PackedToColorConverterTest {
+
+  /** Creates a color converter whose colors are the color map indices. */
+  private static DoubleToColorConverter createColorConverter () {
+
+    int[] map = new int[256];
+    for (int i = 0; i < map.length; i++) map[i] = i;
+    return (DoubleToColorConverter.linearInstance (-50, 50, map));
+
+  }
+
+  private static DataPacking createPacking (Class<?> storageType, boolean isUnsigned) {
+
+    var packing = new DataPacking();
+    packing.storageType = storageType;
+    packing.isUnsigned = isUnsigned;
+    packing.scale = 0.01;
+    packing.offset = 2;
+    packing.missingValues = new double[] {(isUnsigned ? 200 : -100)};
+    packing.validMin = (isUnsigned ? 10 : -3000);
+    packing.validMax = (isUnsigned ? 60000 : 3000);
+    return (packing);
+
+  }
+
+  /** Computes the expected color of a packed value without using the lookup table. */
+  private static int expectedColor (DataPacking packing, DoubleToColorConverter colors, double packed) {
+
+    return (colors.getColor (packing.unpack (packed)));
+
+  }
+
+  @Test
+  void testByte () {
+
+    // Every byte value converts to the same color as unpacking it
+    // directly, for both signed and unsigned data.
+    var colors = createColorConverter();
+    for (boolean isUnsigned : new boolean[] {false, true}) {
+      var packing = createPacking (byte[].class, isUnsigned);
+      var converter = new PackedToColorConverter (packing, colors);
+      var src = (byte[]) converter.allocateSrc (256);
+      for (int i = 0; i < 256; i++) src[i] = (byte) i;
+      var dest = converter.allocateDest (256);
+      converter.convert (src, 0, dest, 0, 256);
+      for (int i = 0; i < 256; i++) {
+        double packed = (isUnsigned ? src[i] & 0xff : src[i]);
+        assertEquals (expectedColor (packing, colors, packed), dest[i], "Byte value " + packed);
+        assertEquals (packing.isMissing (packed), converter.isMissing (src, i));
+      } // for
+    } // for
+
+  }
+
+  @Test
+  void testShort () {
+
+    var colors = createColorConverter();
+    for (boolean isUnsigned : new boolean[] {false, true}) {
+      var packing = createPacking (short[].class, isUnsigned);
+      var converter = new PackedToColorConverter (packing, colors);
+      var src = (short[]) converter.allocateSrc (65536);
+      for (int i = 0; i < 65536; i++) src[i] = (short) i;
+      var dest = converter.allocateDest (65536);
+      converter.convert (src, 0, dest, 0, 65536);
+      for (int i = 0; i < 65536; i++) {
+        double packed = (isUnsigned ? src[i] & 0xffff : src[i]);
+        assertEquals (expectedColor (packing, colors, packed), dest[i], "Short value " + packed);
+        assertEquals (packing.isMissing (packed), converter.isMissing (src, i));
+      } // for
+    } // for
+
+    var packing = createPacking (short[].class, false);
+    var converter = new PackedToColorConverter (packing, colors);
+    assertTrue (converter.isMissing (new short[] {-100}, 0));
+    assertTrue (converter.isMissing (new short[] {3001}, 0));
+    assertFalse (converter.isMissing (new short[] {-3000}, 0));
+
+  }
+
+  @Test
+  void testFloat () {
+
+    var colors = createColorConverter();
+    var packing = createPacking (float[].class, false);
+    var converter = new PackedToColorConverter (packing, colors);
+    var src = (float[]) converter.allocateSrc (5);
+    src[0] = -100;
+    src[1] = Float.NaN;
+    src[2] = 0;
+    src[3] = 2500.5f;
+    src[4] = 4000;
+    var dest = converter.allocateDest (7);
+    converter.convert (src, 1, dest, 2, 4);
+    assertEquals (0, dest[0]);
+    assertEquals (0, dest[1]);
+    for (int i = 1; i < 5; i++) {
+      assertEquals (expectedColor (packing, colors, src[i]), dest[i+1]);
+      assertEquals (packing.isMissing (src[i]), converter.isMissing (src, i));
+    } // for
+    assertTrue (converter.isMissing (src, 0));
+    assertTrue (converter.isMissing (src, 1));
+    assertFalse (converter.isMissing (src, 2));
+
+  }
+
+  @Test
+  void testOffsets () {
+
+    // The source and destination offsets are respected for table lookups.
+    var colors = createColorConverter();
+    var packing = createPacking (byte[].class, true);
+    var converter = new PackedToColorConverter (packing, colors);
+    byte[] src = new byte[] {0, 50, 100, (byte) 200, (byte) 250};
+    int[] dest = new int[] {-1, -1, -1, -1, -1};
+    converter.convert (src, 1, dest, 0, 3);
+    for (int i = 0; i < 3; i++) assertEquals (expectedColor (packing, colors, src[i+1] & 0xff), dest[i]);
+    assertEquals (-1, dest[3]);
+    assertEquals (0, dest[2]);
+
+  }
+
+  @Test
+  void testUnsupported () {
+
+    var converter = new PackedToColorConverter (createPacking (short[].class, false), createColorConverter());
+    assertThrows (IllegalArgumentException.class, () -> converter.convert (new int[1], 0, new int[1], 0, 1));
+
+  }
+
+}
@@ -0,0 +1,101 @@
+package noaa.coastwatch.vertigo;
+
+import java.util.Set;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class QuadTreeFacetDataSourceTest {
+
+  private static ImageTiling[] createTilings (int width, int height, int rootSize, int depths) {
+
+    ImageTiling[] tilings = new ImageTiling[depths];
+    for (int depth = 0; depth < depths; depth++) {
+      int size = rootSize >> depth;
+      tilings[depth] = new ImageTiling (width, height, size, size);
+    } // for
+    return (tilings);
+
+  }
+
+  private static boolean contains (ImageTile outer, ImageTile inner) {
+
+    return (inner.minX >= outer.minX && inner.minY >= outer.minY &&
+      inner.minX + inner.width <= outer.minX + outer.width &&
+      inner.minY + inner.height <= outer.minY + outer.height);
+
+  }
+
+  /** Checks the index against the tile geometry of the tilings. */
+  private static void checkIndex (ImageTiling[] tilings) {
+
+    var treeIndex = new QuadTreeFacetDataSource.TreeIndex (tilings);
+    int total = 0;
+    for (var tiling : tilings) total += tiling.getTiles();
+    assertEquals (total, treeIndex.offsets[tilings.length]);
+
+    Set<Integer> children = new HashSet<>();
+    for (int depth = 0; depth < tilings.length; depth++) {
+      for (int tileIndex = 0; tileIndex < tilings[depth].getTiles(); tileIndex++) {
+        int index = treeIndex.offsets[depth] + tileIndex;
+        assertEquals (depth, treeIndex.getDepth (index));
+        var tile = tilings[depth].getTile (tileIndex);
+
+        // The root contains the facet.
+        int root = treeIndex.getRoot (index);
+        assertEquals (0, treeIndex.getDepth (root));
+        assertTrue (contains (tilings[0].getTile (root), tile), "Root of facet " + index);
+
+        // The children are inside the facet and cover it exactly.
+        int[] childIndices = treeIndex.getChildren (index);
+        if (depth == tilings.length-1) { assertNull (childIndices); continue; }
+        assertTrue (childIndices.length >= 1 && childIndices.length <= 4);
+        long area = 0;
+        for (int child : childIndices) {
+          assertEquals (depth+1, treeIndex.getDepth (child));
+          assertEquals (root, treeIndex.getRoot (child));
+          var childTile = tilings[depth+1].getTile (child - treeIndex.offsets[depth+1]);
+          assertTrue (contains (tile, childTile), "Child " + child + " of facet " + index);
+          area += (long) childTile.width * childTile.height;
+          assertTrue (children.add (child), "Facet " + child + " has more than one parent");
+        } // for
+        assertEquals ((long) tile.width * tile.height, area);
+      } // for
+    } // for
+
+    // Every facet below the roots has a parent.
+    assertEquals (total - tilings[0].getTiles(), children.size());
+
+  }
+
+  @Test
+  void testIndex () {
+
+    checkIndex (createTilings (1024, 1024, 512, 3));
+    checkIndex (createTilings (1000, 700, 400, 3));
+    checkIndex (createTilings (1234, 567, 320, 4));
+    checkIndex (createTilings (300, 5000, 600, 2));
+    checkIndex (createTilings (100, 100, 100, 1));
+
+  }
+
+  @Test
+  void testLayout () {
+
+    // A 3x2 root tiling whose right column and bottom row are partial.
+    var treeIndex = new QuadTreeFacetDataSource.TreeIndex (createTilings (250, 150, 100, 2));
+    assertArrayEquals (new int[] {0, 6, 6+15}, treeIndex.offsets);
+    assertArrayEquals (new int[] {6, 7, 9, 10}, treeIndex.getChildren (0));
+    assertArrayEquals (new int[] {8, 11}, treeIndex.getChildren (1));
+    assertArrayEquals (new int[] {18, 19}, treeIndex.getChildren (4));
+    assertArrayEquals (new int[] {20}, treeIndex.getChildren (5));
+    assertEquals (5, treeIndex.getRoot (20));
+    assertEquals (2, treeIndex.getRoot (9+3));
+
+  }
+
+}
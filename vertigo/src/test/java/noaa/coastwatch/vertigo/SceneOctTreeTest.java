@@ -0,0 +1,187 @@
+package noaa.coastwatch.vertigo;
+
+import javafx.scene.Node;
+import javafx.scene.Group;
+import javafx.scene.shape.Box;
+import javafx.scene.transform.Affine;
+import javafx.geometry.Point3D;
+import javafx.geometry.BoundingBox;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SceneOctTreeTest {
+
+  private static SceneOctTree createTree () {
+
+    return (new SceneOctTree (new BoundingBox (-100, -100, -100, 200, 200, 200)));
+
+  }
+
+  private static Node createObject (double x, double y, double z, double size) {
+
+    var box = new Box (size, size, size);
+    box.setTranslateX (x);
+    box.setTranslateY (y);
+    box.setTranslateZ (z);
+    return (new Group (box));
+
+  }
+
+  private static List<Node> createObjects (int count, long seed) {
+
+    var random = new Random (seed);
+    List<Node> objects = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      objects.add (createObject (random.nextDouble()*180 - 90, random.nextDouble()*180 - 90,
+        random.nextDouble()*180 - 90, 1 + random.nextDouble()*(i%10 == 0 ? 40 : 5)));
+    } // for
+    return (objects);
+
+  }
+
+  /** Creates a frustum looking along +Z from a camera at the specified Z. */
+  private static Frustum createFrustum (double cameraZ) {
+
+    return (new Frustum (new Affine(), new Point3D (0, 0, cameraZ), 90, 1, 1000, 1));
+
+  }
+
+  private static Set<Node> findVisible (SceneOctTree tree, Frustum frustum) {
+
+    Set<Node> found = new HashSet<>();
+    tree.findVisible (frustum, found);
+    return (found);
+
+  }
+
+  private static Set<Node> bruteForce (List<Node> objects, Frustum frustum) {
+
+    Set<Node> found = new HashSet<>();
+    for (var object : objects) {
+      if (frustum.intersects (object.getBoundsInLocal())) found.add (object);
+    } // for
+    return (found);
+
+  }
+
+  @Test
+  void testInsert () {
+
+    var objects = createObjects (200, 1234);
+    var tree = createTree();
+    for (var object : objects) tree.insert (object);
+    assertFalse (tree.isLeaf());
+
+    var all = createFrustum (-400);
+    assertEquals (new HashSet<> (objects), findVisible (tree, all));
+    var partial = createFrustum (0);
+    Set<Node> expected = bruteForce (objects, partial);
+    assertTrue (expected.size() > 0 && expected.size() < objects.size());
+    assertEquals (expected, findVisible (tree, partial));
+
+  }
+
+  @Test
+  void testInsertAll () {
+
+    var objects = createObjects (200, 5678);
+    var bulk = createTree();
+    bulk.insertAll (objects);
+    var single = createTree();
+    for (var object : objects) single.insert (object);
+
+    var frustum = createFrustum (0);
+    assertEquals (findVisible (single, frustum), findVisible (bulk, frustum));
+    assertEquals (new HashSet<> (objects), findVisible (bulk, createFrustum (-400)));
+
+    // A second bulk insert into a tree that's no longer empty inserts the
+    // objects one at a time.
+    var more = createObjects (50, 9012);
+    bulk.insertAll (more);
+    var all = new ArrayList<> (objects);
+    all.addAll (more);
+    assertEquals (bruteForce (all, frustum), findVisible (bulk, frustum));
+
+  }
+
+  @Test
+  void testRemove () {
+
+    var objects = createObjects (200, 3456);
+    var tree = createTree();
+    for (var object : objects) tree.insert (object);
+
+    List<Node> remaining = new ArrayList<>();
+    for (int i = 0; i < objects.size(); i++) {
+      if (i%2 == 0) assertTrue (tree.remove (objects.get (i)));
+      else remaining.add (objects.get (i));
+    } // for
+    assertFalse (tree.remove (objects.get (0)));
+    assertFalse (tree.remove (createObject (0, 0, 0, 1)));
+
+    assertEquals (new HashSet<> (remaining), findVisible (tree, createFrustum (-400)));
+    var frustum = createFrustum (0);
+    assertEquals (bruteForce (remaining, frustum), findVisible (tree, frustum));
+
+  }
+
+  @Test
+  void testMerge () {
+
+    // Once few enough objects are left, the tree merges back into a
+    // single leaf, keeping objects that straddle the children only once.
+    var objects = new ArrayList<Node>();
+    for (int i = 0; i < 20; i++) objects.add (createObject (i*9 - 90, i*9 - 90, i*9 - 90, 2));
+    var straddle = createObject (0, 0, 0, 50);
+    objects.add (straddle);
+    var tree = createTree();
+    for (var object : objects) tree.insert (object);
+    assertFalse (tree.isLeaf());
+
+    // The children aren't merged until they hold fewer objects than it
+    // took to split them.
+    for (int i = 0; i < 13; i++) tree.remove (objects.get (i));
+    assertFalse (tree.isLeaf());
+    for (int i = 13; i < 17; i++) tree.remove (objects.get (i));
+    assertTrue (tree.isLeaf());
+    var remaining = new HashSet<> (objects.subList (17, objects.size()));
+    assertEquals (remaining, findVisible (tree, createFrustum (-400)));
+
+    assertTrue (tree.remove (straddle));
+    remaining.remove (straddle);
+    assertEquals (remaining, findVisible (tree, createFrustum (-400)));
+
+  }
+
+  @Test
+  void testUpdate () {
+
+    // An object whose bounds change is found at its new location once
+    // it's updated.
+    var objects = createObjects (200, 7890);
+    var moving = createObject (0, 0, 50, 2);
+    objects.add (moving);
+    var tree = createTree();
+    tree.insertAll (objects);
+    var frustum = createFrustum (0);
+    assertTrue (findVisible (tree, frustum).contains (moving));
+
+    ((Group) moving).getChildren().get (0).setTranslateZ (-50);
+    assertTrue (tree.update (moving));
+    assertFalse (tree.update (moving));
+    assertFalse (findVisible (tree, frustum).contains (moving));
+    assertEquals (bruteForce (objects, frustum), findVisible (tree, frustum));
+    assertEquals (new HashSet<> (objects), findVisible (tree, createFrustum (-400)));
+
+  }
+
+}
@@ -0,0 +1,94 @@
+package noaa.coastwatch.vertigo;
+
+import javafx.scene.Node;
+import javafx.scene.Group;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SurfaceHandoverTest {
+
+  private Set<Node> world = new HashSet<>();
+
+  private Map<Integer, Node> createNodes (int count) {
+
+    Map<Integer, Node> nodes = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      var node = new Group();
+      nodes.put (i, node);
+      world.add (node);
+    } // for
+    return (nodes);
+
+  }
+
+  private void show (SurfaceHandover handover, int index, Node node) {
+
+    if (!handover.keep (node)) assertTrue (world.add (node), "Node added twice");
+    handover.replace (index);
+
+  }
+
+  @Test
+  void testReplace () {
+
+    var a = createNodes (2);
+    var batch = new Group();
+    world.add (batch);
+    var handover = new SurfaceHandover (a, List.of (batch), null, world::remove);
+
+    var b0 = new Group();
+    show (handover, 0, b0);
+    assertFalse (world.contains (a.get (0)));
+    assertTrue (world.contains (a.get (1)));
+
+    handover.run();
+    assertEquals (Set.of (b0), world);
+
+  }
+
+  @Test
+  void testReplaceBackUninitialized () {
+
+    // Surface A is replaced by B, which is replaced by A again before B
+    // has any facets.  All of A's nodes are still in the world, and must
+    // stay there when A is activated again and then initialized.
+    var a = createNodes (3);
+    var handoverB = new SurfaceHandover (a, List.of(), null, world::remove);
+    var handoverA = new SurfaceHandover (Map.of(), List.of(), handoverB, world::remove);
+    for (var entry : a.entrySet()) show (handoverA, entry.getKey(), entry.getValue());
+    handoverA.run();
+    assertEquals (new HashSet<> (a.values()), world);
+
+  }
+
+  @Test
+  void testReplaceBackPartial () {
+
+    // Surface B shows one facet before A is activated again, so A adds its
+    // node for that facet back and B's node is removed.
+    var a = createNodes (2);
+    var handoverB = new SurfaceHandover (a, List.of(), null, world::remove);
+    var b0 = new Group();
+    show (handoverB, 0, b0);
+    assertFalse (world.contains (a.get (0)));
+
+    var handoverA = new SurfaceHandover (Map.of (0, b0), List.of(), handoverB, world::remove);
+    show (handoverA, 0, a.get (0));
+    show (handoverA, 1, a.get (1));
+    assertFalse (world.contains (b0));
+
+    handoverA.run();
+    assertEquals (new HashSet<> (a.values()), world);
+
+  }
+
+}
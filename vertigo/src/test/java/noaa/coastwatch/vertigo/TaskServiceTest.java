@@ -0,0 +1,212 @@
+package noaa.coastwatch.vertigo;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import static noaa.coastwatch.vertigo.TaskService.HIGH_PRIORITY;
+import static noaa.coastwatch.vertigo.TaskService.NORMAL_PRIORITY;
+import static noaa.coastwatch.vertigo.TaskService.LOW_PRIORITY;
+
+class TaskServiceTest {
+
+  private static final TaskService.Pool POOL = TaskService.Pool.BATCH;
+
+  private TaskService service;
+
+  @BeforeEach
+  void setup () {
+
+    // I/O tasks run on a bounded pool of platform threads, so that tasks
+    // can be kept waiting.
+    System.setProperty ("vertigo.io.platform", "true");
+    System.setProperty ("vertigo.io.hostPermits", "2");
+    System.setProperty ("vertigo.io.localPermits", "3");
+    service = new TaskService();
+
+  }
+
+  @AfterEach
+  void cleanup () {
+
+    service.shutdown();
+    System.clearProperty ("vertigo.io.platform");
+    System.clearProperty ("vertigo.io.hostPermits");
+    System.clearProperty ("vertigo.io.localPermits");
+
+  }
+
+  /** Occupies every thread in the test pool until the returned latch is released. */
+  private CountDownLatch blockPool () throws InterruptedException {
+
+    var release = new CountDownLatch (1);
+    var started = new CountDownLatch (POOL.getThreads());
+    for (int i = 0; i < POOL.getThreads(); i++) {
+      service.submit (POOL, HIGH_PRIORITY, () -> {
+        started.countDown();
+        try { release.await(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+      }, null);
+    } // for
+    assertTrue (started.await (10, TimeUnit.SECONDS));
+    return (release);
+
+  }
+
+  @Test
+  void testPriority () throws Exception {
+
+    // Waiting tasks run in order of priority, and then in order of
+    // submission.  Tasks run through the executor have the executor's
+    // priority.
+    var release = blockPool();
+    List<String> order = Collections.synchronizedList (new ArrayList<>());
+    List<Future<?>> futures = new ArrayList<>();
+    futures.add (service.submit (POOL, LOW_PRIORITY, () -> order.add ("low1"), null));
+    futures.add (service.submit (POOL, () -> order.add ("normal1")));
+    futures.add (service.submit (POOL, HIGH_PRIORITY, () -> order.add ("high1"), null));
+    futures.add (service.submit (POOL, LOW_PRIORITY, () -> order.add ("low2"), null));
+    service.getExecutor (POOL, HIGH_PRIORITY).execute (() -> order.add ("high2"));
+    futures.add (service.submit (POOL, NORMAL_PRIORITY, () -> order.add ("normal2"), null));
+    var done = new CountDownLatch (1);
+    service.getExecutor (POOL, LOW_PRIORITY).execute (done::countDown);
+    release.countDown();
+
+    for (var future : futures) future.get (10, TimeUnit.SECONDS);
+    assertTrue (done.await (10, TimeUnit.SECONDS));
+    assertEquals (List.of ("high1", "high2", "normal1", "normal2", "low1", "low2"), order);
+
+  }
+
+  @Test
+  void testCancel () throws Exception {
+
+    // A task whose token is cancelled before it starts is skipped and its
+    // future is cancelled, but a task whose token is cancelled after it
+    // starts runs to completion.
+    var release = blockPool();
+    var cancelled = new AtomicBoolean();
+    var skipped = new AtomicBoolean();
+    var skippedFuture = service.submit (POOL, NORMAL_PRIORITY, () -> skipped.set (true), cancelled::get);
+    var kept = new AtomicBoolean();
+    var keptFuture = service.submit (POOL, NORMAL_PRIORITY, () -> kept.set (true), () -> false);
+    cancelled.set (true);
+    release.countDown();
+
+    keptFuture.get (10, TimeUnit.SECONDS);
+    assertTrue (kept.get());
+    assertThrows (CancellationException.class, () -> skippedFuture.get (10, TimeUnit.SECONDS));
+    assertTrue (skippedFuture.isCancelled());
+    assertFalse (skipped.get());
+
+    var token = new AtomicBoolean();
+    var started = new CountDownLatch (1);
+    var finish = new CountDownLatch (1);
+    var running = service.submit (POOL, NORMAL_PRIORITY, () -> {
+      started.countDown();
+      try { finish.await(); }
+      catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+      return ("done");
+    }, token::get);
+    assertTrue (started.await (10, TimeUnit.SECONDS));
+    token.set (true);
+    finish.countDown();
+    assertEquals ("done", running.get (10, TimeUnit.SECONDS));
+
+  }
+
+  @Test
+  void testCancelIO () throws Exception {
+
+    // An I/O task whose token is already cancelled isn't submitted, and one
+    // cancelled while waiting to start is skipped.
+    var ran = new AtomicBoolean();
+    var future = service.submitIO (() -> ran.set (true), () -> true);
+    assertTrue (future.isCancelled());
+    assertThrows (CancellationException.class, () -> future.get (10, TimeUnit.SECONDS));
+
+    var cancelled = new AtomicBoolean();
+    var release = new CountDownLatch (1);
+    var started = new CountDownLatch (1);
+    List<Future<?>> blockers = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      blockers.add (service.submitIO (() -> {
+        started.countDown();
+        try { release.await(); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+      }, null));
+    } // for
+    assertTrue (started.await (10, TimeUnit.SECONDS));
+    var skipped = service.submitIO (() -> ran.set (true), cancelled::get);
+    cancelled.set (true);
+    release.countDown();
+    for (var blocker : blockers) blocker.get (10, TimeUnit.SECONDS);
+    assertThrows (CancellationException.class, () -> skipped.get (10, TimeUnit.SECONDS));
+    assertFalse (ran.get());
+
+    service.submitIO (() -> ran.set (true), null).get (10, TimeUnit.SECONDS);
+    assertTrue (ran.get());
+
+  }
+
+  @Test
+  void testGetHost () {
+
+    assertEquals ("example.com", TaskService.getHost ("https://Example.com:8080/data/file.nc"));
+    assertEquals ("example.com", TaskService.getHost ("http://example.com"));
+    assertEquals ("tiles.org", TaskService.getHost ("https://tiles.org/{z}/{x}/{y}.png"));
+    assertEquals (TaskService.LOCAL_HOST, TaskService.getHost ("/data/file.nc"));
+    assertEquals (TaskService.LOCAL_HOST, TaskService.getHost ("file:///data/file.nc"));
+    assertEquals (TaskService.LOCAL_HOST, TaskService.getHost ("C:\\data\\file.nc"));
+
+  }
+
+  /** Finds the peak number of concurrent operations for a host. */
+  private int peakConcurrent (String host, int tasks) throws Exception {
+
+    var active = new AtomicInteger();
+    var peak = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < tasks; i++) {
+      futures.add (service.submitIO (() -> {
+        try {
+          service.runIO (host, () -> {
+            peak.accumulateAndGet (active.incrementAndGet(), Math::max);
+            try { Thread.sleep (20); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            active.decrementAndGet();
+            return (null);
+          });
+        } // try
+        catch (IOException e) { throw new RuntimeException (e); }
+      }, null));
+    } // for
+    for (var future : futures) future.get (30, TimeUnit.SECONDS);
+    return (peak.get());
+
+  }
+
+  @Test
+  void testHostPermits () throws Exception {
+
+    assertEquals (2, peakConcurrent ("example.com", 8));
+    assertEquals (3, peakConcurrent (TaskService.LOCAL_HOST, 8));
+
+  }
+
+}
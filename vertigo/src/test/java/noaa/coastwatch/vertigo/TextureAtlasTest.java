@@ -0,0 +1,181 @@
+package noaa.coastwatch.vertigo;
+
+import javafx.scene.image.WritableImage;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class TextureAtlasTest {
+
+  private static final int PAGE_SIZE = 512;
+
+  private int pagesCreated;
+
+  private TextureAtlas createAtlas (int maxFreePages) {
+
+    return (new TextureAtlas (PAGE_SIZE, maxFreePages, () -> {
+      pagesCreated++;
+      return (new WritableImage (PAGE_SIZE, PAGE_SIZE));
+    }));
+
+  }
+
+  private static boolean overlaps (TextureAtlas.Region a, int[] sizeA, TextureAtlas.Region b, int[] sizeB) {
+
+    if (a.getPage() != b.getPage()) return (false);
+    int[] posA = a.getPosition();
+    int[] posB = b.getPosition();
+    return (posA[0] < posB[0] + sizeB[0] && posB[0] < posA[0] + sizeA[0] &&
+      posA[1] < posB[1] + sizeB[1] && posB[1] < posA[1] + sizeA[1]);
+
+  }
+
+  @Test
+  void testTooLarge () {
+
+    var atlas = createAtlas (1);
+    assertNull (atlas.allocate (PAGE_SIZE+1, 16));
+    assertNull (atlas.allocate (16, PAGE_SIZE+1));
+    assertNotNull (atlas.allocate (PAGE_SIZE, PAGE_SIZE));
+    assertEquals (1, atlas.getPages());
+
+  }
+
+  @Test
+  void testPageSizeLimit () {
+
+    // Pages are no larger than the maximum page size, however large the
+    // requested size.
+    int size = TextureAtlas.MAX_PAGE_SIZE;
+    var atlas = new TextureAtlas (size*2, 1, () -> new WritableImage (size, size));
+    assertNull (atlas.allocate (size+1, 16));
+    assertNotNull (atlas.allocate (size, size));
+
+  }
+
+  @Test
+  void testMixedSizesSharePage () {
+
+    // Textures of different sizes are packed into one page rather than
+    // each size starting its own page.
+    var atlas = createAtlas (1);
+    var sizes = new int[][] {{128, 128}, {100, 60}, {33, 33}, {256, 90}, {128, 128}, {17, 100}};
+    List<TextureAtlas.Region> regions = new ArrayList<>();
+    for (var size : sizes) regions.add (atlas.allocate (size[0], size[1]));
+    assertEquals (1, atlas.getPages());
+    for (int i = 0; i < regions.size(); i++) {
+      for (int j = i+1; j < regions.size(); j++)
+        assertFalse (overlaps (regions.get (i), sizes[i], regions.get (j), sizes[j]), "Regions " + i + " and " + j + " overlap");
+    } // for
+
+  }
+
+  @Test
+  void testSlotReuse () {
+
+    var atlas = createAtlas (1);
+    var a = atlas.allocate (64, 64);
+    var b = atlas.allocate (64, 64);
+    assertArrayEquals (new int[] {0, 0}, a.getPosition());
+    assertArrayEquals (new int[] {64, 0}, b.getPosition());
+
+    a.release();
+    var c = atlas.allocate (64, 64);
+    assertArrayEquals (new int[] {0, 0}, c.getPosition());
+
+    // A second release of the same region has no effect.
+    a.release();
+    var d = atlas.allocate (64, 64);
+    assertArrayEquals (new int[] {128, 0}, d.getPosition());
+
+  }
+
+  @Test
+  void testShelfReuse () {
+
+    // An empty shelf in the middle of a page is reused by a different
+    // size that fits, and empty shelves at the bottom are given back.
+    var atlas = createAtlas (1);
+    var top = atlas.allocate (512, 64);
+    var middle = atlas.allocate (512, 128);
+    var bottom = atlas.allocate (512, 64);
+    assertArrayEquals (new int[] {0, 64}, middle.getPosition());
+    middle.release();
+    var reuse = atlas.allocate (96, 96);
+    assertArrayEquals (new int[] {0, 64}, reuse.getPosition());
+
+    reuse.release();
+    bottom.release();
+    var tall = atlas.allocate (512, 448);
+    assertArrayEquals (new int[] {0, 64}, tall.getPosition());
+    assertEquals (1, atlas.getPages());
+
+  }
+
+  @Test
+  void testPageRecycle () {
+
+    var atlas = createAtlas (1);
+    var a = atlas.allocate (512, 512);
+    var b = atlas.allocate (512, 512);
+    assertEquals (2, atlas.getPages());
+    assertNotSame (a.getPage(), b.getPage());
+    assertEquals (2, pagesCreated);
+
+    a.release();
+    b.release();
+    assertEquals (0, atlas.getPages());
+
+    // Only one empty page is kept, and it's reused for any size.
+    var c = atlas.allocate (32, 32);
+    assertSame (a.getPage(), c.getPage());
+    atlas.allocate (512, 480);
+    assertEquals (1, atlas.getPages());
+    atlas.allocate (512, 32);
+    assertEquals (2, atlas.getPages());
+    assertEquals (3, pagesCreated);
+
+  }
+
+  @Test
+  void testRandom () {
+
+    var atlas = createAtlas (2);
+    var random = new Random (1234);
+    List<TextureAtlas.Region> regions = new ArrayList<>();
+    List<int[]> sizes = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      if (!regions.isEmpty() && random.nextInt (3) == 0) {
+        int index = random.nextInt (regions.size());
+        regions.remove (index).release();
+        sizes.remove (index);
+      } // if
+      else {
+        int[] size = new int[] {1 + random.nextInt (200), 1 + random.nextInt (200)};
+        var region = atlas.allocate (size[0], size[1]);
+        int[] pos = region.getPosition();
+        assertTrue (pos[0] >= 0 && pos[0] + size[0] <= PAGE_SIZE && pos[1] >= 0 && pos[1] + size[1] <= PAGE_SIZE);
+        for (int j = 0; j < regions.size(); j++)
+          assertFalse (overlaps (region, size, regions.get (j), sizes.get (j)));
+        regions.add (region);
+        sizes.add (size);
+      } // else
+    } // for
+
+    for (var region : regions) region.release();
+    assertEquals (0, atlas.getPages());
+
+  }
+
+}
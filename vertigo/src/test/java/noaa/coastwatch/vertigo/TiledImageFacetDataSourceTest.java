@@ -0,0 +1,53 @@
+package noaa.coastwatch.vertigo;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import static noaa.coastwatch.vertigo.TiledImageFacetDataSource.alignTileSize;
+import static noaa.coastwatch.vertigo.TiledImageFacetDataSource.isAligned;
+
+class TiledImageFacetDataSourceTest {
+
+  @Test
+  void testIsAligned () {
+
+    assertTrue (isAligned (512, 256, 10000));
+    assertTrue (isAligned (256, 512, 10000));
+    assertTrue (isAligned (256, 256, 10000));
+    assertFalse (isAligned (384, 256, 10000));
+    assertFalse (isAligned (256, 384, 10000));
+
+    // Data that isn't chunked, or has a single chunk along the dimension,
+    // is aligned with any tile size.
+    assertTrue (isAligned (384, 0, 10000));
+    assertTrue (isAligned (384, -1, 10000));
+    assertTrue (isAligned (384, 10000, 10000));
+    assertTrue (isAligned (384, 20000, 10000));
+
+  }
+
+  @Test
+  void testAlignTileSize () {
+
+    // The largest multiple of m no smaller than half the tile size that
+    // is aligned along both dimensions.
+    assertEquals (768, alignTileSize (1000, 8, new int[] {256, 256}, 10000, 10000));
+    assertEquals (600, alignTileSize (1000, 8, new int[] {300, 300}, 10000, 10000));
+    assertEquals (768, alignTileSize (1000, 8, new int[] {256, 384}, 10000, 10000));
+    assertEquals (512, alignTileSize (1000, 8, new int[] {1024, 1024}, 10000, 10000));
+
+    // A tile size that's already aligned is kept.
+    assertEquals (1024, alignTileSize (1024, 8, new int[] {256, 512}, 10000, 10000));
+
+    // A dimension with a single chunk doesn't constrain the tile size.
+    assertEquals (768, alignTileSize (1000, 8, new int[] {256, 1000}, 10000, 1000));
+
+    // With no aligned size in range, the original tile size is kept.
+    assertEquals (1000, alignTileSize (1000, 8, new int[] {1001, 1001}, 10000, 10000));
+    assertEquals (64, alignTileSize (64, 64, new int[] {48, 48}, 10000, 10000));
+
+  }
+
+}
@@ -0,0 +1,99 @@
+package noaa.coastwatch.vertigo;
+
+import java.util.function.BooleanSupplier;
+
+import javafx.scene.image.WritableImage;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TiledImageTextureFactoryTest {
+
+  private static final int TILE_SIZE = 256;
+
+  /** A tile writer whose data is valid only inside a small rectangle. */
+  private static class TestWriter implements ImageTileWriter {
+
+    int minX, minY, maxX, maxY;
+
+    TestWriter (int minX, int minY, int maxX, int maxY) {
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+    }
+
+    @Override
+    public void write (ImageTile tile, WritableImage image, int startX, int startY,
+      int width, int height, BooleanSupplier cancelled) {
+      int strideX = tile.width / width;
+      int strideY = tile.height / height;
+      var writer = image.getPixelWriter();
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int dataX = tile.minX + x*strideX;
+          int dataY = tile.minY + y*strideY;
+          boolean isValid = (dataX >= minX && dataX <= maxX && dataY >= minY && dataY <= maxY);
+          writer.setArgb (startX + x, startY + y, isValid ? 0xffffffff : 0);
+        } // for
+      } // for
+    }
+
+  }
+
+  private static int findTile (ImageTiling tiling, int minX, int minY) {
+
+    for (int i = 0; i < tiling.getTiles(); i++) {
+      var tile = tiling.getTile (i);
+      if (tile.minX == minX && tile.minY == minY) return (i);
+    } // for
+    throw new IllegalArgumentException ("No tile at " + minX + "," + minY);
+
+  }
+
+  @Test
+  void testExactOccupancy () {
+
+    // With a full resolution overview, only the tiles holding data have
+    // data.
+    var tiling = new ImageTiling (1024, 1024, TILE_SIZE, TILE_SIZE);
+    var factory = new TiledImageTextureFactory (tiling, new TestWriter (300, 300, 301, 301), new double[] {1});
+    assertTrue (factory.isOverviewExact());
+    assertNotNull (factory.createOverview (null));
+
+    int withData = 0;
+    for (int i = 0; i < tiling.getTiles(); i++) if (factory.hasData (i)) withData++;
+    assertEquals (1, withData);
+    assertTrue (factory.hasData (findTile (tiling, 256, 256)));
+
+  }
+
+  @Test
+  void testStridedOccupancy () {
+
+    // The overview samples every 4th pixel.  The data straddles the edge
+    // between two tiles, but only one of them has a sample of it.  The
+    // other tile is still found to have data from the samples around it,
+    // while tiles away from the data are found to be empty.
+    var tiling = new ImageTiling (4096, 4096, TILE_SIZE, TILE_SIZE);
+    var factory = new TiledImageTextureFactory (tiling, new TestWriter (1022, 300, 1027, 303), new double[] {1});
+    assertFalse (factory.isOverviewExact());
+    var overview = factory.createOverview (null);
+    assertEquals (1024, (int) overview.getWidth());
+
+    assertTrue (factory.hasData (findTile (tiling, 1024, 256)));
+    assertTrue (factory.hasData (findTile (tiling, 768, 256)));
+    assertFalse (factory.hasData (findTile (tiling, 0, 0)));
+    assertFalse (factory.hasData (findTile (tiling, 1280, 256)));
+    assertFalse (factory.hasData (findTile (tiling, 1024, 0)));
+
+    int withData = 0;
+    for (int i = 0; i < tiling.getTiles(); i++) if (factory.hasData (i)) withData++;
+    assertEquals (2, withData);
+
+  }
+
+}
@@ -0,0 +1,109 @@
+package noaa.coastwatch.vertigo;
+
+import javafx.scene.Node;
+import javafx.scene.Group;
+import javafx.scene.transform.Affine;
+import javafx.geometry.Point3D;
+import javafx.scene.shape.Box;
+import javafx.geometry.BoundingBox;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class WorldModelTest {
+
+  private static Node createObject (double x) {
+
+    var box = new Box (1, 1, 1);
+    box.setTranslateX (x);
+    return (box);
+
+  }
+
+  private static WorldModel createModel () {
+
+    return (new WorldModel (new BoundingBox (-10, -10, -10, 20, 20, 20)));
+
+  }
+
+  @Test
+  void testAddObject () {
+
+    // Adding an object doesn't change its visibility until the next
+    // visibility update.
+    var model = createModel();
+    var a = createObject (0);
+    var b = createObject (5);
+    b.setVisible (false);
+    model.addObject (a);
+    model.addObject (b);
+    assertTrue (a.isVisible());
+    assertFalse (b.isVisible());
+
+    model.updateVisibility (Set.of (b));
+    assertFalse (a.isVisible());
+    assertTrue (b.isVisible());
+
+  }
+
+  @Test
+  void testAddObjects () {
+
+    var model = createModel();
+    var a = createObject (0);
+    var b = createObject (5);
+    model.addObjects (List.of (a, b));
+    assertTrue (a.isVisible());
+    assertTrue (b.isVisible());
+
+    model.updateVisibility (Set.of (a));
+    assertTrue (a.isVisible());
+    assertFalse (b.isVisible());
+
+  }
+
+  @Test
+  void testAddObjectInView () {
+
+    var model = createModel();
+    var a = createObject (0);
+    var b = createObject (5);
+    model.addObject (a, true);
+    model.addObject (b, false);
+    assertTrue (a.isVisible());
+    assertFalse (b.isVisible());
+
+    // A disabled object in view is hidden, and shown again when enabled.
+    a.setDisable (true);
+    assertFalse (a.isVisible());
+    a.setDisable (false);
+    assertTrue (a.isVisible());
+    b.setDisable (true);
+    b.setDisable (false);
+    assertFalse (b.isVisible());
+
+  }
+
+  @Test
+  void testBoundsChange () {
+
+    // An object whose bounds change after it's added is found at its new
+    // location.
+    var model = createModel();
+    var box = createObject (0);
+    box.setTranslateZ (5);
+    var a = new Group (box);
+    model.addObject (a);
+    var frustum = new Frustum (new Affine(), new Point3D (0, 0, 0), 90, 1, 1000, 1);
+    assertTrue (model.findVisible (frustum).contains (a));
+
+    box.setTranslateZ (-5);
+    assertFalse (model.findVisible (frustum).contains (a));
+
+  }
+
+}